@@ -0,0 +1,51 @@
+#!/bin/sh
+#
+# Build a startup-optimized distribution of the simple interpreter:
+# a jar of the compiled classes and an AppCDS archive of the classes
+# that the sample programs load, so that a one-shot run maps them
+# already parsed and verified instead of loading them from the jar.
+#
+# Usage: scripts/appcds.sh [buildDirectory]
+#
+# Then run a program with:
+#   java -XX:SharedArchiveFile=build/simple.jsa -XX:TieredStopAtLevel=1 \
+#        -cp build/simple.jar Simple -execute HelloWorld.txt
+#
+# (c) 2020 by Ronald Mak
+# Department of Computer Science
+# San Jose State University
+
+set -e
+cd "$(dirname "$0")/.."
+
+BUILD=${1:-build}
+JAR=$BUILD/simple.jar
+ARCHIVE=$BUILD/simple.jsa
+CLASSLIST=$BUILD/simple.classlist
+
+rm -rf "$BUILD"
+mkdir -p "$BUILD/classes" "$BUILD/training"
+
+# Compile string concatenations inline rather than with invokedynamic,
+# which would spin method handle classes at startup.
+javac -XDstringConcat=inline -d "$BUILD/classes" $(find src -name '*.java')
+jar --create --file "$JAR" --main-class Simple -C "$BUILD/classes" .
+
+# Training run: record the classes loaded by each operation
+# on each sample program, with both executors.
+n=0
+for program in *.txt; do
+    for operation in -scan -parse -execute "-iterative -execute"; do
+        n=$((n + 1))
+        java -XX:DumpLoadedClassList="$BUILD/training/$n.classlist" \
+             -cp "$JAR" Simple $operation "$program" > /dev/null || true
+    done
+done
+
+sort -u "$BUILD"/training/*.classlist > "$CLASSLIST"
+
+# Dump the archive of the recorded classes.
+java -Xshare:dump -XX:SharedClassListFile="$CLASSLIST" \
+     -XX:SharedArchiveFile="$ARCHIVE" -cp "$JAR" > /dev/null
+
+echo "Created $ARCHIVE for $JAR"
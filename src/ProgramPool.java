@@ -0,0 +1,237 @@
+/**
+ * Compiled program pool for the simple interpreter's server mode.
+ *
+ * Keeps the most recently used compiled programs, keyed by their source
+ * text, so that a program that many requests execute is compiled only
+ * once. Requests that miss on the same source at the same time wait for
+ * a single compilation. A compiled program isn't changed by its
+ * executions, so the requests then execute it concurrently without locks,
+ * each with its own frame of variable values.
+ *
+ * Each program's parse tree is allocated from a node arena. When the
+ * program is evicted and its last execution is done, the whole tree is
+ * released at once by resetting the arena, which then goes back on a
+ * free list to be reused by the next compilation or parse. So under
+ * a stream of new programs, parsing mostly reuses the nodes of evicted
+ * trees instead of allocating new ones. The program's executions share
+ * its compiled loops, and its loop compiler is closed first, since
+ * a compilation in the background still reads the tree.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.BiFunction;
+import java.util.function.ToIntFunction;
+
+import frontend.*;
+import intermediate.*;
+
+public class ProgramPool
+{
+    private static final int MAX_FREE_ARENAS = 8;
+    private static final long MAX_FREE_NODES = 1 << 16;  // per free arena
+
+    /**
+     * A pooled program.
+     */
+    private static class Entry
+    {
+        FutureTask<Simple.Program> task;  // compiles the program
+        NodeArena arena;                  // of its parse tree, null if released
+        int users;                        // executions in progress
+        boolean evicted;                  // no longer in the pool
+
+        Entry(NodeArena arena) { this.arena = arena; }
+    }
+
+    private final LinkedHashMap<String, Entry> programs;
+    private final ArrayDeque<NodeArena> freeArenas;
+    private long hits;    // requests that found their program
+    private long misses;  // requests that compiled their program
+
+    /**
+     * Constructor.
+     * @param capacity the maximum number of compiled programs to keep.
+     */
+    public ProgramPool(int capacity)
+    {
+        // In access order, so the eldest entry is the least recently used.
+        this.programs = new LinkedHashMap<>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+            {
+                if (size() <= capacity) return false;
+
+                evict(eldest.getValue());
+                return true;
+            }
+        };
+        this.freeArenas = new ArrayDeque<>();
+        this.hits   = 0;
+        this.misses = 0;
+    }
+
+    /**
+     * Getter.
+     * @return the number of requests that found their compiled program.
+     */
+    public synchronized long hits() { return hits; }
+
+    /**
+     * Getter.
+     * @return the number of requests that compiled their program.
+     */
+    public synchronized long misses() { return misses; }
+
+    /**
+     * Execute the compiled program of a source, and compile it first
+     * if it's not in the pool. A program that fails to compile isn't kept.
+     * @param source the source.
+     * @param compiler the function to compile the source into a node arena.
+     * @param execution the function to execute the compiled program.
+     * @return the execution's exit status.
+     */
+    int execute(Source source,
+                BiFunction<Source, NodeArena, Simple.Program> compiler,
+                ToIntFunction<Simple.Program> execution)
+    {
+        String text = new String(source.buffer());
+        Entry entry;
+        boolean compile = false;
+
+        synchronized (this)
+        {
+            entry = programs.get(text);
+            if (entry == null)
+            {
+                NodeArena arena = takeArena();
+                entry = new Entry(arena);
+                entry.task = new FutureTask<>(() -> compiler.apply(source, arena));
+                programs.put(text, entry);
+                compile = true;
+                misses++;
+            }
+            else hits++;
+
+            entry.users++;
+        }
+
+        try
+        {
+            // Compile outside the lock.
+            if (compile) entry.task.run();
+
+            return execution.applyAsInt(get(text, entry));
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                if ((--entry.users == 0) && entry.evicted) release(entry);
+            }
+        }
+    }
+
+    /**
+     * Take a node arena from the free list, or create one.
+     * @return the arena, which is empty.
+     */
+    synchronized NodeArena takeArena()
+    {
+        NodeArena arena = freeArenas.poll();
+        return arena != null ? arena : new NodeArena();
+    }
+
+    /**
+     * Release all the nodes of a node arena and return it to the free list,
+     * unless the list is full or the arena is too large to keep.
+     * @param arena the arena, whose nodes are no longer used.
+     */
+    synchronized void returnArena(NodeArena arena)
+    {
+        arena.reset();
+
+        if (   (freeArenas.size() < MAX_FREE_ARENAS)
+            && (arena.capacity() <= MAX_FREE_NODES))
+        {
+            freeArenas.push(arena);
+        }
+    }
+
+    /**
+     * Wait for a program's compilation.
+     * @param text the program's source text.
+     * @param entry the program's entry.
+     * @return the compiled program.
+     */
+    private Simple.Program get(String text, Entry entry)
+    {
+        try
+        {
+            return entry.task.get();
+        }
+        catch (InterruptedException ex)
+        {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Interrupted while compiling");
+        }
+        catch (ExecutionException ex)
+        {
+            synchronized (this)
+            {
+                if (programs.remove(text, entry)) entry.evicted = true;
+            }
+
+            Throwable cause = ex.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error)            throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Evict a program from the pool. Its parse tree is released
+     * when no execution is using it. Called with the lock held.
+     * @param entry the program's entry.
+     */
+    private void evict(Entry entry)
+    {
+        entry.evicted = true;
+        if (entry.users == 0) release(entry);
+    }
+
+    /**
+     * Release the parse tree of an evicted program. Called with the lock held.
+     * @param entry the program's entry.
+     */
+    private void release(Entry entry)
+    {
+        if (entry.arena != null)
+        {
+            // The compilation is done, since it had a user.
+            try
+            {
+                Simple.Program program = entry.task.get();
+                if (program.loops != null) program.loops.close();
+            }
+            catch (InterruptedException | ExecutionException ex)
+            {
+                // A program that failed to compile has no loops.
+            }
+
+            returnArena(entry.arena);
+            entry.arena = null;
+            entry.task  = null;
+        }
+    }
+}
@@ -9,107 +9,728 @@
 import frontend.*;
 import intermediate.*;
 import backend.*;
+import metrics.*;
+import optimizer.*;
+import intermediate.cfg.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.IdentityHashMap;
 
 import static frontend.Token.TokenType.*;
 
 public class Simple
 {
+    private static boolean iterative = false;  // execute without recursion
+    private static boolean optimize  = false;  // optimize the parse tree
+    private static boolean ssa       = false;  // execute the lowered SSA form
+    private static boolean partial   = false;  // partially evaluate the program
+    private static boolean parallel  = false;  // run independent loops at once
+    private static boolean reassociate = false;  // reassociate reductions
+    private static boolean tiering   = true;   // compile hot loops
+    private static ParseTreePrinter.Format treeFormat = ParseTreePrinter.Format.XML;
+    private static long maxIterations = ExecutionLimits.UNLIMITED;
+    private static long timeoutMillis = ExecutionLimits.UNLIMITED;
+    private static long memoryBudget  = MemoryBudget.UNLIMITED;  // per program
+    private static String checkpointFileName = null;  // checkpoint or resume
+    private static boolean resume = false;            // resume from checkpoint
+    private static long checkpointMillis = 10000;     // time between checkpoints
+    private static String inputFileName = null;       // else standard input
+    
+    /**
+     * A compiled program: its parse tree after any optimization and partial
+     * evaluation, and its lowered code if it's executed in SSA form. Its
+     * executions don't change it, so any number of threads can execute it
+     * at once, each with its own frame of variable values.
+     */
+    static class Program
+    {
+        Symtab symtab;
+        Node programNode;
+        LinearCode code;   // lowered code, or null
+        ParallelPlan plan; // of independent loops, or null
+        IdentityHashMap<Node, Reduction> reductions;  // or null
+        LoopCompiler loops;  // of the hot loops of every execution, or null
+        String messages;   // error messages of the scanner and parser
+        int errorCount;    // number of errors
+        long nodeCount;    // number of parse tree nodes created
+        long evaluated;    // number of loop iterations partially evaluated
+        MemoryBudget footprint;  // charged by the compilation, or null
+    }
+    
     public static void main(String args[])
     {
-        if (args.length != 2)
+        if (args.length < 2)
         {
-            System.out.println("Usage: simple -{scan, parse, execute} " +
-                               "sourceFileName");
+            System.out.println("Usage: simple [-iterative] [-ssa] [-optimize] " +
+                               "[-partial] [-parallel] [-reassociate] " +
+                               "[-notiering] [-format {xml, json, sexpr}] " +
+                               "[-maxiterations n] [-timeout ms] " +
+                               "[-memorybudget bytes] " +
+                               "[-metrics] [-checkpoint file] [-resume file] " +
+                               "[-checkpointinterval ms] [-input file] " +
+                               "-{scan, parse, cfg, execute} sourceFileName");
+            System.out.println("       simple [-iterative] [-ssa] [-optimize] " +
+                               "[-partial] [-parallel] [-reassociate] " +
+                               "[-notiering] [-maxiterations n] [-timeout ms] " +
+                               "[-memorybudget bytes] " +
+                               "-serve {port, socketPath}");
             System.exit(-1);
         }
         
-        String operation      = args[0];  // -scan, -parse, or -execute
-        String sourceFileName = args[1];
+        // Any options precede the operation.
+        for (int i = 0; i < args.length - 2; i++)
+        {
+            if      (args[i].equalsIgnoreCase("-iterative")) iterative = true;
+            else if (args[i].equalsIgnoreCase("-optimize"))  optimize  = true;
+            else if (args[i].equalsIgnoreCase("-ssa"))       ssa       = true;
+            else if (args[i].equalsIgnoreCase("-partial"))   partial   = true;
+            else if (args[i].equalsIgnoreCase("-parallel"))  parallel  = true;
+            else if (args[i].equalsIgnoreCase("-reassociate"))
+            {
+                reassociate = true;
+            }
+            else if (args[i].equalsIgnoreCase("-notiering")) tiering = false;
+            else if (args[i].equalsIgnoreCase("-metrics"))   ProgramRun.enable();
+            else if (   args[i].equalsIgnoreCase("-format")
+                     && (i + 1 < args.length - 2))
+            {
+                try
+                {
+                    treeFormat = ParseTreePrinter.Format.valueOf(
+                                                    args[++i].toUpperCase());
+                }
+                catch (IllegalArgumentException ex)
+                {
+                    System.out.println("Unknown format " + args[i]);
+                    System.exit(-1);
+                }
+            }
+            else if (   args[i].equalsIgnoreCase("-maxiterations")
+                     && (i + 1 < args.length - 2))
+            {
+                maxIterations = Long.parseLong(args[++i]);
+            }
+            else if (   args[i].equalsIgnoreCase("-timeout")
+                     && (i + 1 < args.length - 2))
+            {
+                timeoutMillis = Long.parseLong(args[++i]);
+            }
+            else if (   args[i].equalsIgnoreCase("-memorybudget")
+                     && (i + 1 < args.length - 2))
+            {
+                memoryBudget = Long.parseLong(args[++i]);
+            }
+            else if (   args[i].equalsIgnoreCase("-checkpoint")
+                     && (i + 1 < args.length - 2))
+            {
+                checkpointFileName = args[++i];
+            }
+            else if (   args[i].equalsIgnoreCase("-resume")
+                     && (i + 1 < args.length - 2))
+            {
+                checkpointFileName = args[++i];
+                resume = true;
+            }
+            else if (   args[i].equalsIgnoreCase("-checkpointinterval")
+                     && (i + 1 < args.length - 2))
+            {
+                checkpointMillis = Long.parseLong(args[++i]);
+            }
+            else if (   args[i].equalsIgnoreCase("-input")
+                     && (i + 1 < args.length - 2))
+            {
+                inputFileName = args[++i];
+            }
+            else
+            {
+                System.out.println("Unknown option " + args[i]);
+                System.exit(-1);
+            }
+        }
+        
+        String operation      = args[args.length - 2];  // -scan, -parse, -cfg, or -execute
+        String sourceFileName = args[args.length - 1];
+        
+        if (operation.equalsIgnoreCase("-serve"))
+        {
+            if (checkpointFileName != null)
+            {
+                System.out.println("Can't checkpoint in server mode");
+                System.exit(-1);
+            }
+            
+            // A server's executions always have a deadline.
+            if (timeoutMillis == ExecutionLimits.UNLIMITED)
+            {
+                timeoutMillis = SimpleServer.DEFAULT_TIMEOUT;
+            }
+            
+            SimpleServer.serve(sourceFileName);  // port number or socket path
+            return;
+        }
         
         Source source = new Source(sourceFileName);
+        InputReader input = InputReader.standardInput();
+        
+        if (inputFileName != null)
+        {
+            try
+            {
+                input = InputReader.open(inputFileName);
+            }
+            catch (IOException ex)
+            {
+                System.out.println("*** ERROR: Failed to open " + inputFileName);
+                System.exit(-1);
+            }
+        }
+        
+        int status = run(operation, source, null, input, System.out, null);
+        if (status != 0) System.exit(status);
+    }
+    
+    /**
+     * Getter.
+     * @return the memory budget per program in estimated bytes,
+     * or MemoryBudget.UNLIMITED.
+     */
+    static long memoryBudget() { return memoryBudget; }
+    
+    /**
+     * Scan, parse, print the control-flow graph of, or execute a source program.
+     * @param operation -scan, -parse, -cfg, or -execute.
+     * @param source the input source.
+     * @param pool the pool of compiled programs to execute from, or null.
+     * @param input the reader of the program input.
+     * @param out the output stream.
+     * @param cancellation limits that the caller can cancel to stop
+     * the execution, or null.
+     * @return the exit status, -2 if there was a runtime error,
+     * or -3 if the program exceeded its memory budget.
+     */
+    static int run(String operation, Source source, ProgramPool pool,
+                   InputReader input, PrintStream out,
+                   ExecutionLimits cancellation)
+    {
+        int status = 0;
+        
+        // Measure the run only if metrics are enabled.
+        ProgramRun run = null;
+        if (ProgramRun.enabled())
+        {
+            run = new ProgramRun(operation);
+            out = new PrintStream(run.countOutput(out), false);
+        }
+        
+        try
+        {
+            if (operation.equalsIgnoreCase("-scan"))
+            {
+                testScanner(source, out, run);
+            }
+            else if (   operation.equalsIgnoreCase("-parse")
+                     || operation.equalsIgnoreCase("-cfg"))
+            {
+                // With a pool, parse into one of its node arenas,
+                // and release the whole tree afterwards.
+                NodeArena arena = pool != null ? pool.takeArena() : null;
+                Symtab symtab = new Symtab();
+                Parser parser = createParser(source, symtab, out, arena,
+                                             newMemoryBudget(run), run);
+                
+                try
+                {
+                    if (operation.equalsIgnoreCase("-parse"))
+                    {
+                        testParser(parser, symtab, out, run);
+                    }
+                    else testCfg(parser, symtab, out, run);
+                }
+                catch (StackOverflowError ex)
+                {
+                    // The recursive passes can run out of stack
+                    // on statements that the parser could nest.
+                    out.println();
+                    out.println("*** ERROR: Statements nested too deeply");
+                }
+                finally
+                {
+                    if (arena != null) pool.returnArena(arena);
+                }
+            }
+            else if (operation.equalsIgnoreCase("-execute"))
+            {
+                ProgramRun compileRun = run;
+                PrintStream programOut = out;
+                if (pool != null)
+                {
+                    status = pool.execute(source,
+                                   (s, arena) -> compile(s, arena, compileRun),
+                                   program -> executeProgram(program, input,
+                                                             programOut, compileRun,
+                                                             cancellation));
+                }
+                else
+                {
+                    Program program = compile(source, null, run);
+                    
+                    try
+                    {
+                        status = executeProgram(program, input, out, run,
+                                                cancellation);
+                    }
+                    finally
+                    {
+                        if (program.loops != null) program.loops.close();
+                    }
+                }
+            }
+            else out.println("Unknown operation " + operation);
+        }
+        catch (MemoryBudgetExceededException ex)
+        {
+            out.printf("*** ERROR at line %d: %s\n",
+                       ex.getLineNumber(), ex.getMessage());
+            status = -3;
+            
+            if (run != null)
+            {
+                recordFootprint(run, ex.getBudget());
+                run.memoryBudgetErrors = 1;
+            }
+        }
         
-        if (operation.equalsIgnoreCase("-scan"))
+        if (run != null)
         {
-            testScanner(source);
+            out.flush();
+            run.finish();
         }
-        else if (operation.equalsIgnoreCase("-parse"))
+        
+        return status;
+    }
+    
+    /**
+     * Create a parser. Pretokenize a large source in parallel.
+     * @param source the input source.
+     * @param symtab the symbol table.
+     * @param out the output stream for error messages.
+     * @param arena the node arena to parse into, or null.
+     * @param budget the memory budget to charge the parse to, or null.
+     * @param run the measured program run, or null.
+     * @return the parser.
+     */
+    private static Parser createParser(Source source, Symtab symtab,
+                                       PrintStream out, NodeArena arena,
+                                       MemoryBudget budget, ProgramRun run)
+    {
+        TokenStream tokens;
+        
+        if (source.length() >= PreTokenizer.PARALLEL_THRESHOLD)
         {
-            testParser(new Scanner(source), new Symtab());
+            long start = System.nanoTime();
+            tokens = PreTokenizer.tokenize(source, symtab, out);
+            if (run != null) run.scanNanos = System.nanoTime() - start;
         }
-        else if (operation.equalsIgnoreCase("-execute"))
+        else
         {
-            Symtab symtab = new Symtab();
-            executeProgram(new Parser(new Scanner(source), symtab), symtab);
+            tokens = new TokenStream(new Scanner(source, symtab, out));
+            if (run != null) tokens.timeScanning();
         }
+        
+        Parser parser = arena != null ? new Parser(tokens, symtab, out, arena)
+                                      : new Parser(tokens, symtab, out);
+        parser.setMemoryBudget(budget);
+        
+        return parser;
+    }
+    
+    /**
+     * Create a memory budget for a program, if it has a budget
+     * or its run is measured.
+     * @param run the measured program run, or null.
+     * @return the memory budget, or null.
+     */
+    private static MemoryBudget newMemoryBudget(ProgramRun run)
+    {
+        return (run != null) || (memoryBudget != MemoryBudget.UNLIMITED)
+                ? new MemoryBudget(memoryBudget) : null;
+    }
+    
+    /**
+     * Record a program's memory footprint in its measured run.
+     * @param run the measured program run.
+     * @param footprint the program's memory budget, or null.
+     */
+    private static void recordFootprint(ProgramRun run, MemoryBudget footprint)
+    {
+        if (footprint == null) return;
+        
+        run.nodeCount        = footprint.nodeCount();
+        run.tokenCount       = footprint.tokenCount();
+        run.symbolCount      = footprint.symbolCount();
+        run.estimatedBytes   = footprint.estimatedBytes();
+        run.peakOutputBuffer = footprint.peakOutputBytes();
+    }
+    
+    /**
+     * Parse the program, and optimize the parse tree if requested.
+     * @param parser the parser.
+     * @param symtab the symbol table.
+     * @param run the measured program run, or null.
+     * @return the root of the parse tree.
+     */
+    private static Node parse(Parser parser, Symtab symtab, ProgramRun run)
+    {
+        long start = System.nanoTime();
+        Node programNode = parser.parseProgram();
+        
+        if (run != null)
+        {
+            long elapsed = System.nanoTime() - start;
+            run.scanNanos += parser.scanNanos();
+            run.parseNanos = elapsed - parser.scanNanos();
+            run.nodeCount  = parser.nodeCount();
+            recordFootprint(run, parser.memoryBudget());
+        }
+        
+        if (optimize && (parser.errorCount() == 0))
+        {
+            new CommonSubexpressionEliminator(symtab).optimize(programNode);
+            new DeadStoreEliminator(symtab).optimize(programNode);
+        }
+        
+        return programNode;
+    }
+    
+    /**
+     * Partially evaluate the program if requested, within the limits on
+     * its execution.
+     * @param programNode the root of the parse tree.
+     * @param budget the program's memory budget to charge the output
+     * that's evaluated, or null.
+     * @return the number of loop iterations evaluated.
+     */
+    private static long partiallyEvaluate(Node programNode, MemoryBudget budget)
+    {
+        if (!partial) return 0;
+        
+        PartialEvaluator evaluator = new PartialEvaluator(
+                Math.min(PartialEvaluator.DEFAULT_ITERATIONS, maxIterations),
+                Math.min(PartialEvaluator.DEFAULT_TIMEOUT, timeoutMillis),
+                PartialEvaluator.DEFAULT_OUTPUT_BYTES);
+        evaluator.setTiering(tiering);
+        evaluator.setMemoryBudget(budget);
+        evaluator.evaluate(programNode);
+        
+        return evaluator.iterations();
+    }
+    
+    /**
+     * Compile a program for execution. The error messages are saved
+     * to be printed by each execution.
+     * @param source the input source.
+     * @param arena the node arena to parse into, or null.
+     * @param run the measured program run, or null.
+     * @return the compiled program.
+     */
+    static Program compile(Source source, NodeArena arena, ProgramRun run)
+    {
+        Program program = new Program();
+        MemoryBudget budget = newMemoryBudget(run);
+        
+        // The messages are kept with the program, so they're charged
+        // to its budget.
+        ByteArrayOutputStream messages = budget != null ? budget.newBuffer()
+                                                        : new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(messages, false);
+        
+        program.symtab = new Symtab();
+        Parser parser = createParser(source, program.symtab, out, arena,
+                                     budget, run);
+        program.footprint = budget;
+        
+        // The optimizing passes are recursive, and they can run out of
+        // stack on statements that the parser could nest.
+        try
+        {
+            program.programNode = parse(parser, program.symtab, run);
+            program.errorCount  = parser.errorCount();
+            program.nodeCount   = parser.nodeCount();
+            
+            if (program.errorCount == 0)
+            {
+                program.evaluated = partiallyEvaluate(program.programNode,
+                                                      budget);
+                
+                // Checkpointing requires the iterative executor.
+                if (ssa && (checkpointFileName == null))
+                {
+                    ControlFlowGraph cfg =
+                            new ControlFlowGraph(program.programNode);
+                    cfg.toSsa();
+                    cfg.fromSsa();
+                    program.code = cfg.lower();
+                }
+                else if (   parallel && !iterative
+                         && (checkpointFileName == null)
+                         && (Runtime.getRuntime().availableProcessors() > 1))
+                {
+                    // Only the recursive executor runs loops in parallel,
+                    // which can't help on a single processor.
+                    program.plan = ParallelPlan.analyze(program.programNode);
+                    program.reductions = new ReductionRecognizer()
+                                                .recognize(program.programNode);
+                }
+                
+                // The executions share the compiled loops.
+                if ((program.code == null) && tiering)
+                {
+                    program.loops = new LoopCompiler(program.reductions);
+                }
+            }
+        }
+        catch (StackOverflowError ex)
+        {
+            out.println("*** ERROR: Statements nested too deeply to compile");
+            program.errorCount = parser.errorCount() + 1;
+            program.nodeCount  = parser.nodeCount();
+        }
+        
+        out.flush();
+        program.messages = messages.toString();
+        
+        return program;
     }
     
     /**
      * Test the scanner.
      * @param source the input source.
+     * @param out the output stream.
+     * @param run the measured program run, or null.
      */
-    private static void testScanner(Source source)
+    private static void testScanner(Source source, PrintStream out,
+                                    ProgramRun run)
     {
-        System.out.println("Tokens:");
-        System.out.println();
+        long start = System.nanoTime();
+        
+        out.println("Tokens:");
+        out.println();
         
-        Scanner scanner = new Scanner(source);  // create the scanner
+        Scanner scanner = new Scanner(source, out);  // create the scanner
         
         // Loop to extract and print each token from the source one at a time.
         for (Token token = scanner.nextToken(); 
              token.type != END_OF_FILE; 
              token = scanner.nextToken())
         {
-            System.out.printf("%14s : %s\n", token.type, token.text);
+            out.printf("%14s : %s\n", token.type, token.text);
         }
+        
+        if (run != null) run.scanNanos = System.nanoTime() - start;
     }
     
     /**
      * Test the parser.
-     * @param scanner the scanner.
+     * @param parser the parser.
      * @param symtab the symbol table.
+     * @param out the output stream.
+     * @param run the measured program run, or null.
      */
-    private static void testParser(Scanner scanner, Symtab symtab)
+    private static void testParser(Parser parser, Symtab symtab,
+                                   PrintStream out, ProgramRun run)
     {
-        Parser parser = new Parser(scanner, symtab);  // create the parser
-        Node programNode = parser.parseProgram();     // and parse the program
+        Node programNode = parse(parser, symtab, run);  // parse the program
         int errorCount = parser.errorCount();
         
         // If no errors, print the parse tree.
         if (errorCount == 0)
         {
-            System.out.println("Parse tree:");
-            System.out.println();
+            partiallyEvaluate(programNode, parser.memoryBudget());
             
-            ParseTreePrinter printer = new ParseTreePrinter();
+            out.println("Parse tree:");
+            out.println();
+            
+            ParseTreePrinter printer = new ParseTreePrinter(out, treeFormat);
             printer.print(programNode);
         }
         else
         {
-            System.out.println();
-            System.out.println("There were " + errorCount + " syntax errors.");
+            out.println();
+            out.println("There were " + errorCount + " syntax errors.");
         }
     }
     
     /**
-     * Test the executor.
+     * Print the parse tree of a source program that's being edited,
+     * or its number of syntax errors. The incremental parser keeps the
+     * tree for the next edit, so it isn't partially evaluated.
+     * @param parser the incremental parser of the program.
+     * @param out the output stream.
+     */
+    static void printParse(IncrementalParser parser, PrintStream out)
+    {
+        out.print(parser.messages());
+        int errorCount = parser.errorCount();
+        
+        // If no errors, print the parse tree.
+        if (errorCount == 0)
+        {
+            out.println("Parse tree:");
+            out.println();
+            
+            ParseTreePrinter printer = new ParseTreePrinter(out, treeFormat);
+            printer.print(parser.programNode());
+        }
+        else
+        {
+            out.println();
+            out.println("There were " + errorCount + " syntax errors.");
+        }
+    }
+    
+    /**
+     * Print the control-flow graph in SSA form.
      * @param parser the parser.
      * @param symtab the symbol table.
+     * @param out the output stream.
+     * @param run the measured program run, or null.
      */
-    private static void executeProgram(Parser parser, Symtab symtab)
+    private static void testCfg(Parser parser, Symtab symtab,
+                                PrintStream out, ProgramRun run)
     {
-        Node programNode = parser.parseProgram();  // build the parse tree
+        Node programNode = parse(parser, symtab, run);  // parse the program
         int errorCount = parser.errorCount();
         
-        // If no errors, execute the program using the parse tree.
+        // If no errors, print the control-flow graph.
         if (errorCount == 0)
         {
-            Executor executor = new Executor();
-            executor.visit(programNode);
+            partiallyEvaluate(programNode, parser.memoryBudget());
+            
+            out.println("Control-flow graph:");
+            out.println();
+            
+            ControlFlowGraph cfg = new ControlFlowGraph(programNode);
+            cfg.toSsa();
+            cfg.print(out);
         }
         else
         {
-            System.out.println();
-            System.out.println("There were " + errorCount + " errors.");
+            out.println();
+            out.println("There were " + errorCount + " syntax errors.");
         }
     }
+    
+    /**
+     * Execute a compiled program with a new frame.
+     * @param program the compiled program.
+     * @param input the reader of the program input.
+     * @param out the output stream.
+     * @param run the measured program run, or null.
+     * @param cancellation limits that the caller can cancel to stop
+     * the execution, or null.
+     * @return the exit status, -2 if there was a runtime error.
+     */
+    private static int executeProgram(Program program, InputReader input,
+                                      PrintStream out, ProgramRun run,
+                                      ExecutionLimits cancellation)
+    {
+        Node programNode = program.programNode;
+        int status = 0;
+        
+        out.print(program.messages);
+        if (run != null) run.nodeCount = program.nodeCount;
+        
+        // If no errors, execute the program using the parse tree.
+        if (program.errorCount == 0)
+        {
+            // The partially evaluated loop iterations count against
+            // the iteration budget.
+            ExecutionLimits limits = new ExecutionLimits(
+                    maxIterations != ExecutionLimits.UNLIMITED
+                        ? maxIterations - program.evaluated : maxIterations,
+                    timeoutMillis, cancellation);
+            Frame frame = new Frame(program.symtab.size());
+            MemoryBudget budget = program.footprint != null
+                                      ? program.footprint.copy() : null;
+            IterativeExecutor iterativeExecutor = null;
+            CfgExecutor cfgExecutor = null;
+            Executor executor = null;
+            long start = System.nanoTime();
+            
+            try
+            {
+                if (checkpointFileName != null)
+                {
+                    // Checkpointing requires the iterative executor.
+                    iterativeExecutor = new IterativeExecutor(limits, out,
+                                                              input, frame);
+                    iterativeExecutor.setCheckpointer(
+                        new Checkpointer(checkpointFileName, checkpointMillis,
+                                         out, budget));
+                    
+                    if (resume) iterativeExecutor.resume(programNode);
+                    else        iterativeExecutor.execute(programNode);
+                }
+                else if (program.code != null)
+                {
+                    cfgExecutor = new CfgExecutor(limits, out, input);
+                    cfgExecutor.execute(program.code);
+                }
+                else if (iterative)
+                {
+                    iterativeExecutor = new IterativeExecutor(limits, out,
+                                                              input, frame);
+                    iterativeExecutor.execute(programNode);
+                }
+                else
+                {
+                    executor = new Executor(limits, out, input, frame);
+                    executor.setParallelPlan(program.plan);
+                    executor.setReductions(program.reductions, reassociate);
+                    executor.setTiering(tiering);
+                    if (program.loops != null)
+                    {
+                        executor.setLoopCompiler(program.loops);
+                    }
+                    executor.setMemoryBudget(budget);
+                    executor.visit(programNode);
+                }
+            }
+            catch (ExecutionAbortedException ex)
+            {
+                out.printf("RUNTIME ERROR at line %d: %s\n",
+                           ex.getLineNumber(), ex.getMessage());
+                status = -2;
+            }
+            catch (StackOverflowError ex)
+            {
+                // Only the recursive executor runs out of stack.
+                out.printf("RUNTIME ERROR at line %d: %s\n",
+                           executor != null ? executor.lineNumber() : 0,
+                           "Statements nested too deeply, use -iterative");
+                status = -2;
+            }
+            
+            if (run != null)
+            {
+                run.executionNanos = System.nanoTime() - start;
+                run.loopIterations = limits.iterations();
+                run.runtimeErrors  = status != 0 ? 1 : 0;
+                run.statementsExecuted = 
+                        executor    != null ? executor.statementCount()
+                      : cfgExecutor != null ? cfgExecutor.instructionCount()
+                                            : iterativeExecutor.statementCount();
+                recordFootprint(run, budget);
+            }
+        }
+        else
+        {
+            out.println();
+            out.println("There were " + program.errorCount + " errors.");
+        }
+        
+        return status;
+    }
 }
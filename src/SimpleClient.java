@@ -0,0 +1,94 @@
+/**
+ * Thin client for the simple interpreter's server mode.
+ *
+ * Sends an operation and a source file to the server and copies the
+ * output to standard output. The protocol is plain enough that a shell
+ * can be the client without starting a JVM at all, for example:
+ *
+ *     { echo -execute; cat Newton.txt; } | nc -U /tmp/simple.sock
+ *
+ * An operation with arguments, such as "-edit name offset removed",
+ * is passed as one argument, followed by the file of the inserted text.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+public class SimpleClient
+{
+    public static void main(String args[])
+    {
+        if (args.length != 3)
+        {
+            System.out.println("Usage: simpleclient {port, socketPath} " +
+                               "-{scan, parse, execute} sourceFileName");
+            System.exit(-1);
+        }
+
+        String address        = args[0];
+        String operation      = args[1];
+        String sourceFileName = args[2];
+
+        try (SocketChannel channel = connect(address))
+        {
+            byte source[] = Files.readAllBytes(Paths.get(sourceFileName));
+            byte header[] = (operation + "\n").getBytes(StandardCharsets.US_ASCII);
+
+            ByteBuffer requests[] = { ByteBuffer.wrap(header),
+                                      ByteBuffer.wrap(source) };
+            while (requests[0].hasRemaining() || requests[1].hasRemaining())
+            {
+                channel.write(requests);
+            }
+            channel.shutdownOutput();
+
+            // Copy the output as it arrives.
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            while (channel.read(buffer) >= 0)
+            {
+                System.out.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+
+            System.out.flush();
+        }
+        catch (IOException ex)
+        {
+            System.out.println("*** ERROR: " + ex.getMessage());
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Connect to the server.
+     * @param address a localhost port number or a Unix-domain socket path.
+     * @return the connected channel.
+     * @throws IOException if the connection failed.
+     */
+    private static SocketChannel connect(String address) throws IOException
+    {
+        if (address.chars().allMatch(Character::isDigit))
+        {
+            return SocketChannel.open(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                          Integer.parseInt(address)));
+        }
+        else
+        {
+            SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            channel.connect(UnixDomainSocketAddress.of(address));
+            return channel;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+/**
+ * Server mode for the simple interpreter.
+ *
+ * Keeps a warmed-up interpreter running, so a program doesn't pay for
+ * JVM startup, class loading, and JIT compilation. The server listens on
+ * a localhost TCP port or a Unix-domain socket. Each connection sends an
+ * operation (-scan, -parse, or -execute) on the first line followed by
+ * the source text, and then shuts down its output. The server streams
+ * the output back and closes the connection. The program has no input,
+ * so a READ statement fails at the end of input, unless the operation is
+ * "-execute n", in which case the last n bytes of the request are the
+ * program's input instead of part of the source. Connections are handled
+ * concurrently on a thread pool, each with its own output stream. An
+ * executed program is compiled once and kept in a pool of compiled
+ * programs, which the connections that send the same source share. Parse
+ * trees are allocated from the pool's node arenas and released in bulk,
+ * so parsing a stream of new programs creates little garbage. The server
+ * registers the interpreter metrics MBean, so the runs can be monitored
+ * over JMX. With -memorybudget, a program whose estimated memory exceeds
+ * the budget fails with an error instead of running the whole server out
+ * of memory. A request is limited to MAX_REQUEST_BYTES, or to the memory
+ * budget if that's smaller. An execution is cancelled when writing its
+ * output fails because its client has gone away, and it's limited to the
+ * -timeout, or to DEFAULT_TIMEOUT without one, so a runaway loop that
+ * prints nothing can't keep a thread forever either.
+ *
+ * An editor can also keep a source open on the server: "-open name"
+ * followed by the source text parses it and keeps its incremental
+ * parser, and "-edit name offset removed" followed by the inserted text
+ * edits it and parses it again, reusing the unchanged statements. Each
+ * prints the parse like -parse. The most recently used sources are kept.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+import java.io.BufferedOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import backend.*;
+import frontend.*;
+import metrics.*;
+
+public class SimpleServer
+{
+    private static final int OUTPUT_BUFFER_SIZE = 8192;
+    private static final int POOL_CAPACITY = 64;  // compiled programs
+    private static final int DOCUMENT_CAPACITY = 16;  // sources being edited
+    private static final int MAX_REQUEST_BYTES = 16 << 20;
+
+    static final long DEFAULT_TIMEOUT = 60_000;  // milliseconds per execution
+
+    private static final ProgramPool pool = new ProgramPool(POOL_CAPACITY);
+
+    // The incremental parsers of the sources being edited, by name,
+    // least recently used first.
+    private static final LinkedHashMap<String, IncrementalParser> documents =
+        new LinkedHashMap<>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, IncrementalParser> eldest)
+            {
+                return size() > DOCUMENT_CAPACITY;
+            }
+        };
+
+    /**
+     * Serve requests until the process is killed.
+     * @param address a localhost port number or a Unix-domain socket path.
+     */
+    static void serve(String address)
+    {
+        ExecutorService threads = Executors.newCachedThreadPool(runnable ->
+        {
+            Thread thread = new Thread(runnable, "simple-request");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        ProgramRun.enable();
+        InterpreterMetrics.register();
+
+        try (ServerSocketChannel server = open(address))
+        {
+            System.out.println("Listening on " + address);
+
+            while (true)
+            {
+                SocketChannel channel = server.accept();
+                threads.execute(() -> handle(channel));
+            }
+        }
+        catch (IOException ex)
+        {
+            System.out.println("*** ERROR: Server failed on " + address
+                               + ": " + ex.getMessage());
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Open a server socket channel.
+     * @param address a localhost port number or a Unix-domain socket path.
+     * @return the bound channel.
+     * @throws IOException if the channel can't be opened.
+     */
+    private static ServerSocketChannel open(String address) throws IOException
+    {
+        ServerSocketChannel server;
+        SocketAddress socketAddress;
+
+        if (address.chars().allMatch(Character::isDigit))
+        {
+            server = ServerSocketChannel.open();
+            socketAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                                  Integer.parseInt(address));
+        }
+        else
+        {
+            // Remove the socket file of a previous server.
+            Path path = Paths.get(address);
+            Files.deleteIfExists(path);
+
+            server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            socketAddress = UnixDomainSocketAddress.of(path);
+        }
+
+        server.bind(socketAddress);
+        return server;
+    }
+
+    /**
+     * Handle a request.
+     * @param channel the connection's channel.
+     */
+    private static void handle(SocketChannel channel)
+    {
+        try (channel)
+        {
+            // Once the client goes away, writing its output fails,
+            // and then its execution is cancelled.
+            ExecutionLimits cancellation = new ExecutionLimits();
+            PrintStream out = new PrintStream(
+                    new BufferedOutputStream(
+                            cancelOnFailure(Channels.newOutputStream(channel),
+                                            cancellation),
+                            OUTPUT_BUFFER_SIZE),
+                    false);
+
+            // The whole request is held in memory, so it's limited,
+            // and to the memory budget if there is one.
+            int limit = (int) Math.min(MAX_REQUEST_BYTES, Simple.memoryBudget());
+            InputStream in = Channels.newInputStream(channel);
+            byte request[] = in.readNBytes(limit + 1);
+            if (request.length > limit)
+            {
+                // Discard the rest, so that the client gets the error.
+                in.transferTo(OutputStream.nullOutputStream());
+                out.println("*** ERROR: Request exceeds " + limit + " bytes");
+                out.flush();
+                return;
+            }
+
+            int eol = 0;
+            while ((eol < request.length) && (request[eol] != '\n')) eol++;
+
+            String operation = new String(request, 0, eol,
+                                          StandardCharsets.US_ASCII).trim();
+            String words[] = operation.split("\\s+");
+            int start = Math.min(eol + 1, request.length);
+
+            try
+            {
+                int end = request.length;
+                InputReader input = InputReader.empty();
+
+                // With "-execute n", the program input follows the source.
+                if (   words[0].equalsIgnoreCase("-execute")
+                    && (words.length == 2))
+                {
+                    end = Math.max(start, end - Integer.parseInt(words[1]));
+                    input = InputReader.of(Arrays.copyOfRange(request, end,
+                                                              request.length));
+                    operation = words[0];
+                }
+
+                char text[] = new String(request, start, end - start,
+                                         Charset.defaultCharset()).toCharArray();
+
+                if (   words[0].equalsIgnoreCase("-open")
+                    || words[0].equalsIgnoreCase("-edit"))
+                {
+                    edit(words, text, out);
+                }
+                else Simple.run(operation, new Source(text), pool, input, out,
+                                cancellation);
+            }
+            catch (RuntimeException | StackOverflowError ex)
+            {
+                out.println("*** ERROR: " + ex);
+            }
+
+            out.flush();
+        }
+        catch (IOException ex)
+        {
+            System.out.println("*** ERROR: Request failed: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Wrap an output stream to cancel an execution if a write fails.
+     * @param out the output stream.
+     * @param cancellation the limits to cancel.
+     * @return the wrapped stream.
+     */
+    private static OutputStream cancelOnFailure(OutputStream out,
+                                                ExecutionLimits cancellation)
+    {
+        return new FilterOutputStream(out)
+        {
+            @Override
+            public void write(int b) throws IOException
+            {
+                try
+                {
+                    out.write(b);
+                }
+                catch (IOException ex)
+                {
+                    cancellation.cancel();
+                    throw ex;
+                }
+            }
+
+            @Override
+            public void write(byte b[], int off, int len) throws IOException
+            {
+                try
+                {
+                    out.write(b, off, len);
+                }
+                catch (IOException ex)
+                {
+                    cancellation.cancel();
+                    throw ex;
+                }
+            }
+        };
+    }
+
+    /**
+     * Open a source to edit, or edit an open one, and print its parse.
+     * @param words the operation: -open name, or -edit name offset removed.
+     * @param text the source text, or the text that the edit inserts.
+     * @param out the output stream.
+     */
+    private static void edit(String words[], char text[], PrintStream out)
+    {
+        boolean open = words[0].equalsIgnoreCase("-open");
+        if (words.length != (open ? 2 : 4))
+        {
+            out.println("Usage: -open name, or -edit name offset removed");
+            return;
+        }
+
+        String name = words[1];
+        IncrementalParser parser;
+
+        if (open)
+        {
+            parser = new IncrementalParser(text);
+            synchronized (documents) { documents.put(name, parser); }
+        }
+        else
+        {
+            synchronized (documents) { parser = documents.get(name); }
+            if (parser == null)
+            {
+                out.println("*** ERROR: " + name + " isn't open");
+                return;
+            }
+        }
+
+        // The edits of a source are applied one at a time,
+        // and its parse tree is printed before the next edit.
+        synchronized (parser)
+        {
+            if (!open)
+            {
+                parser.edit(Integer.parseInt(words[2]),
+                            Integer.parseInt(words[3]), new String(text));
+            }
+
+            Simple.printParse(parser, out);
+        }
+    }
+}
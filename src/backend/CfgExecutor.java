@@ -0,0 +1,197 @@
+/**
+ * Control-flow graph executor class for a simple interpreter.
+ *
+ * Executes a program lowered from its control-flow graph to linear code.
+ * The values are in a register array, and the control flow is jumps
+ * and branches between instruction indexes, so there's no tree walk
+ * and no recursion. A boolean value is 1.0 or 0.0.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package backend;
+
+import java.io.PrintStream;
+import java.util.NoSuchElementException;
+
+import intermediate.*;
+import intermediate.cfg.*;
+import intermediate.cfg.Instruction.Opcode;
+
+public class CfgExecutor
+{
+    private int lineNumber;
+    private ExecutionLimits limits;
+    private PrintStream out;           // program output
+    private InputReader input;         // program input
+    private long instructionCount;     // number of instructions executed
+
+    /**
+     * Constructor.
+     * @param limits the limits on the execution.
+     * @param out the output stream for the program output.
+     */
+    public CfgExecutor(ExecutionLimits limits, PrintStream out)
+    {
+        this(limits, out, InputReader.standardInput());
+    }
+
+    /**
+     * Constructor.
+     * @param limits the limits on the execution.
+     * @param out the output stream for the program output.
+     * @param input the reader of the program input.
+     */
+    public CfgExecutor(ExecutionLimits limits, PrintStream out,
+                       InputReader input)
+    {
+        this.limits = limits;
+        this.out    = out;
+        this.input  = input;
+        this.instructionCount = 0;
+    }
+
+    /**
+     * Getter.
+     * @return the number of instructions executed.
+     */
+    public long instructionCount() { return instructionCount; }
+
+    /**
+     * Execute a program.
+     * @param code the program's linear code.
+     */
+    public void execute(LinearCode code)
+    {
+        Opcode opcodes[]   = code.opcodes;
+        int targets[]      = code.targets;
+        int lefts[]        = code.lefts;
+        int rights[]       = code.rights;
+        int lines[]        = code.lines;
+        double registers[] = code.registers.clone();
+
+        int pc = 0;
+        long count = 0;
+
+        try
+        {
+            while (true)
+            {
+                count++;
+                if (lines[pc] >= 0) lineNumber = lines[pc];
+
+                int t = targets[pc];
+                int l = lefts[pc];
+                int r = rights[pc];
+
+                switch (opcodes[pc])
+                {
+                    case COPY     : registers[t] = registers[l];  break;
+                    case NEG      : registers[t] = -registers[l]; break;
+                    case NOT      : registers[t] = truth(registers[l] == 0.0); break;
+                    case ADD      : registers[t] = registers[l] + registers[r]; break;
+                    case SUBTRACT : registers[t] = registers[l] - registers[r]; break;
+                    case MULTIPLY : registers[t] = registers[l] * registers[r]; break;
+
+                    case DIVIDE :
+                    {
+                        if (registers[r] != 0.0)
+                        {
+                            registers[t] = registers[l]/registers[r];
+                        }
+                        else runtimeError(code.nodes[pc], "Division by zero");
+                        break;
+                    }
+
+                    case AND : registers[t] = truth(   (registers[l] != 0.0)
+                                                    && (registers[r] != 0.0)); break;
+                    case OR  : registers[t] = truth(   (registers[l] != 0.0)
+                                                    || (registers[r] != 0.0)); break;
+                    case EQ  : registers[t] = truth(registers[l] == registers[r]); break;
+                    case NEQ : registers[t] = truth(registers[l] != registers[r]); break;
+                    case LT  : registers[t] = truth(registers[l] <  registers[r]); break;
+                    case LEQ : registers[t] = truth(registers[l] <= registers[r]); break;
+                    case GT  : registers[t] = truth(registers[l] >  registers[r]); break;
+                    case GEQ : registers[t] = truth(registers[l] >= registers[r]); break;
+
+                    case WRITE :
+                    case WRITELN :
+                    {
+                        // The field width and decimal places are constants.
+                        Node valueNode = code.nodes[pc];
+                        if (valueNode != null)
+                        {
+                            Object value = l >= 0 ? (Object) registers[l]
+                                                  : code.strings[pc];
+                            Executor.printValue(out, valueNode, value, t, r);
+                        }
+
+                        if (opcodes[pc] == Opcode.WRITELN) out.println();
+                        break;
+                    }
+
+                    case READ :
+                    {
+                        try
+                        {
+                            registers[t] = input.readNumber();
+                        }
+                        catch (NoSuchElementException ex)
+                        {
+                            runtimeError(code.nodes[pc], ex.getMessage());
+                        }
+                        break;
+                    }
+
+                    case READLN : input.skipLine(); break;
+                    case EOF    : registers[t] = truth(input.atEnd()); break;
+
+                    case LINE : break;
+
+                    case ASSIGN_BOOLEAN :
+                        runtimeError(code.nodes[pc], Executor.BOOLEAN_ASSIGNED);
+                        break;
+
+                    case JUMP :
+                        pc = t;
+                        continue;
+
+                    case BRANCH :
+                        pc = registers[l] != 0.0 ? t : r;
+                        continue;
+
+                    case BACK_EDGE :
+                        limits.backEdge(lineNumber);
+                        pc = t;
+                        continue;
+
+                    case HALT :
+                        return;
+
+                    default :
+                        runtimeError(code.nodes[pc], "Invalid instruction");
+                }
+
+                pc++;
+            }
+        }
+        finally
+        {
+            instructionCount += count;
+        }
+    }
+
+    /**
+     * @param b a boolean value.
+     * @return 1.0 if true, else 0.0.
+     */
+    private static double truth(boolean b) { return b ? 1.0 : 0.0; }
+
+    private void runtimeError(Node node, String message)
+    {
+        throw new ExecutionAbortedException(
+                    message + ": " + (node != null ? node.text : null),
+                    lineNumber);
+    }
+}
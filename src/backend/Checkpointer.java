@@ -0,0 +1,373 @@
+/**
+ * Checkpointer class for a simple interpreter.
+ *
+ * Periodically saves the state of an iterative execution to a binary
+ * checkpoint file at a loop back-edge, so that a long-running program
+ * can later resume from it. A checkpoint contains the continuation
+ * stack as preorder indexes of the parse tree nodes and steps, the
+ * operand stack, the values of the variables, and how many bytes of the
+ * program input have been read. A resumed execution must be given the
+ * same input. It also contains a fingerprint of the parse tree, so a
+ * checkpoint can't be resumed with a different program.
+ *
+ * While checkpointing, the program output is buffered. Each checkpoint
+ * stores the output buffered since the previous one, and only after the
+ * checkpoint is safely written is that output printed and the checkpoint
+ * marked as printed. A resumed execution first prints the stored output
+ * if it isn't marked. So output is printed twice only if the execution
+ * crashed after printing it but before marking the checkpoint. The
+ * buffered output is charged to the execution's memory budget, if it
+ * has one, until it's printed.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package backend;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.function.IntSupplier;
+
+import intermediate.*;
+
+public class Checkpointer
+{
+    private static final int MAGIC   = 0x53434b50;  // "SCKP"
+    private static final int VERSION = 3;
+    private static final int PRINTED_OFFSET = 16;  // of the printed mark
+    private static final int CHECK_INTERVAL = 1024;  // back-edges per clock check
+
+    /**
+     * The execution state read from a checkpoint file.
+     */
+    static class Snapshot
+    {
+        Node nodes[];        // continuation stack nodes
+        int steps[];         // continuation stack steps
+        double operands[];   // operand stack
+        int lineNumber;      // current source line number
+        long inputPosition;  // number of input bytes read
+    }
+
+    private Path path;                // checkpoint file
+    private long intervalNanos;       // time between checkpoints
+    private long nextTime;            // System.nanoTime() of the next checkpoint
+    private int countdown;            // back-edges until the next clock check
+
+    private ArrayList<Node> preorder;                // parse tree nodes
+    private IdentityHashMap<Node, Integer> indexes;  // preorder indexes
+    private ArrayList<SymtabEntry> entries;          // the program's variables
+    private Frame frame;                             // the variables' values
+    private long fingerprint;                        // of the parse tree
+
+    private ByteArrayOutputStream pending;  // output not yet flushed
+    private PrintStream out;                // buffered output stream
+    private PrintStream target;             // where the output is printed
+    private MemoryBudget budget;            // to charge the output, or null
+
+    /**
+     * Constructor.
+     * @param fileName the name of the checkpoint file.
+     * @param intervalMillis the time between checkpoints in milliseconds.
+     * @param target the stream to print the program output to.
+     * @param budget the memory budget to charge the buffered output to,
+     * or null.
+     */
+    public Checkpointer(String fileName, long intervalMillis,
+                        PrintStream target, MemoryBudget budget)
+    {
+        this.path          = Paths.get(fileName);
+        this.intervalNanos = 1_000_000*intervalMillis;
+        this.nextTime      = System.nanoTime() + intervalNanos;
+        this.countdown     = CHECK_INTERVAL;
+        this.pending       = new ByteArrayOutputStream();
+        this.out           = new PrintStream(pending, false);
+        this.target        = target;
+        this.budget        = budget;
+    }
+
+    /**
+     * Create the buffered output stream for the program output.
+     * @param lineNumber supplies the executor's current source line number,
+     * for the error if the output would exceed the memory budget.
+     * @return the stream.
+     */
+    PrintStream out(IntSupplier lineNumber)
+    {
+        pending = budget != null ? budget.newBuffer(lineNumber)
+                                 : new ByteArrayOutputStream();
+        out = new PrintStream(pending, false);
+
+        return out;
+    }
+
+    /**
+     * Index the nodes of a parse tree in preorder, collect its variables,
+     * and compute its fingerprint. Shared nodes are indexed where they
+     * first appear.
+     * @param programNode the PROGRAM node of the parse tree.
+     * @param frame the frame of the variables' values.
+     */
+    void attach(Node programNode, Frame frame)
+    {
+        this.frame  = frame;
+        preorder    = new ArrayList<>();
+        indexes     = new IdentityHashMap<>();
+        entries     = new ArrayList<>();
+        fingerprint = 0xcbf29ce484222325L;
+
+        IdentityHashMap<SymtabEntry, Boolean> seen = new IdentityHashMap<>();
+        ArrayList<Node> stack = new ArrayList<>();
+        stack.add(programNode);
+
+        while (!stack.isEmpty())
+        {
+            Node node = stack.remove(stack.size() - 1);
+
+            indexes.putIfAbsent(node, preorder.size());
+            preorder.add(node);
+
+            if ((node.entry != null) && (seen.put(node.entry, true) == null))
+            {
+                entries.add(node.entry);
+            }
+
+            mix(node.type.ordinal());
+            mix(node.lineNumber);
+            mix(node.children.size());
+            mix(node.text  != null ? node.text.hashCode()  : 0);
+            mix(node.value != null ? node.value.hashCode() : 0);
+
+            for (int i = node.children.size() - 1; i >= 0; i--)
+            {
+                stack.add(node.children.get(i));
+            }
+        }
+    }
+
+    /**
+     * Count a loop back-edge.
+     * @return true if it's time for a checkpoint.
+     */
+    boolean backEdge()
+    {
+        if (--countdown > 0) return false;
+
+        countdown = CHECK_INTERVAL;
+        return System.nanoTime() - nextTime >= 0;
+    }
+
+    /**
+     * Write a checkpoint with the pending output, and then print
+     * the output and mark the checkpoint as printed.
+     * @param nodes the continuation stack nodes.
+     * @param steps the continuation stack steps.
+     * @param top the index of the top continuation.
+     * @param operands the operand stack.
+     * @param sp the number of operands on the stack.
+     * @param lineNumber the current source line number.
+     * @param inputPosition the number of input bytes read.
+     */
+    void save(Node nodes[], int steps[], int top,
+              double operands[], int sp, int lineNumber, long inputPosition)
+    {
+        nextTime = System.nanoTime() + intervalNanos;
+
+        out.flush();
+        byte output[] = pending.toByteArray();
+
+        ByteBuffer buffer = ByteBuffer.allocate(
+                              45 + 8*(top + 1) + 8*sp + 12*entries.size()
+                                 + output.length);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(fingerprint);
+        buffer.put((byte) 0);  // not printed yet
+        buffer.putInt(lineNumber).putLong(inputPosition);
+
+        buffer.putInt(top + 1);
+        for (int i = 0; i <= top; i++)
+        {
+            buffer.putInt(indexes.get(nodes[i])).putInt(steps[i]);
+        }
+
+        buffer.putInt(sp);
+        for (int i = 0; i < sp; i++) buffer.putDouble(operands[i]);
+
+        buffer.putInt(entries.size());
+        for (SymtabEntry entry : entries)
+        {
+            buffer.putInt(entry.getId()).putDouble(frame.get(entry));
+        }
+
+        buffer.putInt(output.length).put(output);
+        buffer.flip();
+
+        // Write a temporary file and then rename it, so that a crash
+        // while writing can't destroy the previous checkpoint.
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                                        StandardOpenOption.CREATE,
+                                        StandardOpenOption.WRITE,
+                                        StandardOpenOption.TRUNCATE_EXISTING))
+        {
+            while (buffer.hasRemaining()) channel.write(buffer);
+            channel.force(true);
+        }
+        catch (IOException ex)
+        {
+            System.out.println("*** ERROR: Failed to write checkpoint " + temp);
+            return;
+        }
+
+        try
+        {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                                   StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (IOException ex)
+        {
+            System.out.println("*** ERROR: Failed to write checkpoint " + path);
+            return;
+        }
+
+        // The output is in the checkpoint now, so it can be printed.
+        flush();
+
+        try (FileChannel channel = FileChannel.open(path,
+                                                    StandardOpenOption.WRITE))
+        {
+            channel.write(ByteBuffer.wrap(new byte[] { 1 }), PRINTED_OFFSET);
+            channel.force(false);
+        }
+        catch (IOException ex)
+        {
+            System.out.println("*** ERROR: Failed to mark checkpoint " + path);
+        }
+    }
+
+    /**
+     * Read the checkpoint and restore the variables' values into the frame.
+     * Its output is pending again if it wasn't printed.
+     * @return the execution state.
+     */
+    Snapshot load()
+    {
+        Snapshot snapshot = new Snapshot();
+        String fileName = path.toString();
+
+        try
+        {
+            ByteBuffer buffer =
+                        ByteBuffer.wrap(Files.readAllBytes(path));
+
+            if (   (buffer.getInt() != MAGIC) || (buffer.getInt() != VERSION)
+                || (buffer.getLong() != fingerprint))
+            {
+                System.out.println("*** ERROR: " + fileName +
+                                   " is not a checkpoint of this program");
+                System.exit(-1);
+            }
+
+            boolean printed = buffer.get() != 0;
+            snapshot.lineNumber    = buffer.getInt();
+            snapshot.inputPosition = buffer.getLong();
+
+            int depth = buffer.getInt();
+            snapshot.nodes = new Node[depth];
+            snapshot.steps = new int[depth];
+            for (int i = 0; i < depth; i++)
+            {
+                snapshot.nodes[i] = preorder.get(buffer.getInt());
+                snapshot.steps[i] = buffer.getInt();
+            }
+
+            snapshot.operands = new double[buffer.getInt()];
+            for (int i = 0; i < snapshot.operands.length; i++)
+            {
+                snapshot.operands[i] = buffer.getDouble();
+            }
+
+            SymtabEntry byId[] = new SymtabEntry[maxId() + 1];
+            for (SymtabEntry entry : entries) byId[entry.getId()] = entry;
+
+            for (int i = buffer.getInt(); i > 0; i--)
+            {
+                frame.set(byId[buffer.getInt()], buffer.getDouble());
+            }
+
+            byte output[] = new byte[buffer.getInt()];
+            buffer.get(output);
+            if (!printed) pending.write(output, 0, output.length);
+        }
+        catch (IOException | RuntimeException ex)
+        {
+            System.out.println("*** ERROR: Failed to read checkpoint " + fileName);
+            System.exit(-1);
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Print the pending output.
+     */
+    void flush()
+    {
+        out.flush();
+        if (pending.size() > 0)
+        {
+            target.write(pending.toByteArray(), 0, pending.size());
+            target.flush();
+            if (budget != null) budget.release(pending.size());
+            pending.reset();
+        }
+    }
+
+    /**
+     * The execution completed: print the pending output and delete
+     * the checkpoint file, which is no longer needed.
+     */
+    void finish()
+    {
+        flush();
+
+        try
+        {
+            Files.deleteIfExists(path);
+        }
+        catch (IOException ex)
+        {
+            System.out.println("*** ERROR: Failed to delete checkpoint " + path);
+        }
+    }
+
+    /**
+     * Mix a value into the fingerprint.
+     * @param value the value.
+     */
+    private void mix(int value)
+    {
+        fingerprint = (fingerprint ^ value)*0x100000001b3L;
+    }
+
+    /**
+     * @return the largest ID of the program's variables.
+     */
+    private int maxId()
+    {
+        int max = -1;
+        for (SymtabEntry entry : entries) max = Math.max(max, entry.getId());
+
+        return max;
+    }
+}
@@ -0,0 +1,35 @@
+/**
+ * Execution aborted exception class for a simple interpreter.
+ *
+ * Thrown when an execution has a runtime error, reaches one of its limits,
+ * or is cancelled.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package backend;
+
+public class ExecutionAbortedException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    private int lineNumber;
+
+    /**
+     * Constructor.
+     * @param message the reason for the abort.
+     * @param lineNumber the source line number where execution stopped.
+     */
+    public ExecutionAbortedException(String message, int lineNumber)
+    {
+        super(message);
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Getter.
+     * @return the source line number where execution stopped.
+     */
+    public int getLineNumber() { return lineNumber; }
+}
@@ -0,0 +1,203 @@
+/**
+ * Execution limits class for a simple interpreter.
+ *
+ * Limits a program's execution by a budget of loop iterations and
+ * a wall-clock deadline, and lets another thread cancel the execution.
+ * The executors call backEdge() each time a loop goes around. That's
+ * just a countdown, and the limits are checked only every CHECK_INTERVAL
+ * iterations or when the budget would run out sooner.
+ *
+ * A loop that runs on another thread gets limits forked from these,
+ * with the rest of the budget and the same deadline, and its iterations
+ * are charged to these limits afterwards.
+ *
+ * A caller that may have to stop an execution, such as a server whose
+ * client went away, can give it limits with a parent. Cancelling the
+ * parent cancels the execution.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package backend;
+
+public class ExecutionLimits
+{
+    public static final long UNLIMITED = Long.MAX_VALUE;
+    private static final int CHECK_INTERVAL = 1024;
+
+    private final long maxIterations;  // loop iteration budget
+    private final long deadline;       // System.nanoTime() deadline
+    private final boolean timed;       // true if there is a deadline
+    private final ExecutionLimits parent;  // limits forked from, or null
+    private volatile boolean cancelled;
+
+    private long iterations;  // iterations counted at the last check
+    private int batch;        // iterations between the last and next checks
+    private int countdown;    // iterations left until the next check
+
+    /**
+     * Constructor for no limits. The execution can still be cancelled.
+     */
+    public ExecutionLimits()
+    {
+        this(UNLIMITED, UNLIMITED);
+    }
+
+    /**
+     * Constructor.
+     * @param maxIterations the maximum number of loop iterations, or UNLIMITED.
+     * @param timeoutMillis the maximum execution time in milliseconds,
+     * or UNLIMITED. The time starts now.
+     */
+    public ExecutionLimits(long maxIterations, long timeoutMillis)
+    {
+        this(maxIterations, timeoutMillis, null);
+    }
+
+    /**
+     * Constructor for limits that cancelling a parent cancels too.
+     * @param maxIterations the maximum number of loop iterations, or UNLIMITED.
+     * @param timeoutMillis the maximum execution time in milliseconds,
+     * or UNLIMITED. The time starts now.
+     * @param parent the parent limits, or null.
+     */
+    public ExecutionLimits(long maxIterations, long timeoutMillis,
+                           ExecutionLimits parent)
+    {
+        this(maxIterations,
+             timeoutMillis != UNLIMITED
+                 ? System.nanoTime() + 1_000_000*timeoutMillis : 0,
+             timeoutMillis != UNLIMITED, parent);
+    }
+
+    /**
+     * Constructor.
+     * @param maxIterations the maximum number of loop iterations, or UNLIMITED.
+     * @param deadline the System.nanoTime() deadline.
+     * @param timed true if there is a deadline.
+     * @param parent the limits forked from or the parent limits, or null.
+     */
+    private ExecutionLimits(long maxIterations, long deadline, boolean timed,
+                            ExecutionLimits parent)
+    {
+        this.maxIterations = maxIterations;
+        this.deadline      = deadline;
+        this.timed         = timed;
+        this.parent        = parent;
+        this.cancelled     = false;
+        this.iterations    = 0;
+
+        nextBatch();
+    }
+
+    /**
+     * Fork limits for a loop that runs on another thread. They have
+     * the rest of the iteration budget and the same deadline, and
+     * cancelling these limits cancels them too.
+     * @return the forked limits.
+     */
+    ExecutionLimits fork()
+    {
+        return new ExecutionLimits(remaining(), deadline, timed, this);
+    }
+
+    /**
+     * Getter.
+     * @return the number of loop iterations left in the budget, or UNLIMITED.
+     */
+    long remaining()
+    {
+        return maxIterations != UNLIMITED ? maxIterations - iterations()
+                                          : UNLIMITED;
+    }
+
+    /**
+     * Charge the iterations of forked limits to these limits,
+     * unless they would exceed the budget.
+     * @param count the number of iterations.
+     * @return true if charged, false if they would exceed the budget.
+     */
+    boolean charge(long count)
+    {
+        long total = iterations() + count;
+        if ((maxIterations != UNLIMITED) && (total > maxIterations)) return false;
+
+        iterations = total;
+        nextBatch();
+
+        return true;
+    }
+
+    /**
+     * Cancel the execution. It stops at the next check.
+     * This can be called from any thread.
+     */
+    public void cancel() { cancelled = true; }
+
+    /**
+     * Getter.
+     * @return true if the execution was cancelled, or the execution
+     * of any limits these were forked from, or their parent.
+     */
+    public boolean isCancelled()
+    {
+        return cancelled || ((parent != null) && parent.isCancelled());
+    }
+
+    /**
+     * Getter.
+     * @return the number of loop iterations so far.
+     */
+    public long iterations() { return iterations + batch - countdown; }
+
+    /**
+     * Count a loop iteration, and check the limits if it's time to.
+     * @param lineNumber the current source line number.
+     * @throws ExecutionAbortedException if a limit was reached.
+     */
+    void backEdge(int lineNumber)
+    {
+        if (--countdown == 0) check(lineNumber);
+    }
+
+    /**
+     * Check the limits.
+     * @param lineNumber the current source line number.
+     * @throws ExecutionAbortedException if a limit was reached.
+     */
+    private void check(int lineNumber)
+    {
+        iterations += batch;
+
+        if (isCancelled())
+        {
+            throw new ExecutionAbortedException("Execution cancelled",
+                                                lineNumber);
+        }
+        if (iterations > maxIterations)
+        {
+            throw new ExecutionAbortedException("Iteration budget exceeded",
+                                                lineNumber);
+        }
+        if (timed && (System.nanoTime() - deadline > 0))
+        {
+            throw new ExecutionAbortedException("Time limit exceeded",
+                                                lineNumber);
+        }
+
+        nextBatch();
+    }
+
+    /**
+     * Set the number of iterations until the next check. The check
+     * comes just after the iteration that would exceed the budget.
+     */
+    private void nextBatch()
+    {
+        long remaining = maxIterations - iterations;
+        batch = remaining < CHECK_INTERVAL ? (int) remaining + 1
+                                           : CHECK_INTERVAL;
+        countdown = batch;
+    }
+}
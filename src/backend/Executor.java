@@ -1,14 +1,49 @@
 /**
  * Executor class for a simple interpreter.
  * 
+ * The values of the variables are in the executor's frame, so several
+ * executors can execute the same parse tree at once.
+ * 
+ * With a parallel plan, the independent loops of the main compound
+ * statement run at once on the fork-join pool, each with its own output
+ * buffer, and their output is printed in program order. If any of them
+ * fails, or together they exceed the iteration budget, the frame is
+ * restored and they're executed again sequentially, so the output is
+ * always the same as a sequential execution's.
+ * 
+ * A recognized reduction loop computes its terms in parallel by splitting
+ * its range of iterations, each part with its own copy of the frame.
+ * The terms are accumulated in order, unless reassociation is allowed,
+ * and then the parts' partial results are combined instead. A reduction
+ * loop that fails, that doesn't have whole-number bounds, or that would
+ * exceed the iteration budget is executed sequentially instead.
+ * 
+ * Execution is tiered. The back edges of each LOOP node are counted,
+ * and a loop that gets hot is compiled in the background into closures.
+ * The executor switches to the compiled loop at its header as soon as
+ * it's ready, and runs it whenever the loop is entered again. The loop
+ * compiler can be shared by all the executions of a program, so that a
+ * loop that's already compiled runs compiled from the start. Otherwise,
+ * the executor has its own, which it closes when the program is done.
+ * 
  * (c) 2020 by Ronald Mak
  * Department of Computer Science
  * San Jose State University
  */
 package backend;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
 
 import intermediate.*;
 import static intermediate.Node.NodeType.*;
@@ -16,35 +51,252 @@ import static intermediate.Node.NodeType.*;
 public class Executor
 {
     private int lineNumber;
+    private ExecutionLimits limits;
+    private PrintStream out;
+    private InputReader input;    // for READ and READLN
+    private Frame frame;          // values of the variables
+    private long statementCount;  // number of statements executed
+    private ParallelPlan plan;    // of independent loops, or null
+    private IdentityHashMap<Node, Reduction> reductions;  // or null
+    private boolean reassociate;  // true to reassociate reductions
+    private boolean tiering;      // true to compile hot loops
+    private IdentityHashMap<Node, LoopProfile> profiles;  // of the LOOP nodes
+    private LoopCompiler loops;   // of the hot loops, or null if none yet
+    private boolean ownsLoops;    // true if the loop compiler isn't shared
+    private MemoryBudget budget;  // to charge the buffered output, or null
+    
+    private static final int HOT_LOOP = 1 << 10;  // back edges to compile after
+    
+    private static final long MIN_REDUCTION  = 1 << 12;  // iterations to split
+    private static final int REDUCTION_GRAIN = 1 << 10;  // iterations per part
+    private static final int REDUCTION_ROUND = 1 << 16;  // terms kept at once
+    private static final double MAX_EXACT    = 0x1p52;   // largest exact bound
+    
+    // The runtime error of assigning a boolean value, which every
+    // executor reports the same way.
+    static final String BOOLEAN_ASSIGNED = "Can't assign a boolean value";
     
-    private static HashSet<Node.NodeType> singletons;
-    private static HashSet<Node.NodeType> relationals;
-    private static HashSet<Node.NodeType> booleans;
+    private static final EnumSet<Node.NodeType> singletons =
+        EnumSet.of(VARIABLE, INTEGER_CONSTANT, REAL_CONSTANT, STRING_CONSTANT,
+                   NEG);
+    private static final EnumSet<Node.NodeType> relationals =
+        EnumSet.of(EQ, LT, GT, LEQ, GEQ, NEQ);
+    private static final EnumSet<Node.NodeType> booleans =
+        EnumSet.of(Node.NodeType.AND, Node.NodeType.OR);
     
-    static
+    public Executor()
     {
-        singletons  = new HashSet<Node.NodeType>();
-        relationals = new HashSet<Node.NodeType>();
-        booleans = new HashSet<Node.NodeType>();
-
-        singletons.add(VARIABLE);
-        singletons.add(INTEGER_CONSTANT);
-        singletons.add(REAL_CONSTANT);
-        singletons.add(STRING_CONSTANT);
-        singletons.add(NEG);
-        
-        relationals.add(EQ);
-        relationals.add(LT);
-        relationals.add(GT);
-        relationals.add(LEQ);
-        relationals.add(GEQ);
-        relationals.add(NEQ);
-
-        booleans.add(Node.NodeType.AND);
-        booleans.add(Node.NodeType.OR);
+        this(new ExecutionLimits());
     }
     
-    public Executor() {}
+    /**
+     * Constructor.
+     * @param limits the limits on the execution.
+     */
+    public Executor(ExecutionLimits limits)
+    {
+        this(limits, System.out);
+    }
+    
+    /**
+     * Constructor.
+     * @param limits the limits on the execution.
+     * @param out the output stream for the program output.
+     */
+    public Executor(ExecutionLimits limits, PrintStream out)
+    {
+        this(limits, out, InputReader.standardInput());
+    }
+    
+    /**
+     * Constructor.
+     * @param limits the limits on the execution.
+     * @param out the output stream for the program output.
+     * @param input the reader of the program input.
+     */
+    public Executor(ExecutionLimits limits, PrintStream out, InputReader input)
+    {
+        this(limits, out, input, new Frame());
+    }
+    
+    /**
+     * Constructor.
+     * @param limits the limits on the execution.
+     * @param out the output stream for the program output.
+     * @param input the reader of the program input.
+     * @param frame the frame of the variables' values.
+     */
+    public Executor(ExecutionLimits limits, PrintStream out, InputReader input,
+                    Frame frame)
+    {
+        this.limits = limits;
+        this.out    = out;
+        this.input  = input;
+        this.frame  = frame;
+        this.statementCount = 0;
+        this.plan   = null;
+        this.reductions  = null;
+        this.reassociate = false;
+        this.tiering     = true;
+        this.profiles    = new IdentityHashMap<>();
+        this.loops       = null;
+        this.ownsLoops   = false;
+        this.budget      = null;
+    }
+    
+    /**
+     * The back edges of a LOOP node and its compilation.
+     */
+    private static class LoopProfile
+    {
+        int backEdges;                              // until compiled
+        Future<LoopCompiler.Statement> compilation; // or null if not started
+        LoopCompiler.Statement iterations;          // compiled, or null
+        boolean failed;                             // compilation failed
+        
+        /**
+         * Constructor.
+         * @param compilation the loop's compilation that another
+         * execution started, or null.
+         */
+        LoopProfile(Future<LoopCompiler.Statement> compilation)
+        {
+            this.compilation = compilation;
+            if (compilation != null) ready();
+        }
+        
+        /**
+         * Count a back edge, and start compiling when the loop gets hot.
+         * @param loops the loop compiler.
+         * @param loopNode the LOOP node.
+         * @return the compiled iterations if they're ready, else null.
+         */
+        LoopCompiler.Statement backEdge(LoopCompiler loops, Node loopNode)
+        {
+            if (iterations != null) return iterations;
+            
+            if (compilation == null)
+            {
+                if (++backEdges == HOT_LOOP)
+                {
+                    compilation = loops.submit(loopNode);
+                }
+            }
+            else ready();
+            
+            return iterations;
+        }
+        
+        /**
+         * Get the compiled iterations if the compilation is done.
+         */
+        private void ready()
+        {
+            if (!failed && compilation.isDone())
+            {
+                try
+                {
+                    iterations = compilation.get();
+                }
+                catch (InterruptedException | ExecutionException
+                                            | CancellationException ex)
+                {
+                    failed = true;
+                }
+            }
+        }
+    }
+    
+    /**
+     * Setter.
+     * @param tiering true to compile hot loops, false to only interpret.
+     */
+    public void setTiering(boolean tiering) { this.tiering = tiering; }
+    
+    /**
+     * Setter.
+     * @param loops the compiler of the hot loops, which all the
+     * executions of the program share, and which the program's owner
+     * closes before it releases the parse tree.
+     */
+    public void setLoopCompiler(LoopCompiler loops)
+    {
+        this.loops     = loops;
+        this.ownsLoops = false;
+    }
+    
+    /**
+     * Stop compiling hot loops, unless the loop compiler is shared.
+     * Call this before the parse tree is changed or released, since
+     * a compilation in the background reads it.
+     */
+    public void stopCompiling()
+    {
+        if (ownsLoops)
+        {
+            loops.close();
+            loops = null;
+            ownsLoops = false;
+        }
+    }
+    
+    /**
+     * @return the loop compiler, which is the executor's own
+     * if it isn't shared.
+     */
+    private LoopCompiler loops()
+    {
+        if (loops == null)
+        {
+            loops = new LoopCompiler(reductions);
+            ownsLoops = true;
+        }
+        
+        return loops;
+    }
+    
+    /**
+     * Setter.
+     * @param budget the memory budget to charge the output to while
+     * it's buffered, or null.
+     */
+    public void setMemoryBudget(MemoryBudget budget) { this.budget = budget; }
+    
+    /**
+     * Setter.
+     * @param plan the plan to execute independent loops in parallel.
+     */
+    public void setParallelPlan(ParallelPlan plan) { this.plan = plan; }
+    
+    /**
+     * Setter.
+     * @param reductions the reduction loops to execute in parallel.
+     * @param reassociate true if their terms can be accumulated in any order.
+     */
+    public void setReductions(IdentityHashMap<Node, Reduction> reductions,
+                              boolean reassociate)
+    {
+        this.reductions  = reductions;
+        this.reassociate = reassociate;
+    }
+    
+    /**
+     * Getter.
+     * @return the number of statements executed.
+     */
+    public long statementCount() { return statementCount; }
+    
+    /**
+     * Getter.
+     * @return the line number of the statement being executed.
+     */
+    public int lineNumber() { return lineNumber; }
+    
+    /**
+     * Getter.
+     * @return the frame of the variables' values.
+     */
+    public Frame frame() { return frame; }
     
     public Object visit(Node node)
     {
@@ -57,7 +309,9 @@ public class Executor
             case LOOP : 
             case WRITE :
             case IF :
-            case WRITELN :  return visitStatement(node);
+            case WRITELN :
+            case READ :
+            case READLN :   return visitStatement(node);
             
             case TEST:      return visitTest(node);
             
@@ -68,12 +322,20 @@ public class Executor
     private Object visitProgram(Node programNode)
     {
         Node compoundNode = programNode.children.get(0);
-        return visit(compoundNode);
+        
+        try
+        {
+            return visit(compoundNode);
+        }
+        finally
+        {
+            stopCompiling();
+        }
     }
     
     private Object visitStatement(Node statementNode)
     {
-        lineNumber = statementNode.lineNumber;
+        enter(statementNode);
         
         switch (statementNode.type)
         {
@@ -83,6 +345,8 @@ public class Executor
             case IF       :  return visitIf(statementNode);
             case WRITE    :  return visitWrite(statementNode);
             case WRITELN  :  return visitWriteln(statementNode);
+            case READ     :  return visitRead(statementNode);
+            case READLN   :  return visitReadln(statementNode);
             
             default :        return null;
         }
@@ -90,22 +354,299 @@ public class Executor
     
     private Object visitCompound(Node compoundNode)
     {
-        for (Node statementNode : compoundNode.children) visit(statementNode);
+        Reduction reduction = reductions != null ? reductions.get(compoundNode)
+                                                 : null;
+        
+        if ((reduction != null) && visitReduction(reduction)) return null;
+        else if ((plan != null) && (compoundNode == plan.compoundNode()))
+        {
+            for (ParallelPlan.Segment segment : plan.segments())
+            {
+                if (segment.tasks.size() > 1) visitParallel(segment);
+                else
+                {
+                    for (Node node : segment.tasks.get(0).statements) visit(node);
+                }
+            }
+        }
+        else
+        {
+            for (Node statementNode : compoundNode.children) visit(statementNode);
+        }
         
         return null;
     }
     
+    /**
+     * A task of a parallel segment, executed with its own
+     * executor and output buffer.
+     */
+    private static class LoopTask extends RecursiveAction
+    {
+        private static final long serialVersionUID = 1L;
+        
+        private ArrayList<Node> statements;
+        private ByteArrayOutputStream buffer;
+        private Executor executor;
+        private ExecutionLimits segmentLimits;  // cancelled if this fails
+        private boolean failed;
+        
+        LoopTask(ArrayList<Node> statements, Executor parent,
+                 ExecutionLimits segmentLimits)
+        {
+            this.statements = statements;
+            this.buffer     = parent.budget != null
+                    ? parent.budget.newBuffer(statements.get(0).lineNumber)
+                    : new ByteArrayOutputStream();
+            this.executor   = new Executor(segmentLimits.fork(),
+                                           new PrintStream(buffer, false),
+                                           parent.input, parent.frame);
+            this.executor.tiering = parent.tiering;
+            this.executor.loops   = parent.loops();
+            this.segmentLimits = segmentLimits;
+            this.failed     = false;
+        }
+        
+        @Override
+        protected void compute()
+        {
+            try
+            {
+                for (Node node : statements) executor.visit(node);
+                executor.out.flush();
+            }
+            catch (RuntimeException | StackOverflowError ex)
+            {
+                // The segment will be executed sequentially anyway,
+                // so stop the other tasks at their next check.
+                failed = true;
+                segmentLimits.cancel();
+            }
+        }
+    }
+    
+    /**
+     * Execute the tasks of a segment at once, and print their output
+     * in program order. If any fails, or together they exceed the
+     * iteration budget, restore the frame and execute them sequentially.
+     * A task that fails cancels the others, so they don't keep running,
+     * possibly forever, before the sequential execution fails the same way.
+     * That includes a task whose buffered output would exceed the memory
+     * budget, since the sequential execution doesn't buffer its output.
+     * @param segment the segment.
+     */
+    private void visitParallel(ParallelPlan.Segment segment)
+    {
+        frame.reserve(segment.size);
+        Frame saved = frame.copy();
+        
+        ExecutionLimits segmentLimits = limits.fork();
+        LoopTask tasks[] = new LoopTask[segment.tasks.size()];
+        for (int i = 0; i < tasks.length; i++)
+        {
+            tasks[i] = new LoopTask(segment.tasks.get(i).statements, this,
+                                    segmentLimits);
+        }
+        
+        ForkJoinTask.invokeAll(tasks);
+        
+        boolean failed = false;
+        long iterations = 0;
+        for (LoopTask task : tasks)
+        {
+            failed |= task.failed;
+            iterations += task.executor.limits.iterations();
+        }
+        
+        boolean charged = !failed && limits.charge(iterations);
+        if (charged)
+        {
+            for (LoopTask task : tasks)
+            {
+                byte bytes[] = task.buffer.toByteArray();
+                out.write(bytes, 0, bytes.length);
+                statementCount += task.executor.statementCount;
+            }
+        }
+        
+        if (budget != null)
+        {
+            for (LoopTask task : tasks) budget.release(task.buffer.size());
+        }
+        
+        if (!charged)
+        {
+            frame.restore(saved);
+            for (ParallelPlan.Task task : segment.tasks)
+            {
+                for (Node node : task.statements) visit(node);
+            }
+        }
+    }
+    
+    /**
+     * Execute a reduction loop in parallel, if it's worth it.
+     * @param reduction the reduction.
+     * @return true if executed, false if it must be executed sequentially.
+     */
+    private boolean visitReduction(Reduction reduction)
+    {
+        // Evaluate the bounds with a copy of the frame,
+        // so that a failure leaves no trace.
+        Frame bounds = frame.copy();
+        Executor executor = new Executor(limits.fork(), out, input, bounds);
+        executor.tiering = tiering;
+        executor.loops   = loops();
+        double init, limit;
+        
+        try
+        {
+            init = (Double) executor.visit(reduction.initNode);
+            bounds.set(reduction.variable, init);
+            limit = (Double) executor.visit(reduction.limitNode);
+        }
+        catch (RuntimeException | StackOverflowError ex)
+        {
+            return false;
+        }
+        
+        // With whole-number bounds this small, the control variable's
+        // values are exact, so the iterations can be counted.
+        if (   (init != Math.rint(init)) || (Math.abs(init) > MAX_EXACT)
+            || !(Math.abs(limit) <= MAX_EXACT))
+        {
+            return false;
+        }
+        
+        long count = reduction.up ? (long) Math.floor(limit) - (long) init + 1
+                                  : (long) init - (long) Math.ceil(limit) + 1;
+        if ((count < MIN_REDUCTION) || (count > limits.remaining())) return false;
+        
+        double value = frame.get(reduction.accumulator);
+        
+        try
+        {
+            if (reassociate)
+            {
+                double terms = new ReductionTask(this, reduction, init,
+                                                 0, count, null, 0).invoke();
+                value = reduction.accumulate(value, terms);
+            }
+            else
+            {
+                double terms[] = new double[(int) Math.min(count,
+                                                           REDUCTION_ROUND)];
+                
+                for (long base = 0; base < count; base += terms.length)
+                {
+                    long end = Math.min(base + terms.length, count);
+                    new ReductionTask(this, reduction, init,
+                                      base, end, terms, base).invoke();
+                    
+                    for (int k = 0; k < end - base; k++)
+                    {
+                        value = reduction.accumulate(value, terms[k]);
+                    }
+                }
+            }
+        }
+        catch (RuntimeException | StackOverflowError ex)
+        {
+            return false;
+        }
+        
+        // Leave the variables, counts, and line number
+        // as the sequential loop would.
+        limits.charge(count);
+        frame.set(reduction.variable, reduction.up ? init + count
+                                                   : init - count);
+        frame.set(reduction.accumulator, value);
+        statementCount += 2 + count*(reduction.bodyStatements + 1);
+        lineNumber = reduction.forNode.children.get(1).children.get(2).lineNumber;
+        
+        return true;
+    }
+    
+    /**
+     * A part of the iterations of a reduction loop. It either stores
+     * their terms, or it returns their partial result.
+     */
+    private static class ReductionTask extends RecursiveTask<Double>
+    {
+        private static final long serialVersionUID = 1L;
+        
+        private Executor parent;
+        private Reduction reduction;
+        private double init;     // initial value of the control variable
+        private long first;      // index of the first iteration
+        private long end;        // index after the last iteration
+        private double terms[];  // where to store the terms, or null
+        private long base;       // index of the iteration of terms[0]
+        
+        ReductionTask(Executor parent, Reduction reduction, double init,
+                      long first, long end, double terms[], long base)
+        {
+            this.parent    = parent;
+            this.reduction = reduction;
+            this.init      = init;
+            this.first     = first;
+            this.end       = end;
+            this.terms     = terms;
+            this.base      = base;
+        }
+        
+        @Override
+        protected Double compute()
+        {
+            if (end - first > REDUCTION_GRAIN)
+            {
+                long middle = (first + end) >>> 1;
+                ReductionTask left  = new ReductionTask(parent, reduction, init,
+                                                        first, middle,
+                                                        terms, base);
+                ReductionTask right = new ReductionTask(parent, reduction, init,
+                                                        middle, end,
+                                                        terms, base);
+                invokeAll(left, right);
+                
+                return reduction.combine(left.join(), right.join());
+            }
+            
+            // Compute the terms with a copy of the frame.
+            Frame frame = parent.frame.copy();
+            Executor executor = new Executor(parent.limits.fork(), parent.out,
+                                             parent.input, frame);
+            executor.tiering = parent.tiering;
+            executor.loops   = parent.loops();
+            double partial = reduction.identity();
+            
+            for (long k = first; k < end; k++)
+            {
+                frame.set(reduction.variable, reduction.up ? init + k
+                                                           : init - k);
+                double term = (Double) executor.visit(reduction.termNode);
+                
+                if (terms != null) terms[(int) (k - base)] = term;
+                else               partial = reduction.combine(partial, term);
+                
+                executor.limits.backEdge(parent.lineNumber);
+            }
+            
+            return partial;
+        }
+    }
+    
     private Object visitAssign(Node assignNode)
     {
         Node lhs = assignNode.children.get(0);
         Node rhs = assignNode.children.get(1);
         
         // Evaluate the right-hand-side expression;
-        Double value = (Double) visit(rhs);
+        Object value = visit(rhs);
+        if (!(value instanceof Double)) runtimeError(lhs, BOOLEAN_ASSIGNED);
         
-        // Store the value into the variable's symbol table entry.
-        SymtabEntry variableId = lhs.entry;
-        variableId.setValue(value);
+        // Store the value into the variable's slot in the frame.
+        frame.set(lhs.entry, (Double) value);
         
         return null;
     }
@@ -127,6 +668,20 @@ public class Executor
 
     private Object visitLoop(Node loopNode)
     {        
+        LoopProfile profile = null;
+        if (tiering)
+        {
+            profile = profiles.computeIfAbsent(loopNode,
+                                node -> new LoopProfile(loops().find(node)));
+            
+            // A loop that's already compiled runs compiled from the start.
+            if (profile.iterations != null)
+            {
+                profile.iterations.run(this, frame);
+                return null;
+            }
+        }
+        
         boolean b = false;
         do
         {
@@ -138,6 +693,23 @@ public class Executor
                 b = (node.type == TEST) && ((boolean) value);
                 if (b) break;
             }
+            
+            if (!b)
+            {
+                limits.backEdge(lineNumber);
+                
+                // Switch to the compiled loop at its header once it's ready.
+                if (profile != null)
+                {
+                    LoopCompiler.Statement iterations =
+                                            profile.backEdge(loops(), loopNode);
+                    if (iterations != null)
+                    {
+                        iterations.run(this, frame);
+                        return null;
+                    }
+                }
+            }
         } while (!b);
         
         return null;
@@ -157,10 +729,43 @@ public class Executor
     private Object visitWriteln(Node writelnNode)
     {
         if (writelnNode.children.size() > 0) printValue(writelnNode.children);
-        System.out.println();
+        out.println();
+        
+        return null;
+    }
+
+    private Object visitRead(Node readNode)
+    {
+        readValues(readNode.children);
+        return null;
+    }
+    
+    private Object visitReadln(Node readlnNode)
+    {
+        readValues(readlnNode.children);
+        input.skipLine();
         
         return null;
     }
+    
+    /**
+     * Read the values of the variables of a READ or READLN statement.
+     * @param children the variable nodes.
+     */
+    private void readValues(ArrayList<Node> children)
+    {
+        for (Node variableNode : children)
+        {
+            try
+            {
+                frame.set(variableNode.entry, input.readNumber());
+            }
+            catch (NoSuchElementException ex)
+            {
+                runtimeError(variableNode, ex.getMessage());
+            }
+        }
+    }
 
     private void printValue(ArrayList<Node> children)
     {
@@ -182,6 +787,21 @@ public class Executor
         
         // Print the value with a format.
         Node valueNode = children.get(0);
+        printValue(out, valueNode, visit(valueNode),
+                   fieldWidth, decimalPlaces);
+    }
+
+    /**
+     * Print a WRITE or WRITELN value with a format.
+     * @param out the output stream.
+     * @param valueNode the variable or string node.
+     * @param value the value of the node.
+     * @param fieldWidth the field width, or -1 if none.
+     * @param decimalPlaces the count of decimal places.
+     */
+    static void printValue(PrintStream out, Node valueNode, Object value,
+                           long fieldWidth, long decimalPlaces)
+    {
         if (valueNode.type == VARIABLE)
         {
             String format = "%";
@@ -189,8 +809,7 @@ public class Executor
             if (decimalPlaces >= 0) format += "." + decimalPlaces;
             format += "f";
             
-            Double value = (Double) visit(valueNode);
-            System.out.printf(format, value);
+            out.printf(format, (Double) value);
         }
         else  // node type STRING_CONSTANT
         {
@@ -198,13 +817,15 @@ public class Executor
             if (fieldWidth > 0) format += fieldWidth;
             format += "s";
             
-            String value = (String) visit(valueNode);
-            System.out.printf(format, value);
+            out.printf(format, (String) value);
         }
     }
 
     private Object visitExpression(Node expressionNode)
     {
+        // The end of the input.
+        if (expressionNode.type == EOF) return input.atEnd();
+        
         // Single-operand expressions.
         if (expressionNode.type == NOT) {
             return !((boolean) visit(expressionNode.children.get(0)));
@@ -288,11 +909,8 @@ public class Executor
     
     private Object visitVariable(Node variableNode)
     {
-        // Obtain the variable's value from its symbol table entry.
-        SymtabEntry variableId = variableNode.entry;
-        Double value = variableId.getValue();
-        
-        return value;
+        // Obtain the variable's value from its slot in the frame.
+        return frame.get(variableNode.entry);
     }
     
     private Object visitIntegerConstant(Node integerConstantNode)
@@ -319,10 +937,33 @@ public class Executor
             return -1 * (double) visitRealConstant(child);
     }
 
-    private void runtimeError(Node node, String message)
+    /**
+     * Start executing a statement.
+     * @param statementNode the statement node.
+     */
+    void enter(Node statementNode)
+    {
+        lineNumber = statementNode.lineNumber;
+        statementCount++;
+    }
+    
+    /**
+     * Count a loop iteration against the limits.
+     */
+    void backEdge()
+    {
+        limits.backEdge(lineNumber);
+    }
+    
+    /**
+     * Report a runtime error.
+     * @param node the node where it happened.
+     * @param message the error message.
+     * @throws ExecutionAbortedException always.
+     */
+    void runtimeError(Node node, String message)
     {
-        System.out.printf("RUNTIME ERROR at line %d: %s: %s\n", 
-                          lineNumber, message, node.text);
-        System.exit(-2);
+        throw new ExecutionAbortedException(message + ": " + node.text,
+                                            lineNumber);
     }
 }
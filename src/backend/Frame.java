@@ -0,0 +1,101 @@
+/**
+ * Frame class for a simple interpreter.
+ *
+ * The values of the variables of one execution of a program, indexed by
+ * the variables' frame slots. The parse tree and the symbol table only
+ * describe the program, so any number of executions, each with its own
+ * frame, can run the same parse tree at once. A variable's initial value
+ * is 0.0, and the frame grows to fit a variable that's entered into the
+ * symbol table after it's created.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package backend;
+
+import java.util.Arrays;
+
+import intermediate.*;
+
+public class Frame
+{
+    private double values[];
+
+    /**
+     * Constructor.
+     */
+    public Frame()
+    {
+        this(64);
+    }
+
+    /**
+     * Constructor.
+     * @param size the initial number of values, usually the size
+     *             of the program's symbol table.
+     */
+    public Frame(int size)
+    {
+        this.values = new double[Math.max(size, 1)];
+    }
+
+    /**
+     * Make room for the values of variables with slots up to a size, so
+     * that threads that set different variables don't have to grow the frame.
+     * @param size one more than the largest slot.
+     */
+    public void reserve(int size)
+    {
+        if (size > values.length) values = Arrays.copyOf(values, size);
+    }
+
+    /**
+     * Copy the values.
+     * @return a new frame with the same values.
+     */
+    public Frame copy()
+    {
+        Frame copy = new Frame(values.length);
+        System.arraycopy(values, 0, copy.values, 0, values.length);
+
+        return copy;
+    }
+
+    /**
+     * Restore the values of a copy.
+     * @param copy the copy.
+     */
+    public void restore(Frame copy)
+    {
+        values = Arrays.copyOf(copy.values, Math.max(values.length,
+                                                     copy.values.length));
+    }
+
+    /**
+     * Get a variable's value.
+     * @param entry the variable's symbol table entry.
+     * @return the value.
+     */
+    public double get(SymtabEntry entry)
+    {
+        int slot = entry.getSlot();
+        return slot < values.length ? values[slot] : 0.0;
+    }
+
+    /**
+     * Set a variable's value.
+     * @param entry the variable's symbol table entry.
+     * @param value the value.
+     */
+    public void set(SymtabEntry entry, double value)
+    {
+        int slot = entry.getSlot();
+        if (slot >= values.length)
+        {
+            values = Arrays.copyOf(values, Math.max(2*values.length, slot + 1));
+        }
+
+        values[slot] = value;
+    }
+}
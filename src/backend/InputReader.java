@@ -0,0 +1,357 @@
+/**
+ * Input reader class for a simple interpreter.
+ *
+ * Reads the numbers of READ and READLN statements from the standard
+ * input or a file. The bytes are read in large blocks from a channel,
+ * and a number is parsed directly from them without creating a string.
+ * A number is an optional sign, digits with an optional fraction, and
+ * an optional exponent, and it ends at white space or the end of input.
+ *
+ * If a number's significant digits fit in a double exactly and the
+ * power of ten is exact too, one multiplication or division gives the
+ * correctly rounded value. Any other number is copied from a reused
+ * character array and parsed by Double.parseDouble().
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package backend;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+public class InputReader
+{
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_DIGITS  = 18;        // fit in a long
+    private static final long MAX_EXACT  = 1L << 53;  // largest exact mantissa
+
+    // The powers of ten that are exact doubles.
+    private static final double POWERS[] = new double[23];
+    static
+    {
+        POWERS[0] = 1.0;
+        for (int i = 1; i < POWERS.length; i++) POWERS[i] = 10*POWERS[i - 1];
+    }
+
+    private static InputReader standardInput = null;
+
+    private ReadableByteChannel channel;  // input channel
+    private ByteBuffer buffer;            // wraps the byte array
+    private byte bytes[];                 // input buffer
+    private int position;                 // index of the current byte
+    private int limit;                    // number of bytes in the buffer
+    private long consumed;                // bytes before the buffer
+    private boolean atEof;                // true if the channel is at its end
+
+    private char text[];                  // text of the number being read
+    private int length;                   // length of the text
+
+    /**
+     * Constructor.
+     * @param channel the input channel.
+     */
+    public InputReader(ReadableByteChannel channel)
+    {
+        this.channel  = channel;
+        this.bytes    = new byte[BUFFER_SIZE];
+        this.buffer   = ByteBuffer.wrap(bytes);
+        this.position = 0;
+        this.limit    = 0;
+        this.consumed = 0;
+        this.atEof    = false;
+        this.text     = new char[64];
+        this.length   = 0;
+    }
+
+    /**
+     * Get the reader of the standard input, which all the executions
+     * in this process share.
+     * @return the reader.
+     */
+    public static synchronized InputReader standardInput()
+    {
+        if (standardInput == null)
+        {
+            standardInput = new InputReader(
+                    new FileInputStream(FileDescriptor.in).getChannel());
+        }
+
+        return standardInput;
+    }
+
+    /**
+     * Open a reader of a file.
+     * @param fileName the name of the file.
+     * @return the reader.
+     * @throws IOException if the file can't be opened.
+     */
+    public static InputReader open(String fileName) throws IOException
+    {
+        return new InputReader(FileChannel.open(Paths.get(fileName)));
+    }
+
+    /**
+     * Create a reader that has no input.
+     * @return the reader.
+     */
+    public static InputReader empty()
+    {
+        return of(new byte[0]);
+    }
+
+    /**
+     * Create a reader of input that's already in memory.
+     * @param input the input bytes.
+     * @return the reader.
+     */
+    public static InputReader of(byte input[])
+    {
+        return new InputReader(
+                    Channels.newChannel(new ByteArrayInputStream(input)));
+    }
+
+    /**
+     * Getter.
+     * @return the number of bytes consumed so far.
+     */
+    public long position() { return consumed + position; }
+
+    /**
+     * Skip bytes, such as those that were consumed before a checkpoint.
+     * @param count the number of bytes to skip.
+     */
+    public void skip(long count)
+    {
+        while ((count > 0) && ((position < limit) || fill()))
+        {
+            int n = (int) Math.min(count, limit - position);
+            position += n;
+            count    -= n;
+        }
+    }
+
+    /**
+     * Skip any white space.
+     * @return true if the end of input follows.
+     */
+    public boolean atEnd()
+    {
+        return skipWhiteSpace() < 0;
+    }
+
+    /**
+     * Skip the rest of the current line, including its end of line.
+     */
+    public void skipLine()
+    {
+        while ((position < limit) || fill())
+        {
+            if (bytes[position++] == '\n') return;
+        }
+    }
+
+    /**
+     * Read the next number.
+     * @return its value.
+     * @throws NoSuchElementException at the end of input.
+     * @throws InputMismatchException if the next text isn't a number.
+     */
+    public double readNumber()
+    {
+        int ch = skipWhiteSpace();
+        if (ch < 0) throw new NoSuchElementException("End of input");
+
+        length = 0;
+        boolean negative = false;
+        boolean exact    = true;   // all the significant digits are kept
+        boolean digits   = false;  // any digits
+        long mantissa    = 0;
+        int count        = 0;      // significant digits in the mantissa
+        int exponent     = 0;      // power of ten of the mantissa
+
+        if ((ch == '+') || (ch == '-'))
+        {
+            negative = ch == '-';
+            ch = take(ch);
+        }
+
+        // Whole part.
+        while ((ch >= '0') && (ch <= '9'))
+        {
+            digits = true;
+            if (count < MAX_DIGITS)
+            {
+                if ((mantissa != 0) || (ch != '0'))
+                {
+                    mantissa = 10*mantissa + (ch - '0');
+                    count++;
+                }
+            }
+            else exact = false;
+
+            ch = take(ch);
+        }
+
+        // Fraction.
+        if (ch == '.')
+        {
+            ch = take(ch);
+
+            while ((ch >= '0') && (ch <= '9'))
+            {
+                digits = true;
+                if (count < MAX_DIGITS)
+                {
+                    mantissa = 10*mantissa + (ch - '0');
+                    if (mantissa != 0) count++;
+                    exponent--;
+                }
+                else exact = false;
+
+                ch = take(ch);
+            }
+        }
+
+        if (!digits) invalid(ch);
+
+        // Exponent.
+        if ((ch == 'e') || (ch == 'E'))
+        {
+            ch = take(ch);
+
+            boolean negativeExponent = false;
+            if ((ch == '+') || (ch == '-'))
+            {
+                negativeExponent = ch == '-';
+                ch = take(ch);
+            }
+
+            if ((ch < '0') || (ch > '9')) invalid(ch);
+
+            int power = 0;
+            while ((ch >= '0') && (ch <= '9'))
+            {
+                if (power < 100_000) power = 10*power + (ch - '0');
+                ch = take(ch);
+            }
+
+            exponent += negativeExponent ? -power : power;
+        }
+
+        if ((ch >= 0) && !isWhiteSpace(ch)) invalid(ch);
+
+        double value;
+        if (exact && (mantissa <= MAX_EXACT) && (exponent >= -22)
+                                             && (exponent <= 22))
+        {
+            value = exponent >= 0 ? mantissa*POWERS[exponent]
+                                  : mantissa/POWERS[-exponent];
+            return negative ? -value : value;
+        }
+        else return Double.parseDouble(new String(text, 0, length));
+    }
+
+    /**
+     * Append the current byte to the text of the number, and advance.
+     * @param ch the current byte.
+     * @return the next byte, or -1 at the end of input.
+     */
+    private int take(int ch)
+    {
+        if (length == text.length) text = Arrays.copyOf(text, 2*length);
+        text[length++] = (char) ch;
+
+        position++;
+        return (position < limit) || fill() ? bytes[position] & 0xff : -1;
+    }
+
+    /**
+     * Skip the rest of an invalid number and fail.
+     * @param ch the current byte.
+     */
+    private void invalid(int ch)
+    {
+        while ((ch >= 0) && !isWhiteSpace(ch))
+        {
+            position++;
+            ch = (position < limit) || fill() ? bytes[position] & 0xff : -1;
+        }
+
+        throw new InputMismatchException("Invalid number");
+    }
+
+    /**
+     * Skip white space.
+     * @return the next byte, or -1 at the end of input.
+     */
+    private int skipWhiteSpace()
+    {
+        while ((position < limit) || fill())
+        {
+            int ch = bytes[position] & 0xff;
+            if (!isWhiteSpace(ch)) return ch;
+
+            position++;
+        }
+
+        return -1;
+    }
+
+    /**
+     * @param ch a byte.
+     * @return true if it's white space.
+     */
+    private static boolean isWhiteSpace(int ch)
+    {
+        return (ch == ' ') || ((ch >= '\t') && (ch <= '\r'));
+    }
+
+    /**
+     * Read the next block of input into the buffer.
+     * @return true if there's more input, false at the end.
+     */
+    private boolean fill()
+    {
+        if (atEof) return false;
+
+        consumed += limit;
+        position = 0;
+        limit    = 0;
+        buffer.clear();
+
+        try
+        {
+            int n;
+            do
+            {
+                n = channel.read(buffer);
+            } while (n == 0);
+
+            if (n < 0)
+            {
+                atEof = true;
+                return false;
+            }
+
+            limit = n;
+            return true;
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
+    }
+}
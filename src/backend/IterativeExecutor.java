@@ -0,0 +1,559 @@
+/**
+ * Iterative executor class for a simple interpreter.
+ *
+ * Executes a parse tree the same way as the Executor, but without
+ * recursion. An explicit continuation stack holds each node that is being
+ * visited together with its next step, and a primitive operand stack holds
+ * the values of the evaluated expressions. A boolean value is 1.0 or 0.0.
+ * Both stacks grow as needed, so the depth of the parse tree is limited
+ * only by the heap, and the Java stack usage is constant.
+ *
+ * The values of the variables are in the executor's frame, so several
+ * executors can execute the same parse tree at once.
+ *
+ * Because the whole execution state is explicit, it can be saved
+ * by a checkpointer at loop back-edges and resumed later.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package backend;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import intermediate.*;
+import static intermediate.Node.NodeType.*;
+
+public class IterativeExecutor
+{
+    private static final int INITIAL_DEPTH = 256;
+
+    private static final boolean statements[] =
+        new boolean[Node.NodeType.values().length];
+
+    static
+    {
+        statements[COMPOUND.ordinal()] = true;
+        statements[ASSIGN.ordinal()]   = true;
+        statements[LOOP.ordinal()]     = true;
+        statements[WRITE.ordinal()]    = true;
+        statements[IF.ordinal()]       = true;
+        statements[WRITELN.ordinal()]  = true;
+        statements[READ.ordinal()]     = true;
+        statements[READLN.ordinal()]   = true;
+    }
+
+    private int lineNumber;
+    private ExecutionLimits limits;
+    private Checkpointer checkpointer;  // or null if not checkpointing
+    private PrintStream out;            // program output
+    private InputReader input;          // program input
+    private Frame frame;                // values of the variables
+    private long statementCount;        // number of statements executed
+
+    private Node nodes[];       // continuation stack of nodes being visited
+    private int steps[];        // next step of each node being visited
+    private int top;            // index of the top continuation, or -1
+
+    private double operands[];  // operand stack
+    private int sp;             // number of operands on the stack
+
+    public IterativeExecutor()
+    {
+        this(new ExecutionLimits());
+    }
+
+    /**
+     * Constructor.
+     * @param limits the limits on the execution.
+     */
+    public IterativeExecutor(ExecutionLimits limits)
+    {
+        this(limits, System.out);
+    }
+
+    /**
+     * Constructor.
+     * @param limits the limits on the execution.
+     * @param out the output stream for the program output.
+     */
+    public IterativeExecutor(ExecutionLimits limits, PrintStream out)
+    {
+        this(limits, out, InputReader.standardInput());
+    }
+
+    /**
+     * Constructor.
+     * @param limits the limits on the execution.
+     * @param out the output stream for the program output.
+     * @param input the reader of the program input.
+     */
+    public IterativeExecutor(ExecutionLimits limits, PrintStream out,
+                             InputReader input)
+    {
+        this(limits, out, input, new Frame());
+    }
+
+    /**
+     * Constructor.
+     * @param limits the limits on the execution.
+     * @param out the output stream for the program output.
+     * @param input the reader of the program input.
+     * @param frame the frame of the variables' values.
+     */
+    public IterativeExecutor(ExecutionLimits limits, PrintStream out,
+                             InputReader input, Frame frame)
+    {
+        this.limits   = limits;
+        this.checkpointer = null;
+        this.out      = out;
+        this.input    = input;
+        this.frame    = frame;
+        this.statementCount = 0;
+        this.nodes    = new Node[INITIAL_DEPTH];
+        this.steps    = new int[INITIAL_DEPTH];
+        this.top      = -1;
+        this.operands = new double[INITIAL_DEPTH];
+        this.sp       = 0;
+    }
+
+    /**
+     * Getter.
+     * @return the number of statements executed.
+     */
+    public long statementCount() { return statementCount; }
+
+    /**
+     * Getter.
+     * @return the frame of the variables' values.
+     */
+    public Frame frame() { return frame; }
+
+    /**
+     * Setter.
+     * @param checkpointer the checkpointer to save the execution state.
+     */
+    public void setCheckpointer(Checkpointer checkpointer)
+    {
+        this.checkpointer = checkpointer;
+        if (checkpointer != null) this.out = checkpointer.out(() -> lineNumber);
+    }
+
+    /**
+     * Execute a program.
+     * @param programNode the PROGRAM node of the parse tree.
+     */
+    public void execute(Node programNode)
+    {
+        if (checkpointer != null) checkpointer.attach(programNode, frame);
+
+        top = -1;
+        sp  = 0;
+        push(programNode);
+
+        run();
+    }
+
+    /**
+     * Resume executing a program from the checkpointer's checkpoint.
+     * @param programNode the PROGRAM node of the parse tree.
+     */
+    public void resume(Node programNode)
+    {
+        checkpointer.attach(programNode, frame);
+        Checkpointer.Snapshot snapshot = checkpointer.load();
+
+        int depth = snapshot.nodes.length;
+        nodes = Arrays.copyOf(snapshot.nodes, Math.max(depth, INITIAL_DEPTH));
+        steps = Arrays.copyOf(snapshot.steps, Math.max(depth, INITIAL_DEPTH));
+        top   = depth - 1;
+
+        sp = snapshot.operands.length;
+        operands = Arrays.copyOf(snapshot.operands, Math.max(sp, INITIAL_DEPTH));
+
+        lineNumber = snapshot.lineNumber;
+        input.skip(snapshot.inputPosition);
+
+        run();
+    }
+
+    /**
+     * Run until the continuation stack is empty.
+     */
+    private void run()
+    {
+        visitAll();
+        if (checkpointer != null) checkpointer.finish();
+    }
+
+    /**
+     * Visit the nodes on the continuation stack until it's empty.
+     */
+    private void visitAll()
+    {
+        while (top >= 0)
+        {
+            Node node = nodes[top];
+            int step  = steps[top];
+
+            switch (node.type)
+            {
+                case PROGRAM :
+                case TEST :
+                {
+                    // Continue with the only child.
+                    top--;
+                    push(node.children.get(0));
+                    break;
+                }
+
+                case COMPOUND :
+                {
+                    if (step < node.children.size())
+                    {
+                        steps[top] = step + 1;
+                        push(node.children.get(step));
+                    }
+                    else top--;
+
+                    break;
+                }
+
+                case ASSIGN :
+                {
+                    if (step == 0)
+                    {
+                        steps[top] = 1;
+                        pushExpression(node.children.get(1));
+                    }
+                    else
+                    {
+                        // A boolean is a number here, but like the parse tree
+                        // executor, don't assign it.
+                        Node lhs = node.children.get(0);
+                        if (node.children.get(1).isBoolean())
+                        {
+                            runtimeError(lhs, Executor.BOOLEAN_ASSIGNED);
+                        }
+
+                        // Store the value into the variable's slot in the frame.
+                        frame.set(lhs.entry, operands[--sp]);
+                        top--;
+                    }
+
+                    break;
+                }
+
+                case IF :
+                {
+                    if (node.children.size() <= 1)
+                    {
+                        runtimeError(node, "If has no statements");
+                    }
+                    else if (step == 0)
+                    {
+                        steps[top] = 1;
+                        pushExpression(node.children.get(0));
+                    }
+                    else
+                    {
+                        // Continue with the THEN or the ELSE statement, if any.
+                        boolean b = operands[--sp] != 0.0;
+                        top--;
+
+                        if (b) push(node.children.get(1));
+                        else if (node.children.size() > 2)
+                        {
+                            push(node.children.get(2));
+                        }
+                    }
+
+                    break;
+                }
+
+                case LOOP :
+                {
+                    // The step is twice the index of the next child,
+                    // plus one if the previous child was a test.
+                    ArrayList<Node> children = node.children;
+
+                    // Stop looping if the test condition is true.
+                    if (((step & 1) != 0) && (operands[--sp] != 0.0))
+                    {
+                        top--;
+                        break;
+                    }
+
+                    int index = step >> 1;
+                    if (index == children.size())
+                    {
+                        if (checkpointer == null) limits.backEdge(lineNumber);
+                        else                      checkpointBackEdge();
+
+                        index = 0;
+                    }
+
+                    Node child = children.get(index);
+                    if (child.type == TEST)
+                    {
+                        steps[top] = ((index + 1) << 1) | 1;
+                        pushExpression(child.children.get(0));
+                    }
+                    else
+                    {
+                        steps[top] = (index + 1) << 1;
+                        push(child);
+                    }
+
+                    break;
+                }
+
+                case WRITE :
+                case WRITELN :
+                {
+                    // First evaluate any field width and count of decimal places.
+                    ArrayList<Node> children = node.children;
+                    if (step < children.size() - 1)
+                    {
+                        steps[top] = step + 1;
+                        pushExpression(children.get(step + 1));
+                    }
+                    else
+                    {
+                        top--;
+                        if (!children.isEmpty()) printValue(children);
+                        if (node.type == WRITELN) out.println();
+                    }
+
+                    break;
+                }
+
+                case READ :
+                case READLN :
+                {
+                    top--;
+                    for (Node variableNode : node.children)
+                    {
+                        try
+                        {
+                            frame.set(variableNode.entry, input.readNumber());
+                        }
+                        catch (NoSuchElementException ex)
+                        {
+                            runtimeError(variableNode, ex.getMessage());
+                        }
+                    }
+
+                    if (node.type == READLN) input.skipLine();
+                    break;
+                }
+
+                default :  // expression
+                {
+                    // Evaluate the operands before applying the operator.
+                    if (step < node.children.size())
+                    {
+                        steps[top] = step + 1;
+                        pushExpression(node.children.get(step));
+                    }
+                    else
+                    {
+                        top--;
+                        evaluate(node);
+                    }
+
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Count a loop back-edge while checkpointing. Write a checkpoint
+     * if it's time to, or before the execution is aborted, so that
+     * the execution can resume from this back-edge.
+     */
+    private void checkpointBackEdge()
+    {
+        steps[top] = 0;  // resume at the start of the loop
+
+        try
+        {
+            limits.backEdge(lineNumber);
+        }
+        catch (ExecutionAbortedException ex)
+        {
+            checkpointer.save(nodes, steps, top, operands, sp, lineNumber,
+                              input.position());
+            throw ex;
+        }
+
+        if (checkpointer.backEdge())
+        {
+            checkpointer.save(nodes, steps, top, operands, sp, lineNumber,
+                              input.position());
+        }
+    }
+
+    /**
+     * Push a node onto the continuation stack.
+     * @param node the node to visit.
+     */
+    private void push(Node node)
+    {
+        if (++top == nodes.length)
+        {
+            nodes = Arrays.copyOf(nodes, 2*top);
+            steps = Arrays.copyOf(steps, 2*top);
+        }
+
+        nodes[top] = node;
+        steps[top] = 0;
+
+        if (statements[node.type.ordinal()])
+        {
+            lineNumber = node.lineNumber;
+            statementCount++;
+        }
+    }
+
+    /**
+     * Push an expression node onto the continuation stack, or push
+     * its value onto the operand stack if it's a variable or a number.
+     * @param node the expression node.
+     */
+    private void pushExpression(Node node)
+    {
+        switch (node.type)
+        {
+            case VARIABLE :
+            {
+                pushOperand(frame.get(node.entry));
+                break;
+            }
+
+            case INTEGER_CONSTANT :
+            {
+                pushOperand((Long) node.value);
+                break;
+            }
+
+            case REAL_CONSTANT :
+            {
+                pushOperand((Double) node.value);
+                break;
+            }
+
+            case EOF :
+            {
+                pushOperand(input.atEnd() ? 1.0 : 0.0);
+                break;
+            }
+
+            default : push(node);
+        }
+    }
+
+    /**
+     * Push a value onto the operand stack.
+     * @param value the value.
+     */
+    private void pushOperand(double value)
+    {
+        if (sp == operands.length) operands = Arrays.copyOf(operands, 2*sp);
+        operands[sp++] = value;
+    }
+
+    /**
+     * Apply an operator to the values of its operands on the operand
+     * stack, and replace them with the result.
+     * @param expressionNode the operator node.
+     */
+    private void evaluate(Node expressionNode)
+    {
+        int count = expressionNode.children.size();
+
+        if (count == 1)
+        {
+            double value1 = operands[sp - 1];
+
+            switch (expressionNode.type)
+            {
+                case NOT : operands[sp - 1] = value1 != 0.0 ? 0.0 : 1.0; break;
+                case NEG : operands[sp - 1] = -1*value1;                 break;
+                default  : break;
+            }
+
+            return;
+        }
+        else if (count != 2)
+        {
+            runtimeError(expressionNode, "Invalid expression");
+        }
+
+        double value2 = operands[--sp];
+        double value1 = operands[sp - 1];
+        double value  = 0.0;
+
+        switch (expressionNode.type)
+        {
+            case AND : value = (value1 != 0.0) && (value2 != 0.0) ? 1.0 : 0.0; break;
+            case OR  : value = (value1 != 0.0) || (value2 != 0.0) ? 1.0 : 0.0; break;
+
+            case EQ  : value = value1 == value2 ? 1.0 : 0.0; break;
+            case LT  : value = value1 <  value2 ? 1.0 : 0.0; break;
+            case GT  : value = value1 >  value2 ? 1.0 : 0.0; break;
+            case LEQ : value = value1 <= value2 ? 1.0 : 0.0; break;
+            case GEQ : value = value1 >= value2 ? 1.0 : 0.0; break;
+            case NEQ : value = value1 != value2 ? 1.0 : 0.0; break;
+
+            case ADD :      value = value1 + value2; break;
+            case SUBTRACT : value = value1 - value2; break;
+            case MULTIPLY : value = value1 * value2; break;
+
+            case DIVIDE :
+            {
+                if (value2 != 0.0) value = value1/value2;
+                else runtimeError(expressionNode, "Division by zero");
+
+                break;
+            }
+
+            default : break;
+        }
+
+        operands[sp - 1] = value;
+    }
+
+    /**
+     * Print the value of a WRITE or WRITELN statement. The values of
+     * any field width and count of decimal places are on the operand stack.
+     * @param children the children of the WRITE or WRITELN node.
+     */
+    private void printValue(ArrayList<Node> children)
+    {
+        long fieldWidth    = -1;
+        long decimalPlaces = 0;
+
+        if (children.size() > 2) decimalPlaces = (long) operands[--sp];
+        if (children.size() > 1) fieldWidth    = (long) operands[--sp];
+
+        Node valueNode = children.get(0);
+        Object value = valueNode.type == VARIABLE ? frame.get(valueNode.entry)
+                                                  : valueNode.value;
+
+        Executor.printValue(out, valueNode, value, fieldWidth, decimalPlaces);
+    }
+
+    private void runtimeError(Node node, String message)
+    {
+        if (checkpointer != null) checkpointer.flush();
+
+        throw new ExecutionAbortedException(message + ": " + node.text,
+                                            lineNumber);
+    }
+}
@@ -0,0 +1,455 @@
+/**
+ * Loop compiler class for a simple interpreter.
+ *
+ * Compiles the hot LOOP nodes of a program into trees of closures, on
+ * a background thread. The closures evaluate expressions as primitive
+ * doubles and booleans, without boxing or dispatching on node types,
+ * and they read and write the frame of the executor that runs them.
+ * Assignment, compound, IF, and LOOP statements and the arithmetic,
+ * relational, and boolean expressions are compiled. Anything else, such
+ * as a WRITE or READ statement, a reduction loop, or an expression of the
+ * wrong type, is delegated back to the executor, so the compiled loop
+ * behaves exactly like the interpreted one, down to its errors and line
+ * numbers.
+ *
+ * The compiled loop starts at the loop's header, so the executor can
+ * switch to it between any two iterations. It's passed the executor and
+ * frame to run with, so one compiler can be shared by all the executions
+ * of a program, which then compile each loop only once.
+ *
+ * A compilation reads the parse tree, so the compiler must be closed
+ * before the tree is changed or released. Closing it cancels the
+ * compilations that haven't started, and waits for one in progress.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package backend;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import intermediate.*;
+
+public class LoopCompiler
+{
+    /**
+     * Compiled statement.
+     */
+    interface Statement { void run(Executor executor, Frame frame); }
+
+    /**
+     * Compiled numeric expression.
+     */
+    interface Arithmetic { double eval(Executor executor, Frame frame); }
+
+    /**
+     * Compiled boolean expression.
+     */
+    interface Condition { boolean test(Executor executor, Frame frame); }
+
+    /**
+     * Compiled child of a loop: a statement, or a test that exits the loop.
+     */
+    private interface Step { boolean exit(Executor executor, Frame frame); }
+
+    private static final ExecutorService compiler =
+        Executors.newSingleThreadExecutor(runnable ->
+        {
+            Thread thread = new Thread(runnable, "simple-loop-compiler");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+    private IdentityHashMap<Node, Reduction> reductions;  // or null
+    private IdentityHashMap<Node, Future<Statement>> compilations;  // by loop
+    private boolean closed;  // true if no more loops are compiled
+    private int running;     // number of compilations in progress
+
+    /**
+     * Constructor.
+     * @param reductions the program's reduction loops, which are
+     * delegated to the executor, or null.
+     */
+    public LoopCompiler(IdentityHashMap<Node, Reduction> reductions)
+    {
+        this.reductions   = reductions;
+        this.compilations = new IdentityHashMap<>();
+        this.closed       = false;
+        this.running      = 0;
+    }
+
+    /**
+     * Compile a loop in the background, unless it was already submitted.
+     * @param loopNode the LOOP node.
+     * @return the future iterations of the loop from its header,
+     * or null if the compiler is closed.
+     */
+    synchronized Future<Statement> submit(Node loopNode)
+    {
+        if (closed) return null;
+
+        return compilations.computeIfAbsent(loopNode,
+                    node -> compiler.submit(() -> compile(node)));
+    }
+
+    /**
+     * Find a loop's compilation, which another execution may have submitted.
+     * @param loopNode the LOOP node.
+     * @return the future iterations of the loop, or null if not submitted.
+     */
+    synchronized Future<Statement> find(Node loopNode)
+    {
+        return compilations.get(loopNode);
+    }
+
+    /**
+     * Cancel the compilations that haven't started, and wait for the one
+     * in progress, if any. Then no more loops are compiled, and the
+     * parse tree can be changed or released.
+     */
+    public synchronized void close()
+    {
+        closed = true;
+        for (Future<Statement> compilation : compilations.values())
+        {
+            compilation.cancel(false);
+        }
+        compilations.clear();
+
+        boolean interrupted = false;
+        while (running > 0)
+        {
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException ex)
+            {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /**
+     * Compile a loop on the background thread, unless the compiler
+     * was closed first.
+     * @param loopNode the LOOP node.
+     * @return the iterations, starting at the loop's header.
+     */
+    private Statement compile(Node loopNode)
+    {
+        synchronized (this)
+        {
+            if (closed) throw new CancellationException("Compiler closed");
+            running++;
+        }
+
+        try
+        {
+            return iterations(loopNode);
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                running--;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Compile the iterations of a loop.
+     * @param loopNode the LOOP node.
+     * @return the iterations, starting at the loop's header.
+     */
+    private Statement iterations(Node loopNode)
+    {
+        ArrayList<Step> list = new ArrayList<>();
+        for (Node child : loopNode.children)
+        {
+            if ((child != null) && (child.type == Node.NodeType.TEST))
+            {
+                Condition test = condition(child.children.get(0));
+                list.add((executor, frame) -> test.test(executor, frame));
+            }
+            else
+            {
+                Statement statement = statement(child);
+                list.add((executor, frame) ->
+                {
+                    statement.run(executor, frame);
+                    return false;
+                });
+            }
+        }
+
+        Step steps[] = list.toArray(new Step[0]);
+        return (executor, frame) ->
+        {
+            while (true)
+            {
+                for (Step step : steps)
+                {
+                    if (step.exit(executor, frame)) return;
+                }
+
+                executor.backEdge();
+            }
+        };
+    }
+
+    /**
+     * Compile a statement.
+     * @param node the statement node.
+     * @return the compiled statement.
+     */
+    private Statement statement(Node node)
+    {
+        if ((node == null) || ((reductions != null)
+                                   && reductions.containsKey(node)))
+        {
+            return (executor, frame) -> executor.visit(node);
+        }
+
+        switch (node.type)
+        {
+            case COMPOUND :
+            {
+                Statement statements[] = new Statement[node.children.size()];
+                for (int i = 0; i < statements.length; i++)
+                {
+                    statements[i] = statement(node.children.get(i));
+                }
+
+                return (executor, frame) ->
+                {
+                    executor.enter(node);
+                    for (Statement statement : statements)
+                    {
+                        statement.run(executor, frame);
+                    }
+                };
+            }
+
+            case ASSIGN :
+            {
+                if (node.children.get(1).isBoolean()) break;
+
+                SymtabEntry entry = node.children.get(0).entry;
+                Arithmetic rhs = arithmetic(node.children.get(1));
+
+                return (executor, frame) ->
+                {
+                    executor.enter(node);
+                    frame.set(entry, rhs.eval(executor, frame));
+                };
+            }
+
+            case LOOP :
+            {
+                Statement iterations = iterations(node);
+
+                return (executor, frame) ->
+                {
+                    executor.enter(node);
+                    iterations.run(executor, frame);
+                };
+            }
+
+            case IF :
+            {
+                int size = node.children.size();
+                if ((size < 2) || (node.children.get(1) == null)
+                               || ((size > 2) && (node.children.get(2) == null)))
+                {
+                    break;
+                }
+
+                Condition condition = condition(node.children.get(0));
+                Statement thenStatement = statement(node.children.get(1));
+                Statement elseStatement = size > 2 ? statement(node.children.get(2))
+                                                   : (executor, frame) -> {};
+
+                return (executor, frame) ->
+                {
+                    executor.enter(node);
+                    if (condition.test(executor, frame))
+                    {
+                        thenStatement.run(executor, frame);
+                    }
+                    else elseStatement.run(executor, frame);
+                };
+            }
+
+            default : break;
+        }
+
+        return (executor, frame) -> executor.visit(node);
+    }
+
+    /**
+     * Compile a numeric expression.
+     * @param node the expression node.
+     * @return the compiled expression.
+     */
+    private Arithmetic arithmetic(Node node)
+    {
+        switch (node.type)
+        {
+            case VARIABLE :
+            {
+                SymtabEntry entry = node.entry;
+                return (executor, frame) -> frame.get(entry);
+            }
+
+            case INTEGER_CONSTANT :
+            {
+                double value = (Long) node.value;
+                return (executor, frame) -> value;
+            }
+
+            case REAL_CONSTANT :
+            {
+                double value = (Double) node.value;
+                return (executor, frame) -> value;
+            }
+
+            case NEG :
+            {
+                Node child = node.children.get(0);
+                if (   (child.type != Node.NodeType.INTEGER_CONSTANT)
+                    && (child.type != Node.NodeType.REAL_CONSTANT))
+                {
+                    break;
+                }
+
+                double value = -1*arithmetic(child).eval(null, null);
+                return (executor, frame) -> value;
+            }
+
+            case ADD :
+            {
+                Arithmetic left  = arithmetic(node.children.get(0));
+                Arithmetic right = arithmetic(node.children.get(1));
+                return (executor, frame) -> left.eval(executor, frame)
+                                           + right.eval(executor, frame);
+            }
+
+            case SUBTRACT :
+            {
+                Arithmetic left  = arithmetic(node.children.get(0));
+                Arithmetic right = arithmetic(node.children.get(1));
+                return (executor, frame) -> left.eval(executor, frame)
+                                           - right.eval(executor, frame);
+            }
+
+            case MULTIPLY :
+            {
+                Arithmetic left  = arithmetic(node.children.get(0));
+                Arithmetic right = arithmetic(node.children.get(1));
+                return (executor, frame) -> left.eval(executor, frame)
+                                           * right.eval(executor, frame);
+            }
+
+            case DIVIDE :
+            {
+                Arithmetic left  = arithmetic(node.children.get(0));
+                Arithmetic right = arithmetic(node.children.get(1));
+                return (executor, frame) ->
+                {
+                    double dividend = left.eval(executor, frame);
+                    double divisor  = right.eval(executor, frame);
+
+                    if (divisor != 0.0) return dividend/divisor;
+
+                    executor.runtimeError(node, "Division by zero");
+                    return 0.0;
+                };
+            }
+
+            default : break;
+        }
+
+        return (executor, frame) -> (Double) executor.visit(node);
+    }
+
+    /**
+     * Compile a boolean expression.
+     * @param node the expression node.
+     * @return the compiled expression.
+     */
+    private Condition condition(Node node)
+    {
+        switch (node.type)
+        {
+            case EQ  :
+            case NEQ :
+            case LT  :
+            case LEQ :
+            case GT  :
+            case GEQ :
+            {
+                Arithmetic left  = arithmetic(node.children.get(0));
+                Arithmetic right = arithmetic(node.children.get(1));
+
+                switch (node.type)
+                {
+                    case EQ :
+                        return (executor, frame) -> left.eval(executor, frame)
+                                                 == right.eval(executor, frame);
+                    case NEQ :
+                        return (executor, frame) -> left.eval(executor, frame)
+                                                 != right.eval(executor, frame);
+                    case LT :
+                        return (executor, frame) -> left.eval(executor, frame)
+                                                 <  right.eval(executor, frame);
+                    case LEQ :
+                        return (executor, frame) -> left.eval(executor, frame)
+                                                 <= right.eval(executor, frame);
+                    case GT :
+                        return (executor, frame) -> left.eval(executor, frame)
+                                                 >  right.eval(executor, frame);
+                    default :
+                        return (executor, frame) -> left.eval(executor, frame)
+                                                 >= right.eval(executor, frame);
+                }
+            }
+
+            // Both operands are always evaluated.
+            case AND :
+            {
+                Condition left  = condition(node.children.get(0));
+                Condition right = condition(node.children.get(1));
+                return (executor, frame) -> left.test(executor, frame)
+                                          & right.test(executor, frame);
+            }
+
+            case OR :
+            {
+                Condition left  = condition(node.children.get(0));
+                Condition right = condition(node.children.get(1));
+                return (executor, frame) -> left.test(executor, frame)
+                                          | right.test(executor, frame);
+            }
+
+            case NOT :
+            {
+                Condition operand = condition(node.children.get(0));
+                return (executor, frame) -> !operand.test(executor, frame);
+            }
+
+            default : break;
+        }
+
+        return (executor, frame) -> (Boolean) executor.visit(node);
+    }
+}
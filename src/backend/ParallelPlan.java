@@ -0,0 +1,282 @@
+/**
+ * Parallel plan class for a simple interpreter.
+ *
+ * Divides the statements of a program's main compound statement into
+ * segments that the executor runs in order. A segment has one or more
+ * tasks, which are runs of consecutive statements that each contain a
+ * statement with a loop. The tasks of a segment share no written
+ * variable: no task reads or writes a variable that another task
+ * writes. So they can run at once, and only their output has to be put
+ * back in program order. A statement without a loop starts the next
+ * task, unless it only prints or it depends on the task just before it,
+ * such as by printing the loop's result, and it can join that task
+ * instead. A statement that reads input always runs in order with no
+ * other task.
+ *
+ * The variables that a statement reads and writes are kept as bit sets
+ * of their frame slots.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package backend;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+import intermediate.*;
+import static intermediate.Node.NodeType.*;
+
+public class ParallelPlan
+{
+    /**
+     * Statements that run together on one thread.
+     */
+    static class Task
+    {
+        ArrayList<Node> statements = new ArrayList<>();
+        BitSet reads  = new BitSet();  // variables read
+        BitSet writes = new BitSet();  // variables written
+
+        /**
+         * Add the statements of another task to this one.
+         * @param other the other task.
+         */
+        void merge(Task other)
+        {
+            statements.addAll(other.statements);
+            reads.or(other.reads);
+            writes.or(other.writes);
+        }
+
+        /**
+         * @param other another task.
+         * @return true if neither task reads or writes a variable
+         *         that the other one writes.
+         */
+        boolean isIndependentOf(Task other)
+        {
+            return !writes.intersects(other.reads)
+                && !writes.intersects(other.writes)
+                && !other.writes.intersects(reads);
+        }
+    }
+
+    /**
+     * Tasks that can run at once. A segment with one task runs
+     * sequentially.
+     */
+    static class Segment
+    {
+        ArrayList<Task> tasks = new ArrayList<>();
+        int size;  // one more than the largest variable slot of the tasks
+    }
+
+    private Node compoundNode;              // the main compound statement
+    private ArrayList<Segment> segments;    // in program order
+    private int parallelCount;              // segments of several tasks
+
+    /**
+     * Constructor.
+     * @param compoundNode the main compound statement.
+     */
+    private ParallelPlan(Node compoundNode)
+    {
+        this.compoundNode  = compoundNode;
+        this.segments      = new ArrayList<>();
+        this.parallelCount = 0;
+    }
+
+    /**
+     * Getter.
+     * @return the main compound statement that the plan divides.
+     */
+    Node compoundNode() { return compoundNode; }
+
+    /**
+     * Getter.
+     * @return the segments in program order.
+     */
+    ArrayList<Segment> segments() { return segments; }
+
+    /**
+     * Getter.
+     * @return the number of segments whose tasks run at once.
+     */
+    public int parallelCount() { return parallelCount; }
+
+    /**
+     * Plan the parallel execution of a program.
+     * @param programNode the PROGRAM node of the parse tree.
+     * @return the plan.
+     */
+    public static ParallelPlan analyze(Node programNode)
+    {
+        Node compoundNode = programNode.children.get(0);
+        ParallelPlan plan = new ParallelPlan(compoundNode);
+        ArrayList<Task> group = new ArrayList<>();  // independent tasks so far
+        Task pending = new Task();                  // the task being built
+
+        for (Node statement : compoundNode.children)
+        {
+            if (statement == null) continue;
+
+            Task single = new Task();
+            single.statements.add(statement);
+
+            // A statement that reads input runs in order, by itself
+            // together with the statements before it.
+            if (readsInput(statement))
+            {
+                pending.merge(single);
+                plan.add(group);
+                group.add(pending);
+                plan.add(group);
+                pending = new Task();
+                continue;
+            }
+
+            variables(statement, single.reads, single.writes);
+            boolean loop = hasLoop(statement);
+
+            // A statement after a loop that depends on the loop's task,
+            // or that only prints, joins that task if it's independent
+            // of the group's others.
+            if (!loop && pending.statements.isEmpty() && !group.isEmpty())
+            {
+                Task last = group.get(group.size() - 1);
+                if (   (single.writes.isEmpty() || !single.isIndependentOf(last))
+                    && isIndependent(single, group, group.size() - 1))
+                {
+                    last.merge(single);
+                    continue;
+                }
+            }
+
+            pending.merge(single);
+
+            // A loop ends the task. The task joins the group
+            // if it's independent of all the group's tasks.
+            if (loop)
+            {
+                if (!isIndependent(pending, group, group.size())) plan.add(group);
+
+                group.add(pending);
+                pending = new Task();
+            }
+        }
+
+        plan.add(group);
+        if (!pending.statements.isEmpty())
+        {
+            group.add(pending);
+            plan.add(group);
+        }
+
+        return plan;
+    }
+
+    /**
+     * @param task a task.
+     * @param group a group of tasks.
+     * @param count the number of the group's first tasks to check.
+     * @return true if the task is independent of those tasks.
+     */
+    private static boolean isIndependent(Task task, ArrayList<Task> group,
+                                         int count)
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (!task.isIndependentOf(group.get(i))) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Add a segment of a group of tasks to the plan, and empty the group.
+     * @param group the group, which may be empty.
+     */
+    private void add(ArrayList<Task> group)
+    {
+        if (group.isEmpty()) return;
+
+        Segment segment = new Segment();
+        segment.tasks.addAll(group);
+        for (Task task : group)
+        {
+            segment.size = Math.max(segment.size,
+                                    Math.max(task.reads.length(),
+                                             task.writes.length()));
+        }
+
+        segments.add(segment);
+        if (group.size() > 1) parallelCount++;
+
+        group.clear();
+    }
+
+    /**
+     * Collect the variables that a statement or expression reads and writes.
+     * @param node the statement or expression node.
+     * @param reads the variables read.
+     * @param writes the variables written.
+     */
+    private static void variables(Node node, BitSet reads, BitSet writes)
+    {
+        if (node == null) return;
+
+        switch (node.type)
+        {
+            case VARIABLE :
+                reads.set(node.entry.getSlot());
+                break;
+
+            case ASSIGN :
+                writes.set(node.children.get(0).entry.getSlot());
+                variables(node.children.get(1), reads, writes);
+                break;
+
+            default :
+                for (Node child : node.children) variables(child, reads, writes);
+        }
+    }
+
+    /**
+     * @param node a statement or expression node.
+     * @return true if it reads input or tests for its end.
+     */
+    private static boolean readsInput(Node node)
+    {
+        if (node == null) return false;
+        if ((node.type == READ) || (node.type == READLN) || (node.type == EOF))
+        {
+            return true;
+        }
+
+        for (Node child : node.children)
+        {
+            if (readsInput(child)) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @param node a statement node.
+     * @return true if it contains a loop.
+     */
+    private static boolean hasLoop(Node node)
+    {
+        if (node == null) return false;
+        if (node.type == LOOP) return true;
+
+        for (Node child : node.children)
+        {
+            if (hasLoop(child)) return true;
+        }
+
+        return false;
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Reduction class for a simple interpreter.
+ *
+ * A counted FOR loop, as the parser desugars it, whose body only
+ * accumulates a term into a scalar variable:
+ *
+ *     FOR i := init TO limit DO s := s + term
+ *
+ * with +, -, or * and TO or DOWNTO. The limit and the term don't read
+ * the accumulator, and the limit doesn't read the control variable,
+ * so the terms of all the iterations can be computed independently
+ * and only their accumulation is ordered.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package backend;
+
+import intermediate.*;
+
+public class Reduction
+{
+    public final Node forNode;              // the FOR loop's COMPOUND node
+    public final SymtabEntry variable;      // the control variable
+    public final SymtabEntry accumulator;   // the scalar accumulated into
+    public final Node.NodeType operator;    // ADD, SUBTRACT, or MULTIPLY
+    public final Node initNode;             // initial value expression
+    public final Node limitNode;            // limit expression
+    public final Node termNode;             // term expression
+    public final boolean up;                // true for TO, false for DOWNTO
+    public final int bodyStatements;        // statements of the body
+
+    /**
+     * Constructor.
+     * @param forNode the FOR loop's COMPOUND node.
+     * @param variable the control variable.
+     * @param accumulator the scalar accumulated into.
+     * @param operator ADD, SUBTRACT, or MULTIPLY.
+     * @param initNode the initial value expression.
+     * @param limitNode the limit expression.
+     * @param termNode the term expression.
+     * @param up true for TO, false for DOWNTO.
+     * @param bodyStatements the number of statements of the body.
+     */
+    public Reduction(Node forNode, SymtabEntry variable, SymtabEntry accumulator,
+                     Node.NodeType operator, Node initNode, Node limitNode,
+                     Node termNode, boolean up, int bodyStatements)
+    {
+        this.forNode        = forNode;
+        this.variable       = variable;
+        this.accumulator    = accumulator;
+        this.operator       = operator;
+        this.initNode       = initNode;
+        this.limitNode      = limitNode;
+        this.termNode       = termNode;
+        this.up             = up;
+        this.bodyStatements = bodyStatements;
+    }
+
+    /**
+     * Accumulate a term.
+     * @param value the accumulated value.
+     * @param term the term.
+     * @return the new accumulated value.
+     */
+    double accumulate(double value, double term)
+    {
+        switch (operator)
+        {
+            case ADD      : return value + term;
+            case SUBTRACT : return value - term;
+            default       : return value*term;
+        }
+    }
+
+    /**
+     * Combine two partial results of terms, which subtraction adds.
+     * @param left the partial result of the earlier terms.
+     * @param right the partial result of the later terms.
+     * @return the combined result.
+     */
+    double combine(double left, double right)
+    {
+        return operator == Node.NodeType.MULTIPLY ? left*right : left + right;
+    }
+
+    /**
+     * @return the identity of combine().
+     */
+    double identity()
+    {
+        return operator == Node.NodeType.MULTIPLY ? 1.0 : 0.0;
+    }
+}
@@ -0,0 +1,616 @@
+/**
+ * Engine benchmark for a simple interpreter.
+ *
+ * Differential testing and performance regression harness for the
+ * execution engines. It generates random programs and their input,
+ * checks that they parse without errors and that together they use
+ * every kind of parse tree node, and executes each one with its input
+ * on every engine: the tree-walking
+ * executor, with tiered loop compilation, iteratively, in SSA form,
+ * optimized, partially evaluated, with parallel loops, and with
+ * reassociated parallel reductions. Every engine must print the same
+ * output as the first engine, normally the executor, and the speedups
+ * are over the first engine. Reassociation may round differently, so its
+ * numbers only have to be close. Some of the programs end with a runtime
+ * error, and every engine must print the same error at the same line.
+ *
+ * Each engine runs in its own warmed-up server process, which is started
+ * with the engine's options. The first run of a program compiles it and
+ * is the one compared. The timed runs then execute the server's compiled
+ * program, and the median time of each program is appended to a CSV
+ * history file. An engine whose total time is more than the threshold
+ * slower than the median of its previous totals for the same programs
+ * is flagged. The exit status is 1 if an output diverged or an engine
+ * slowed down.
+ *
+ * Usage: java benchmark.EngineBenchmark [-programs n] [-seed n]
+ *            [-statements n] [-iterations n] [-runs n] [-threshold fraction]
+ *            [-history file] [-engines name,name,...]
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package benchmark;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import frontend.*;
+import intermediate.*;
+
+public class EngineBenchmark
+{
+    private static final int HISTORY_RUNS = 5;  // previous totals to compare
+    private static final String HISTORY_HEADER =
+        "time,seed,statements,iterations,program,engine,nanos";
+
+    /**
+     * An execution engine: the interpreter options that select it.
+     */
+    private static class Engine
+    {
+        String name;
+        String options[];
+        boolean exact;  // false if it may round differently
+
+        Engine(String name, boolean exact, String... options)
+        {
+            this.name    = name;
+            this.exact   = exact;
+            this.options = options;
+        }
+    }
+
+    private static final Engine ENGINES[] = {
+        new Engine("executor",    true,  "-notiering"),
+        new Engine("tiering",     true),
+        new Engine("iterative",   true,  "-iterative"),
+        new Engine("ssa",         true,  "-ssa"),
+        new Engine("optimize",    true,  "-optimize", "-notiering"),
+        new Engine("partial",     true,  "-partial", "-notiering"),
+        new Engine("parallel",    true,  "-parallel", "-notiering"),
+        new Engine("reassociate", false, "-parallel", "-reassociate",
+                                         "-notiering"),
+    };
+
+    // A number in the output.
+    private static final Pattern NUMBER =
+        Pattern.compile("-?(?:\\d+(?:\\.(\\d+))?|Infinity)|NaN");
+
+    private static int programCount = 20;
+    private static long seed = 1;
+    private static int statements = 30;
+    private static int iterations = 16;
+    private static int runs = 5;
+    private static double threshold = 0.2;
+    private static String historyFileName = "engine-history.csv";
+    private static List<Engine> engines = Arrays.asList(ENGINES);
+
+    public static void main(String args[])
+        throws IOException, InterruptedException
+    {
+        parseArguments(args);
+
+        String programs[] = new String[programCount];
+        String inputs[]   = new String[programCount];
+        for (int i = 0; i < programCount; i++)
+        {
+            ProgramGenerator generator = new ProgramGenerator(seed + i, iterations);
+            programs[i] = generator.generate(statements);
+            inputs[i]   = generator.generateInput(statements);
+        }
+
+        if (!checkPrograms(programs)) System.exit(1);
+
+        String expected[] = null;
+        long totals[] = new long[engines.size()];
+        long nanos[][] = new long[engines.size()][];
+        boolean diverged = false;
+
+        System.out.printf("%-12s %12s %9s  %s\n", "Engine", "Total", "Speedup",
+                          "Output");
+
+        for (int e = 0; e < engines.size(); e++)
+        {
+            Engine engine = engines.get(e);
+            String outputs[] = new String[programCount];
+            nanos[e] = run(engine, programs, inputs, outputs);
+
+            for (long time : nanos[e]) totals[e] += time;
+            if (expected == null) expected = outputs;
+
+            // Compare each program's output with the first engine's.
+            int divergences = 0;
+            for (int i = 0; i < programCount; i++)
+            {
+                String difference = compare(expected[i], outputs[i], engine.exact);
+                if (difference != null)
+                {
+                    if (divergences++ == 0) System.out.println();
+                    System.out.println("*** DIVERGENCE: " + engine.name
+                                       + " on program " + (seed + i) + ": "
+                                       + difference);
+                }
+            }
+
+            diverged |= divergences > 0;
+            System.out.printf("%-12s %9.2f ms %8.2fx  %s\n", engine.name,
+                              totals[e]/1e6, (double) totals[0]/totals[e],
+                              divergences == 0 ? "same"
+                                               : divergences + " diverged");
+        }
+
+        int errors = 0;
+        for (String output : expected)
+        {
+            if (output.contains("RUNTIME ERROR")) errors++;
+        }
+
+        System.out.println();
+        System.out.println(errors + " of the programs ended with a runtime error.");
+        System.out.println("Regenerate a program with: java benchmark.ProgramGenerator "
+                           + "seed " + statements + " " + iterations
+                           + " [-input]");
+
+        boolean slower = checkHistory(totals);
+        appendHistory(nanos);
+
+        if (diverged || slower) System.exit(1);
+    }
+
+    /**
+     * Parse the command-line options.
+     * @param args the command-line arguments.
+     */
+    private static void parseArguments(String args[])
+    {
+        for (int i = 0; i < args.length; i++)
+        {
+            boolean hasValue = i + 1 < args.length;
+
+            if      (args[i].equals("-programs") && hasValue)
+            {
+                programCount = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-seed") && hasValue)
+            {
+                seed = Long.parseLong(args[++i]);
+            }
+            else if (args[i].equals("-statements") && hasValue)
+            {
+                statements = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-iterations") && hasValue)
+            {
+                iterations = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-runs") && hasValue)
+            {
+                runs = Integer.parseInt(args[++i]);
+            }
+            else if (args[i].equals("-threshold") && hasValue)
+            {
+                threshold = Double.parseDouble(args[++i]);
+            }
+            else if (args[i].equals("-history") && hasValue)
+            {
+                historyFileName = args[++i];
+            }
+            else if (args[i].equals("-engines") && hasValue)
+            {
+                engines = new ArrayList<>();
+                for (String name : args[++i].split(","))
+                {
+                    Engine engine = findEngine(name);
+                    if (engine == null)
+                    {
+                        System.out.println("Unknown engine " + name);
+                        System.exit(-1);
+                    }
+
+                    engines.add(engine);
+                }
+            }
+            else
+            {
+                System.out.println("Usage: EngineBenchmark [-programs n] [-seed n] " +
+                                   "[-statements n] [-iterations n] [-runs n] " +
+                                   "[-threshold fraction] [-history file] " +
+                                   "[-engines name,name,...]");
+                System.exit(-1);
+            }
+        }
+    }
+
+    /**
+     * @param name an engine name.
+     * @return the engine, or null if there's none by that name.
+     */
+    private static Engine findEngine(String name)
+    {
+        for (Engine engine : ENGINES)
+        {
+            if (engine.name.equalsIgnoreCase(name)) return engine;
+        }
+
+        return null;
+    }
+
+    /**
+     * Check that the generated programs parse without errors,
+     * and that together they use every kind of parse tree node.
+     * @param programs the program texts.
+     * @return true if they do.
+     */
+    private static boolean checkPrograms(String programs[])
+    {
+        EnumSet<Node.NodeType> types = EnumSet.noneOf(Node.NodeType.class);
+        boolean valid = true;
+
+        for (int i = 0; i < programs.length; i++)
+        {
+            ByteArrayOutputStream messages = new ByteArrayOutputStream();
+            PrintStream out = new PrintStream(messages, true);
+
+            Symtab symtab = new Symtab();
+            Source source = new Source(programs[i].toCharArray());
+            Parser parser = new Parser(new TokenStream(new Scanner(source, symtab, out)),
+                                       symtab, out);
+            Node programNode = parser.parseProgram();
+
+            if (parser.errorCount() > 0)
+            {
+                System.out.println("*** ERROR: Generated program " + (seed + i)
+                                   + " is invalid:");
+                System.out.print(messages);
+                valid = false;
+            }
+            else collectTypes(programNode, types);
+        }
+
+        EnumSet<Node.NodeType> missing = EnumSet.complementOf(types);
+        if (valid && !missing.isEmpty())
+        {
+            System.out.println("*** ERROR: The programs don't use " + missing);
+            valid = false;
+        }
+
+        return valid;
+    }
+
+    /**
+     * Collect the node types of a parse tree.
+     * @param node the root of the tree.
+     * @param types the types so far.
+     */
+    private static void collectTypes(Node node, EnumSet<Node.NodeType> types)
+    {
+        if (node == null) return;
+
+        types.add(node.type);
+        for (Node child : node.children) collectTypes(child, types);
+    }
+
+    /**
+     * Run the programs on an engine in a new server process.
+     * @param engine the engine.
+     * @param programs the program texts.
+     * @param inputs the programs' input texts.
+     * @param outputs set to the output of each program's first run.
+     * @return the median nanoseconds of each program's timed runs.
+     */
+    private static long[] run(Engine engine, String programs[], String inputs[],
+                              String outputs[])
+        throws IOException, InterruptedException
+    {
+        Path directory = Files.createTempDirectory("engine-benchmark");
+        Path socket = directory.resolve("simple.sock");
+
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+                         .toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("Simple");
+        command.addAll(Arrays.asList(engine.options));
+        command.add("-serve");
+        command.add(socket.toString());
+
+        Process server = new ProcessBuilder(command).redirectErrorStream(true)
+                                                    .start();
+        long medians[] = new long[programs.length];
+
+        try
+        {
+            awaitListening(server);
+
+            for (int i = 0; i < programs.length; i++)
+            {
+                byte source[] = programs[i].getBytes(StandardCharsets.UTF_8);
+                byte input[]  = inputs[i].getBytes(StandardCharsets.US_ASCII);
+                outputs[i] = request(socket, source, input);
+
+                long times[] = new long[runs];
+                for (int r = 0; r < runs; r++)
+                {
+                    long start = System.nanoTime();
+                    String output = request(socket, source, input);
+                    times[r] = System.nanoTime() - start;
+
+                    // An engine must also agree with itself.
+                    if (!output.equals(outputs[i]))
+                    {
+                        outputs[i] = "nondeterministic output:\n" + output;
+                    }
+                }
+
+                Arrays.sort(times);
+                medians[i] = times[runs/2];
+            }
+        }
+        finally
+        {
+            server.destroy();
+            server.waitFor();
+            Files.deleteIfExists(socket);
+            Files.deleteIfExists(directory);
+        }
+
+        return medians;
+    }
+
+    /**
+     * Wait for a server to listen, and then discard the rest of its output.
+     * @param server the server process.
+     * @throws IOException if the server exited instead.
+     */
+    private static void awaitListening(Process server) throws IOException
+    {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(server.getInputStream()));
+
+        String line;
+        do
+        {
+            line = reader.readLine();
+            if (line == null) throw new IOException("The server exited");
+        } while (!line.startsWith("Listening on"));
+
+        Thread drain = new Thread(() ->
+        {
+            try
+            {
+                while (reader.readLine() != null) continue;
+            }
+            catch (IOException ignored) {}
+        });
+        drain.setDaemon(true);
+        drain.start();
+    }
+
+    /**
+     * Send a program and its input to a server to execute,
+     * and read its output.
+     * @param socket the server's socket path.
+     * @param source the program text.
+     * @param input the program input.
+     * @return the output.
+     */
+    private static String request(Path socket, byte source[], byte input[])
+        throws IOException
+    {
+        try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX))
+        {
+            channel.connect(UnixDomainSocketAddress.of(socket));
+
+            // The input follows the source, and the header says its length.
+            byte header[] = ("-execute " + input.length + "\n")
+                                .getBytes(StandardCharsets.US_ASCII);
+            ByteBuffer requests[] = { ByteBuffer.wrap(header),
+                                      ByteBuffer.wrap(source),
+                                      ByteBuffer.wrap(input) };
+            while (requests[2].hasRemaining()) channel.write(requests);
+            channel.shutdownOutput();
+
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            ByteBuffer buffer = ByteBuffer.allocate(8192);
+            while (channel.read(buffer) >= 0)
+            {
+                output.write(buffer.array(), 0, buffer.position());
+                buffer.clear();
+            }
+
+            return output.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Compare an engine's output with the expected output.
+     * @param expected the expected output.
+     * @param actual the engine's output.
+     * @param exact true to compare exactly, false to allow the numbers
+     *              to differ by rounding, except in error lines.
+     * @return a description of the first difference, or null if none.
+     */
+    static String compare(String expected, String actual, boolean exact)
+    {
+        if (expected.equals(actual)) return null;
+
+        String expectedLines[] = expected.split("\n", -1);
+        String actualLines[]   = actual.split("\n", -1);
+        int count = Math.min(expectedLines.length, actualLines.length);
+
+        for (int i = 0; i < count; i++)
+        {
+            if (   !expectedLines[i].equals(actualLines[i])
+                && (   exact || expectedLines[i].contains("ERROR")
+                    || !isClose(expectedLines[i], actualLines[i])))
+            {
+                return "line " + (i + 1) + " is '" + actualLines[i]
+                       + "' instead of '" + expectedLines[i] + "'";
+            }
+        }
+
+        return expectedLines.length == actualLines.length
+                ? null
+                : actualLines.length + " lines instead of " + expectedLines.length;
+    }
+
+    /**
+     * Compare two output lines whose numbers may differ by rounding.
+     * @param expected the expected line.
+     * @param actual the actual line.
+     * @return true if they're the same but for the rounding of the numbers.
+     */
+    private static boolean isClose(String expected, String actual)
+    {
+        Matcher expectedNumbers = NUMBER.matcher(expected);
+        Matcher actualNumbers   = NUMBER.matcher(actual);
+
+        String expectedText = expectedNumbers.replaceAll("#").replace(" ", "");
+        String actualText   = actualNumbers.replaceAll("#").replace(" ", "");
+        if (!expectedText.equals(actualText)) return false;
+
+        expectedNumbers.reset();
+        actualNumbers.reset();
+
+        while (expectedNumbers.find() && actualNumbers.find())
+        {
+            double a = Double.parseDouble(expectedNumbers.group());
+            double b = Double.parseDouble(actualNumbers.group());
+            if (a == b) continue;
+
+            // Allow a relative error, or a unit of the last printed digit.
+            String decimals = expectedNumbers.group(1);
+            double unit = Math.pow(10, decimals != null ? -decimals.length() : 0);
+
+            if (   !(Math.abs(a - b) <= 1e-9*Math.max(Math.abs(a), Math.abs(b)))
+                && !(Math.abs(a - b) <= unit))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Compare the engines' total times with their previous totals
+     * for the same programs, and print any slowdown. Only the previous
+     * benchmarks that ran exactly as many programs are compared.
+     * @param totals the engines' total times.
+     * @return true if an engine slowed down more than the threshold.
+     */
+    private static boolean checkHistory(long totals[]) throws IOException
+    {
+        Path path = Paths.get(historyFileName);
+        if (!Files.exists(path)) return false;
+
+        // The previous total times of each engine on the same programs,
+        // by engine name and the time of the benchmark, and how many
+        // programs each of those benchmarks ran.
+        HashMap<String, HashMap<String, Long>> previous = new HashMap<>();
+        HashMap<String, Integer> programsRun = new HashMap<>();
+        for (String line : Files.readAllLines(path))
+        {
+            String fields[] = line.split(",");
+            if (   (fields.length != 7) || line.equals(HISTORY_HEADER)
+                || (Long.parseLong(fields[1]) != seed)
+                || (Integer.parseInt(fields[2]) != statements)
+                || (Integer.parseInt(fields[3]) != iterations))
+            {
+                continue;
+            }
+
+            programsRun.merge(fields[0], Integer.parseInt(fields[4]) + 1,
+                              Math::max);
+            if (Integer.parseInt(fields[4]) >= programCount) continue;
+
+            previous.computeIfAbsent(fields[5], name -> new HashMap<>())
+                    .merge(fields[0], Long.parseLong(fields[6]), Long::sum);
+        }
+
+        boolean slower = false;
+        for (int e = 0; e < engines.size(); e++)
+        {
+            HashMap<String, Long> benchmarks = previous.get(engines.get(e).name);
+            if (benchmarks == null) continue;
+
+            // The median of the most recent totals.
+            ArrayList<String> times = new ArrayList<>(benchmarks.keySet());
+            times.removeIf(time -> programsRun.get(time) != programCount);
+            if (times.isEmpty()) continue;
+            times.sort(null);
+            List<String> recent = times.subList(Math.max(times.size() - HISTORY_RUNS, 0),
+                                                times.size());
+
+            long recentTotals[] = new long[recent.size()];
+            for (int i = 0; i < recentTotals.length; i++)
+            {
+                recentTotals[i] = benchmarks.get(recent.get(i));
+            }
+            Arrays.sort(recentTotals);
+            long baseline = recentTotals[recentTotals.length/2];
+
+            double change = (double) totals[e]/baseline - 1;
+            if (change > threshold)
+            {
+                System.out.printf("*** SLOWDOWN: %s took %.2f ms, %.0f%% more "
+                                  + "than its recent median of %.2f ms\n",
+                                  engines.get(e).name, totals[e]/1e6,
+                                  100*change, baseline/1e6);
+                slower = true;
+            }
+        }
+
+        return slower;
+    }
+
+    /**
+     * Append the programs' times to the history file.
+     * @param nanos the median nanoseconds by engine and program.
+     */
+    private static void appendHistory(long nanos[][]) throws IOException
+    {
+        Path path = Paths.get(historyFileName);
+        StringBuilder rows = new StringBuilder();
+        if (!Files.exists(path)) rows.append(HISTORY_HEADER).append('\n');
+
+        String time = Instant.now().toString();
+        for (int e = 0; e < engines.size(); e++)
+        {
+            for (int i = 0; i < programCount; i++)
+            {
+                rows.append(time).append(',').append(seed).append(',')
+                    .append(statements).append(',').append(iterations)
+                    .append(',').append(i).append(',')
+                    .append(engines.get(e).name).append(',')
+                    .append(nanos[e][i]).append('\n');
+            }
+        }
+
+        Files.write(path, rows.toString().getBytes(StandardCharsets.US_ASCII),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
@@ -0,0 +1,565 @@
+/**
+ * Program generator class for a simple interpreter.
+ *
+ * Generates random valid programs from the language's grammar, for
+ * differential testing of the execution engines. Together, the programs
+ * use every kind of parse tree node that the parser makes: each program
+ * has assignments, compound, IF, WHILE, REPEAT, and FOR statements, WRITE
+ * and WRITELN statements with strings and formatted values, and READ
+ * and READLN statements guarded by the end of input, with arithmetic,
+ * relational, and boolean expressions.
+ *
+ * A program runs to its end without a runtime error, unless it has a
+ * statement that's meant to fail. All the variables are assigned first,
+ * each loop has a counter that only the loop assigns and a small number
+ * of iterations, and a divisor is always a square plus one. About one
+ * program in four instead has a statement that fails, such as in one
+ * iteration of a loop: a division by zero, an assignment of a boolean
+ * value, or a READ at the end of input. So the engines' runtime errors
+ * can be compared too. The same seed always makes the same program.
+ *
+ * A program's input is generated after the program: lines of numbers,
+ * at least two on the first line for the program's first READ. The READ
+ * and READLN statements in between read some of them, and a loop at the
+ * end reads the rest. Only the first READ reads more than one number,
+ * so no READ runs past the end of input, except one that's meant to.
+ *
+ * Usage: java benchmark.ProgramGenerator [seed [statements [iterations [-input]]]]
+ * prints the program, or with -input, its input.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package benchmark;
+
+import java.util.Random;
+
+public class ProgramGenerator
+{
+    private static final int VARIABLE_COUNT     = 6;  // v0, v1, ...
+    private static final int MAX_DEPTH          = 3;  // of nested statements
+    private static final int DEFAULT_ITERATIONS = 8;  // of a loop, at most
+    private static final int MAX_EXPRESSION     = 3;  // depth of an expression
+    private static final int FAULT_ODDS         = 4;  // one program in this many fails
+
+    private static final String WORDS[] = {
+        "alpha", "beta", "gamma", "delta", "sum", "value", "result", "ok"
+    };
+
+    private Random random;
+    private int maxIterations;   // of a loop
+    private StringBuilder text;
+    private int indent;
+    private int loopDepth;   // counters c0 .. c(loopDepth-1) are in use
+
+    /**
+     * Constructor.
+     * @param seed the seed of the random choices.
+     */
+    public ProgramGenerator(long seed)
+    {
+        this(seed, DEFAULT_ITERATIONS);
+    }
+
+    /**
+     * Constructor.
+     * @param seed the seed of the random choices.
+     * @param maxIterations the most iterations of a loop, which
+     *                      scales how long the programs run.
+     */
+    public ProgramGenerator(long seed, int maxIterations)
+    {
+        this.random = new Random(seed);
+        this.maxIterations = maxIterations;
+    }
+
+    public static void main(String args[])
+    {
+        long seed      = args.length > 0 ? Long.parseLong(args[0]) : 1;
+        int statements = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int iterations = args.length > 2 ? Integer.parseInt(args[2])
+                                         : DEFAULT_ITERATIONS;
+        boolean input  = (args.length > 3) && args[3].equals("-input");
+
+        ProgramGenerator generator = new ProgramGenerator(seed, iterations);
+        String program = generator.generate(statements);
+
+        System.out.print(input ? generator.generateInput(statements) : program);
+    }
+
+    /**
+     * Generate a program.
+     * @param statements the number of top-level statements after
+     *                   the variables are assigned.
+     * @return the program text.
+     */
+    public String generate(int statements)
+    {
+        text = new StringBuilder();
+        indent = 1;
+        loopDepth = 0;
+
+        text.append("PROGRAM Generated;\n\nBEGIN\n");
+
+        // Assign every variable before any statement can use it.
+        for (int i = 0; i < VARIABLE_COUNT; i++)
+        {
+            line("v" + i + " := " + constant() + ";");
+        }
+
+        // An input statement, which doesn't read at the end of input.
+        line("IF NOT EOF THEN read(v0, v1);");
+
+        // The top-level statement that fails, if any.
+        int faultAt = random.nextInt(FAULT_ODDS) == 0 ? random.nextInt(statements)
+                                                      : -1;
+
+        for (int i = 0; i < statements; i++)
+        {
+            if (i == faultAt) fault();
+            else              statement(0);
+            text.append(";\n");
+        }
+
+        // Read the rest of the input.
+        line("WHILE NOT EOF DO readln(" + variable() + ");");
+
+        // Print every variable at the end.
+        for (int i = 0; i < VARIABLE_COUNT; i++)
+        {
+            line("write('v" + i + " = '); writeln(v" + i + ":1:4);");
+        }
+
+        text.append("END.\n");
+        return text.toString();
+    }
+
+    /**
+     * Generate the input of the program that was just generated.
+     * @param lines the most lines of input.
+     * @return the input text.
+     */
+    public String generateInput(int lines)
+    {
+        StringBuilder input = new StringBuilder();
+
+        for (int i = 1 + random.nextInt(lines); i > 0; i--)
+        {
+            int count = (input.length() == 0 ? 2 : 1) + random.nextInt(3);
+            for (int j = 0; j < count; j++)
+            {
+                if (j > 0) input.append(' ');
+                input.append(random.nextBoolean()
+                                 ? String.valueOf(random.nextInt(41) - 20)
+                                 : String.valueOf((random.nextInt(2001) - 1000)/100.0));
+            }
+
+            input.append('\n');
+        }
+
+        return input.toString();
+    }
+
+    /**
+     * Start a line of a statement at the current indentation.
+     */
+    private void indent()
+    {
+        for (int i = 0; i < indent; i++) text.append("    ");
+    }
+
+    /**
+     * Append a whole line at the current indentation.
+     * @param line the line.
+     */
+    private void line(String line)
+    {
+        indent();
+        text.append(line).append('\n');
+    }
+
+    /**
+     * Generate a statement, without the semicolon after it.
+     * @param depth the nesting depth of the statement.
+     */
+    private void statement(int depth)
+    {
+        int choice = depth < MAX_DEPTH ? random.nextInt(12) : random.nextInt(4);
+
+        // Print less inside loops.
+        if ((loopDepth > 0) && (choice >= 2) && (choice <= 3)
+                            && (random.nextInt(4) > 0))
+        {
+            choice = 0;
+        }
+
+        switch (choice)
+        {
+            case 0  :
+            case 1  : assignment(); break;
+            case 2  : write();      break;
+            case 3  : writeln();    break;
+            case 4  : compound(depth); break;
+            case 5  :
+            case 6  : ifStatement(depth); break;
+            case 7  : whileStatement(depth); break;
+            case 8  : repeatStatement(depth); break;
+            case 9  : forStatement(depth); break;
+            case 10 : reduction(); break;
+            default : input(); break;
+        }
+    }
+
+    private void assignment()
+    {
+        indent();
+        text.append(variable()).append(" := ").append(expression(0));
+    }
+
+    private void write()
+    {
+        indent();
+        text.append("write(").append(writeArgument()).append(")");
+    }
+
+    private void writeln()
+    {
+        indent();
+        text.append(random.nextInt(4) == 0 ? "writeln"
+                                           : "writeln(" + writeArgument() + ")");
+    }
+
+    /**
+     * @return a string, or a variable with a field width and
+     * decimal places.
+     */
+    private String writeArgument()
+    {
+        switch (random.nextInt(5))
+        {
+            case 0  : return "'" + WORDS[random.nextInt(WORDS.length)] + " '";
+            case 1  : return "'" + (char) ('a' + random.nextInt(26)) + "'";
+            case 2  : return variable();
+            case 3  : return variable() + ":" + (8 + random.nextInt(8));
+            default : return variable() + ":" + (8 + random.nextInt(8))
+                                         + ":" + random.nextInt(4);
+        }
+    }
+
+    /**
+     * Generate a compound statement.
+     * @param depth the nesting depth of the statement.
+     */
+    private void compound(int depth)
+    {
+        indent();
+        text.append("BEGIN\n");
+        statements(depth + 1, null);
+        indent();
+        text.append("END");
+    }
+
+    /**
+     * Generate one to three statements on their own lines,
+     * separated by semicolons.
+     * @param depth the nesting depth of the statements.
+     * @param last a last statement to append, or null.
+     */
+    private void statements(int depth, String last)
+    {
+        int count = 1 + random.nextInt(3);
+
+        indent++;
+        for (int i = 0; i < count; i++)
+        {
+            statement(depth);
+            text.append(i < count - 1 ? ";\n" : "\n");
+        }
+
+        if (last != null)
+        {
+            text.setLength(text.length() - 1);
+            text.append(";\n");
+            line(last);
+        }
+        indent--;
+    }
+
+    /**
+     * Generate a statement that's nested on the next lines.
+     * @param depth the nesting depth of the statement.
+     */
+    private void nested(int depth)
+    {
+        text.append('\n');
+        indent++;
+        statement(depth);
+        indent--;
+    }
+
+    private void ifStatement(int depth)
+    {
+        indent();
+        text.append("IF ").append(condition(0)).append(" THEN");
+        nested(depth + 1);
+
+        if (random.nextBoolean())
+        {
+            text.append('\n');
+            indent();
+            text.append("ELSE");
+            nested(depth + 1);
+        }
+    }
+
+    /**
+     * Generate a WHILE loop, in a compound statement with the assignment
+     * of its counter, so that it's a single statement.
+     * @param depth the nesting depth of the statement.
+     */
+    private void whileStatement(int depth)
+    {
+        String counter = "c" + loopDepth;
+        int limit = 1 + random.nextInt(maxIterations);
+
+        line("BEGIN");
+        indent++;
+        line(counter + " := 0;");
+        line("WHILE " + counter + " < " + limit + " DO BEGIN");
+
+        loopDepth++;
+        statements(depth + 1, counter + " := " + counter + " + 1");
+        loopDepth--;
+
+        line("END");
+        indent--;
+        indent();
+        text.append("END");
+    }
+
+    /**
+     * Generate a REPEAT loop, in a compound statement with the assignment
+     * of its counter, so that it's a single statement.
+     * @param depth the nesting depth of the statement.
+     */
+    private void repeatStatement(int depth)
+    {
+        String counter = "c" + loopDepth;
+        int limit = 1 + random.nextInt(maxIterations);
+
+        line("BEGIN");
+        indent++;
+        line(counter + " := 0;");
+        line("REPEAT");
+
+        loopDepth++;
+        statements(depth + 1, counter + " := " + counter + " + 1");
+        loopDepth--;
+
+        line("UNTIL " + counter + " >= " + limit);
+        indent--;
+        indent();
+        text.append("END");
+    }
+
+    private void forStatement(int depth)
+    {
+        String counter = "c" + loopDepth;
+        int low = random.nextInt(3);
+        int high = low + random.nextInt(maxIterations);
+
+        indent();
+        if (random.nextBoolean())
+        {
+            text.append("FOR ").append(counter).append(" := ").append(low)
+                .append(" TO ").append(high).append(" DO");
+        }
+        else
+        {
+            text.append("FOR ").append(counter).append(" := ").append(high)
+                .append(" DOWNTO ").append(low).append(" DO");
+        }
+
+        loopDepth++;
+        nested(depth + 1);
+        loopDepth--;
+    }
+
+    /**
+     * Generate a FOR loop that only accumulates into a variable,
+     * which the executors may run as a parallel reduction.
+     */
+    private void reduction()
+    {
+        String counter = "c" + loopDepth;
+        String accumulator = variable();
+        String operators[] = { "+", "-", "*" };
+        String operator = operators[random.nextInt(operators.length)];
+
+        // Keep products small.
+        String term = operator.equals("*") ? "(1 + " + counter + "/("
+                                             + counter + "*" + counter + " + 7))"
+                                           : "(" + counter + "*" + counter
+                                             + " + " + constant() + ")";
+
+        indent();
+        text.append("FOR ").append(counter).append(" := 1 TO ")
+            .append(1 + random.nextInt(4*maxIterations))
+            .append(" DO ").append(accumulator).append(" := ")
+            .append(accumulator).append(" ").append(operator).append(" ")
+            .append(term);
+    }
+
+    /**
+     * Generate a top-level statement that fails with a runtime error:
+     * a division by zero, an assignment of a boolean value, or a READ
+     * after the rest of the input is read. Half of them fail in an
+     * iteration of a FOR loop.
+     */
+    private void fault()
+    {
+        String statement;
+        switch (random.nextInt(3))
+        {
+            case 0 :
+            {
+                String zero = variable();
+                statement = variable() + " := " + factor(0) + "/("
+                                       + zero + " - " + zero + ")";
+                break;
+            }
+
+            case 1 :
+                statement = variable() + " := " + condition(MAX_EXPRESSION);
+                break;
+
+            default :
+                statement = "BEGIN WHILE NOT EOF DO readln(" + variable()
+                                   + "); read(" + variable() + ") END";
+                break;
+        }
+
+        indent();
+        if (random.nextBoolean())
+        {
+            text.append("FOR c0 := 1 TO ").append(maxIterations)
+                .append(" DO IF c0 = ").append(1 + random.nextInt(maxIterations))
+                .append(" THEN ");
+        }
+        text.append(statement);
+    }
+
+    /**
+     * Generate an input statement, which doesn't read at the end of input.
+     */
+    private void input()
+    {
+        indent();
+        text.append(random.nextBoolean() ? "IF EOF THEN " + variable() + " := "
+                                            + expression(0)
+                                            + " ELSE read(" + variable() + ")"
+                                         : "IF NOT EOF THEN readln");
+    }
+
+    /**
+     * Generate a numeric expression.
+     * @param depth the nesting depth of the expression.
+     * @return the expression.
+     */
+    private String expression(int depth)
+    {
+        String expression = term(depth);
+
+        int count = random.nextInt(3);
+        for (int i = 0; i < count; i++)
+        {
+            expression += (random.nextBoolean() ? " + " : " - ") + term(depth);
+        }
+
+        return expression;
+    }
+
+    /**
+     * @param depth the nesting depth of the expression.
+     * @return a term.
+     */
+    private String term(int depth)
+    {
+        String term = factor(depth);
+        String divisor;
+
+        switch (random.nextInt(5))
+        {
+            case 0  : return term + "*" + factor(depth);
+            case 1  : divisor = factor(depth);
+                      return term + "/(" + divisor + "*" + divisor + " + 1)";
+            case 2  : return term + " DIV 2";
+            default : return term;
+        }
+    }
+
+    /**
+     * @param depth the nesting depth of the expression.
+     * @return a factor.
+     */
+    private String factor(int depth)
+    {
+        int choice = depth < MAX_EXPRESSION ? random.nextInt(6)
+                                            : random.nextInt(4);
+        switch (choice)
+        {
+            case 0  :
+            case 1  : return variable();
+            case 2  : return loopDepth > 0 ? "c" + random.nextInt(loopDepth)
+                                           : constant();
+            case 3  : return constant();
+            default : return "(" + expression(depth + 1) + ")";
+        }
+    }
+
+    /**
+     * Generate a boolean expression. A comparison or a combination
+     * is parenthesized, because the relational and boolean operators
+     * have the same precedence.
+     * @param depth the nesting depth of the expression.
+     * @return the expression.
+     */
+    private String condition(int depth)
+    {
+        String relations[] = { " = ", " <> ", " < ", " <= ", " > ", " >= " };
+
+        switch (depth < MAX_EXPRESSION ? random.nextInt(5) : 0)
+        {
+            case 0  :
+            case 1  : return "(" + expression(MAX_EXPRESSION)
+                                 + relations[random.nextInt(relations.length)]
+                                 + expression(MAX_EXPRESSION) + ")";
+            case 2  : return "(" + condition(depth + 1) + " AND "
+                                 + condition(depth + 1) + ")";
+            case 3  : return "(" + condition(depth + 1) + " OR "
+                                 + condition(depth + 1) + ")";
+            default : return "(NOT " + condition(depth + 1) + ")";
+        }
+    }
+
+    /**
+     * @return a variable name.
+     */
+    private String variable()
+    {
+        return "v" + random.nextInt(VARIABLE_COUNT);
+    }
+
+    /**
+     * @return an integer or real constant, possibly negative.
+     */
+    private String constant()
+    {
+        String sign = random.nextInt(4) == 0 ? "-" : "";
+
+        return random.nextBoolean() ? sign + random.nextInt(20)
+                                    : sign + random.nextInt(10) + "."
+                                           + (random.nextInt(4)*25);
+    }
+}
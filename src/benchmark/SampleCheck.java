@@ -0,0 +1,151 @@
+/**
+ * Sample check for a simple interpreter.
+ *
+ * Correctness check of the optimizer on the sample programs. It executes
+ * every *.txt sample in a directory on every executor, the tree-walking
+ * executor with and without tiered loop compilation, the iterative
+ * executor, and the SSA form, each with and without -optimize. Every run
+ * must print the same output as the tree-walking executor without
+ * optimization. Each run is a separate interpreter process with no input.
+ * The exit status is 1 if any output differed.
+ *
+ * Usage: java benchmark.SampleCheck [directory]
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package benchmark;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class SampleCheck
+{
+    private static final long TIMEOUT_SECONDS = 60;  // per run
+
+    // The executors, by their interpreter options.
+    private static final String EXECUTORS[][] = {
+        { "-notiering" },
+        { },
+        { "-iterative" },
+        { "-ssa" },
+    };
+
+    public static void main(String args[])
+        throws IOException, InterruptedException
+    {
+        if (args.length > 1)
+        {
+            System.out.println("Usage: SampleCheck [directory]");
+            System.exit(-1);
+        }
+
+        Path directory = Paths.get(args.length > 0 ? args[0] : ".");
+        ArrayList<Path> samples = new ArrayList<>();
+        try (DirectoryStream<Path> stream =
+                    Files.newDirectoryStream(directory, "*.txt"))
+        {
+            for (Path sample : stream) samples.add(sample);
+        }
+        samples.sort(null);
+
+        if (samples.isEmpty())
+        {
+            System.out.println("*** ERROR: No *.txt samples in " + directory);
+            System.exit(-1);
+        }
+
+        int differences = 0;
+        for (Path sample : samples)
+        {
+            String expected = null;
+            int sampleDifferences = 0;
+
+            for (String executor[] : EXECUTORS)
+            {
+                for (boolean optimize : new boolean[] { false, true })
+                {
+                    List<String> options = new ArrayList<>(Arrays.asList(executor));
+                    if (optimize) options.add("-optimize");
+
+                    String output = execute(options, sample);
+                    if (expected == null)
+                    {
+                        expected = output;
+                        continue;
+                    }
+
+                    String difference = EngineBenchmark.compare(expected, output,
+                                                                true);
+                    if (difference != null)
+                    {
+                        System.out.println("*** DIFFERENCE: " + sample.getFileName()
+                                           + " with " + options + ": "
+                                           + difference);
+                        sampleDifferences++;
+                    }
+                }
+            }
+
+            System.out.printf("%-24s %s\n", sample.getFileName(),
+                              sampleDifferences == 0
+                                  ? "same" : sampleDifferences + " differed");
+            differences += sampleDifferences;
+        }
+
+        if (differences > 0) System.exit(1);
+    }
+
+    /**
+     * Execute a program in a new interpreter process with no input.
+     * @param options the interpreter options.
+     * @param sample the program's source file.
+     * @return the output.
+     */
+    private static String execute(List<String> options, Path sample)
+        throws IOException, InterruptedException
+    {
+        List<String> command = new ArrayList<>();
+        command.add(Paths.get(System.getProperty("java.home"), "bin", "java")
+                         .toString());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add("Simple");
+        command.addAll(options);
+        command.add("-execute");
+        command.add(sample.toString());
+
+        Path output = Files.createTempFile("sample-check", ".out");
+
+        try
+        {
+            Process process = new ProcessBuilder(command)
+                                      .redirectErrorStream(true)
+                                      .redirectOutput(output.toFile())
+                                      .start();
+            process.getOutputStream().close();  // no input
+
+            if (!process.waitFor(TIMEOUT_SECONDS, TimeUnit.SECONDS))
+            {
+                process.destroyForcibly();
+                process.waitFor();
+                return "timed out after " + TIMEOUT_SECONDS + " seconds";
+            }
+
+            return new String(Files.readAllBytes(output), Charset.defaultCharset());
+        }
+        finally
+        {
+            Files.deleteIfExists(output);
+        }
+    }
+}
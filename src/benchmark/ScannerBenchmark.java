@@ -0,0 +1,181 @@
+/**
+ * Scanner microbenchmark for a simple interpreter.
+ *
+ * Compares the table-driven DFA scanner against the original
+ * character-at-a-time scanner that dispatches on the Unicode
+ * character predicates and calls the Token factory methods.
+ *
+ * Usage: java benchmark.ScannerBenchmark [megabytes [iterations]]
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package benchmark;
+
+import frontend.*;
+
+import static frontend.Token.TokenType.*;
+
+public class ScannerBenchmark
+{
+    private static final int WARMUP_ITERATIONS = 5;
+
+    public static void main(String args[])
+    {
+        int megabytes  = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        char text[] = generateProgram(megabytes*1024*1024);
+        System.out.printf("Source: %,d characters\n", text.length);
+
+        checkSameTokens(text);
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+        {
+            scanOriginal(text);
+            scanDfa(text);
+        }
+
+        long originalTime = 0;
+        long dfaTime = 0;
+        int tokenCount = 0;
+
+        for (int i = 0; i < iterations; i++)
+        {
+            long start = System.nanoTime();
+            tokenCount = scanOriginal(text);
+            originalTime += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            scanDfa(text);
+            dfaTime += System.nanoTime() - start;
+        }
+
+        report("Original scanner", text.length, tokenCount, originalTime/iterations);
+        report("DFA scanner",      text.length, tokenCount, dfaTime/iterations);
+    }
+
+    /**
+     * Generate a program text with a mix of all the kinds of tokens.
+     * @param size the approximate number of characters to generate.
+     * @return the program text.
+     */
+    static char[] generateProgram(int size)
+    {
+        StringBuilder text = new StringBuilder(size + 1024);
+        text.append("PROGRAM Generated;\n{A generated program.}\nBEGIN\n");
+
+        for (int i = 0; text.length() < size; i++)
+        {
+            text.append("    alpha").append(i%97).append(" := (beta")
+                .append(i%89).append(" + ").append(i).append(") * 3.14159 - gamma")
+                .append(i%83).append(" DIV 7;\n");
+            text.append("    IF alpha").append(i%97).append(" <= ")
+                .append(i).append(".5 THEN writeln('It''s line ")
+                .append(i).append("', x:10:2) ELSE write('no'); {comment}\n");
+        }
+
+        text.append("END.\n");
+        return text.toString().toCharArray();
+    }
+
+    /**
+     * Scan with the original scanner.
+     * @param text the source text.
+     * @return the number of tokens.
+     */
+    private static int scanOriginal(char text[])
+    {
+        Source source = new Source(text);
+        int count = 0;
+
+        for (Token token = originalNextToken(source);
+             token.type != END_OF_FILE;
+             token = originalNextToken(source))
+        {
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Scan with the DFA scanner.
+     * @param text the source text.
+     * @return the number of tokens.
+     */
+    private static int scanDfa(char text[])
+    {
+        Scanner scanner = new Scanner(new Source(text));
+        int count = 0;
+
+        for (Token token = scanner.nextToken();
+             token.type != END_OF_FILE;
+             token = scanner.nextToken())
+        {
+            count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Verify that both scanners produce the same tokens.
+     * @param text the source text.
+     */
+    private static void checkSameTokens(char text[])
+    {
+        Source source = new Source(text);
+        Scanner scanner = new Scanner(new Source(text));
+        Token original, dfa;
+
+        do
+        {
+            original = originalNextToken(source);
+            dfa = scanner.nextToken();
+
+            if (   (original.type != dfa.type)
+                || (original.lineNumber != dfa.lineNumber)
+                || !original.text.equals(dfa.text))
+            {
+                System.out.printf("*** Token mismatch at line %d: '%s' vs. '%s'\n",
+                                  original.lineNumber, original.text, dfa.text);
+                System.exit(-1);
+            }
+        } while (original.type != END_OF_FILE);
+    }
+
+    /**
+     * The original scanner's token dispatch.
+     * @param source the input source.
+     * @return the next token.
+     */
+    private static Token originalNextToken(Source source)
+    {
+        char ch = source.currentChar();
+
+        // Skip blanks, comments, and other whitespace characters.
+        while ((ch == '{') || Character.isWhitespace(ch))
+        {
+            if (ch == '{')
+            {
+                while ((ch != '}') && (ch != Source.EOF)) ch = source.nextChar();
+            }
+
+            ch = source.nextChar();
+        }
+
+        if (Character.isLetter(ch))     return Token.word(ch, source);
+        else if (Character.isDigit(ch)) return Token.number(ch, source);
+        else if (ch == '\'')            return Token.characterOrString(ch, source);
+        else                            return Token.specialSymbol(ch, source);
+    }
+
+    private static void report(String name, int length, int tokenCount, long nanos)
+    {
+        System.out.printf("%-18s %8.2f ms  %8.1f MB/s  %6.1f ns/token\n",
+                          name, nanos/1e6, (length/1e6)/(nanos/1e9),
+                          (double) nanos/tokenCount);
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Startup benchmark for a simple interpreter.
+ *
+ * Measures how long a one-shot run of the interpreter takes from
+ * launching the JVM to its first byte of output, and to its exit.
+ * Each configuration runs the program in a fresh JVM several times,
+ * and the median times are reported. The configurations are without
+ * class data sharing, with the JDK's default archive, and with an
+ * application archive built by scripts/appcds.sh.
+ *
+ * Usage: StartupBenchmark jarFile [archiveFile] [sourceFileName] [runs]
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+public class StartupBenchmark
+{
+    private static final int DEFAULT_RUNS = 20;
+
+    public static void main(String args[]) throws IOException, InterruptedException
+    {
+        if (args.length < 1)
+        {
+            System.out.println("Usage: StartupBenchmark jarFile [archiveFile] " +
+                               "[sourceFileName] [runs]");
+            System.exit(-1);
+        }
+
+        String jarFile        = args[0];
+        String archiveFile    = args.length > 1 ? args[1] : null;
+        String sourceFileName = args.length > 2 ? args[2] : "HelloWorld.txt";
+        int runs = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_RUNS;
+
+        String java = Paths.get(System.getProperty("java.home"),
+                                "bin", "java").toString();
+
+        System.out.printf("%-24s %14s %14s\n", "Configuration",
+                          "First output", "Exit");
+
+        measure("No CDS", runs, java, "-Xshare:off",
+                "-cp", jarFile, "Simple", "-execute", sourceFileName);
+        measure("JDK CDS", runs, java,
+                "-cp", jarFile, "Simple", "-execute", sourceFileName);
+
+        if (archiveFile != null)
+        {
+            measure("AppCDS", runs, java,
+                    "-XX:SharedArchiveFile=" + archiveFile,
+                    "-cp", jarFile, "Simple", "-execute", sourceFileName);
+            measure("AppCDS, C1 only", runs, java,
+                    "-XX:SharedArchiveFile=" + archiveFile,
+                    "-XX:TieredStopAtLevel=1",
+                    "-cp", jarFile, "Simple", "-execute", sourceFileName);
+        }
+    }
+
+    /**
+     * Run a command several times and print the median times.
+     * @param name the configuration name.
+     * @param runs the number of runs.
+     * @param command the command and its arguments.
+     */
+    private static void measure(String name, int runs, String... command)
+        throws IOException, InterruptedException
+    {
+        List<String> commandList = new ArrayList<>(Arrays.asList(command));
+        long firstOutput[] = new long[runs];
+        long exit[] = new long[runs];
+
+        // Warm up the file system cache.
+        run(commandList, new long[2]);
+
+        for (int i = 0; i < runs; i++)
+        {
+            long times[] = new long[2];
+            run(commandList, times);
+
+            firstOutput[i] = times[0];
+            exit[i]        = times[1];
+        }
+
+        System.out.printf("%-24s %11.1f ms %11.1f ms\n", name,
+                          median(firstOutput)/1e6, median(exit)/1e6);
+    }
+
+    /**
+     * Run a command once.
+     * @param command the command and its arguments.
+     * @param times set to the nanoseconds to the first output and to exit.
+     */
+    private static void run(List<String> command, long times[])
+        throws IOException, InterruptedException
+    {
+        long start = System.nanoTime();
+        Process process = new ProcessBuilder(command).redirectErrorStream(true)
+                                                     .start();
+
+        InputStream in = process.getInputStream();
+        in.read();
+        times[0] = System.nanoTime() - start;
+
+        in.transferTo(OutputStream.nullOutputStream());
+        process.waitFor();
+        times[1] = System.nanoTime() - start;
+    }
+
+    /**
+     * Compute the median of a set of times.
+     * @param times the times, which are sorted in place.
+     * @return the median time.
+     */
+    private static long median(long times[])
+    {
+        Arrays.sort(times);
+        return times[times.length/2];
+    }
+}
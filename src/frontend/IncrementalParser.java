@@ -0,0 +1,809 @@
+/**
+ * Incremental parser class for a simple interpreter.
+ *
+ * Keeps the token stream and the parse tree of a source text that is
+ * being edited, such as in an editor, and parses the text again after
+ * each edit. Only the tokens around the edit are scanned again, from the
+ * token before the edit until a token starts at the same place in the
+ * unchanged text after the edit as an old token did. From there on, the
+ * scanner would make the same tokens as before, so the old ones are
+ * moved instead.
+ *
+ * The parser then reuses the parse tree of each statement, such as
+ * a compound statement, that a previous parse made from the same
+ * unchanged tokens without any error. A statement's parse depends only
+ * on its tokens, the one token after it, and which variables are
+ * already declared. So each reused statement keeps a summary of the
+ * variables that it uses before assigning them, which must be declared,
+ * and the ones that it assigns or reads, which it declares. Only the
+ * statements that contain the edit are parsed again, and each of their
+ * unchanged statements is reused as a whole.
+ *
+ * The statements of a statement list are also kept in runs, which are
+ * reused the same way, so a long list isn't visited statement by statement.
+ *
+ * The statements and runs are kept in arrays parallel to the tokens, by
+ * their first tokens, so they move with the tokens without being looked up.
+ * A statement's line numbers are moved only when it's reused, by
+ * comparing its node's line number with its first token's line.
+ *
+ * Names are case insensitive, and a name is spelled as where it first
+ * occurs in the text. So an edit that involves a name that the text
+ * spells in more than one way parses the whole text again.
+ *
+ * As for a text that was tokenized before parsing, any token errors are
+ * reported before the syntax errors. The parse trees are the incremental
+ * parser's own: a tree must be copied before it's transformed.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package frontend;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+
+import intermediate.*;
+
+import static frontend.Token.TokenType.*;
+
+public class IncrementalParser
+{
+    private static final int DEAD_WORDS = 1 << 14;  // before starting over
+    private static final int RUN_SIZE   = 64;       // statements per run
+
+    /**
+     * The variables of a part of the parse.
+     */
+    static class Summary
+    {
+        int uses[];      // IDs of the variables used before being assigned
+        int defs[];      // IDs of the variables assigned or read
+    }
+
+    /**
+     * A statement of the previous parse that can be reused.
+     */
+    static class Statement extends Summary
+    {
+        Node node;       // the root of the statement's parse tree
+        int length;      // number of tokens
+        int endLines;    // lines from the first token to the parser's
+                         // line number after the statement
+    }
+
+    /**
+     * A run of consecutive statements of a statement list, with the
+     * semicolons after them, that can be reused together.
+     */
+    static class Run extends Summary
+    {
+        Node nodes[];    // the statement nodes, without the empty statements
+        int length;      // number of tokens
+        int nodeOffset;  // tokens before the first node's first token
+        int endLines;    // lines from the first token to the parser's
+                         // line number after the run
+    }
+
+    /**
+     * The statement list that the parser is parsing. It keeps the list's
+     * statements in runs of up to RUN_SIZE statements without any errors,
+     * which the next parse can reuse without visiting each statement.
+     */
+    class StatementList
+    {
+        private Node parentNode;  // adopts the statements
+        private int first;        // stream index of the pending run
+        private int children;     // index of its first node in the parent
+        private int nodeOffset;   // tokens before its first node, or -1
+        private int count;        // statements in the pending run
+        private int endLine;      // the parser's line number after them
+        private int logged;       // log position of their variable events
+        private int problems;     // the parser's problems before them
+
+        /**
+         * Constructor.
+         * @param parentNode the node that adopts the statements.
+         * @param first the stream index of the list's first token.
+         * @param problems the parser's number of problems so far.
+         */
+        private StatementList(Node parentNode, int first, int problems)
+        {
+            this.parentNode = parentNode;
+            restart(first, problems);
+        }
+
+        /**
+         * Start a new pending run.
+         * @param index the stream index of its first token.
+         * @param problemCount the parser's number of problems so far.
+         */
+        private void restart(int index, int problemCount)
+        {
+            first      = index;
+            children   = parentNode.children.size();
+            nodeOffset = -1;
+            count      = 0;
+            logged     = logSize;
+            problems   = problemCount;
+        }
+
+        /**
+         * Add a statement that the parser parsed or reused as a whole,
+         * together with the semicolons after it, to the pending run.
+         * @param start the stream index of the statement's first token.
+         * @param node the statement node, or null.
+         * @param end the stream index just past the semicolons.
+         * @param line the parser's line number after the statement.
+         * @param problemCount the parser's number of problems so far.
+         */
+        void parsed(int start, Node node, int end, int line, int problemCount)
+        {
+           
+            if (problemCount != problems)
+            {
+                restart(end, problemCount);
+                return;
+            }
+
+            if ((node != null) && (nodeOffset < 0)) nodeOffset = start - first;
+            endLine = line;
+
+            if (++count == RUN_SIZE) finish(end);
+        }
+
+        /**
+         * Keep the pending run, and start a new one.
+         * @param end the stream index just past the pending run.
+         */
+        void finish(int end)
+        {
+            if (count > 0)
+            {
+                Run run = new Run();
+                run.nodes = parentNode.children
+                                      .subList(children, parentNode.children.size())
+                                      .toArray(new Node[0]);
+                run.length     = end - first;
+                run.nodeOffset = nodeOffset;
+                run.endLines   = endLine - tokens.lineAt(first);
+                summarize(logged, run);
+
+                parsedRuns[first] = run;
+            }
+
+            restart(end, problems);
+        }
+
+        /**
+         * Reuse a run of a previous parse, and move its line numbers
+         * if its tokens moved.
+         * @param run the run.
+         * @param index its stream index.
+         * @return the parser's line number after the run.
+         */
+        int reuse(Run run, int index)
+        {
+            finish(index);
+
+            if (run.nodeOffset >= 0)
+            {
+                Node firstNode = run.nodes[0];
+                int lines = tokens.lineAt(index + run.nodeOffset)
+                          - firstNode.lineNumber;
+
+                if (lines != 0)
+                {
+                    for (Node node : run.nodes) moveLines(node, lines);
+                }
+            }
+
+            for (Node node : run.nodes) parentNode.adopt(node);
+            copy(index, run.length, runs[oldIndex(index)]);
+
+            // The run's summary stands for its variables.
+            for (int id : run.uses) log(~id);
+            for (int id : run.defs) log(id);
+
+            reusedCount++;
+            restart(index + run.length, problems);
+
+            return tokens.lineAt(index) + run.endLines;
+        }
+    }
+
+    /**
+     * A token error, which is reported again while the token is unchanged.
+     */
+    private static class TokenError
+    {
+        int index;       // stream index of the bad token
+        String detail;   // the message after the line number
+    }
+
+    private char text[];                // the current source text
+    private Symtab symtab;              // of the current parse
+    private TokenStream tokens;         // fully scanned, or null if abandoned
+    private ArrayList<TokenError> tokenErrors;
+    private Statement statements[];     // by stream index of the first token
+    private Run runs[];                 // by stream index of the first token
+    private int liveWords;              // interned words after a full parse
+    private BitSet mixed;               // IDs of names spelled more than one way
+
+    private Node programNode;
+    private int errorCount;
+    private String messages;
+    private int reusedCount;            // statements reused by the last parse
+    private int rescannedCount;         // tokens scanned by the last parse
+
+    // How the current parse's token indexes map to the previous parse's.
+    // The tokens before the prefix index are the same, and so are the
+    // tokens from the suffix index on, moved.
+    private int prefix;
+    private int oldSuffix;
+    private int newSuffix;
+
+    // The state of the current parse.
+    private Statement parsed[];         // by stream index of the first token
+    private Run parsedRuns[];           // by stream index of the first token
+    private int log[];                  // variables assigned (ID) or used (~ID)
+    private int logSize;
+    private BitSet assigned = new BitSet();
+    private BitSet used = new BitSet();
+
+    /**
+     * Constructor. Parse the initial source text.
+     * @param text the source text.
+     */
+    public IncrementalParser(char text[])
+    {
+        this.text = text;
+        this.log  = new int[256];
+
+        parseAll();
+    }
+
+    /**
+     * Getter.
+     * @return the current source text.
+     */
+    public char[] text() { return text; }
+
+    /**
+     * Getter.
+     * @return the symbol table of the current parse.
+     */
+    public Symtab symtab() { return symtab; }
+
+    /**
+     * Getter.
+     * @return the root of the current parse tree.
+     */
+    public Node programNode() { return programNode; }
+
+    /**
+     * Getter.
+     * @return the number of syntax errors of the current parse.
+     */
+    public int errorCount() { return errorCount; }
+
+    /**
+     * Getter.
+     * @return the token and syntax error messages of the current parse.
+     */
+    public String messages() { return messages; }
+
+    /**
+     * Getter.
+     * @return the number of statements and runs that the last parse reused.
+     */
+    public int reusedCount() { return reusedCount; }
+
+    /**
+     * Getter.
+     * @return the number of tokens that the last parse scanned.
+     */
+    public int rescannedCount() { return rescannedCount; }
+
+    /**
+     * Edit the source text and parse it again.
+     * @param offset the position of the edit in the source text.
+     * @param removed the number of characters that the edit removes.
+     * @param inserted the text that the edit inserts.
+     * @return the root of the new parse tree.
+     */
+    public Node edit(int offset, int removed, String inserted)
+    {
+        if (   (offset < 0) || (removed < 0)
+            || (offset > text.length - removed))
+        {
+            throw new IllegalArgumentException("Invalid edit at " + offset
+                                               + " removing " + removed);
+        }
+
+        int inserts = inserted.length();
+        int shift = inserts - removed;
+        char newText[] = new char[text.length + shift];
+
+        System.arraycopy(text, 0, newText, 0, offset);
+        inserted.getChars(0, inserts, newText, offset);
+        System.arraycopy(text, offset + removed, newText, offset + inserts,
+                         text.length - offset - removed);
+
+        int lineShift = lineCount(newText, offset, inserts)
+                      - lineCount(text, offset, removed);
+        text = newText;
+
+        // Start over after the parsing was abandoned,
+        // or after too many words were interned that may be dead.
+        if (   (tokens == null)
+            || (symtab.interner().size() > 2*liveWords + DEAD_WORDS))
+        {
+            parseAll();
+            return programNode;
+        }
+
+        TokenStream old = tokens;
+        int count = old.size();
+
+        // The first token that ends at or after the edit. The tokens before
+        // it are unchanged, and the scanner is between tokens at the start
+        // of each of them. Scan again from the one just before it.
+        int low = 0, high = count - 1;
+        while (low < high)
+        {
+            int mid = (low + high)/2;
+            if (old.endAt(mid) < offset) low = mid + 1;
+            else                         high = mid;
+        }
+
+        prefix = Math.max(low - 1, 0);
+        int start = low > 0 ? old.startAt(prefix) : 0;
+        int line  = low > 0 ? old.lineAt(prefix)  : 1;
+
+        Scanner scanner = new Scanner(text, start, text.length, line,
+                                      symtab.interner());
+        scanner.deferErrors();
+
+        TokenStream middle = new TokenStream(text, 64);
+        ArrayList<TokenError> middleErrors = new ArrayList<>();
+        int after = offset + inserts;  // the unchanged text after the edit
+        int j = prefix;                // index of the next old token to match
+        boolean respell = false;       // if a name's spelling may change
+        oldSuffix = count;
+
+        while (true)
+        {
+            Token.TokenType type = scanner.scanInto(middle);
+            int index = middle.size() - 1;
+            int tokenStart = middle.startAt(index);
+
+            // Resynchronize with a token that starts at the same place
+            // in the unchanged text as an old token.
+            if (tokenStart >= after)
+            {
+                while ((j < count) && (old.startAt(j) < tokenStart - shift)) j++;
+
+                if ((j < count) && (old.startAt(j) == tokenStart - shift))
+                {
+                    oldSuffix = j;
+                    break;
+                }
+            }
+
+            if (scanner.tokenErrorDetail() != null)
+            {
+                middleErrors.add(tokenError(prefix + index,
+                                            scanner.tokenErrorDetail()));
+            }
+
+            respell |= isMixed(middle, index);
+            if (type == END_OF_FILE) break;
+        }
+
+        for (int i = prefix; (i < oldSuffix) && !respell; i++)
+        {
+            respell = (old.typeAt(i) == IDENTIFIER) && mixed.get(old.symbolAt(i));
+        }
+
+        if (respell)
+        {
+            parseAll();
+            return programNode;
+        }
+
+        int middleCount = oldSuffix < count ? middle.size() - 1 : middle.size();
+        newSuffix = prefix + middleCount;
+        rescannedCount = middle.size();
+
+        tokens = TokenStream.splice(text, old, prefix, middle, middleCount,
+                                    oldSuffix, shift, lineShift);
+
+        // Keep the errors of the unchanged tokens.
+        ArrayList<TokenError> errors = new ArrayList<>();
+        for (TokenError error : tokenErrors)
+        {
+            if (error.index < prefix) errors.add(error);
+        }
+        errors.addAll(middleErrors);
+        for (TokenError error : tokenErrors)
+        {
+            if (error.index >= oldSuffix)
+            {
+                error.index += newSuffix - oldSuffix;
+                errors.add(error);
+            }
+        }
+        tokenErrors = errors;
+
+        parse(new Symtab(symtab));
+        return programNode;
+    }
+
+    /**
+     * Scan and parse the whole source text.
+     */
+    private void parseAll()
+    {
+        symtab = new Symtab();
+        Scanner scanner = new Scanner(text, 0, text.length, 1, symtab.interner());
+        scanner.deferErrors();
+
+        tokens = new TokenStream(text, 1024);
+        tokenErrors = new ArrayList<>();
+        statements = new Statement[0];
+        runs = new Run[0];
+        mixed = new BitSet();
+
+        Token.TokenType type;
+        do
+        {
+            type = scanner.scanInto(tokens);
+            if (scanner.tokenErrorDetail() != null)
+            {
+                tokenErrors.add(tokenError(tokens.size() - 1,
+                                           scanner.tokenErrorDetail()));
+            }
+
+            isMixed(tokens, tokens.size() - 1);
+        } while (type != END_OF_FILE);
+
+        prefix = 0;
+        oldSuffix = newSuffix = Integer.MAX_VALUE;
+        rescannedCount = tokens.size();
+
+        parse(symtab);
+        liveWords = symtab.interner().size();
+    }
+
+    /**
+     * Parse the token stream.
+     * @param table the new symbol table.
+     */
+    private void parse(Symtab table)
+    {
+        symtab = table;
+        programNode = null;
+        parsed = new Statement[tokens.size()];
+        parsedRuns = new Run[tokens.size()];
+        logSize = 0;
+        reusedCount = 0;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, true);
+
+        for (TokenError error : tokenErrors)
+        {
+            out.println("TOKEN ERROR at line " + tokens.lineAt(error.index)
+                        + error.detail);
+        }
+
+        Parser parser = new Parser(tokens, symtab, out, this);
+        try
+        {
+            programNode = parser.parseProgram();
+        }
+        finally
+        {
+            // Abandoning the parse truncated the token stream, and a failed
+            // parse left no statements to reuse. Either way, start over.
+            if ((programNode == null) || parser.abandoned()) tokens = null;
+
+            statements = parsed;
+            runs = parsedRuns;
+            parsed = null;
+            parsedRuns = null;
+        }
+
+        errorCount = parser.errorCount();
+        messages   = bytes.toString();
+    }
+
+    /**
+     * Check whether a newly scanned name is spelled differently
+     * from its first spelling.
+     * @param stream the stream of the new text.
+     * @param index the stream index of a token.
+     * @return true if the token is a name that's spelled more than one way.
+     */
+    private boolean isMixed(TokenStream stream, int index)
+    {
+        if (stream.typeAt(index) != IDENTIFIER) return false;
+
+        int id = stream.symbolAt(index);
+        if (!mixed.get(id))
+        {
+            String spelling = symtab.interner().spelling(id);
+            int start = stream.startAt(index);
+            boolean same = spelling.length() == stream.endAt(index) - start;
+
+            for (int i = 0; same && (i < spelling.length()); i++)
+            {
+                same = text[start + i] == spelling.charAt(i);
+            }
+
+            if (!same) mixed.set(id);
+        }
+
+        return mixed.get(id);
+    }
+
+    /**
+     * Make a token error.
+     * @param index the stream index of the bad token.
+     * @param detail the message after the line number.
+     * @return the token error.
+     */
+    private static TokenError tokenError(int index, String detail)
+    {
+        TokenError error = new TokenError();
+        error.index  = index;
+        error.detail = detail;
+
+        return error;
+    }
+
+    /**
+     * Count the lines in part of a text.
+     * @param buffer the text.
+     * @param start the position of the part.
+     * @param length the length of the part.
+     * @return the number of line ends.
+     */
+    private static int lineCount(char buffer[], int start, int length)
+    {
+        int count = 0;
+        for (int i = start; i < start + length; i++)
+        {
+            if (buffer[i] == Source.EOL) count++;
+        }
+
+        return count;
+    }
+
+    /**
+     * Map a token index of the current parse to the previous parse.
+     * @param index the stream index of a token.
+     * @return the previous stream index of the token,
+     * or -1 if the token was scanned again.
+     */
+    private int oldIndex(int index)
+    {
+        return index < prefix     ? index
+             : index >= newSuffix ? index - newSuffix + oldSuffix
+             :                      -1;
+    }
+
+    /**
+     * Find a statement of a previous parse to reuse.
+     * @param index the stream index of the current token.
+     * @return the statement that starts with the token, if the statement
+     * and the token after it are unchanged, or null.
+     */
+    Statement find(int index)
+    {
+        int oldIndex = oldIndex(index);
+        if (oldIndex < 0) return null;
+
+        Statement statement = statements[oldIndex];
+        return (statement != null) && isUnchanged(index, statement.length)
+                    ? statement : null;
+    }
+
+    /**
+     * Find a run of statements of a previous parse to reuse.
+     * @param index the stream index of the current token.
+     * @return the run that starts with the token, if the run
+     * and the token after it are unchanged, or null.
+     */
+    Run findRun(int index)
+    {
+        int oldIndex = oldIndex(index);
+        if (oldIndex < 0) return null;
+
+        Run run = runs[oldIndex];
+        return (run != null) && isUnchanged(index, run.length) ? run : null;
+    }
+
+    /**
+     * @param index the stream index of an old token.
+     * @param length a number of tokens from there.
+     * @return true if those tokens and the one after them are unchanged.
+     */
+    private boolean isUnchanged(int index, int length)
+    {
+        return (index >= prefix) || (index + length < prefix);
+    }
+
+    /**
+     * Start parsing a statement list.
+     * @param parentNode the node that adopts the statements.
+     * @param first the stream index of the list's first token.
+     * @param problems the parser's number of problems so far.
+     * @return the statement list.
+     */
+    StatementList statementList(Node parentNode, int first, int problems)
+    {
+        return new StatementList(parentNode, first, problems);
+    }
+
+    /**
+     * Reuse a statement of a previous parse, together with the statements
+     * inside it, and move its line numbers if its tokens moved.
+     * @param statement the statement.
+     * @param index its stream index.
+     * @return the parser's line number after the statement.
+     */
+    int reuse(Statement statement, int index)
+    {
+        int line = tokens.lineAt(index);
+        if (statement.node.lineNumber != line)
+        {
+            moveLines(statement.node, line - statement.node.lineNumber);
+        }
+
+        copy(index, statement.length, null);
+
+        // The statement's summary stands for its variables.
+        for (int id : statement.uses) log(~id);
+        for (int id : statement.defs) log(id);
+
+        reusedCount++;
+        return line + statement.endLines;
+    }
+
+    /**
+     * Keep the statements and runs of a previous parse
+     * inside a reused statement or run. A run that starts
+     * with a statement belongs to the list around the statement.
+     * @param index the stream index of its first token.
+     * @param length its number of tokens.
+     * @param run the reused run, or null for a statement.
+     */
+    private void copy(int index, int length, Run run)
+    {
+        int oldIndex = oldIndex(index);
+
+        System.arraycopy(statements, oldIndex,     parsed,     index,     length);
+        System.arraycopy(runs,       oldIndex + 1, parsedRuns, index + 1, length - 1);
+        parsedRuns[index] = run;
+    }
+
+    /**
+     * Move the line numbers of a parse tree. Only statement and test
+     * nodes have line numbers, and the parser never shares them.
+     * @param node the root of the tree.
+     * @param lines how many lines the tree moves.
+     */
+    private static void moveLines(Node node, int lines)
+    {
+        if (node == null) return;
+        if (node.lineNumber > 0) node.lineNumber += lines;
+
+        for (Node child : node.children) moveLines(child, lines);
+    }
+
+    /**
+     * Log that a statement assigns or reads a variable.
+     * @param id the variable's interned name ID.
+     */
+    void define(int id) { log(id); }
+
+    /**
+     * Log that a statement uses a declared variable.
+     * @param id the variable's interned name ID.
+     */
+    void use(int id) { log(~id); }
+
+    /**
+     * Log a variable event.
+     * @param event the ID of an assigned variable, or ~ID of a used one.
+     */
+    private void log(int event)
+    {
+        if (logSize == log.length) log = Arrays.copyOf(log, 2*logSize);
+        log[logSize++] = event;
+    }
+
+    /**
+     * Getter.
+     * @return the log position of the next variable event.
+     */
+    int logSize() { return logSize; }
+
+    /**
+     * Keep a newly parsed statement if it can be reused.
+     * Its variable events are replaced by their summary.
+     * @param node the statement node, or null.
+     * @param first the stream index of the statement's first token.
+     * @param end the stream index just past its last token.
+     * @param endLine the parser's line number after the statement.
+     * @param clean true if there were no errors or other messages.
+     * @param logged the log position of the statement's variable events.
+     */
+    void parsed(Node node, int first, int end, int endLine, boolean clean,
+                int logged)
+    {
+        if ((node == null) || !clean || (end == first))
+        {
+            summarize(logged, null);
+            return;
+        }
+
+        Statement statement = new Statement();
+        statement.node     = node;
+        statement.length   = end - first;
+        statement.endLines = endLine - tokens.lineAt(first);
+        summarize(logged, statement);
+
+        parsed[first] = statement;
+    }
+
+    /**
+     * Replace the variable events since a log position by their summary.
+     * @param logged the log position.
+     * @param summary set to the summary, or null.
+     */
+    private void summarize(int logged, Summary summary)
+    {
+        int uses[] = new int[logSize - logged];
+        int defs[] = new int[logSize - logged];
+        int useCount = 0, defCount = 0;
+
+        for (int i = logged; i < logSize; i++)
+        {
+            int event = log[i];
+
+            if (event >= 0)
+            {
+                if (!assigned.get(event))
+                {
+                    assigned.set(event);
+                    defs[defCount++] = event;
+                }
+            }
+            else if (!assigned.get(~event) && !used.get(~event))
+            {
+                used.set(~event);
+                uses[useCount++] = ~event;
+            }
+        }
+
+        for (int i = 0; i < defCount; i++) assigned.clear(defs[i]);
+        for (int i = 0; i < useCount; i++) used.clear(uses[i]);
+
+        logSize = logged;
+        for (int i = 0; i < useCount; i++) log(~uses[i]);
+        for (int i = 0; i < defCount; i++) log(defs[i]);
+
+        if (summary != null)
+        {
+            summary.uses = Arrays.copyOf(uses, useCount);
+            summary.defs = Arrays.copyOf(defs, defCount);
+        }
+    }
+}
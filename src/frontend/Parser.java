@@ -10,7 +10,8 @@
 
 package frontend;
 
-import java.util.HashSet;
+import java.io.PrintStream;
+import java.util.EnumSet;
 
 import intermediate.*;
 import static frontend.Token.TokenType.*;
@@ -18,111 +19,337 @@ import static intermediate.Node.NodeType.*;
 
 public class Parser
 {
-    private Scanner scanner;
+    private static final int MAX_ERRORS = 100;       // abandon parsing after this many
+    private static final int MIN_ERROR_DISTANCE = 3; // tokens between reported errors
+
+    private TokenStream tokens;
     private Symtab symtab;
-    private Token currentToken;
     private int lineNumber;
     private int errorCount;
-
+    private int tokensSinceError;  // tokens consumed since the last syntax error
+    private boolean abandoned;     // true if too many errors
+    private PrintStream out;       // for error messages
+    private long nodeCount;        // number of parse tree nodes created
+    private NodeArena arena;       // to allocate the nodes from, or null
+    private IncrementalParser incremental;  // to reuse statements, or null
+    private int problemCount;      // errors and other messages, even unreported
+    private MemoryBudget budget;   // to charge the tokens and nodes, or null
+
+    /**
+     * Constructor.
+     * @param scanner the scanner, which must intern the words
+     * with the symbol table's interner.
+     * @param symtab the symbol table.
+     */
     public Parser(Scanner scanner, Symtab symtab)
     {
-        this.scanner = scanner;
-        this.symtab  = symtab;
-        this.currentToken = null;
+        this(new TokenStream(scanner), symtab);
+    }
+
+    /**
+     * Constructor to parse a token stream.
+     * @param tokens the token stream.
+     * @param symtab the symbol table.
+     */
+    public Parser(TokenStream tokens, Symtab symtab)
+    {
+        this.tokens = tokens;
+        this.symtab = symtab;
         this.lineNumber = 1;
         this.errorCount = 0;
+        this.tokensSinceError = MIN_ERROR_DISTANCE;
+        this.abandoned = false;
+        this.out = System.out;
+        this.nodeCount = 0;
+        this.arena = null;
+        this.incremental = null;
+        this.problemCount = 0;
+        this.budget = null;
+    }
+
+    /**
+     * Constructor to parse a token stream.
+     * @param tokens the token stream.
+     * @param symtab the symbol table.
+     * @param out the output stream for error messages.
+     */
+    public Parser(TokenStream tokens, Symtab symtab, PrintStream out)
+    {
+        this(tokens, symtab);
+        this.out = out;
+    }
+
+    /**
+     * Constructor to parse a token stream into a node arena.
+     * @param tokens the token stream.
+     * @param symtab the symbol table.
+     * @param out the output stream for error messages.
+     * @param arena the arena to allocate the parse tree nodes from.
+     */
+    public Parser(TokenStream tokens, Symtab symtab, PrintStream out,
+                  NodeArena arena)
+    {
+        this(tokens, symtab, out);
+        this.arena = arena;
+    }
+
+    /**
+     * Constructor to parse a fully scanned token stream again
+     * after an edit, reusing the unchanged statements.
+     * @param tokens the token stream.
+     * @param symtab the symbol table.
+     * @param out the output stream for error messages.
+     * @param incremental the incremental parser with the statements.
+     */
+    Parser(TokenStream tokens, Symtab symtab, PrintStream out,
+           IncrementalParser incremental)
+    {
+        this(tokens, symtab, out);
+        this.incremental = incremental;
     }
 
     public int errorCount() { return errorCount; }
 
-    public Node parseProgram()
+    /**
+     * Getter.
+     * @return true if parsing was abandoned after too many errors.
+     */
+    boolean abandoned() { return abandoned; }
+
+    /**
+     * Getter.
+     * @return the number of parse tree nodes created.
+     */
+    public long nodeCount() { return nodeCount; }
+
+    /**
+     * Getter.
+     * @return the time spent scanning in nanoseconds, if timed.
+     */
+    public long scanNanos() { return tokens.scanNanos(); }
+
+    /**
+     * Getter.
+     * @return the memory budget that the parse is charged to, or null.
+     */
+    public MemoryBudget memoryBudget() { return budget; }
+
+    /**
+     * Setter.
+     * @param budget the memory budget to charge the tokens, nodes,
+     * and symbols of the parse to as they're created, or null.
+     */
+    public void setMemoryBudget(MemoryBudget budget) { this.budget = budget; }
+
+    /**
+     * Create a parse tree node.
+     * @param type the node type.
+     * @return the node.
+     * @throws MemoryBudgetExceededException if over the memory budget.
+     */
+    private Node newNode(Node.NodeType type)
     {
-        Node programNode = new Node(Node.NodeType.PROGRAM);
+        nodeCount++;
+        if (budget != null) charge();
 
-        currentToken = scanner.nextToken();  // first token!
+        return arena != null ? arena.node(type) : new Node(type);
+    }
 
-        if (currentToken.type == Token.TokenType.PROGRAM)
+    /**
+     * Charge the parse so far to the memory budget.
+     * @throws MemoryBudgetExceededException if over the budget.
+     */
+    private void charge()
+    {
+        budget.parsed(tokens.size(), nodeCount, symtab.count(),
+                      tokens.lineNumber());
+    }
+
+    /**
+     * Consume the current token. Past the end of the token stream,
+     * the current token remains the end of file.
+     */
+    private void nextToken()
+    {
+        tokensSinceError++;
+        tokens.advance();
+    }
+
+    public Node parseProgram()
+    {
+        Node programNode = newNode(Node.NodeType.PROGRAM);
+
+        if (tokens.type() == Token.TokenType.PROGRAM)
         {
-            currentToken = scanner.nextToken();  // consume PROGRAM
+            nextToken();  // consume PROGRAM
         }
-        else syntaxError("Expecting PROGRAM");
+        else reportSyntaxError("Expecting PROGRAM");
 
-        if (currentToken.type == IDENTIFIER)
+        if (tokens.type() == IDENTIFIER)
         {
-            String programName = currentToken.text;
-            symtab.enter(programName);
-            programNode.text = programName;
+            SymtabEntry programId = symtab.enter(tokens.symbol());
+            programNode.text = programId.getName();
 
-            currentToken = scanner.nextToken();  // consume program name
+            nextToken();  // consume program name
         }
-        else syntaxError("Expecting program name");
+        else syntaxError("Expecting program name", programHeaderSynchronizers);
 
-        if (currentToken.type == SEMICOLON)
+        if (tokens.type() == SEMICOLON)
         {
-            currentToken = scanner.nextToken();  // consume ;
+            nextToken();  // consume ;
         }
-        else syntaxError("Missing ;");
+        else syntaxError("Missing ;", programHeaderSynchronizers);
 
-        if (currentToken.type != BEGIN) syntaxError("Expecting BEGIN");
+        if (tokens.type() != BEGIN) reportSyntaxError("Expecting BEGIN");
+
+        // The PROGRAM node adopts the COMPOUND tree. Anything nested
+        // too deeply for the parser's stack end the parse with an error.
+        try
+        {
+            programNode.adopt(parseCompoundStatement());
+        }
+        catch (StackOverflowError ex)
+        {
+            nestingError();
+        }
 
-        // The PROGRAM node adopts the COMPOUND tree.
-        programNode.adopt(parseCompoundStatement());
+        if (tokens.type() != PERIOD) reportSyntaxError("Expecting .");
+        if (budget != null) charge();  // the tokens after the last node
 
-        if (currentToken.type != PERIOD) syntaxError("Expecting .");
         return programNode;
     }
 
-    private static HashSet<Token.TokenType> statementStarters;
-    private static HashSet<Token.TokenType> statementFollowers;
-    private static HashSet<Token.TokenType> relationalOperators;
-    private static HashSet<Token.TokenType> simpleExpressionOperators;
-    private static HashSet<Token.TokenType> termOperators;
+    // Tokens that can start a statement.
+    private static final EnumSet<Token.TokenType> statementStarters =
+        EnumSet.of(BEGIN, IDENTIFIER, REPEAT, WHILE, Token.TokenType.IF, FOR,
+                   CASE, Token.TokenType.WRITE, Token.TokenType.WRITELN,
+                   Token.TokenType.READ, Token.TokenType.READLN);
+
+    // Tokens that can immediately follow a statement.
+    private static final EnumSet<Token.TokenType> statementFollowers =
+        EnumSet.of(SEMICOLON, END, UNTIL, ELSE, PERIOD, END_OF_FILE);
+
+    // Tokens at which to resume parsing after an error in a statement:
+    // its followers and the reserved words that start the next statement.
+    // An identifier can occur inside a bad statement, so it's excluded.
+    private static final EnumSet<Token.TokenType> statementSynchronizers =
+        EnumSet.copyOf(statementFollowers);
+
+    // Tokens that can immediately follow an expression:
+    // a statement's followers and the tokens after its expressions.
+    private static final EnumSet<Token.TokenType> expressionFollowers =
+        EnumSet.copyOf(statementFollowers);
 
     static
     {
-        statementStarters = new HashSet<Token.TokenType>();
-        statementFollowers = new HashSet<Token.TokenType>();
-        relationalOperators = new HashSet<Token.TokenType>();
-        simpleExpressionOperators = new HashSet<Token.TokenType>();
-        termOperators = new HashSet<Token.TokenType>();
-
-        // Tokens that can start a statement.
-        statementStarters.add(BEGIN);
-        statementStarters.add(IDENTIFIER);
-        statementStarters.add(REPEAT);
-        statementStarters.add(Token.TokenType.WRITE);
-        statementStarters.add(Token.TokenType.WRITELN);
-
-        // Tokens that can immediately follow a statement.
-        statementFollowers.add(SEMICOLON);
-        statementFollowers.add(END);
-        statementFollowers.add(UNTIL);
-        statementFollowers.add(END_OF_FILE);
-
-        relationalOperators.add(EQUALS);
-        relationalOperators.add(LESS_THAN);
-        relationalOperators.add(GREATER_THAN);
-        relationalOperators.add(GREATER_EQUALS);
-        relationalOperators.add(LESS_EQUALS);
-        relationalOperators.add(NOT_EQUALS);
-        relationalOperators.add(Token.TokenType.AND);
-        relationalOperators.add(Token.TokenType.OR);
-
-        simpleExpressionOperators.add(PLUS);
-        simpleExpressionOperators.add(MINUS);
-
-        termOperators.add(STAR);
-        termOperators.add(SLASH);
-        termOperators.add(Token.TokenType.DIV);
+        statementSynchronizers.addAll(statementStarters);
+        statementSynchronizers.remove(IDENTIFIER);
+
+        expressionFollowers.addAll(
+            EnumSet.of(THEN, DO, TO, DOWNTO, OF, RPAREN, COLON));
     }
 
+    // Tokens at which to resume parsing the program header.
+    private static final EnumSet<Token.TokenType> programHeaderSynchronizers =
+        EnumSet.of(SEMICOLON, BEGIN);
+
+    private static final EnumSet<Token.TokenType> relationalOperators =
+        EnumSet.of(EQUALS, LESS_THAN, GREATER_THAN, GREATER_EQUALS,
+                   LESS_EQUALS, NOT_EQUALS,
+                   Token.TokenType.AND, Token.TokenType.OR);
+
+    private static final EnumSet<Token.TokenType> simpleExpressionOperators =
+        EnumSet.of(PLUS, MINUS);
+
+    private static final EnumSet<Token.TokenType> termOperators =
+        EnumSet.of(STAR, SLASH, Token.TokenType.DIV);
+
     private Node parseStatement()
+    {
+        // An incremental parse reuses an unchanged statement.
+        if (incremental != null)
+        {
+            Node reusedNode = reuseStatement();
+            if (reusedNode != null) return reusedNode;
+
+            int first = tokens.index();
+            int problems = problemCount;
+            int logged = incremental.logSize();
+
+            Node stmtNode = parseNewStatement();
+            incremental.parsed(stmtNode, first, tokens.index(), lineNumber,
+                               problemCount == problems, logged);
+            return stmtNode;
+        }
+
+        return parseNewStatement();
+    }
+
+    /**
+     * Reuse the statement that a previous parse made
+     * from the same tokens, if its variables are declared.
+     * @return the statement node, or null if there's none to reuse.
+     */
+    private Node reuseStatement()
+    {
+        int first = tokens.index();
+        IncrementalParser.Statement statement = incremental.find(first);
+        if ((statement == null) || !declare(statement)) return null;
+
+        tokensSinceError += statement.length;
+        tokens.seek(first + statement.length);
+
+        lineNumber = incremental.reuse(statement, first);
+        return statement.node;
+    }
+
+    /**
+     * Reuse the run of statements that a previous parse made
+     * from the same tokens, if its variables are declared.
+     * @param list the statement list that adopts the run's statements.
+     * @return true if a run was reused.
+     */
+    private boolean reuseRun(IncrementalParser.StatementList list)
+    {
+        int first = tokens.index();
+        IncrementalParser.Run run = incremental.findRun(first);
+        if ((run == null) || !declare(run)) return false;
+
+        tokensSinceError += run.length;
+        tokens.seek(first + run.length);
+
+        lineNumber = list.reuse(run, first);
+        return true;
+    }
+
+    /**
+     * Check that the variables that a reused part of a previous parse uses
+     * are declared, and then enter the variables that it assigns or reads.
+     * @param summary the part's variables.
+     * @return true if its used variables are declared.
+     */
+    private boolean declare(IncrementalParser.Summary summary)
+    {
+        for (int id : summary.uses)
+        {
+            if (symtab.lookup(id) == null) return false;
+        }
+
+        for (int id : summary.defs)
+        {
+            if (symtab.lookup(id) == null) symtab.enter(id);
+        }
+
+        return true;
+    }
+
+    private Node parseNewStatement()
     {
         Node stmtNode = null;
-        int savedLineNumber = currentToken.lineNumber;
+        int savedLineNumber = tokens.lineNumber();
         lineNumber = savedLineNumber;
 
-        switch (currentToken.type)
+        switch (tokens.type())
         {
             case IDENTIFIER : stmtNode = parseAssignmentStatement(); break;
             case BEGIN :      stmtNode = parseCompoundStatement();   break;
@@ -133,9 +360,17 @@ public class Parser
             case CASE:        stmtNode = parseCaseStatement();       break;
             case WRITE :      stmtNode = parseWriteStatement();      break;
             case WRITELN :    stmtNode = parseWritelnStatement();    break;
+            case READ :       stmtNode = parseReadStatement();       break;
+            case READLN :     stmtNode = parseReadlnStatement();     break;
             case SEMICOLON :  stmtNode = null; break;  // empty statement
 
-            default : syntaxError("Unexpected token");
+            default :
+            {
+                // Skip the bad token to guarantee progress. Any tokens
+                // up to the next statement are skipped the same way.
+                reportSyntaxError("Unexpected token");
+                nextToken();
+            }
         }
 
         if (stmtNode != null) stmtNode.lineNumber = savedLineNumber;
@@ -146,25 +381,38 @@ public class Parser
     {
         // The current token should now be the left-hand-side variable name.
 
-        Node assignmentNode = new Node(ASSIGN);
-
-        // Enter the variable name into the symbol table
-        // if it isn't already in there.
-        String variableName = currentToken.text;
-        SymtabEntry variableId = symtab.lookup(variableName.toLowerCase());
-        if (variableId == null) variableId = symtab.enter(variableName);
+        Node assignmentNode = newNode(ASSIGN);
 
         // The assignment node adopts the variable node as its first child.
-        Node lhsNode  = new Node(VARIABLE);
-        lhsNode.text  = variableName;
-        lhsNode.entry = variableId;
+        Node lhsNode = newNode(VARIABLE);
         assignmentNode.adopt(lhsNode);
 
-        currentToken = scanner.nextToken();  // consume the LHS variable;
+        if (tokens.type() == IDENTIFIER)
+        {
+            // Enter the variable name into the symbol table
+            // if it isn't already in there.
+            // Names are interned by the scanner, so the lookup is by ID.
+            int id = tokens.symbol();
+            SymtabEntry variableId = symtab.lookup(id);
+            if (variableId == null) variableId = symtab.enter(id);
+            if (incremental != null) incremental.define(id);
+
+            lhsNode.text  = variableId.getName();
+            lhsNode.entry = variableId;
+
+            nextToken();  // consume the LHS variable;
+        }
+        else
+        {
+            // Such as FOR without a control variable. Skip a bad token
+            // in place of the variable, but not the :=.
+            reportSyntaxError("Expecting variable");
+            if (tokens.type() != COLON_EQUALS) nextToken();
+        }
 
-        if (currentToken.type == COLON_EQUALS)
+        if (tokens.type() == COLON_EQUALS)
         {
-            currentToken = scanner.nextToken();  // consume :=
+            nextToken();  // consume :=
 
         }
         else syntaxError("Missing :=");
@@ -180,42 +428,60 @@ public class Parser
 
     private Node parseCompoundStatement()
     {
-        Node compoundNode = new Node(COMPOUND);
-        compoundNode.lineNumber = currentToken.lineNumber;
+        Node compoundNode = newNode(COMPOUND);
+        compoundNode.lineNumber = tokens.lineNumber();
 
-        currentToken = scanner.nextToken();  // consume BEGIN
+        nextToken();  // consume BEGIN
         parseStatementList(compoundNode, END);
 
-        if (currentToken.type == END)
+        if (tokens.type() == END)
         {
-            currentToken = scanner.nextToken();  // consume END
+            nextToken();  // consume END
         }
-        else syntaxError("Expecting END");
+        else reportSyntaxError("Expecting END");
 
         return compoundNode;
     }
 
     private void parseStatementList(Node parentNode, Token.TokenType terminalType)
     {
-        while (   (currentToken.type != terminalType)
-                && (currentToken.type != END_OF_FILE))
+        // An incremental parse also reuses whole runs of statements.
+        IncrementalParser.StatementList list =
+            incremental != null ? incremental.statementList(parentNode,
+                                                            tokens.index(),
+                                                            problemCount)
+                                : null;
+
+        while (   (tokens.type() != terminalType)
+                && (tokens.type() != END_OF_FILE))
         {
+            if ((list != null) && reuseRun(list)) continue;
+
+            int first = tokens.index();
             Node stmtNode = parseStatement();
             if (stmtNode != null) parentNode.adopt(stmtNode);
 
             // A semicolon separates statements.
-            if (currentToken.type == SEMICOLON)
+            if (tokens.type() == SEMICOLON)
             {
-                while (currentToken.type == SEMICOLON)
+                while (tokens.type() == SEMICOLON)
                 {
-                    currentToken = scanner.nextToken();  // consume ;
+                    nextToken();  // consume ;
                 }
             }
-            else if (statementStarters.contains(currentToken.type))
+            else if (statementStarters.contains(tokens.type()))
             {
-                syntaxError("Missing ;");
+                reportSyntaxError("Missing ;");
+            }
+
+            if (list != null)
+            {
+                list.parsed(first, stmtNode, tokens.index(), lineNumber,
+                            problemCount);
             }
         }
+
+        if (list != null) list.finish(tokens.index());
     }
 
     private Node parseRepeatStatement()
@@ -223,25 +489,25 @@ public class Parser
         // The current token should now be REPEAT.
 
         // Create a LOOP node.
-        Node loopNode = new Node(LOOP);
-        currentToken = scanner.nextToken();  // consume REPEAT
+        Node loopNode = newNode(LOOP);
+        nextToken();  // consume REPEAT
 
         parseStatementList(loopNode, UNTIL);
 
-        if (currentToken.type == UNTIL)
+        if (tokens.type() == UNTIL)
         {
             // Create a TEST node. It adopts the test expression node.
-            Node testNode = new Node(TEST);
-            lineNumber = currentToken.lineNumber;
+            Node testNode = newNode(TEST);
+            lineNumber = tokens.lineNumber();
             testNode.lineNumber = lineNumber;
-            currentToken = scanner.nextToken();  // consume UNTIL
+            nextToken();  // consume UNTIL
 
             testNode.adopt(parseExpression());
 
             // The LOOP node adopts the TEST node as its final child.
             loopNode.adopt(testNode);
         }
-        else syntaxError("Expecting UNTIL");
+        else reportSyntaxError("Expecting UNTIL");
 
         return loopNode;
     }
@@ -249,21 +515,27 @@ public class Parser
     private Node parseForStatement() {
         boolean isTO = false; // flag for isTO/DOWNTO
 
-        Node forNode = new Node(COMPOUND);
-        currentToken = scanner.nextToken(); // consume FOR
+        // The nodes that stand for the FOR statement's test and increment
+        // get its line number, such as for runtime errors in the loop.
+        int forLineNumber = tokens.lineNumber();
+
+        Node forNode = newNode(COMPOUND);
+        nextToken(); // consume FOR
 
         //Adopt the assignment statement node
         forNode.adopt(parseAssignmentStatement());
 
         //create the loop node
-        Node loopNode = new Node(LOOP);
+        Node loopNode = newNode(LOOP);
+        loopNode.lineNumber = forLineNumber;
 
-        if(currentToken.type == TO) {
-            currentToken = scanner.nextToken(); // consume TO
+        if(tokens.type() == TO) {
+            nextToken(); // consume TO
             isTO = true;
 
-            Node testNode = new Node(TEST);
-            Node gt = new Node(GT);
+            Node testNode = newNode(TEST);
+            testNode.lineNumber = forLineNumber;
+            Node gt = newNode(GT);
             gt.adopt(forNode.children.get(0).children.get(0)); // get the variable from the original assign node
             gt.adopt(parseExpression()); // Parse next number
 
@@ -271,12 +543,13 @@ public class Parser
             loopNode.adopt(testNode);
         }
 
-        else if(currentToken.type == DOWNTO) {
-            currentToken = scanner.nextToken(); // consume DOWNTO
+        else if(tokens.type() == DOWNTO) {
+            nextToken(); // consume DOWNTO
             isTO = false;
 
-            Node testNode = new Node(TEST);
-            Node lt = new Node(LT);
+            Node testNode = newNode(TEST);
+            testNode.lineNumber = forLineNumber;
+            Node lt = newNode(LT);
             lt.adopt(forNode.children.get(0).children.get(0)); // get the variable from the original assign node
             lt.adopt(parseExpression()); // Parse next number
 
@@ -286,12 +559,12 @@ public class Parser
         else syntaxError("Expecting TO or DOWNTO");
 
         //Parse DO
-        if(currentToken.type == DO) {
-            currentToken = scanner.nextToken(); // consume DO
+        if(tokens.type() == DO) {
+            nextToken(); // consume DO
 
             // If DO is present, consume it and adopt either a compound statement
             // or the next statement (stole bhavdeep's code)
-            if (currentToken.type == BEGIN) {
+            if (tokens.type() == BEGIN) {
                 loopNode.adopt(parseCompoundStatement());
             }
             else {
@@ -300,13 +573,14 @@ public class Parser
         }
         else syntaxError("Expecting DO");
 
-        Node assignNode = new Node(ASSIGN);
+        Node assignNode = newNode(ASSIGN);
+        assignNode.lineNumber = forLineNumber;
         assignNode.adopt(forNode.children.get(0).children.get(0));// get the variable from the original assign node
 
         if(isTO) {
-            Node addNode = new Node(ADD);
+            Node addNode = newNode(ADD);
             addNode.adopt(forNode.children.get(0).children.get(0));// get the variable from the original assign node
-            Node constIntNode = new Node(INTEGER_CONSTANT);
+            Node constIntNode = newNode(INTEGER_CONSTANT);
             long val = 1;
             constIntNode.value = val;
 
@@ -315,9 +589,9 @@ public class Parser
             assignNode.adopt(addNode);
         }
         else {
-            Node subNode = new Node(SUBTRACT);
+            Node subNode = newNode(SUBTRACT);
             subNode.adopt(forNode.children.get(0).children.get(0));// get the variable from the original assign node
-            Node constIntNode = new Node(INTEGER_CONSTANT);
+            Node constIntNode = newNode(INTEGER_CONSTANT);
             long val = 1;
             constIntNode.value = val;
             subNode.adopt(constIntNode);
@@ -333,15 +607,15 @@ public class Parser
     }
 
     private Node parseWhileStatement() {
-        Node loopNode = new Node(LOOP);
-        currentToken = scanner.nextToken(); // consume WHILE
+        Node loopNode = newNode(LOOP);
+        nextToken(); // consume WHILE
 
-        Node testNode = new Node(TEST);
-        lineNumber = currentToken.lineNumber;
+        Node testNode = newNode(TEST);
+        lineNumber = tokens.lineNumber();
         testNode.lineNumber = lineNumber;
 
         // Create and adopt a NOT node
-        Node notNode = new Node(Node.NodeType.NOT);
+        Node notNode = newNode(Node.NodeType.NOT);
         notNode.adopt(parseExpression());
         testNode.adopt(notNode);
 
@@ -350,9 +624,9 @@ public class Parser
 
         // If DO is present, consume it and adopt either a compound statement
         // or the next statement tree
-        if(currentToken.type == DO) {
-            currentToken = scanner.nextToken();
-            if (currentToken.type == BEGIN) {
+        if(tokens.type() == DO) {
+            nextToken();
+            if (tokens.type() == BEGIN) {
                 loopNode.adopt(parseCompoundStatement());
             }
             else {
@@ -366,45 +640,65 @@ public class Parser
 
 
     private Node parseIfStatement() {
-        Node ifNode = new Node(Node.NodeType.IF);
-        currentToken = scanner.nextToken(); // consume IF
-        ifNode.adopt(parseExpression());
-        if(currentToken.type == THEN) {
-            currentToken = scanner.nextToken(); // consume THEN
+        Node ifNode = newNode(Node.NodeType.IF);
+        Node lastNode = ifNode;
+
+        // Parse an ELSE IF chain in this loop instead of recursively,
+        // so that a long chain can't overflow the stack. Each nested IF
+        // node is the ELSE statement of the one before it.
+        while (true) {
+            nextToken(); // consume IF
+            lastNode.adopt(parseExpression());
+            if (tokens.type() != THEN) {
+                syntaxError("Expecting THEN");
+                break;
+            }
+
+            nextToken(); // consume THEN
             //We should be ready to parse our statement now
-            ifNode.adopt(parseStatement());
-            if(currentToken.type == ELSE) {
-                currentToken = scanner.nextToken(); //consume ELSE
-                ifNode.adopt(parseStatement());
+            lastNode.adopt(parseStatement());
+            if (tokens.type() != ELSE) break;
+
+            nextToken(); //consume ELSE
+            if (tokens.type() != Token.TokenType.IF) {
+                lastNode.adopt(parseStatement());
+                break;
             }
+
+            lineNumber = tokens.lineNumber();
+            Node elseIfNode = newNode(Node.NodeType.IF);
+            elseIfNode.lineNumber = lineNumber;
+            lastNode.adopt(elseIfNode);
+            lastNode = elseIfNode;
         }
-        else syntaxError("Expecting THEN");
+
         return ifNode;
     }
 
     private Node parseCaseStatement() {
-        System.out.println("PARSE_CASE_STATEMENT");
+        out.println("PARSE_CASE_STATEMENT");
+        problemCount++;  // the message must be printed again
 
-        Node caseNode = new Node(COMPOUND);
-        currentToken = scanner.nextToken(); // consume CASE
+        Node caseNode = newNode(COMPOUND);
+        nextToken(); // consume CASE
 
 
-        Node testNode = new Node(TEST);
-        //System.out.println("CCurrent: " + currentToken.text);
-        //System.out.println("CCurrent: " + currentToken);
-        lineNumber = currentToken.lineNumber;
+        Node testNode = newNode(TEST);
+        //System.out.println("CCurrent: " + tokens.text());
+        //System.out.println("CCurrent: " + tokens.type());
+        lineNumber = tokens.lineNumber();
         testNode.lineNumber = lineNumber;
 
-        currentToken = scanner.nextToken();
-        if(currentToken.type == OF) {
+        nextToken();
+        if(tokens.type() == OF) {
 
-            currentToken = scanner.nextToken();
-            //System.out.println("-----" + currentToken.type);
+            nextToken();
+            //System.out.println("-----" + tokens.type());
             parseStatementList(caseNode, END);
-            if(currentToken.type == END) {
-                currentToken = scanner.nextToken(); //consume END
-                if(currentToken.type == SEMICOLON) {
-                    currentToken = scanner.nextToken(); //consume ;
+            if(tokens.type() == END) {
+                nextToken(); //consume END
+                if(tokens.type() == SEMICOLON) {
+                    nextToken(); //consume ;
                 }
                 else syntaxError("Expecting ;");
             }
@@ -424,8 +718,8 @@ public class Parser
         // The current token should now be WRITE.
 
         // Create a WRITE node. It adopts the variable or string node.
-        Node writeNode = new Node(Node.NodeType.WRITE);
-        currentToken = scanner.nextToken();  // consume WRITE
+        Node writeNode = newNode(Node.NodeType.WRITE);
+        nextToken();  // consume WRITE
 
         parseWriteArguments(writeNode);
         if (writeNode.children.size() == 0)
@@ -441,10 +735,10 @@ public class Parser
         // The current token should now be WRITELN.
 
         // Create a WRITELN node. It adopts the variable or string node.
-        Node writelnNode = new Node(Node.NodeType.WRITELN);
-        currentToken = scanner.nextToken();  // consume WRITELN
+        Node writelnNode = newNode(Node.NodeType.WRITELN);
+        nextToken();  // consume WRITELN
 
-        if (currentToken.type == LPAREN) parseWriteArguments(writelnNode);
+        if (tokens.type() == LPAREN) parseWriteArguments(writelnNode);
         return writelnNode;
     }
 
@@ -454,19 +748,19 @@ public class Parser
 
         boolean hasArgument = false;
 
-        if (currentToken.type == LPAREN)
+        if (tokens.type() == LPAREN)
         {
-            currentToken = scanner.nextToken();  // consume (
+            nextToken();  // consume (
         }
         else syntaxError("Missing left parenthesis");
 
-        if (currentToken.type == IDENTIFIER)
+        if (tokens.type() == IDENTIFIER)
         {
             node.adopt(parseVariable());
             hasArgument = true;
         }
-        else if (   (currentToken.type == CHARACTER)
-                || (currentToken.type == STRING))
+        else if (   (tokens.type() == CHARACTER)
+                || (tokens.type() == STRING))
         {
             node.adopt(parseStringConstant());
             hasArgument = true;
@@ -476,20 +770,20 @@ public class Parser
         // Look for a field width and a count of decimal places.
         if (hasArgument)
         {
-            if (currentToken.type == COLON)
+            if (tokens.type() == COLON)
             {
-                currentToken = scanner.nextToken();  // consume ,
+                nextToken();  // consume ,
 
-                if (currentToken.type == INTEGER)
+                if (tokens.type() == INTEGER)
                 {
                     // Field width
                     node.adopt(parseIntegerConstant());
 
-                    if (currentToken.type == COLON)
+                    if (tokens.type() == COLON)
                     {
-                        currentToken = scanner.nextToken();  // consume ,
+                        nextToken();  // consume ,
 
-                        if (currentToken.type == INTEGER)
+                        if (tokens.type() == INTEGER)
                         {
                             // Count of decimal places
                             node.adopt(parseIntegerConstant());
@@ -501,9 +795,93 @@ public class Parser
             }
         }
 
-        if (currentToken.type == RPAREN)
+        if (tokens.type() == RPAREN)
+        {
+            nextToken();  // consume )
+        }
+        else syntaxError("Missing right parenthesis");
+    }
+
+    private Node parseReadStatement()
+    {
+        // The current token should now be READ.
+
+        // Create a READ node. It adopts the variable nodes.
+        Node readNode = newNode(Node.NodeType.READ);
+        nextToken();  // consume READ
+
+        parseReadArguments(readNode);
+        if (readNode.children.size() == 0)
+        {
+            syntaxError("Invalid READ statement");
+        }
+
+        return readNode;
+    }
+
+    private Node parseReadlnStatement()
+    {
+        // The current token should now be READLN.
+
+        // Create a READLN node. It adopts the variable nodes.
+        Node readlnNode = newNode(Node.NodeType.READLN);
+        nextToken();  // consume READLN
+
+        if (tokens.type() == LPAREN) parseReadArguments(readlnNode);
+        return readlnNode;
+    }
+
+    /**
+     * Parse the parenthesized list of variables of a READ or READLN
+     * statement. Like an assignment, reading a variable declares it.
+     * @param node the READ or READLN node, which adopts the variable nodes.
+     */
+    private void parseReadArguments(Node node)
+    {
+        // The current token should now be (
+
+        if (tokens.type() == LPAREN)
+        {
+            nextToken();  // consume (
+        }
+        else syntaxError("Missing left parenthesis");
+
+        // A comma separates the variables.
+        boolean more = tokens.type() == IDENTIFIER;
+        while (more)
+        {
+            int id = tokens.symbol();
+            SymtabEntry variableId = symtab.lookup(id);
+            if (variableId == null) variableId = symtab.enter(id);
+            if (incremental != null) incremental.define(id);
+
+            Node variableNode  = newNode(VARIABLE);
+            variableNode.text  = variableId.getName();
+            variableNode.entry = variableId;
+            node.adopt(variableNode);
+
+            nextToken();  // consume the variable
+
+            more = tokens.type() == COMMA;
+            if (more)
+            {
+                nextToken();  // consume ,
+
+                if (tokens.type() != IDENTIFIER)
+                {
+                    syntaxError("Expecting a variable");
+                    return;
+                }
+            }
+        }
+
+        if (node.children.isEmpty())
+        {
+            syntaxError("Invalid READ or READLN statement");
+        }
+        else if (tokens.type() == RPAREN)
         {
-            currentToken = scanner.nextToken();  // consume )
+            nextToken();  // consume )
         }
         else syntaxError("Missing right parenthesis");
     }
@@ -513,32 +891,31 @@ public class Parser
         // The current token should now be an identifier or a number.
 
         // Handler for NOT token
-        boolean hasNot = false;
-        Node notNode = new Node(Node.NodeType.NOT);
-        if(currentToken.type == Token.TokenType.NOT) {
-            hasNot = true;
-            currentToken = scanner.nextToken();
+        Node notNode = null;
+        if(tokens.type() == Token.TokenType.NOT) {
+            notNode = newNode(Node.NodeType.NOT);
+            nextToken();
         }
         // The expression's root node.
         Node exprNode = parseSimpleExpression();
-        if(hasNot) {
+        if(notNode != null) {
             notNode.adopt(exprNode);
             exprNode = notNode;
         }
         // The current token might now be a relational operator.
-        while (relationalOperators.contains(currentToken.type))
-        {
-            Token.TokenType tokenType = currentToken.type;
-            Node opNode = tokenType == EQUALS          ? new Node(EQ)
-                    : tokenType == LESS_THAN           ? new Node(LT)
-                    : tokenType == LESS_EQUALS         ? new Node(LEQ)
-                    : tokenType == GREATER_THAN        ? new Node(GT)
-                    : tokenType == GREATER_EQUALS      ? new Node(GEQ)
-                    : tokenType == NOT_EQUALS          ? new Node(NEQ)
-                    : tokenType == Token.TokenType.AND ? new Node(Node.NodeType.AND)
-                    : tokenType == Token.TokenType.OR  ? new Node(Node.NodeType.OR)
+        while (relationalOperators.contains(tokens.type()))
+        {
+            Token.TokenType tokenType = tokens.type();
+            Node opNode = tokenType == EQUALS          ? newNode(EQ)
+                    : tokenType == LESS_THAN           ? newNode(LT)
+                    : tokenType == LESS_EQUALS         ? newNode(LEQ)
+                    : tokenType == GREATER_THAN        ? newNode(GT)
+                    : tokenType == GREATER_EQUALS      ? newNode(GEQ)
+                    : tokenType == NOT_EQUALS          ? newNode(NEQ)
+                    : tokenType == Token.TokenType.AND ? newNode(Node.NodeType.AND)
+                    : tokenType == Token.TokenType.OR  ? newNode(Node.NodeType.OR)
                     :                                    null;
-            currentToken = scanner.nextToken();  // consume relational operator
+            nextToken();  // consume relational operator
 
 
             // The relational operator node adopts the first simple expression
@@ -567,12 +944,12 @@ public class Parser
 
         // Keep parsing more terms as long as the current token
         // is a + or - operator.
-        while (simpleExpressionOperators.contains(currentToken.type))
+        while (simpleExpressionOperators.contains(tokens.type()))
         {
-            Node opNode = currentToken.type == PLUS ? new Node(ADD)
-                    : new Node(SUBTRACT);
+            Node opNode = tokens.type() == PLUS ? newNode(ADD)
+                    : newNode(SUBTRACT);
 
-            currentToken = scanner.nextToken();  // consume the operator
+            nextToken();  // consume the operator
 
             // The add or subtract node adopts the first term node as its
             // first child and the next term node as its second child. 
@@ -594,13 +971,13 @@ public class Parser
 
         // Keep parsing more factors as long as the current token
         // is a * or / operator.
-        while (termOperators.contains(currentToken.type))
+        while (termOperators.contains(tokens.type()))
         {
-            Node opNode = currentToken.type == STAR ? new Node(MULTIPLY)
-                        : currentToken.type == Token.TokenType.DIV ? new Node(Node.NodeType.DIV)
-                        : new Node(DIVIDE);
+            Node opNode = tokens.type() == STAR ? newNode(MULTIPLY)
+                        : tokens.type() == Token.TokenType.DIV ? newNode(Node.NodeType.DIV)
+                        : newNode(DIVIDE);
 
-            currentToken = scanner.nextToken();  // consume the operator
+            nextToken();  // consume the operator
 
             // The multiply or dive node adopts the first factor node as its
             // as its first child and the next factor node as its second child. 
@@ -617,43 +994,50 @@ public class Parser
     {
         // Handler for negative numbers
         boolean negative = false;
-        Node negNode = new Node(Node.NodeType.NEG);
-        if(currentToken.type == MINUS) {
+        if(tokens.type() == MINUS) {
             negative = true;
-            currentToken = scanner.nextToken();
+            nextToken();
         }
         // The current token should now be an identifier or a number or (
-        if      (currentToken.type == IDENTIFIER) return parseVariable();
-        else if (currentToken.type == INTEGER) {
+        if      (tokens.type() == IDENTIFIER) return parseVariable();
+        else if (tokens.type() == INTEGER) {
             if(negative) {
+                Node negNode = newNode(Node.NodeType.NEG);
                 negNode.adopt(parseIntegerConstant());
                 return negNode;
             }
             return parseIntegerConstant();
         }
-        else if (currentToken.type == REAL) {
+        else if (tokens.type() == REAL) {
             if(negative) {
+                Node negNode = newNode(Node.NodeType.NEG);
                 negNode.adopt(parseRealConstant());
                 return negNode;
             }
             return parseRealConstant();
         }
 
-        else if (currentToken.type == LPAREN)
+        else if (tokens.type() == Token.TokenType.EOF)
+        {
+            nextToken();  // consume EOF
+            return newNode(Node.NodeType.EOF);
+        }
+
+        else if (tokens.type() == LPAREN)
         {
-            currentToken = scanner.nextToken();  // consume (
+            nextToken();  // consume (
             Node exprNode = parseExpression();
 
-            if (currentToken.type == RPAREN)
+            if (tokens.type() == RPAREN)
             {
-                currentToken = scanner.nextToken();  // consume )
+                nextToken();  // consume )
             }
-            else syntaxError("Expecting )");
+            else syntaxError("Expecting )", expressionFollowers);
 
             return exprNode;
         }
 
-        else syntaxError("Unexpected token");
+        else syntaxError("Unexpected token", expressionFollowers);
         return null;
     }
 
@@ -662,15 +1046,16 @@ public class Parser
         // The current token should now be an identifier.
 
         // Has the variable been "declared"?
-        String variableName = currentToken.text;
-        SymtabEntry variableId = symtab.lookup(variableName.toLowerCase());
+        int id = tokens.symbol();
+        SymtabEntry variableId = symtab.lookup(id);
         if (variableId == null) semanticError("Undeclared identifier");
+        else if (incremental != null) incremental.use(id);
 
-        Node node  = new Node(VARIABLE);
-        node.text  = variableName;
+        Node node  = newNode(VARIABLE);
+        node.text  = symtab.interner().spelling(id);
         node.entry = variableId;
 
-        currentToken = scanner.nextToken();  // consume the identifier        
+        nextToken();  // consume the identifier        
         return node;
     }
 
@@ -678,10 +1063,19 @@ public class Parser
     {
         // The current token should now be a number.
 
-        Node integerNode = new Node(INTEGER_CONSTANT);
-        integerNode.value = currentToken.value;
+        Node integerNode = newNode(INTEGER_CONSTANT);
 
-        currentToken = scanner.nextToken();  // consume the number        
+        try
+        {
+            integerNode.value = tokens.integerValue();
+        }
+        catch (ArithmeticException ex)
+        {
+            semanticError("Integer constant out of range");
+            integerNode.value = 0L;
+        }
+
+        nextToken();  // consume the number        
         return integerNode;
     }
 
@@ -689,10 +1083,10 @@ public class Parser
     {
         // The current token should now be a number.
 
-        Node realNode = new Node(REAL_CONSTANT);
-        realNode.value = currentToken.value;
+        Node realNode = newNode(REAL_CONSTANT);
+        realNode.value = tokens.realValue();
 
-        currentToken = scanner.nextToken();  // consume the number        
+        nextToken();  // consume the number        
         return realNode;
     }
 
@@ -700,31 +1094,105 @@ public class Parser
     {
         // The current token should now be CHARACTER or STRING.
 
-        Node stringNode = new Node(STRING_CONSTANT);
-        stringNode.value = currentToken.value;
+        Node stringNode = newNode(STRING_CONSTANT);
+        stringNode.value = tokens.stringValue();
 
-        currentToken = scanner.nextToken();  // consume the string        
+        nextToken();  // consume the string        
         return stringNode;
     }
 
+    /**
+     * Flag a syntax error and recover by skipping to a token
+     * that can start or follow a statement.
+     * @param message the error message.
+     */
     private void syntaxError(String message)
     {
-        System.out.println("SYNTAX ERROR at line " + lineNumber
-                + ": " + message + " at '" + currentToken.text + "'");
-        errorCount++;
+        syntaxError(message, statementSynchronizers);
+    }
+
+    /**
+     * Flag a syntax error and recover by skipping to a synchronizing token.
+     * @param message the error message.
+     * @param synchronizers the set of tokens at which to resume parsing.
+     */
+    private void syntaxError(String message,
+                             EnumSet<Token.TokenType> synchronizers)
+    {
+        reportSyntaxError(message);
+        synchronize(synchronizers);
+    }
+
+    /**
+     * Flag a syntax error without skipping any tokens. Don't report an error
+     * that's too close to the previous one, since it's most likely a cascade.
+     * @param message the error message.
+     */
+    private void reportSyntaxError(String message)
+    {
+        if (abandoned) return;
+        problemCount++;
+
+        if (tokensSinceError >= MIN_ERROR_DISTANCE)
+        {
+            out.println("SYNTAX ERROR at line " + lineNumber
+                    + ": " + message + " at '" + tokens.text() + "'");
+            countError();
+        }
+
+        tokensSinceError = 0;
+    }
 
-        // Recover by skipping the rest of the statement.
-        // Skip to a statement follower token.
-        while (! statementFollowers.contains(currentToken.type))
+    /**
+     * Skip tokens until one is in the synchronizing set or the end of file.
+     * @param synchronizers the set of tokens at which to resume parsing.
+     */
+    private void synchronize(EnumSet<Token.TokenType> synchronizers)
+    {
+        while (   !synchronizers.contains(tokens.type())
+               && (tokens.type() != END_OF_FILE))
         {
-            currentToken = scanner.nextToken();
+            nextToken();
         }
     }
 
     private void semanticError(String message)
     {
-        System.out.println("SEMANTIC ERROR at line " + lineNumber
-                + ": " + message + " at '" + currentToken.text + "'");
+        if (abandoned) return;
+        problemCount++;
+
+        out.println("SEMANTIC ERROR at line " + lineNumber
+                + ": " + message + " at '" + tokens.text() + "'");
+        countError();
+    }
+
+    /**
+     * Flag statements or expressions nested too deeply for the parser's stack.
+     * The parse can't recover from a stack overflow, so it's abandoned.
+     */
+    private void nestingError()
+    {
+        problemCount++;
         errorCount++;
+
+        out.println("SYNTAX ERROR at line " + lineNumber
+                + ": Statements or expressions nested too deeply");
+        tokens.abandon();
+        abandoned = true;
+    }
+
+    /**
+     * Count an error. Abandon parsing if there are too many errors:
+     * from then on, the parser only sees the end of file.
+     */
+    private void countError()
+    {
+        if (++errorCount >= MAX_ERRORS)
+        {
+            out.println("Too many errors: parsing abandoned at line "
+                               + lineNumber + ".");
+            tokens.abandon();
+            abandoned = true;
+        }
     }
 }
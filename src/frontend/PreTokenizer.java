@@ -0,0 +1,275 @@
+/**
+ * Parallel pre-tokenizer class for a simple interpreter.
+ *
+ * Tokenizes a large source text in parallel before parsing. The text
+ * is split into chunks at safe boundaries, which are newlines that
+ * aren't inside a {...} comment or a '...' string. Whether a chunk
+ * starts inside a comment or a string depends on all the text before it,
+ * so each chunk is first scanned speculatively for every possible
+ * starting lexical state. Composing the chunks' results in order then
+ * resolves each chunk's actual starting state.
+ *
+ * Each piece interns its words separately, and then the pieces' IDs
+ * are mapped to the symbol table's IDs.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package frontend;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import intermediate.*;
+
+import static frontend.Token.TokenType.*;
+
+public class PreTokenizer
+{
+    public static final int PARALLEL_THRESHOLD = 1 << 22;  // chars of source
+    private static final int MIN_CHUNK_SIZE = 1 << 18;     // chars per chunk
+
+    // Lexical states at a chunk boundary.
+    private static final int CODE    = 0;
+    private static final int COMMENT = 1;
+    private static final int STRING  = 2;
+    private static final int STATE_COUNT = 3;
+
+    /**
+     * The results of speculatively scanning a chunk of the source text.
+     */
+    private static class ChunkSummary
+    {
+        int exitState[] = new int[STATE_COUNT];      // for each entry state
+        int firstSafeEol[] = new int[STATE_COUNT];   // or -1 if none
+        int linesBeforeSafeEol[] = new int[STATE_COUNT];
+        int lineCount = 0;   // number of newlines in the chunk
+        int firstEof = -1;   // position of the first EOF character, if any
+    }
+
+    /**
+     * Tokenize a source text on the common fork-join pool.
+     * @param source the input source.
+     * @param symtab the symbol table whose interner interns the words.
+     * @return the token stream, ending with the end-of-file token.
+     */
+    public static TokenStream tokenize(Source source, Symtab symtab)
+    {
+        return tokenize(source, symtab, System.out);
+    }
+
+    /**
+     * Tokenize a source text on the common fork-join pool.
+     * @param source the input source.
+     * @param symtab the symbol table whose interner interns the words.
+     * @param out the output stream for error messages.
+     * @return the token stream, ending with the end-of-file token.
+     */
+    public static TokenStream tokenize(Source source, Symtab symtab,
+                                       PrintStream out)
+    {
+        return tokenize(source.buffer(), symtab, ForkJoinPool.commonPool(), out);
+    }
+
+    /**
+     * Tokenize a source text.
+     * @param buffer the source text.
+     * @param symtab the symbol table whose interner interns the words.
+     * @param pool the fork-join pool on which to scan the chunks.
+     * @param out the output stream for error messages.
+     * @return the token stream, ending with the end-of-file token.
+     */
+    public static TokenStream tokenize(char buffer[], Symtab symtab,
+                                       ForkJoinPool pool, PrintStream out)
+    {
+        int chunkCount = Math.max(1, Math.min(4*pool.getParallelism(),
+                                              buffer.length/MIN_CHUNK_SIZE));
+        int chunkStarts[] = new int[chunkCount + 1];
+        for (int c = 0; c <= chunkCount; c++)
+        {
+            chunkStarts[c] = (int) ((long) buffer.length*c/chunkCount);
+        }
+
+        // Pass 1: Speculatively summarize each chunk in parallel.
+        ChunkSummary summaries[] = new ChunkSummary[chunkCount];
+        ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int c = 0; c < chunkCount; c++)
+        {
+            final int chunk = c;
+            tasks.add(ForkJoinTask.adapt(() ->
+                summaries[chunk] = summarize(buffer, chunkStarts[chunk],
+                                                     chunkStarts[chunk + 1])));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+
+        // Resolve each chunk's starting state in order, and split the text
+        // at the first safe newline of each chunk. The scanner stops at the
+        // first EOF character, so ignore any text after it.
+        ArrayList<Integer> splits = new ArrayList<>();
+        ArrayList<Integer> splitLines = new ArrayList<>();
+        splits.add(0);
+        splitLines.add(1);
+
+        int end = buffer.length;
+        int state = CODE;
+        int lineNumber = 1;
+
+        for (int c = 0; c < chunkCount; c++)
+        {
+            ChunkSummary summary = summaries[c];
+            int safeEol = summary.firstSafeEol[state];
+
+            if ((c > 0) && (safeEol >= 0))
+            {
+                splits.add(safeEol + 1);
+                splitLines.add(lineNumber + summary.linesBeforeSafeEol[state] + 1);
+            }
+
+            if (summary.firstEof >= 0)
+            {
+                end = summary.firstEof;
+                break;
+            }
+
+            state = summary.exitState[state];
+            lineNumber += summary.lineCount;
+        }
+
+        while (splits.get(splits.size() - 1) > end)
+        {
+            splits.remove(splits.size() - 1);
+            splitLines.remove(splitLines.size() - 1);
+        }
+        splits.add(end);
+
+        // Pass 2: Scan the pieces between the splits in parallel.
+        int pieceCount = splits.size() - 1;
+        Scanner scanners[] = new Scanner[pieceCount];
+        TokenStream pieces[] = new TokenStream[pieceCount];
+        tasks.clear();
+
+        for (int p = 0; p < pieceCount; p++)
+        {
+            final int piece = p;
+            scanners[p] = new Scanner(buffer, splits.get(p), splits.get(p + 1),
+                                      splitLines.get(p), new Interner());
+            scanners[p].deferErrors();
+
+            tasks.add(ForkJoinTask.adapt(() ->
+                pieces[piece] = scanPiece(scanners[piece])));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+
+        // Report any token errors in order, and map each piece's
+        // interned IDs to the symbol table's.
+        Interner interner = symtab.interner();
+        int symbolMaps[][] = new int[pieceCount][];
+
+        for (int p = 0; p < pieceCount; p++)
+        {
+            out.print(scanners[p].deferredErrors());
+
+            Interner pieceInterner = scanners[p].interner();
+            symbolMaps[p] = new int[pieceInterner.size()];
+            for (int id = 0; id < symbolMaps[p].length; id++)
+            {
+                symbolMaps[p][id] = interner.intern(pieceInterner.spelling(id));
+            }
+        }
+
+        // Pass 3: Remap the pieces' IDs in parallel, then concatenate.
+        tasks.clear();
+        for (int p = 0; p < pieceCount; p++)
+        {
+            final int piece = p;
+            tasks.add(ForkJoinTask.adapt(() ->
+                pieces[piece].remapSymbols(symbolMaps[piece])));
+        }
+        pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(tasks)));
+
+        return TokenStream.concatenate(buffer, pieces);
+    }
+
+    /**
+     * Scan a chunk of the source text once, tracking the lexical state
+     * for each possible starting state at the same time.
+     * @param buffer the source text.
+     * @param start the position of the chunk's first character.
+     * @param end the position just past the chunk's last character.
+     * @return the chunk summary.
+     */
+    private static ChunkSummary summarize(char buffer[], int start, int end)
+    {
+        ChunkSummary summary = new ChunkSummary();
+        int states[] = { CODE, COMMENT, STRING };
+        java.util.Arrays.fill(summary.firstSafeEol, -1);
+
+        for (int i = start; i < end; i++)
+        {
+            char ch = buffer[i];
+
+            if (ch == Source.EOL)
+            {
+                for (int s = 0; s < STATE_COUNT; s++)
+                {
+                    if ((states[s] == CODE) && (summary.firstSafeEol[s] < 0))
+                    {
+                        summary.firstSafeEol[s] = i;
+                        summary.linesBeforeSafeEol[s] = summary.lineCount;
+                    }
+                }
+
+                summary.lineCount++;
+            }
+            else if ((ch == '{') || (ch == '}') || (ch == '\''))
+            {
+                for (int s = 0; s < STATE_COUNT; s++)
+                {
+                    states[s] = nextState(states[s], ch);
+                }
+            }
+            else if ((ch == Source.EOF) && (summary.firstEof < 0))
+            {
+                summary.firstEof = i;
+            }
+        }
+
+        System.arraycopy(states, 0, summary.exitState, 0, STATE_COUNT);
+        return summary;
+    }
+
+    /**
+     * The lexical state after a comment or string delimiter.
+     * A '' inside a string leaves and reenters the string.
+     * @param state the current lexical state.
+     * @param ch the delimiter character.
+     * @return the next lexical state.
+     */
+    private static int nextState(int state, char ch)
+    {
+        switch (state)
+        {
+            case CODE    : return ch == '{'  ? COMMENT
+                                : ch == '\'' ? STRING
+                                :              CODE;
+            case COMMENT : return ch == '}'  ? CODE    : COMMENT;
+            default      : return ch == '\'' ? CODE    : STRING;
+        }
+    }
+
+    /**
+     * Scan a piece of the source text.
+     * @param scanner the scanner for the piece.
+     * @return the piece's tokens, ending with an end-of-file token.
+     */
+    private static TokenStream scanPiece(Scanner scanner)
+    {
+        TokenStream tokens = new TokenStream(scanner.buffer(), 1024);
+        while (scanner.scanInto(tokens) != END_OF_FILE) {}
+
+        return tokens;
+    }
+}
@@ -1,60 +1,491 @@
 /**
  * Scanner class for a simple interpreter.
- * 
+ *
+ * The scanner is a table-driven DFA. A precomputed table maps each ASCII
+ * character to its character class, and a state-transition table maps
+ * each state and character class to the next state. Non-ASCII characters
+ * take a slow path through the Unicode character predicates.
+ *
+ * Words are interned to dense integer IDs as they're scanned, and
+ * the reserved words are recognized by their IDs.
+ *
  * (c) 2020 by Ronald Mak
  * Department of Computer Science
  * San Jose State University
  */
 package frontend;
 
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Map;
+
+import intermediate.*;
+
+import static frontend.Token.TokenType.*;
+
 public class Scanner
 {
-    private Source source;
-    
+    // Character classes.
+    private static final int OTHER_CLASS   = 0;
+    private static final int LETTER_CLASS  = 1;
+    private static final int DIGIT_CLASS   = 2;
+    private static final int SPACE_CLASS   = 3;
+    private static final int LBRACE_CLASS  = 4;
+    private static final int RBRACE_CLASS  = 5;
+    private static final int QUOTE_CLASS   = 6;
+    private static final int COLON_CLASS   = 7;
+    private static final int EQUALS_CLASS  = 8;
+    private static final int LESS_CLASS    = 9;
+    private static final int GREATER_CLASS = 10;
+    private static final int PERIOD_CLASS  = 11;
+    private static final int SYMBOL_CLASS  = 12;  // single-character symbol
+    private static final int EOF_CLASS     = 13;
+    private static final int CLASS_COUNT   = 14;
+
+    // DFA states. Each state from WORD on can end a token.
+    private static final int START      = 0;
+    private static final int COMMENT    = 1;
+    private static final int WORD       = 2;
+    private static final int NUMBER     = 3;
+    private static final int IN_STRING  = 4;   // string not yet closed
+    private static final int STRING_END = 5;   // closing ' or the first of ''
+    private static final int COLON_SEEN = 6;   // : or the start of :=
+    private static final int LESS_SEEN  = 7;   // < or the start of <= or <>
+    private static final int MORE_SEEN  = 8;   // > or the start of >=
+    private static final int POINT_SEEN = 9;   // . or the start of ..
+    private static final int SYMBOL     = 10;  // a complete special symbol
+    private static final int INVALID    = 11;  // an invalid character
+    private static final int END        = 12;  // end of file
+    private static final int STATE_COUNT = 13;
+
+    private static final byte ACCEPT = -1;  // the token ends before this char
+
+    private static final byte charClasses[] = new byte[128];
+    private static final byte transitions[][] = new byte[STATE_COUNT][CLASS_COUNT];
+    private static final Token.TokenType symbolTypes[] = new Token.TokenType[128];
+
+    static
+    {
+        // ASCII character classes.
+        for (char ch = 0; ch < 128; ch++) charClasses[ch] = (byte) unicodeClass(ch);
+
+        charClasses['{']  = LBRACE_CLASS;
+        charClasses['}']  = RBRACE_CLASS;
+        charClasses['\''] = QUOTE_CLASS;
+        charClasses[':']  = COLON_CLASS;
+        charClasses['=']  = EQUALS_CLASS;
+        charClasses['<']  = LESS_CLASS;
+        charClasses['>']  = GREATER_CLASS;
+        charClasses['.']  = PERIOD_CLASS;
+        charClasses[Source.EOF] = EOF_CLASS;
+
+        symbolTypes[','] = COMMA;     symbolTypes[';'] = SEMICOLON;
+        symbolTypes['+'] = PLUS;      symbolTypes['-'] = MINUS;
+        symbolTypes['*'] = STAR;      symbolTypes['/'] = SLASH;
+        symbolTypes['('] = LPAREN;    symbolTypes[')'] = RPAREN;
+        symbolTypes['['] = LBRACKET;  symbolTypes[']'] = RBRACKET;
+        symbolTypes['^'] = CARAT;     symbolTypes['='] = EQUALS;
+
+        for (char ch = 0; ch < 128; ch++)
+        {
+            if ((symbolTypes[ch] != null) && (ch != '='))
+            {
+                charClasses[ch] = SYMBOL_CLASS;
+            }
+        }
+
+        // State transitions. By default, a state ends its token.
+        for (byte row[] : transitions) Arrays.fill(row, ACCEPT);
+
+        byte start[] = transitions[START];
+        start[OTHER_CLASS]   = INVALID;
+        start[LETTER_CLASS]  = WORD;
+        start[DIGIT_CLASS]   = NUMBER;
+        start[SPACE_CLASS]   = START;
+        start[LBRACE_CLASS]  = COMMENT;
+        start[RBRACE_CLASS]  = INVALID;
+        start[QUOTE_CLASS]   = IN_STRING;
+        start[COLON_CLASS]   = COLON_SEEN;
+        start[EQUALS_CLASS]  = SYMBOL;
+        start[LESS_CLASS]    = LESS_SEEN;
+        start[GREATER_CLASS] = MORE_SEEN;
+        start[PERIOD_CLASS]  = POINT_SEEN;
+        start[SYMBOL_CLASS]  = SYMBOL;
+        start[EOF_CLASS]     = END;
+
+        Arrays.fill(transitions[COMMENT], (byte) COMMENT);
+        transitions[COMMENT][RBRACE_CLASS] = START;
+        transitions[COMMENT][EOF_CLASS]    = START;
+
+        transitions[WORD][LETTER_CLASS]   = WORD;
+        transitions[WORD][DIGIT_CLASS]    = WORD;
+        transitions[NUMBER][DIGIT_CLASS]  = NUMBER;
+        transitions[NUMBER][PERIOD_CLASS] = NUMBER;
+
+        Arrays.fill(transitions[IN_STRING], (byte) IN_STRING);
+        transitions[IN_STRING][QUOTE_CLASS]  = STRING_END;
+        transitions[IN_STRING][EOF_CLASS]    = ACCEPT;
+        transitions[STRING_END][QUOTE_CLASS] = IN_STRING;
+
+        transitions[COLON_SEEN][EQUALS_CLASS]  = SYMBOL;
+        transitions[LESS_SEEN][EQUALS_CLASS]   = SYMBOL;
+        transitions[LESS_SEEN][GREATER_CLASS]  = SYMBOL;
+        transitions[MORE_SEEN][EQUALS_CLASS]   = SYMBOL;
+        transitions[POINT_SEEN][PERIOD_CLASS]  = SYMBOL;
+    }
+
+    private char buffer[];   // the source text
+    private int position;    // position of the next character to scan
+    private int end;         // position just past the last character
+    private int lineNumber;  // current source line number
+
+    private Interner interner;                // interns the words
+    private Token.TokenType reservedTypes[];  // reserved word types by ID
+
+    // The most recently scanned token.
+    private int tokenStart;   // position of the token's first character
+    private int tokenEnd;     // position just past the token's last character
+    private int tokenLine;    // the token's source line number
+    private int tokenState;   // the DFA state that ended the token
+    private int tokenSymbol;  // the word's interned ID, or -1 if not a word
+    private String tokenErrorDetail;  // the token's error message after
+                                      // its line number, or null if valid
+
+    private StringBuilder deferredErrors = null;  // if errors are deferred
+    private PrintStream out = System.out;         // for error messages
+
     /**
      * Constructor.
      * @param source the input source.
      */
     public Scanner(Source source)
     {
-        this.source = source;
+        this(source.buffer(), 0, source.length(), 1, new Interner());
+    }
+
+    /**
+     * Constructor.
+     * @param source the input source.
+     * @param out the output stream for error messages.
+     */
+    public Scanner(Source source, PrintStream out)
+    {
+        this(source);
+        this.out = out;
+    }
+
+    /**
+     * Constructor.
+     * @param source the input source.
+     * @param symtab the symbol table whose interner interns the words.
+     */
+    public Scanner(Source source, Symtab symtab)
+    {
+        this(source.buffer(), 0, source.length(), 1, symtab.interner());
+    }
+
+    /**
+     * Constructor.
+     * @param source the input source.
+     * @param symtab the symbol table whose interner interns the words.
+     * @param out the output stream for error messages.
+     */
+    public Scanner(Source source, Symtab symtab, PrintStream out)
+    {
+        this(source, symtab);
+        this.out = out;
     }
-    
+
+    /**
+     * Constructor to scan part of a source text.
+     * @param buffer the source text.
+     * @param start the position of the first character to scan.
+     * @param end the position just past the last character to scan.
+     * @param lineNumber the source line number at the start position.
+     * @param interner the interner of the words.
+     */
+    Scanner(char buffer[], int start, int end, int lineNumber,
+            Interner interner)
+    {
+        this.buffer = buffer;
+        this.position = start;
+        this.end = end;
+        this.lineNumber = lineNumber;
+        this.interner = interner;
+
+        // Intern the reserved words to be able to recognize them by ID.
+        reservedTypes = new Token.TokenType[0];
+        for (Map.Entry<String, Token.TokenType> entry
+                : Token.reservedWords().entrySet())
+        {
+            int id = interner.intern(entry.getKey());
+            if (id >= reservedTypes.length)
+            {
+                reservedTypes = Arrays.copyOf(reservedTypes, id + 1);
+            }
+
+            reservedTypes[id] = entry.getValue();
+        }
+    }
+
+    /**
+     * Collect token error messages instead of printing them immediately.
+     */
+    void deferErrors() { deferredErrors = new StringBuilder(); }
+
+    /**
+     * Getter.
+     * @return the deferred token error messages.
+     */
+    String deferredErrors() { return deferredErrors.toString(); }
+
     /**
      * Extract the next token from the source.
      * @return the token.
      */
     public Token nextToken()
     {
-        // Skip blanks, comments, and other whitespace characters.
-        char ch = nextNonblankCharacter();
-        
-        if (Character.isLetter(ch))     return Token.word(ch, source);
-        else if (Character.isDigit(ch)) return Token.number(ch, source);
-        else if (ch == '\'')            return Token.characterOrString(ch, source);
-        else                            return Token.specialSymbol(ch, source);
+        Token.TokenType type = scanToken();
+        String text = tokenText(type);
+        Object value = null;
+
+        if (type == INTEGER)
+        {
+            try
+            {
+                value = Long.parseLong(text);
+            }
+            catch (NumberFormatException ex)
+            {
+                tokenError("Integer constant out of range", text);
+                value = 0L;
+            }
+        }
+        else if (type == REAL) value = Double.parseDouble(text);
+        else if (   (type == CHARACTER)
+                 || (type == Token.TokenType.STRING)) value = stringValue();
+
+        if ((type == ERROR) || (tokenState == IN_STRING)) tokenError(text);
+
+        return new Token(type, text, value, tokenLine);
+    }
+
+    /**
+     * Scan the next token into a token stream without creating
+     * a Token object.
+     * @param tokens the token stream.
+     * @return the type of the token.
+     */
+    Token.TokenType scanInto(TokenStream tokens)
+    {
+        Token.TokenType type = scanToken();
+        tokens.add(type, tokenStart, tokenEnd - tokenStart, tokenLine,
+                   tokenSymbol);
+        tokenErrorDetail = null;
+
+        if ((type == ERROR) || (tokenState == IN_STRING)) tokenError(tokenText(type));
+
+        return type;
+    }
+
+    /**
+     * Getter.
+     * @return the error message of the token just scanned into a stream,
+     * starting after its line number, or null if the token is valid.
+     */
+    String tokenErrorDetail() { return tokenErrorDetail; }
+
+    /**
+     * Getter.
+     * @return the source text.
+     */
+    char[] buffer() { return buffer; }
+
+    /**
+     * Getter.
+     * @return the interner of the words.
+     */
+    Interner interner() { return interner; }
+
+    /**
+     * Extract the text of the token that the DFA just scanned.
+     * @param type the token type.
+     * @return the text.
+     */
+    private String tokenText(Token.TokenType type)
+    {
+        if ((type == CHARACTER) || (type == Token.TokenType.STRING))
+        {
+            String string = stringValue();
+            return tokenState == STRING_END ? "'" + string + "'" : "'" + string;
+        }
+        else if (type == END_OF_FILE) return String.valueOf(Source.EOF);
+        else return new String(buffer, tokenStart, tokenEnd - tokenStart);
     }
-    
+
+    /**
+     * Run the DFA over the source buffer to scan the next token,
+     * skipping any blanks, comments, and other whitespace characters.
+     * @return the type of the token.
+     */
+    private Token.TokenType scanToken()
+    {
+        int state = START;
+        int start = position;
+        int line  = lineNumber;
+
+        while (true)
+        {
+            char ch = position < end ? buffer[position] : Source.EOF;
+            int charClass = ch < 128 ? charClasses[ch] : unicodeClass(ch);
+            int nextState = transitions[state][charClass];
+
+            if (nextState == ACCEPT) break;
+
+            // Consume the character. The end of file is never consumed.
+            if (charClass != EOF_CLASS)
+            {
+                position++;
+                if (ch == Source.EOL) lineNumber++;
+            }
+
+            // Still between tokens.
+            if (nextState == START)
+            {
+                start = position;
+                line  = lineNumber;
+            }
+
+            state = nextState;
+        }
+
+        tokenStart = start;
+        tokenEnd   = position;
+        tokenLine  = line;
+        tokenState = state;
+        tokenSymbol = -1;
+
+        return tokenType(state);
+    }
+
     /**
-     * Skip blanks, comments, and other whitespace characters
-     * and return the next nonblank character.
-     * @return the next nonblank character.
+     * Determine the type of the token that the DFA just scanned.
+     * @param state the DFA state that ended the token.
+     * @return the token type.
      */
-    private char nextNonblankCharacter()
+    private Token.TokenType tokenType(int state)
     {
-        char ch = source.currentChar();
-        
-        while ((ch == '{') || Character.isWhitespace(ch))
+        switch (state)
         {
-            if (ch == '{')
+            case WORD :
             {
-                // Consume characters of the comment.
-                while ((ch != '}') && (ch != Source.EOF)) ch = source.nextChar();
+                tokenSymbol = interner.intern(buffer, tokenStart,
+                                              tokenEnd - tokenStart);
+                Token.TokenType type = tokenSymbol < reservedTypes.length
+                                           ? reservedTypes[tokenSymbol] : null;
+                return type != null ? type : IDENTIFIER;
             }
-            
-            ch = source.nextChar();  // consume character
+
+            case NUMBER :
+            {
+                int pointCount = 0;
+                for (int i = tokenStart; i < tokenEnd; i++)
+                {
+                    if (buffer[i] == '.') pointCount++;
+                }
+
+                return pointCount == 0 ? INTEGER
+                     : pointCount == 1 ? REAL
+                     :                   ERROR;
+            }
+
+            case IN_STRING :
+            case STRING_END :
+            {
+                // It's a character token if the string length is 1.
+                // Otherwise, it's a string token.
+                return stringValue().length() == 1 ? CHARACTER : Token.TokenType.STRING;
+            }
+
+            case COLON_SEEN : return COLON;
+            case LESS_SEEN  : return LESS_THAN;
+            case MORE_SEEN  : return GREATER_THAN;
+            case POINT_SEEN : return PERIOD;
+
+            case SYMBOL :
+            {
+                char first = buffer[tokenStart];
+                if (tokenEnd - tokenStart == 1) return symbolTypes[first];
+
+                char second = buffer[tokenStart + 1];
+                return first == ':' ? COLON_EQUALS
+                     : first == '.' ? DOT_DOT
+                     : first == '>' ? GREATER_EQUALS
+                     : second == '=' ? LESS_EQUALS
+                     :                 NOT_EQUALS;
+            }
+
+            case END : return END_OF_FILE;
+            default :  return ERROR;
         }
-        
-        return ch;  // nonblank character
+    }
+
+    /**
+     * Extract the value of the string token that the DFA just scanned,
+     * without the enclosing quotes and with each '' reduced to '.
+     * @return the string value.
+     */
+    private String stringValue()
+    {
+        int last = tokenState == STRING_END ? tokenEnd - 1 : tokenEnd;
+        StringBuilder value = new StringBuilder(last - tokenStart);
+
+        for (int i = tokenStart + 1; i < last; i++)
+        {
+            value.append(buffer[i]);
+            if (buffer[i] == '\'') i++;  // skip the second ' of ''
+        }
+
+        return value.toString();
+    }
+
+    /**
+     * Slow path: classify a character using the Unicode predicates.
+     * @param ch the character.
+     * @return the character class.
+     */
+    private static int unicodeClass(char ch)
+    {
+        return Character.isLetter(ch)     ? LETTER_CLASS
+             : Character.isDigit(ch)      ? DIGIT_CLASS
+             : Character.isWhitespace(ch) ? SPACE_CLASS
+             :                              OTHER_CLASS;
+    }
+
+    /**
+     * Handle an error in the token that the DFA just scanned.
+     * @param text the text of the bad token.
+     */
+    private void tokenError(String text)
+    {
+        String message = tokenState == NUMBER ? "Invalid number"
+                       : tokenState == IN_STRING ? "String not closed"
+                       :                        "Invalid token";
+
+        tokenError(message, text);
+    }
+
+    /**
+     * Report an error in the token that the DFA just scanned.
+     * @param message the error message.
+     * @param text the text of the bad token.
+     */
+    private void tokenError(String message, String text)
+    {
+        tokenErrorDetail = ": " + message + " at '" + text + "'";
+        String error = "TOKEN ERROR at line " + tokenLine + tokenErrorDetail;
+
+        if (deferredErrors != null) deferredErrors.append(error).append('\n');
+        else                        out.println(error);
     }
 }
@@ -7,16 +7,18 @@
  */
 package frontend;
 
-import java.io.BufferedReader;
-import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 public class Source
 {
     public static final char EOL = '\n';
     public static final char EOF = '\0';
     
-    private BufferedReader source;
+    private char buffer[];       // the entire source text
+    private int position = -1;   // position of the current character
     
     private int lineNumber = 1;  // current source line number
     private char currentChar;    // current source character
@@ -29,7 +31,8 @@ public class Source
     {
         try
         {
-            source = new BufferedReader(new FileReader(sourceFileName));
+            byte bytes[] = Files.readAllBytes(Paths.get(sourceFileName));
+            buffer = new String(bytes, Charset.defaultCharset()).toCharArray();
             currentChar = nextChar();  // read the first character of the file
         }
         catch(IOException ex)
@@ -39,6 +42,28 @@ public class Source
         }
     }
     
+    /**
+     * Constructor
+     * @param text the source text.
+     */
+    public Source(char text[])
+    {
+        buffer = text;
+        currentChar = nextChar();  // read the first character of the text
+    }
+    
+    /**
+     * Getter.
+     * @return the entire source text.
+     */
+    public char[] buffer() { return buffer; }
+    
+    /**
+     * Getter.
+     * @return the length of the source text.
+     */
+    public int length() { return buffer.length; }
+    
     /**
      * Getter.
      * @return the current source line number.
@@ -57,20 +82,11 @@ public class Source
      */
     public char nextChar()
     {
-        try 
-        {
-            int value = source.read();
-            currentChar = value > -1 ? (char) value : EOF;
-            if (currentChar == EOL) lineNumber++;
-            
-            return currentChar;
-        }
-        catch (IOException ex)
-        {
-            ex.printStackTrace();
-            System.exit(-1);
-        }
-        
-        return EOF;
+        if (position < buffer.length) position++;
+    
+        currentChar = position < buffer.length ? buffer[position] : EOF;
+        if (currentChar == EOL) lineNumber++;
+    
+        return currentChar;
     }
 }
@@ -7,13 +7,15 @@
  */
 package frontend;
 
+import java.util.EnumSet;
 import java.util.HashMap;
 
 public class Token
 {
     public enum TokenType
     {
-        PROGRAM, BEGIN, END, REPEAT, UNTIL, WRITE, WRITELN, 
+        PROGRAM, BEGIN, END, REPEAT, UNTIL, WRITE, WRITELN,
+        READ, READLN, EOF,
         DIV, MOD, AND, OR, NOT,
         CONST, TYPE, VAR, PROCEDURE, FUNCTION,
         WHILE, DO, FOR, TO, DOWNTO, IF, THEN, ELSE, CASE, OF,
@@ -28,40 +30,16 @@ public class Token
     
     /**
      * The table (as a hashmap) of reserved words. Initialize the table.
+     * The reserved word types are the enum constants from PROGRAM
+     * through OF, and each one is spelled the same as its name.
      */
     private static HashMap<String, TokenType> reservedWords;
     static
     {
-        reservedWords = new HashMap<String, TokenType>();
+        EnumSet<TokenType> types = EnumSet.range(TokenType.PROGRAM, TokenType.OF);
+        reservedWords = new HashMap<String, TokenType>(2*types.size());
         
-        reservedWords.put("PROGRAM",   TokenType.PROGRAM);
-        reservedWords.put("BEGIN",     TokenType.BEGIN);
-        reservedWords.put("END",       TokenType.END);
-        reservedWords.put("REPEAT",    TokenType.REPEAT);
-        reservedWords.put("UNTIL",     TokenType.UNTIL);
-        reservedWords.put("WRITE",     TokenType.WRITE);
-        reservedWords.put("WRITELN",   TokenType.WRITELN);
-        reservedWords.put("DIV",       TokenType.DIV);
-        reservedWords.put("MOD",       TokenType.MOD);
-        reservedWords.put("AND",       TokenType.AND);
-        reservedWords.put("OR",        TokenType.OR);
-        reservedWords.put("NOT",       TokenType.NOT);
-        reservedWords.put("CONST",     TokenType.CONST);
-        reservedWords.put("TYPE",      TokenType.TYPE);
-        reservedWords.put("VAR",       TokenType.VAR);
-        reservedWords.put("PROCEDURE", TokenType.PROCEDURE);
-        reservedWords.put("FUNCTION",  TokenType.FUNCTION);
-        reservedWords.put("WHILE",     TokenType.WHILE);
-        reservedWords.put("DO",        TokenType.DO);
-        reservedWords.put("FOR",       TokenType.FOR);
-        reservedWords.put("TO",        TokenType.TO);
-        reservedWords.put("DOWNTO",    TokenType.DOWNTO);
-        reservedWords.put("IF",        TokenType.IF);
-        reservedWords.put("THEN",      TokenType.THEN);
-        reservedWords.put("ELSE",      TokenType.ELSE);
-        reservedWords.put("WHILE",     TokenType.WHILE);
-        reservedWords.put("CASE",      TokenType.CASE);
-        reservedWords.put("OF",        TokenType.OF);
+        for (TokenType type : types) reservedWords.put(type.name(), type);
     }
     
     public TokenType type;       // what type of token
@@ -78,6 +56,27 @@ public class Token
         this.text += firstChar;
     }
     
+    /**
+     * Constructor.
+     * @param type the token type.
+     * @param text the text of the token.
+     * @param value the value (if any) of the token.
+     * @param lineNumber the source line number of the token.
+     */
+    Token(TokenType type, String text, Object value, int lineNumber)
+    {
+        this.type = type;
+        this.text = text;
+        this.value = value;
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Getter.
+     * @return the table of reserved words, in upper case.
+     */
+    static HashMap<String, TokenType> reservedWords() { return reservedWords; }
+
     /**
      * Construct a word token.
      * @param firstChar the first character of the token.
@@ -0,0 +1,446 @@
+/**
+ * Token stream class for a simple interpreter.
+ *
+ * The tokens are stored in parallel primitive arrays of token type
+ * ordinals, start positions in the source text, lengths, and line
+ * numbers, so scanning and parsing don't create a Token object
+ * per token. A token's text and value are extracted from the source
+ * text only when the parser asks for them.
+ *
+ * A stream that the scanner fills on demand keeps only a window of
+ * tokens, from the current token on, and reuses its arrays instead of
+ * growing them once the earlier tokens are dead.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package frontend;
+
+import java.util.Arrays;
+
+import static frontend.Token.TokenType.*;
+
+public class TokenStream
+{
+    private static final Token.TokenType TYPES[] = Token.TokenType.values();
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int TIMED_BATCH = 64;  // tokens to scan per clock reading
+
+    private char buffer[];      // the source text
+    private Scanner scanner;    // fills the stream on demand, or null if done
+
+    private byte types[];       // token type ordinals
+    private int starts[];       // positions of the tokens' first characters
+    private int lengths[];      // lengths of the tokens' text
+    private int lines[];        // source line numbers of the tokens
+    private int symbols[];      // interned IDs of words, or -1
+    private int count;          // number of tokens in the arrays
+    private int base;           // stream index of the first token in the arrays
+
+    private int position;       // stream index of the current token
+
+    private long scanNanos;     // time spent scanning, or -1 if not timed
+
+    /**
+     * Constructor for a stream that the scanner fills as the tokens
+     * are needed.
+     * @param scanner the scanner.
+     */
+    public TokenStream(Scanner scanner)
+    {
+        this(scanner.buffer(), INITIAL_CAPACITY);
+        this.scanner = scanner;
+    }
+
+    /**
+     * Constructor for a stream to be filled by adding tokens.
+     * @param buffer the source text.
+     * @param capacity the initial capacity.
+     */
+    TokenStream(char buffer[], int capacity)
+    {
+        this.buffer  = buffer;
+        this.scanner = null;
+        this.types   = new byte[capacity];
+        this.starts  = new int[capacity];
+        this.lengths = new int[capacity];
+        this.lines   = new int[capacity];
+        this.symbols = new int[capacity];
+        this.count    = 0;
+        this.base     = 0;
+        this.position = 0;
+        this.scanNanos = -1;
+    }
+
+    /**
+     * Concatenate streams over the same source text.
+     * Each stream except the last one ends with an end-of-file token
+     * that is dropped.
+     * @param buffer the source text.
+     * @param streams the streams to concatenate.
+     * @return the concatenated stream.
+     */
+    static TokenStream concatenate(char buffer[], TokenStream streams[])
+    {
+        int total = 0;
+        for (TokenStream stream : streams) total += stream.count - 1;
+
+        TokenStream result = new TokenStream(buffer, total + 1);
+        for (int i = 0; i < streams.length; i++)
+        {
+            TokenStream stream = streams[i];
+            int n = i < streams.length - 1 ? stream.count - 1 : stream.count;
+
+            result.copy(stream, 0, n);
+        }
+
+        return result;
+    }
+
+    /**
+     * Make a new version of a fully scanned stream for an edited source
+     * text: the tokens before the edit, the tokens that were scanned again
+     * around the edit, and then the tokens after it, moved.
+     * @param buffer the edited source text.
+     * @param old the stream of the text before the edit.
+     * @param prefix the number of old tokens before the edit.
+     * @param middle the tokens scanned again.
+     * @param middleCount the number of tokens to take from the middle.
+     * @param suffix the index of the first old token after the edit.
+     * @param shift how far the tokens after the edit move in the text.
+     * @param lineShift how many lines the tokens after the edit move.
+     * @return the new stream.
+     */
+    static TokenStream splice(char buffer[], TokenStream old, int prefix,
+                              TokenStream middle, int middleCount,
+                              int suffix, int shift, int lineShift)
+    {
+        int tail = old.count - suffix;
+        TokenStream result = new TokenStream(buffer, prefix + middleCount + tail);
+
+        result.copy(old, 0, prefix);
+        result.copy(middle, 0, middleCount);
+
+        int from = result.count;
+        result.copy(old, suffix, tail);
+        for (int i = from; i < result.count; i++)
+        {
+            result.starts[i] += shift;
+            result.lines[i]  += lineShift;
+        }
+
+        return result;
+    }
+
+    /**
+     * Append tokens of another stream.
+     * @param stream the other stream.
+     * @param from the array index of its first token to append.
+     * @param n the number of tokens to append.
+     */
+    private void copy(TokenStream stream, int from, int n)
+    {
+        System.arraycopy(stream.types,   from, types,   count, n);
+        System.arraycopy(stream.starts,  from, starts,  count, n);
+        System.arraycopy(stream.lengths, from, lengths, count, n);
+        System.arraycopy(stream.lines,   from, lines,   count, n);
+        System.arraycopy(stream.symbols, from, symbols, count, n);
+        count += n;
+    }
+
+    /**
+     * Append a token.
+     * @param type the token type.
+     * @param start the position of the token's first character.
+     * @param length the length of the token's text.
+     * @param line the source line number of the token.
+     * @param symbol the interned ID of a word, or -1.
+     */
+    void add(Token.TokenType type, int start, int length, int line, int symbol)
+    {
+        if (count == types.length)
+        {
+            int capacity = 2*count;
+            types   = Arrays.copyOf(types,   capacity);
+            starts  = Arrays.copyOf(starts,  capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines   = Arrays.copyOf(lines,   capacity);
+            symbols = Arrays.copyOf(symbols, capacity);
+        }
+
+        types[count]   = (byte) type.ordinal();
+        starts[count]  = start;
+        lengths[count] = length;
+        lines[count]   = line;
+        symbols[count] = symbol;
+        count++;
+    }
+
+    /**
+     * Make sure that the token at a stream index is in the arrays.
+     * Past the end of file, the token is the end-of-file token.
+     * @param index the stream index of the token.
+     * @return the array index of the token.
+     */
+    private int fill(int index)
+    {
+        if ((index >= base + count) && (scanner != null))
+        {
+            if (scanNanos < 0) scan(index);
+            else
+            {
+                // Scan ahead a batch of tokens to amortize reading the clock.
+                long start = System.nanoTime();
+                scan(index + TIMED_BATCH);
+                scanNanos += System.nanoTime() - start;
+            }
+        }
+
+        return index < base + count ? index - base : count - 1;
+    }
+
+    /**
+     * Scan tokens until the token at a stream index is in the arrays
+     * or the end of file.
+     * @param index the stream index of the token.
+     */
+    private void scan(int index)
+    {
+        while ((index >= base + count) && (scanner != null))
+        {
+            if (count == types.length) dropDeadTokens();
+            if (scanner.scanInto(this) == END_OF_FILE) scanner = null;
+        }
+    }
+
+    /**
+     * Start timing the scanner as it fills the stream.
+     */
+    public void timeScanning()
+    {
+        if (scanNanos < 0) scanNanos = 0;
+    }
+
+    /**
+     * Getter.
+     * @return the time spent scanning in nanoseconds, if timed.
+     */
+    public long scanNanos() { return Math.max(scanNanos, 0); }
+
+    /**
+     * Shift the live tokens to the front of the arrays if that frees
+     * at least half of them. Otherwise, the arrays will grow.
+     */
+    private void dropDeadTokens()
+    {
+        int dead = position - base;
+        if (dead < count/2) return;
+
+        count -= dead;
+        System.arraycopy(types,   dead, types,   0, count);
+        System.arraycopy(starts,  dead, starts,  0, count);
+        System.arraycopy(lengths, dead, lengths, 0, count);
+        System.arraycopy(lines,   dead, lines,   0, count);
+        System.arraycopy(symbols, dead, symbols, 0, count);
+        base += dead;
+    }
+
+    /**
+     * Consume the current token.
+     */
+    public void advance()
+    {
+        if ((fill(position) < count - 1) || (scanner != null)) position++;
+    }
+
+    /**
+     * Getter.
+     * @return the type of the current token.
+     */
+    public Token.TokenType type()
+    {
+        int i = fill(position);  // fill() can reallocate the arrays
+        return TYPES[types[i]];
+    }
+
+    /**
+     * Getter.
+     * @return the source line number of the current token.
+     */
+    public int lineNumber()
+    {
+        int i = fill(position);
+        return lines[i];
+    }
+
+    /**
+     * Getter.
+     * @return the position of the current token's first character.
+     */
+    public int startPosition()
+    {
+        int i = fill(position);
+        return starts[i];
+    }
+
+    /**
+     * Getter.
+     * @return the length of the current token's text.
+     */
+    public int length()
+    {
+        int i = fill(position);
+        return lengths[i];
+    }
+
+    /**
+     * Getter.
+     * @return the interned ID of the current word token, or -1.
+     */
+    public int symbol()
+    {
+        int i = fill(position);
+        return symbols[i];
+    }
+
+    /**
+     * Replace the interned IDs of the words.
+     * @param map the new ID of each old ID.
+     */
+    void remapSymbols(int map[])
+    {
+        for (int i = 0; i < count; i++)
+        {
+            if (symbols[i] >= 0) symbols[i] = map[symbols[i]];
+        }
+    }
+
+    /**
+     * Getter.
+     * @return the text of the current token.
+     */
+    public String text()
+    {
+        int i = fill(position);
+        return types[i] == END_OF_FILE.ordinal()
+                ? String.valueOf(Source.EOF)
+                : new String(buffer, starts[i], lengths[i]);
+    }
+
+    /**
+     * Getter.
+     * @return the value of the current integer token.
+     * @throws ArithmeticException if the value doesn't fit in a long.
+     */
+    public long integerValue()
+    {
+        int i = fill(position);
+        long value = 0;
+
+        for (int j = starts[i]; j < starts[i] + lengths[i]; j++)
+        {
+            value = Math.addExact(Math.multiplyExact(10, value),
+                                  Character.digit(buffer[j], 10));
+        }
+
+        return value;
+    }
+
+    /**
+     * Getter.
+     * @return the value of the current real token.
+     */
+    public double realValue() { return Double.parseDouble(text()); }
+
+    /**
+     * Getter.
+     * @return the value of the current character or string token,
+     * without the enclosing quotes and with each '' reduced to '.
+     */
+    public String stringValue()
+    {
+        int i = fill(position);
+        int end = starts[i] + lengths[i];
+        StringBuilder value = new StringBuilder(lengths[i]);
+
+        for (int j = starts[i] + 1; j < end; j++)
+        {
+            if (buffer[j] == '\'')
+            {
+                if ((j + 1 < end) && (buffer[j + 1] == '\'')) j++;  // ''
+                else break;                                         // closing '
+            }
+
+            value.append(buffer[j]);
+        }
+
+        return value.toString();
+    }
+
+    /**
+     * Stop reading the source: the current token becomes
+     * the end of file and stays that way.
+     */
+    public void abandon()
+    {
+        int i = fill(position);
+        count = i;
+        scanner = null;
+        add(END_OF_FILE, starts[i], 0, lines[i], -1);
+        position = base + count - 1;
+    }
+
+    /**
+     * Getter.
+     * @return the number of tokens read into the stream so far.
+     */
+    public int size() { return base + count; }
+
+    /**
+     * Getter.
+     * @return the stream index of the current token.
+     */
+    int index() { return position; }
+
+    /**
+     * Move to a token of a fully scanned stream.
+     * @param index the stream index of the token.
+     */
+    void seek(int index) { position = index; }
+
+    /**
+     * Getter for a fully scanned stream.
+     * @param index the stream index of a token.
+     * @return the type of the token.
+     */
+    Token.TokenType typeAt(int index) { return TYPES[types[index]]; }
+
+    /**
+     * Getter for a fully scanned stream.
+     * @param index the stream index of a token.
+     * @return the interned ID of the word token, or -1.
+     */
+    int symbolAt(int index) { return symbols[index]; }
+
+    /**
+     * Getter for a fully scanned stream.
+     * @param index the stream index of a token.
+     * @return the position of the token's first character.
+     */
+    int startAt(int index) { return starts[index]; }
+
+    /**
+     * Getter for a fully scanned stream.
+     * @param index the stream index of a token.
+     * @return the position just past the token's last character.
+     */
+    int endAt(int index) { return starts[index] + lengths[index]; }
+
+    /**
+     * Getter for a fully scanned stream.
+     * @param index the stream index of a token.
+     * @return the source line number of the token.
+     */
+    int lineAt(int index) { return lines[index]; }
+}
@@ -0,0 +1,199 @@
+/**
+ * Symbol interner class for a simple interpreter.
+ *
+ * Maps each distinct name to a dense integer ID, starting from 0.
+ * Names are case insensitive: a name's ID is found by hashing and
+ * comparing its case-folded characters directly in the source buffer,
+ * so a name that was seen before is looked up without creating a string.
+ * An interner isn't thread safe.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package intermediate;
+
+import java.util.Arrays;
+
+public class Interner
+{
+    private static final int INITIAL_CAPACITY = 64;  // must be a power of 2
+
+    private static final char lowerCase[] = new char[128];
+    static
+    {
+        for (char ch = 0; ch < 128; ch++) lowerCase[ch] = Character.toLowerCase(ch);
+    }
+
+    private int table[];         // hash table of ID + 1, or 0 if empty
+    private char folded[][];     // case-folded characters of each name
+    private String spellings[];  // first spelling of each name
+    private int hashes[];        // hash code of each name
+    private int count;           // number of names
+
+    /**
+     * Constructor.
+     */
+    public Interner()
+    {
+        this.table     = new int[2*INITIAL_CAPACITY];
+        this.folded    = new char[INITIAL_CAPACITY][];
+        this.spellings = new String[INITIAL_CAPACITY];
+        this.hashes    = new int[INITIAL_CAPACITY];
+        this.count     = 0;
+    }
+
+    /**
+     * Intern a name that's in a character buffer.
+     * @param buffer the buffer.
+     * @param start the position of the name's first character.
+     * @param length the length of the name.
+     * @return the name's ID.
+     */
+    public int intern(char buffer[], int start, int length)
+    {
+        int hash = hash(buffer, start, length);
+        int mask = table.length - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask)
+        {
+            int id = table[slot] - 1;
+
+            if (id < 0)
+            {
+                id = add(new String(buffer, start, length), hash);
+                table[slot] = id + 1;
+                if (2*count > table.length) rehash();
+
+                return id;
+            }
+
+            if ((hashes[id] == hash) && matches(id, buffer, start, length))
+            {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Intern a name.
+     * @param name the name.
+     * @return the name's ID.
+     */
+    public int intern(String name)
+    {
+        return intern(name.toCharArray(), 0, name.length());
+    }
+
+    /**
+     * Find the ID of a name without interning it.
+     * @param name the name.
+     * @return the name's ID, or -1 if it isn't interned.
+     */
+    public int find(String name)
+    {
+        char buffer[] = name.toCharArray();
+        int hash = hash(buffer, 0, buffer.length);
+        int mask = table.length - 1;
+
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask)
+        {
+            int id = table[slot] - 1;
+
+            if (id < 0) return -1;
+            if ((hashes[id] == hash) && matches(id, buffer, 0, buffer.length))
+            {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Getter.
+     * @param id a name's ID.
+     * @return the name as first spelled.
+     */
+    public String spelling(int id) { return spellings[id]; }
+
+    /**
+     * Getter.
+     * @return the number of interned names.
+     */
+    public int size() { return count; }
+
+    /**
+     * Add a new name.
+     * @param spelling the name's spelling.
+     * @param hash the name's hash code.
+     * @return the name's ID.
+     */
+    private int add(String spelling, int hash)
+    {
+        if (count == spellings.length)
+        {
+            folded    = Arrays.copyOf(folded,    2*count);
+            spellings = Arrays.copyOf(spellings, 2*count);
+            hashes    = Arrays.copyOf(hashes,    2*count);
+        }
+
+        char chars[] = new char[spelling.length()];
+        for (int i = 0; i < chars.length; i++) chars[i] = fold(spelling.charAt(i));
+
+        folded[count]    = chars;
+        spellings[count] = spelling;
+        hashes[count]    = hash;
+
+        return count++;
+    }
+
+    /**
+     * Double the size of the hash table.
+     */
+    private void rehash()
+    {
+        table = new int[2*table.length];
+        int mask = table.length - 1;
+
+        for (int id = 0; id < count; id++)
+        {
+            int slot = hashes[id] & mask;
+            while (table[slot] != 0) slot = (slot + 1) & mask;
+            table[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Compare an interned name to a name in a buffer, ignoring case.
+     */
+    private boolean matches(int id, char buffer[], int start, int length)
+    {
+        char chars[] = folded[id];
+        if (chars.length != length) return false;
+
+        for (int i = 0; i < length; i++)
+        {
+            if (fold(buffer[start + i]) != chars[i]) return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * Compute the case-insensitive hash code of a name in a buffer.
+     */
+    private static int hash(char buffer[], int start, int length)
+    {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) hash = 31*hash + fold(buffer[i]);
+
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Fold a character to lower case. ASCII characters take a fast path.
+     */
+    private static char fold(char ch)
+    {
+        return ch < 128 ? lowerCase[ch] : Character.toLowerCase(ch);
+    }
+}
@@ -0,0 +1,233 @@
+/**
+ * Memory budget class for a simple interpreter.
+ *
+ * Estimates the memory that a program holds: its tokens, parse tree
+ * nodes, and symbol table entries, and its output that's buffered before
+ * it's written. The parser charges the tokens, nodes, and symbols as it
+ * creates nodes, and the buffers charge the output as it's written to
+ * them. If the estimate exceeds the budget, the program fails right away
+ * with a MemoryBudgetExceededException instead of running the JVM out
+ * of memory. Without a budget, the counts are only reported.
+ *
+ * The sizes per token, node, and symbol are estimates for a 64-bit JVM
+ * with compressed references. A node includes its list of children and
+ * its share of its parent's list, and a symbol includes its name and its
+ * value in an execution frame.
+ *
+ * The parse counts are charged by one thread only, before the budget
+ * is copied for executions, but the output buffers of parallel loops
+ * can charge it at once.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package intermediate;
+
+import java.io.ByteArrayOutputStream;
+import java.util.function.IntSupplier;
+
+public class MemoryBudget
+{
+    public static final long UNLIMITED = Long.MAX_VALUE;
+
+    public static final int TOKEN_BYTES  = 17;  // a type byte and four ints
+    public static final int NODE_BYTES   = 96;  // node, children list, and value
+    public static final int SYMBOL_BYTES = 80;  // entry, name, and its value
+
+    private final long maxBytes;  // the budget, or UNLIMITED
+    private long tokenCount;      // tokens scanned
+    private long nodeCount;       // parse tree nodes created
+    private int symbolCount;      // symbol table entries
+    private int lineNumber;       // source line number of the last node
+    private long buffered;        // output bytes buffered now
+    private long peakBuffered;    // most output bytes buffered at once
+
+    /**
+     * Constructor.
+     * @param maxBytes the budget in estimated bytes, or UNLIMITED.
+     */
+    public MemoryBudget(long maxBytes)
+    {
+        this.maxBytes     = maxBytes;
+        this.tokenCount   = 0;
+        this.nodeCount    = 0;
+        this.symbolCount  = 0;
+        this.lineNumber   = 0;
+        this.buffered     = 0;
+        this.peakBuffered = 0;
+    }
+
+    /**
+     * Copy a budget, such as the budget of a compiled program
+     * for one of its executions.
+     * @return the copy, with the same budget and counts.
+     */
+    public synchronized MemoryBudget copy()
+    {
+        MemoryBudget copy = new MemoryBudget(maxBytes);
+        copy.tokenCount   = tokenCount;
+        copy.nodeCount    = nodeCount;
+        copy.symbolCount  = symbolCount;
+        copy.lineNumber   = lineNumber;
+        copy.buffered     = buffered;
+        copy.peakBuffered = peakBuffered;
+
+        return copy;
+    }
+
+    /**
+     * Getter.
+     * @return the budget in estimated bytes, or UNLIMITED.
+     */
+    public long maxBytes() { return maxBytes; }
+
+    /**
+     * Getter.
+     * @return the number of tokens scanned.
+     */
+    public long tokenCount() { return tokenCount; }
+
+    /**
+     * Getter.
+     * @return the number of parse tree nodes created.
+     */
+    public long nodeCount() { return nodeCount; }
+
+    /**
+     * Getter.
+     * @return the number of symbol table entries.
+     */
+    public int symbolCount() { return symbolCount; }
+
+    /**
+     * Getter.
+     * @return the most output bytes that were buffered at once.
+     */
+    public synchronized long peakOutputBytes() { return peakBuffered; }
+
+    /**
+     * Getter.
+     * @return the estimated bytes of the tokens, nodes, and symbols,
+     * and of the most output that was buffered at once.
+     */
+    public synchronized long estimatedBytes()
+    {
+        return   TOKEN_BYTES*tokenCount + NODE_BYTES*nodeCount
+               + (long) SYMBOL_BYTES*symbolCount + peakBuffered;
+    }
+
+    /**
+     * Charge the parse so far. Called by the parser's thread only.
+     * @param tokenCount the number of tokens scanned.
+     * @param nodeCount the number of parse tree nodes created.
+     * @param symbolCount the number of symbol table entries.
+     * @param lineNumber the current source line number.
+     * @throws MemoryBudgetExceededException if over the budget.
+     */
+    public void parsed(long tokenCount, long nodeCount, int symbolCount,
+                       int lineNumber)
+    {
+        this.tokenCount  = tokenCount;
+        this.nodeCount   = nodeCount;
+        this.symbolCount = symbolCount;
+        this.lineNumber  = lineNumber;
+
+        if (   (maxBytes != UNLIMITED)
+            && (  TOKEN_BYTES*tokenCount + NODE_BYTES*nodeCount
+                + (long) SYMBOL_BYTES*symbolCount + buffered > maxBytes))
+        {
+            throw new MemoryBudgetExceededException(this, lineNumber);
+        }
+    }
+
+    /**
+     * Charge output bytes that are buffered.
+     * @param count the number of bytes.
+     * @param lineNumber the source line number that writes them.
+     * @throws MemoryBudgetExceededException if they would exceed the budget,
+     * in which case they're not charged.
+     */
+    public synchronized void buffer(long count, int lineNumber)
+    {
+        if (   (maxBytes != UNLIMITED)
+            && (  TOKEN_BYTES*tokenCount + NODE_BYTES*nodeCount
+                + (long) SYMBOL_BYTES*symbolCount + buffered + count > maxBytes))
+        {
+            throw new MemoryBudgetExceededException(this, lineNumber);
+        }
+
+        buffered += count;
+        peakBuffered = Math.max(peakBuffered, buffered);
+    }
+
+    /**
+     * Release buffered output bytes after they're written.
+     * @param count the number of bytes.
+     */
+    public synchronized void release(long count) { buffered -= count; }
+
+    /**
+     * Create an output buffer that charges this budget for its bytes
+     * as the parser writes them.
+     * @return the buffer.
+     */
+    public ByteArrayOutputStream newBuffer()
+    {
+        return newBuffer(-1);
+    }
+
+    /**
+     * Create an output buffer that charges this budget for its bytes.
+     * Its owner must release them after it writes them out.
+     * @param lineNumber the source line number of the statements that write
+     * to it, or -1 for the line number of the last node parsed.
+     * @return the buffer.
+     */
+    public ByteArrayOutputStream newBuffer(int lineNumber)
+    {
+        return newBuffer(() -> lineNumber >= 0 ? lineNumber
+                                               : MemoryBudget.this.lineNumber);
+    }
+
+    /**
+     * Create an output buffer that charges this budget for its bytes.
+     * Its owner must release them after it writes them out.
+     * @param lineNumber supplies the source line number of the statement
+     * that writes to it, such as an executor's current line number.
+     * @return the buffer.
+     */
+    public ByteArrayOutputStream newBuffer(IntSupplier lineNumber)
+    {
+        return new ByteArrayOutputStream()
+        {
+            @Override
+            public synchronized void write(int b)
+            {
+                buffer(1, lineNumber.getAsInt());
+                super.write(b);
+            }
+
+            @Override
+            public synchronized void write(byte b[], int off, int len)
+            {
+                buffer(len, lineNumber.getAsInt());
+                super.write(b, off, len);
+            }
+        };
+    }
+
+    /**
+     * Describe the counts and the estimate, such as for an error message.
+     * @return the description.
+     */
+    @Override
+    public synchronized String toString()
+    {
+        return String.format("%d tokens, %d nodes, %d symbols, "
+                             + "%d output bytes buffered at most, "
+                             + "about %d bytes in all",
+                             tokenCount, nodeCount, symbolCount,
+                             peakBuffered, estimatedBytes());
+    }
+}
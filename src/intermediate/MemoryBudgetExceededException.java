@@ -0,0 +1,44 @@
+/**
+ * Memory budget exceeded exception class for a simple interpreter.
+ *
+ * Thrown when a program's estimated memory exceeds its budget,
+ * while it's parsed or while its output is buffered.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package intermediate;
+
+public class MemoryBudgetExceededException extends RuntimeException
+{
+    private static final long serialVersionUID = 1L;
+
+    private transient MemoryBudget budget;
+    private int lineNumber;
+
+    /**
+     * Constructor.
+     * @param budget the exceeded budget, with the counts so far.
+     * @param lineNumber the source line number where the budget ran out.
+     */
+    public MemoryBudgetExceededException(MemoryBudget budget, int lineNumber)
+    {
+        super("Memory budget of " + budget.maxBytes() + " bytes exceeded with "
+              + budget);
+        this.budget     = budget;
+        this.lineNumber = lineNumber;
+    }
+
+    /**
+     * Getter.
+     * @return the exceeded budget, with the counts so far.
+     */
+    public MemoryBudget getBudget() { return budget; }
+
+    /**
+     * Getter.
+     * @return the source line number where the budget ran out.
+     */
+    public int getLineNumber() { return lineNumber; }
+}
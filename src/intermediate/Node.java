@@ -15,7 +15,8 @@ public class Node
     {
         PROGRAM, COMPOUND, ASSIGN, LOOP, TEST, WRITE, WRITELN, IF, DIV,
         ADD, SUBTRACT, MULTIPLY, DIVIDE, EQ, LT, GT, GEQ, LEQ, NOT, NEQ, NEG,
-        VARIABLE, INTEGER_CONSTANT, REAL_CONSTANT, STRING_CONSTANT, AND, OR
+        VARIABLE, INTEGER_CONSTANT, REAL_CONSTANT, STRING_CONSTANT, AND, OR,
+        READ, READLN, EOF
     }
 
     public NodeType type;
@@ -39,6 +40,37 @@ public class Node
         this.children = new ArrayList<Node>();
     }
     
+    /**
+     * Clear a node of a node arena for reuse, keeping its list of children.
+     * @param type the new node type.
+     */
+    void clear(NodeType type)
+    {
+        this.type = type;
+        this.lineNumber = 0;
+        this.text = null;
+        this.entry = null;
+        this.value = null;
+        this.children.clear();
+    }
+    
+    /**
+     * @return true if this is an expression whose value is a boolean:
+     * a comparison, AND, OR, NOT, or EOF.
+     */
+    public boolean isBoolean()
+    {
+        switch (type)
+        {
+            case EQ: case NEQ: case LT: case LEQ: case GT: case GEQ:
+            case AND: case OR: case NOT: case EOF:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+    
     /**
      * Adopt a child node.
      * @param child the child node.
@@ -0,0 +1,88 @@
+/**
+ * Node arena class for a simple interpreter.
+ *
+ * Allocates parse tree nodes from slabs of node objects that are kept
+ * and reused. Resetting the arena releases all of its nodes at once
+ * just by resetting its cursor, and each node is cleared when it's
+ * allocated again, keeping its list of children. So a server that parses
+ * program after program into the same arena soon allocates no new nodes.
+ *
+ * Nothing may refer to a node of an arena after the arena is reset.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package intermediate;
+
+import java.util.ArrayList;
+
+public class NodeArena
+{
+    private static final int SLAB_SIZE = 4096;  // nodes per slab
+
+    private ArrayList<Node[]> slabs;  // all the slabs allocated so far
+    private int slab;                 // index of the current slab
+    private int next;                 // index of the next node in the slab
+    private long count;               // nodes allocated since the last reset
+
+    /**
+     * Constructor.
+     */
+    public NodeArena()
+    {
+        this.slabs = new ArrayList<>();
+        this.slab  = 0;
+        this.next  = 0;
+        this.count = 0;
+
+        slabs.add(new Node[SLAB_SIZE]);
+    }
+
+    /**
+     * Getter.
+     * @return the number of nodes allocated since the last reset.
+     */
+    public long count() { return count; }
+
+    /**
+     * Getter.
+     * @return the number of nodes that the arena holds for reuse.
+     */
+    public long capacity() { return (long) SLAB_SIZE*slabs.size(); }
+
+    /**
+     * Allocate a node.
+     * @param type the node type.
+     * @return the node, cleared.
+     */
+    public Node node(Node.NodeType type)
+    {
+        if (next == SLAB_SIZE)
+        {
+            if (++slab == slabs.size()) slabs.add(new Node[SLAB_SIZE]);
+            next = 0;
+        }
+
+        Node nodes[] = slabs.get(slab);
+        Node node = nodes[next];
+
+        if (node == null) nodes[next] = node = new Node(type);
+        else              node.clear(type);
+
+        next++;
+        count++;
+
+        return node;
+    }
+
+    /**
+     * Release all the nodes for reuse.
+     */
+    public void reset()
+    {
+        slab  = 0;
+        next  = 0;
+        count = 0;
+    }
+}
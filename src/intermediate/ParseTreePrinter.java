@@ -1,85 +1,429 @@
 /**
  * Parse tree printer class for a simple interpreter.
- * 
+ *
+ * Prints a parse tree as indented XML-like tags, or compactly as JSON
+ * or as an S-expression on a single line. The tree is walked with an
+ * explicit stack, so a very deep tree can't overflow the Java stack.
+ * The text is built in a character buffer that's written to the output
+ * in large chunks, and the indentation is a slice of a shared array
+ * of spaces, so printing doesn't create strings line by line.
+ *
  * (c) 2020 by Ronald Mak
  * Department of Computer Science
  * San Jose State University
  */
 package intermediate;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Arrays;
 
 import static intermediate.Node.NodeType.*;
 
 public class ParseTreePrinter
 {
-    private static final String INDENT_SIZE = "    ";
+    public enum Format { XML, JSON, SEXPR }
 
-    private String indentation;  // indentation of a line
-    private StringBuilder line;  // output line
+    private static final int INDENT_SIZE = 4;
+    private static final int BUFFER_SIZE = 8192;
+    private static final int INITIAL_DEPTH = 64;
+
+    private Writer writer;      // output writer
+    private Format format;      // output format
+    private char buffer[];      // output buffer
+    private int length;         // number of characters in the buffer
+    private char spaces[];      // shared indentation
+
+    private Node nodes[];       // stack of nodes whose children are printing
+    private int next[];         // index of each node's next child
+    private int top;            // index of the top of the stack, or -1
 
     /**
      * Constructor
-     * @param ps the output print stream.
      */
     public ParseTreePrinter()
     {
-        this.indentation = "";
-        this.line = new StringBuilder();
+        this(System.out);
+    }
+
+    /**
+     * Constructor
+     * @param ps the output print stream.
+     */
+    public ParseTreePrinter(PrintStream ps)
+    {
+        this(ps, Format.XML);
+    }
+
+    /**
+     * Constructor
+     * @param ps the output print stream.
+     * @param format the output format.
+     */
+    public ParseTreePrinter(PrintStream ps, Format format)
+    {
+        this(new OutputStreamWriter(ps, Charset.defaultCharset()), format);
+    }
+
+    /**
+     * Constructor
+     * @param writer the output writer, which is flushed after each tree.
+     * @param format the output format.
+     */
+    public ParseTreePrinter(Writer writer, Format format)
+    {
+        this.writer = writer;
+        this.format = format;
+        this.buffer = new char[BUFFER_SIZE];
+        this.length = 0;
+        this.spaces = new char[INDENT_SIZE*INITIAL_DEPTH];
+        this.nodes  = new Node[INITIAL_DEPTH];
+        this.next   = new int[INITIAL_DEPTH];
+        this.top    = -1;
+
+        Arrays.fill(spaces, ' ');
     }
 
     /**
      * Print a parse tree.
-     * @param node the parse tree's root node.
-     */
-    public void print(Node node)
-    {
-        // Opening tag.
-        line.append(indentation); line.append("<" + node.type);
-        
-        // Attributes.
-        if      (node.type == PROGRAM)          line.append(" " + node.text);
-        else if (node.type == VARIABLE)         line.append(" " + node.text);
-        else if (node.type == INTEGER_CONSTANT) line.append(" " + (long) node.value);
-        else if (node.type == REAL_CONSTANT)    line.append(" " + node.value);
-        else if (node.type == STRING_CONSTANT)  line.append(" '" + (String) node.value + "'");
-        if (node.lineNumber > 0)                line.append(" line " + node.lineNumber);
-
-        // Print the node's children followed by the closing tag.
-        ArrayList<Node> children = node.children;
-        if ((children != null) && (children.size() > 0)) 
+     * @param root the parse tree's root node.
+     */
+    public void print(Node root)
+    {
+        open(root, 0, true);
+
+        while (top >= 0)
         {
-            line.append(">");
-            printLine();
+            Node node = nodes[top];
+            int index = next[top];
 
-            printChildren(children);
-            line.append(indentation); line.append("</" + node.type + ">");
+            if (index < node.children.size())
+            {
+                next[top] = index + 1;
+                Node child = node.children.get(index);
+                if (child != null) open(child, top + 1, index == 0);
+            }
+            else
+            {
+                top--;
+                close(node, top + 1);
+            }
         }
 
-        // No children: Close off the tag.
-        else line.append(" />");
+        if (format != Format.XML) append('\n');
 
-        printLine();
+        flushBuffer();
+        try
+        {
+            writer.flush();
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
     }
 
     /**
-     * Print a parse tree node's child nodes.
-     * @param children the array list of child nodes.
+     * Print the start of a node, and push it if it has children.
+     * @param node the node.
+     * @param depth its depth in the tree.
+     * @param first true if it's its parent's first child.
      */
-    private void printChildren(ArrayList<Node> children)
+    private void open(Node node, int depth, boolean first)
     {
-        String saveIndentation = indentation;
-        indentation += INDENT_SIZE;
-        for (Node child : children) print(child);
-        indentation = saveIndentation;
+        boolean hasChildren = (node.children != null)
+                           && (node.children.size() > 0);
+
+        switch (format)
+        {
+            case XML :
+            {
+                indent(depth);
+                append('<').append(node.type.name());
+                if (hasText(node)) append(' ').append(node.text);
+                if (hasValue(node))
+                {
+                    append(' ');
+                    if (node.type == STRING_CONSTANT)
+                    {
+                        append('\'').append((String) node.value).append('\'');
+                    }
+                    else value(node);
+                }
+                if (node.lineNumber > 0)
+                {
+                    append(" line ").append(node.lineNumber);
+                }
+                append(hasChildren ? ">\n" : " />\n");
+                break;
+            }
+
+            case JSON :
+            {
+                if (!first) append(',');
+                append("{\"type\":\"").append(node.type.name()).append('"');
+                if (hasText(node))
+                {
+                    append(",\"text\":");
+                    quoted(node.text, '"');
+                }
+                if (hasValue(node))
+                {
+                    append(",\"value\":");
+                    if (node.type == STRING_CONSTANT) quoted((String) node.value, '"');
+                    else                              value(node);
+                }
+                if (node.lineNumber > 0)
+                {
+                    append(",\"line\":").append(node.lineNumber);
+                }
+                append(hasChildren ? ",\"children\":[" : "}");
+                break;
+            }
+
+            case SEXPR :
+            {
+                if (depth > 0) append(' ');
+                append('(').append(node.type.name());
+                if (hasText(node)) append(' ').append(node.text);
+                if (hasValue(node))
+                {
+                    append(' ');
+                    if (node.type == STRING_CONSTANT) quoted((String) node.value, '"');
+                    else                              value(node);
+                }
+                if (node.lineNumber > 0)
+                {
+                    append(" :line ").append(node.lineNumber);
+                }
+                if (!hasChildren) append(')');
+                break;
+            }
+        }
+
+        if (hasChildren) push(node);
+    }
+
+    /**
+     * Print the end of a node that has children.
+     * @param node the node.
+     * @param depth its depth in the tree.
+     */
+    private void close(Node node, int depth)
+    {
+        switch (format)
+        {
+            case XML :
+                indent(depth);
+                append("</").append(node.type.name()).append(">\n");
+                break;
+
+            case JSON  : append("]}"); break;
+            case SEXPR : append(')');  break;
+        }
+    }
+
+    /**
+     * Push a node whose children will be printed.
+     * @param node the node.
+     */
+    private void push(Node node)
+    {
+        if (++top == nodes.length)
+        {
+            nodes = Arrays.copyOf(nodes, 2*nodes.length);
+            next  = Arrays.copyOf(next,  2*next.length);
+        }
+
+        nodes[top] = node;
+        next[top]  = 0;
+    }
+
+    /**
+     * @param node a node.
+     * @return true if the node's text is printed.
+     */
+    private static boolean hasText(Node node)
+    {
+        return ((node.type == PROGRAM) || (node.type == VARIABLE))
+            && (node.text != null);
+    }
+
+    /**
+     * @param node a node.
+     * @return true if the node's value is printed.
+     */
+    private static boolean hasValue(Node node)
+    {
+        return (   (node.type == INTEGER_CONSTANT)
+                || (node.type == REAL_CONSTANT)
+                || (node.type == STRING_CONSTANT))
+            && (node.value != null);
     }
 
     /**
-     * Print an output line.
+     * Append the value of an integer or real constant node.
+     * @param node the node.
      */
-    private void printLine()
+    private void value(Node node)
     {
-        System.out.println(line);
-        line.setLength(0);
+        if (node.type == INTEGER_CONSTANT) append((long) node.value);
+        else                               append(node.value.toString());
+    }
+
+    /**
+     * Append a quoted string, escaping the quotes, backslashes,
+     * and control characters.
+     * @param text the string.
+     * @param quote the quote character.
+     */
+    private void quoted(String text, char quote)
+    {
+        append(quote);
+
+        for (int i = 0; i < text.length(); i++)
+        {
+            char ch = text.charAt(i);
+
+            if      ((ch == quote) || (ch == '\\')) append('\\').append(ch);
+            else if (ch == '\n') append("\\n");
+            else if (ch == '\t') append("\\t");
+            else if (ch == '\r') append("\\r");
+            else if (ch < ' ')
+            {
+                append("\\u00");
+                append(Character.forDigit(ch >> 4, 16));
+                append(Character.forDigit(ch & 0xf, 16));
+            }
+            else append(ch);
+        }
+
+        append(quote);
+    }
+
+    /**
+     * Append the indentation of a depth.
+     * @param depth the depth.
+     */
+    private void indent(int depth)
+    {
+        int count = INDENT_SIZE*depth;
+        if (count > spaces.length)
+        {
+            spaces = new char[Math.max(count, 2*spaces.length)];
+            Arrays.fill(spaces, ' ');
+        }
+
+        append(spaces, count);
+    }
+
+    /**
+     * Append a character.
+     * @param ch the character.
+     * @return this printer.
+     */
+    private ParseTreePrinter append(char ch)
+    {
+        if (length == buffer.length) flushBuffer();
+        buffer[length++] = ch;
+
+        return this;
+    }
+
+    /**
+     * Append a string.
+     * @param text the string.
+     * @return this printer.
+     */
+    private ParseTreePrinter append(String text)
+    {
+        int count = text.length();
+        int start = 0;
+
+        while (count > 0)
+        {
+            if (length == buffer.length) flushBuffer();
+
+            int n = Math.min(count, buffer.length - length);
+            text.getChars(start, start + n, buffer, length);
+            length += n;
+            start  += n;
+            count  -= n;
+        }
+
+        return this;
+    }
+
+    /**
+     * Append the first characters of an array.
+     * @param chars the array.
+     * @param count the number of characters.
+     * @return this printer.
+     */
+    private ParseTreePrinter append(char chars[], int count)
+    {
+        int start = 0;
+
+        while (count > 0)
+        {
+            if (length == buffer.length) flushBuffer();
+
+            int n = Math.min(count, buffer.length - length);
+            System.arraycopy(chars, start, buffer, length, n);
+            length += n;
+            start  += n;
+            count  -= n;
+        }
+
+        return this;
+    }
+
+    /**
+     * Append a number without creating a string.
+     * @param value the number.
+     * @return this printer.
+     */
+    private ParseTreePrinter append(long value)
+    {
+        if (value == Long.MIN_VALUE) return append(Long.toString(value));
+
+        if (buffer.length - length < 20) flushBuffer();
+        if (value < 0)
+        {
+            buffer[length++] = '-';
+            value = -value;
+        }
+
+        int digits = 1;
+        for (long v = value/10; v > 0; v /= 10) digits++;
+
+        length += digits;
+        for (int i = length - 1; i >= length - digits; i--)
+        {
+            buffer[i] = (char) ('0' + value%10);
+            value /= 10;
+        }
+
+        return this;
+    }
+
+    /**
+     * Write the buffer to the output writer.
+     */
+    private void flushBuffer()
+    {
+        try
+        {
+            writer.write(buffer, 0, length);
+            length = 0;
+        }
+        catch (IOException ex)
+        {
+            throw new UncheckedIOException(ex);
+        }
     }
 }
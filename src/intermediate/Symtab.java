@@ -1,34 +1,150 @@
 /**
  * Symbol table class for a simple interpreter.
- * 
+ *
+ * Names are interned to dense integer IDs, and the symbol table is
+ * an array of entries indexed by ID. The IDs include the reserved
+ * words' and any removed variables', so compacting the table gives
+ * the remaining variables dense frame slots instead.
+ *
  * (c) 2020 by Ronald Mak
  * Department of Computer Science
  * San Jose State University
  */
 package intermediate;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
 public class Symtab
 {
-    private HashMap<String, SymtabEntry> contents = new HashMap<>();
-    
+    private Interner interner;
+    private SymtabEntry entries[] = new SymtabEntry[64];
+    private int size = 0;  // one more than the largest frame slot
+    private int count = 0; // number of entries
+    private SymtabEntry previous[] = null;  // of the previous version, if any
+
+    /**
+     * Constructor.
+     */
+    public Symtab()
+    {
+        this.interner = new Interner();
+    }
+
+    /**
+     * Constructor for a new, empty version of a symbol table, such as
+     * for parsing an edited source text again. It shares the previous
+     * version's interner, and entering a name that the previous version
+     * had returns the same entry object, so parse tree nodes from either
+     * version refer to the same entries. The previous version must not
+     * change anymore.
+     * @param previous the previous version.
+     */
+    public Symtab(Symtab previous)
+    {
+        this.interner = previous.interner;
+        this.previous = previous.entries;
+    }
+
+    /**
+     * Getter.
+     * @return the interner of the names.
+     */
+    public Interner interner() { return interner; }
+
+    /**
+     * Getter.
+     * @return one more than the largest frame slot of the entries,
+     * which is the size of an execution frame for them.
+     */
+    public int size() { return size; }
+
+    /**
+     * Getter.
+     * @return the number of entries.
+     */
+    public int count() { return count; }
+
     /**
      * Make an entry.
      * @param name the entry's name.
      */
-    public SymtabEntry enter(String name) 
-    { 
-        SymtabEntry entry = new SymtabEntry(name);
-        contents.put(name, entry);
-        
+    public SymtabEntry enter(String name)
+    {
+        return enter(interner.intern(name));
+    }
+
+    /**
+     * Make an entry.
+     * @param id the entry's interned name ID.
+     */
+    public SymtabEntry enter(int id)
+    {
+        if (id >= entries.length)
+        {
+            entries = Arrays.copyOf(entries, Math.max(2*entries.length, id + 1));
+        }
+
+        SymtabEntry entry = (previous != null) && (id < previous.length)
+                                            && (previous[id] != null)
+                                ? previous[id]
+                                : new SymtabEntry(interner.spelling(id), id);
+        if (entries[id] == null) count++;
+        entries[id] = entry;
+        size = Math.max(size, entry.getSlot() + 1);
+
         return entry;
     }
-    
+
+    /**
+     * Remove an entry. Its name stays interned.
+     * @param id the entry's interned name ID.
+     */
+    public void remove(int id)
+    {
+        if ((id < entries.length) && (entries[id] != null))
+        {
+            entries[id] = null;
+            count--;
+        }
+    }
+
+    /**
+     * Give the entries the frame slots 0 through count - 1 in the order
+     * of their IDs, so that an execution frame has no slots for the IDs
+     * of reserved words or removed variables. The entries must not be
+     * shared with another version of the symbol table, and no entries
+     * may be made afterwards.
+     */
+    public void compact()
+    {
+        int slot = 0;
+        for (SymtabEntry entry : entries)
+        {
+            if (entry != null) entry.setSlot(slot++);
+        }
+
+        size = slot;
+    }
+
     /**
      * Look up an entry.
      * @param name the entry's name.
      * @return the entry or null if it's not in the symbol table.
      */
-    public SymtabEntry lookup(String name) { return contents.get(name); }
+    public SymtabEntry lookup(String name)
+    {
+        int id = interner.find(name);
+        return id >= 0 ? lookup(id) : null;
+    }
+
+    /**
+     * Look up an entry.
+     * @param id the entry's interned name ID.
+     * @return the entry or null if it's not in the symbol table,
+     * including for a negative ID.
+     */
+    public SymtabEntry lookup(int id)
+    {
+        return (id >= 0) && (id < entries.length) ? entries[id] : null;
+    }
 }
@@ -1,6 +1,11 @@
 /**
  * Symbol table entry class for a simple interpreter.
- * 
+ *
+ * An entry only describes a variable. Its value during an execution
+ * is in the execution's frame, so entries can be shared by executions.
+ * The value's slot in the frame is the variable's interned name ID
+ * unless the symbol table is compacted.
+ *
  * (c) 2020 by Ronald Mak
  * Department of Computer Science
  * San Jose State University
@@ -10,16 +15,19 @@ package intermediate;
 public class SymtabEntry
 {
     private String name;
-    private Double value;
+    private int id;
+    private int slot;  // of the variable's value in an execution frame
     
     /**
      * Constructor.
      * @param name the entry's name.
+     * @param id the entry's interned name ID.
      */
-    public SymtabEntry(String name)
+    public SymtabEntry(String name, int id)
     {
         this.name  = name;
-        this.value = 0.0;
+        this.id    = id;
+        this.slot  = id;
     }
     
     /**
@@ -30,13 +38,19 @@ public class SymtabEntry
 
     /**
      * Getter.
-     * @return the entry's valuel
+     * @return the entry's interned name ID.
      */
-    public Double getValue() { return value; }
-    
+    public int getId()       { return id;    }
+
+    /**
+     * Getter.
+     * @return the slot of the variable's value in an execution frame.
+     */
+    public int getSlot()     { return slot;  }
+
     /**
-     * Set the entry's value.
-     * @param value the value to set.
+     * Setter.
+     * @param slot the slot of the variable's value in an execution frame.
      */
-    public void setValue(Double value) { this.value = value; }
+    void setSlot(int slot)   { this.slot = slot; }
 }
@@ -0,0 +1,68 @@
+/**
+ * Basic block class for a simple interpreter.
+ *
+ * A straight-line sequence of instructions of the control-flow graph.
+ * A block with a branch condition goes to its first successor if the
+ * condition is true and to its second if it's false. Otherwise, it
+ * jumps to its only successor, or the program ends if it has none.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package intermediate.cfg;
+
+import java.util.ArrayList;
+
+public class BasicBlock
+{
+    public int id;
+    public ArrayList<Instruction> instructions;
+    public Operand condition;  // branch condition, or null to jump
+    public boolean backEdge;   // its jump is a loop back-edge
+
+    public ArrayList<BasicBlock> successors;
+    public ArrayList<BasicBlock> predecessors;
+
+    public BasicBlock idom;                  // immediate dominator
+    public ArrayList<BasicBlock> dominated;  // children in the dominator tree
+    public ArrayList<BasicBlock> frontier;   // dominance frontier
+
+    int order;  // reverse postorder number
+
+    /**
+     * Constructor.
+     * @param id the block ID.
+     */
+    public BasicBlock(int id)
+    {
+        this.id           = id;
+        this.instructions = new ArrayList<>();
+        this.condition    = null;
+        this.backEdge     = false;
+        this.successors   = new ArrayList<>();
+        this.predecessors = new ArrayList<>();
+        this.idom         = null;
+        this.dominated    = new ArrayList<>();
+        this.frontier     = new ArrayList<>();
+        this.order        = -1;
+    }
+
+    /**
+     * @return the number of PHI instructions at the start of the block.
+     */
+    public int phiCount()
+    {
+        int count = 0;
+        while (   (count < instructions.size())
+               && (instructions.get(count).opcode == Instruction.Opcode.PHI))
+        {
+            count++;
+        }
+
+        return count;
+    }
+
+    @Override
+    public String toString() { return "B" + id; }
+}
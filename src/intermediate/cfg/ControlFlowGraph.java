@@ -0,0 +1,513 @@
+/**
+ * Control-flow graph class for a simple interpreter.
+ *
+ * Builds basic blocks of three-address instructions from a parse tree.
+ * Each expression is evaluated into temporaries within one block. An IF
+ * statement branches to its then and else blocks, which join after it.
+ * A LOOP statement starts with a header block, and each TEST branches
+ * to the exit block if it's true. The end of the loop body goes back to
+ * the header through a latch block whose jump is a back-edge.
+ *
+ * The instructions keep the line numbers of their statements, so that
+ * the runtime errors report the same lines as the parse tree executors.
+ * A loop test doesn't change the line number.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package intermediate.cfg;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import intermediate.*;
+import intermediate.cfg.Instruction.Opcode;
+import static intermediate.Node.NodeType.*;
+
+public class ControlFlowGraph
+{
+    public BasicBlock entry;
+    public ArrayList<BasicBlock> blocks;  // in reverse postorder
+
+    private int blockCount;      // number of blocks created
+    private int temporaryCount;  // number of temporaries created
+    private BasicBlock current;  // block being built
+    private int lineNumber;      // line number of the statement being built
+
+    /**
+     * Constructor. Build the control-flow graph of a parse tree.
+     * @param programNode the PROGRAM node of the parse tree.
+     */
+    public ControlFlowGraph(Node programNode)
+    {
+        this.blocks         = new ArrayList<>();
+        this.blockCount     = 0;
+        this.temporaryCount = 0;
+        this.entry          = newBlock();
+        this.current        = entry;
+
+        for (Node child : programNode.children) statement(child);
+
+        removeUnreachable();
+    }
+
+    /**
+     * Create a new block.
+     * @return the block.
+     */
+    BasicBlock newBlock()
+    {
+        BasicBlock block = new BasicBlock(blockCount++);
+        blocks.add(block);
+
+        return block;
+    }
+
+    /**
+     * Create a new temporary.
+     * @return the temporary's operand.
+     */
+    Operand newTemporary()
+    {
+        return Operand.temporary(++temporaryCount);
+    }
+
+    /**
+     * Convert to static single assignment form.
+     */
+    public void toSsa() { SsaConverter.toSsa(this); }
+
+    /**
+     * Convert out of static single assignment form, replacing each
+     * PHI instruction by copies in the predecessor blocks.
+     */
+    public void fromSsa() { SsaConverter.fromSsa(this); }
+
+    /**
+     * Lower to linear code.
+     * @return the code.
+     */
+    public LinearCode lower() { return new LinearCode(this); }
+
+    /**
+     * Print the blocks.
+     * @param out the output stream.
+     */
+    public void print(PrintStream out)
+    {
+        for (BasicBlock block : blocks)
+        {
+            out.print(block + ":");
+            if (!block.predecessors.isEmpty())
+            {
+                out.print("  preds");
+                for (BasicBlock pred : block.predecessors) out.print(" " + pred);
+            }
+            if (block.idom != null) out.print("  idom " + block.idom);
+            out.println();
+
+            for (Instruction instruction : block.instructions)
+            {
+                out.println("    " + instruction);
+            }
+
+            if (block.condition != null)
+            {
+                out.println("    branch " + block.condition + " ? "
+                            + block.successors.get(0) + " : "
+                            + block.successors.get(1));
+            }
+            else if (block.successors.size() == 1)
+            {
+                out.println((block.backEdge ? "    loop " : "    goto ")
+                            + block.successors.get(0));
+            }
+            else out.println("    halt");
+        }
+    }
+
+    /**
+     * Add an edge.
+     * @param from the source block.
+     * @param to the target block.
+     */
+    static void link(BasicBlock from, BasicBlock to)
+    {
+        from.successors.add(to);
+        to.predecessors.add(from);
+    }
+
+    /**
+     * @return the reachable blocks in reverse postorder.
+     */
+    ArrayList<BasicBlock> reversePostorder()
+    {
+        ArrayList<BasicBlock> postorder = new ArrayList<>();
+        IdentityHashMap<BasicBlock, Boolean> visited = new IdentityHashMap<>();
+        ArrayList<BasicBlock> stack = new ArrayList<>();
+        ArrayList<Integer> next = new ArrayList<>();  // next successor index
+
+        stack.add(entry);
+        next.add(0);
+        visited.put(entry, true);
+
+        while (!stack.isEmpty())
+        {
+            int top = stack.size() - 1;
+            BasicBlock block = stack.get(top);
+            int index = next.get(top);
+
+            if (index < block.successors.size())
+            {
+                next.set(top, index + 1);
+                BasicBlock successor = block.successors.get(index);
+
+                if (visited.put(successor, true) == null)
+                {
+                    stack.add(successor);
+                    next.add(0);
+                }
+            }
+            else
+            {
+                postorder.add(block);
+                stack.remove(top);
+                next.remove(top);
+            }
+        }
+
+        ArrayList<BasicBlock> order = new ArrayList<>(postorder.size());
+        for (int i = postorder.size() - 1; i >= 0; i--)
+        {
+            BasicBlock block = postorder.get(i);
+            block.order = order.size();
+            order.add(block);
+        }
+
+        return order;
+    }
+
+    /**
+     * Remove the unreachable blocks, such as the exit of a loop without
+     * a test, and number the rest in reverse postorder.
+     */
+    private void removeUnreachable()
+    {
+        ArrayList<BasicBlock> reachable = reversePostorder();
+        IdentityHashMap<BasicBlock, Boolean> kept = new IdentityHashMap<>();
+        for (BasicBlock block : reachable) kept.put(block, true);
+
+        for (BasicBlock block : reachable)
+        {
+            block.predecessors.removeIf(pred -> !kept.containsKey(pred));
+            block.id = block.order;
+        }
+
+        blocks = reachable;
+        blockCount = blocks.size();
+    }
+
+    /**
+     * Build a statement.
+     * @param node the statement node.
+     */
+    private void statement(Node node)
+    {
+        if (node == null) return;
+
+        switch (node.type)
+        {
+            case COMPOUND :
+                for (Node child : node.children) statement(child);
+                break;
+
+            case ASSIGN :
+                lineNumber = node.lineNumber;
+
+                // A boolean is a number here, but like the parse tree
+                // executors, don't assign it.
+                if (node.children.get(1).isBoolean())
+                {
+                    expression(node.children.get(1), null);
+                    emit(Opcode.ASSIGN_BOOLEAN, null).node =
+                                                    node.children.get(0);
+                }
+                else expression(node.children.get(1),
+                                Operand.variable(node.children.get(0).entry));
+                break;
+
+            case WRITE :
+            case WRITELN :
+                write(node);
+                break;
+
+            case READ :
+            case READLN :
+                read(node);
+                break;
+
+            case IF :
+                ifStatement(node);
+                break;
+
+            case LOOP :
+                loop(node);
+                break;
+
+            default :
+                break;
+        }
+    }
+
+    /**
+     * Build a WRITE or WRITELN statement. Its arguments are a variable
+     * or a string, and integer constants.
+     * @param node the statement node.
+     */
+    private void write(Node node)
+    {
+        lineNumber = node.lineNumber;
+
+        Operand operands[] = new Operand[node.children.size()];
+        for (int i = 0; i < operands.length; i++)
+        {
+            operands[i] = expression(node.children.get(i), null);
+        }
+
+        Instruction instruction = emit(node.type == WRITE ? Opcode.WRITE
+                                                          : Opcode.WRITELN,
+                                       null, operands);
+        if (operands.length > 0) instruction.node = node.children.get(0);
+    }
+
+    /**
+     * Build a READ or READLN statement. Each variable is read by its own
+     * instruction, and then a READLN skips the rest of the input line.
+     * @param node the statement node.
+     */
+    private void read(Node node)
+    {
+        lineNumber = node.lineNumber;
+
+        for (Node variableNode : node.children)
+        {
+            emit(Opcode.READ, Operand.variable(variableNode.entry)).node =
+                                                                variableNode;
+        }
+
+        if (node.type == READLN) emit(Opcode.READLN, null);
+    }
+
+    /**
+     * Build an IF statement.
+     * @param node the IF node.
+     */
+    private void ifStatement(Node node)
+    {
+        lineNumber = node.lineNumber;
+        if (node.children.size() < 2) return;
+
+        BasicBlock condBlock = current;
+        condBlock.condition = expression(node.children.get(0), null);
+
+        BasicBlock thenBlock = newBlock();
+        BasicBlock join      = newBlock();
+        BasicBlock elseBlock = node.children.size() > 2 ? newBlock() : join;
+
+        link(condBlock, thenBlock);
+        link(condBlock, elseBlock);
+
+        current = thenBlock;
+        statement(node.children.get(1));
+        link(current, join);
+
+        if (elseBlock != join)
+        {
+            current = elseBlock;
+            statement(node.children.get(2));
+            link(current, join);
+        }
+
+        current = join;
+    }
+
+    /**
+     * Build a LOOP statement.
+     * @param node the LOOP node.
+     */
+    private void loop(Node node)
+    {
+        lineNumber = node.lineNumber;
+        emit(Opcode.LINE, null);
+
+        BasicBlock header = newBlock();
+        BasicBlock exit   = newBlock();
+        link(current, header);
+        current = header;
+
+        for (Node child : node.children)
+        {
+            if ((child != null) && (child.type == TEST))
+            {
+                lineNumber = -1;
+
+                BasicBlock testBlock = current;
+                testBlock.condition = expression(child.children.get(0), null);
+
+                current = newBlock();
+                link(testBlock, exit);
+                link(testBlock, current);
+            }
+            else statement(child);
+        }
+
+        BasicBlock latch = newBlock();
+        latch.backEdge = true;
+        link(current, latch);
+        link(latch, header);
+
+        current = exit;
+    }
+
+    /**
+     * Build an expression without recursion.
+     * @param root the root of the expression.
+     * @param target the variable to assign the value to, or null.
+     * @return the operand that has the value.
+     */
+    private Operand expression(Node root, Operand target)
+    {
+        IdentityHashMap<Node, Operand> values = new IdentityHashMap<>();
+        ArrayList<Node> stack = new ArrayList<>();
+        stack.add(root);
+
+        // Evaluate the operands in postorder.
+        while (!stack.isEmpty())
+        {
+            Node node = stack.get(stack.size() - 1);
+
+            if (values.containsKey(node))
+            {
+                stack.remove(stack.size() - 1);
+                continue;
+            }
+
+            switch (node.type)
+            {
+                case VARIABLE :
+                    values.put(node, Operand.variable(node.entry));
+                    continue;
+
+                case INTEGER_CONSTANT :
+                    values.put(node, Operand.constant(
+                                        (double) (Long) node.value));
+                    continue;
+
+                case REAL_CONSTANT :
+                case STRING_CONSTANT :
+                    values.put(node, Operand.constant(node.value));
+                    continue;
+
+                default :
+                    break;
+            }
+
+            boolean ready = true;
+            for (Node child : node.children)
+            {
+                if (!values.containsKey(child))
+                {
+                    stack.add(child);
+                    ready = false;
+                }
+            }
+            if (!ready) continue;
+
+            stack.remove(stack.size() - 1);
+
+            Operand operands[] = new Operand[node.children.size()];
+            for (int i = 0; i < operands.length; i++)
+            {
+                operands[i] = values.get(node.children.get(i));
+            }
+
+            Operand result = (node == root) && (target != null)
+                                ? target : newTemporary();
+            Opcode opcode = opcode(node);
+
+            // Like the parse tree executors, an unknown operator has
+            // the value 0 after its operands are evaluated.
+            if ((opcode == null) || (operands.length != arity(opcode)))
+            {
+                emit(Opcode.COPY, result, Operand.constant(0.0));
+            }
+            else emit(opcode, result, operands).node = node;
+
+            values.put(node, result);
+        }
+
+        Operand value = values.get(root);
+        if ((target != null) && (value != target))
+        {
+            emit(Opcode.COPY, target, value);
+            value = target;
+        }
+
+        return value;
+    }
+
+    /**
+     * Append an instruction to the current block.
+     * @param opcode the opcode.
+     * @param target the defined operand, or null.
+     * @param operands the used operands.
+     * @return the instruction.
+     */
+    private Instruction emit(Opcode opcode, Operand target, Operand... operands)
+    {
+        Instruction instruction = new Instruction(opcode, target, operands);
+        instruction.lineNumber = lineNumber;
+        current.instructions.add(instruction);
+
+        return instruction;
+    }
+
+    /**
+     * @param node an operator node.
+     * @return its opcode, or null if there's none.
+     */
+    private static Opcode opcode(Node node)
+    {
+        switch (node.type)
+        {
+            case ADD      : return Opcode.ADD;
+            case SUBTRACT : return Opcode.SUBTRACT;
+            case MULTIPLY : return Opcode.MULTIPLY;
+            case DIVIDE   : return Opcode.DIVIDE;
+            case NEG      : return Opcode.NEG;
+            case NOT      : return Opcode.NOT;
+            case AND      : return Opcode.AND;
+            case OR       : return Opcode.OR;
+            case EQ       : return Opcode.EQ;
+            case NEQ      : return Opcode.NEQ;
+            case LT       : return Opcode.LT;
+            case LEQ      : return Opcode.LEQ;
+            case GT       : return Opcode.GT;
+            case GEQ      : return Opcode.GEQ;
+            case EOF      : return Opcode.EOF;
+            default       : return null;
+        }
+    }
+
+    /**
+     * @param opcode an operator opcode.
+     * @return its number of operands.
+     */
+    private static int arity(Opcode opcode)
+    {
+        return opcode == Opcode.EOF ? 0
+             : (opcode == Opcode.NEG) || (opcode == Opcode.NOT) ? 1 : 2;
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * Dominators class for a simple interpreter.
+ *
+ * Computes the dominator tree of a control-flow graph with the iterative
+ * algorithm of Cooper, Harvey, and Kennedy, which intersects the
+ * dominators of each block's predecessors in reverse postorder until
+ * nothing changes. Then computes the dominance frontiers by walking up
+ * the dominator tree from the predecessors of each join block.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package intermediate.cfg;
+
+import java.util.ArrayList;
+
+public class Dominators
+{
+    /**
+     * Compute the immediate dominators, dominator tree,
+     * and dominance frontiers of the blocks.
+     * @param cfg the control-flow graph.
+     */
+    public static void compute(ControlFlowGraph cfg)
+    {
+        ArrayList<BasicBlock> order = cfg.reversePostorder();
+
+        for (BasicBlock block : order)
+        {
+            block.idom = null;
+            block.dominated.clear();
+            block.frontier.clear();
+        }
+
+        BasicBlock entry = cfg.entry;
+        entry.idom = entry;
+
+        boolean changed = true;
+        while (changed)
+        {
+            changed = false;
+
+            for (BasicBlock block : order)
+            {
+                if (block == entry) continue;
+
+                BasicBlock idom = null;
+                for (BasicBlock pred : block.predecessors)
+                {
+                    if (pred.idom != null)
+                    {
+                        idom = idom == null ? pred : intersect(pred, idom);
+                    }
+                }
+
+                if (block.idom != idom)
+                {
+                    block.idom = idom;
+                    changed = true;
+                }
+            }
+        }
+
+        // Dominance frontiers.
+        for (BasicBlock block : order)
+        {
+            if (block.predecessors.size() < 2) continue;
+
+            for (BasicBlock pred : block.predecessors)
+            {
+                for (BasicBlock runner = pred;
+                     runner != block.idom;
+                     runner = runner.idom)
+                {
+                    if (!runner.frontier.contains(block))
+                    {
+                        runner.frontier.add(block);
+                    }
+
+                    if (runner == entry) break;
+                }
+            }
+        }
+
+        // Dominator tree.
+        entry.idom = null;
+        for (BasicBlock block : order)
+        {
+            if (block.idom != null) block.idom.dominated.add(block);
+        }
+    }
+
+    /**
+     * Find the nearest common dominator of two blocks.
+     * @param b1 a block with a dominator.
+     * @param b2 another block with a dominator.
+     * @return the nearest common dominator.
+     */
+    private static BasicBlock intersect(BasicBlock b1, BasicBlock b2)
+    {
+        while (b1 != b2)
+        {
+            while (b1.order > b2.order) b1 = b1.idom;
+            while (b2.order > b1.order) b2 = b2.idom;
+        }
+
+        return b1;
+    }
+}
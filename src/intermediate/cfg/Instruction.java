@@ -0,0 +1,130 @@
+/**
+ * Instruction class for a simple interpreter.
+ *
+ * A three-address instruction of a basic block. Numbers and booleans
+ * are both doubles, and a boolean is 1.0 or 0.0. A PHI instruction has
+ * one operand per predecessor of its block, in the same order.
+ * An ASSIGN_BOOLEAN instruction stands for an assignment of a boolean
+ * value, which is a runtime error, after its value is evaluated.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package intermediate.cfg;
+
+import intermediate.*;
+
+public class Instruction
+{
+    public enum Opcode
+    {
+        COPY, ADD, SUBTRACT, MULTIPLY, DIVIDE, NEG, NOT, AND, OR,
+        EQ, NEQ, LT, LEQ, GT, GEQ, PHI, WRITE, WRITELN, READ, READLN, EOF,
+        LINE, ASSIGN_BOOLEAN,
+
+        // Only in lowered code.
+        JUMP, BRANCH, BACK_EDGE, HALT
+    }
+
+    public Opcode opcode;
+    public Operand target;      // defined operand, or null
+    public Operand operands[];  // used operands
+    public Node node;           // source node for errors and formats, or null
+    public int lineNumber;      // statement line number, or -1 if none
+
+    /**
+     * Constructor.
+     * @param opcode the opcode.
+     * @param target the defined operand, or null.
+     * @param operands the used operands.
+     */
+    public Instruction(Opcode opcode, Operand target, Operand... operands)
+    {
+        this.opcode     = opcode;
+        this.target     = target;
+        this.operands   = operands;
+        this.node       = null;
+        this.lineNumber = -1;
+    }
+
+    @Override
+    public String toString()
+    {
+        StringBuilder text = new StringBuilder();
+        if (target != null) text.append(target).append(" = ");
+
+        switch (opcode)
+        {
+            case COPY : text.append(operands[0]); break;
+            case NEG  : text.append("-").append(operands[0]); break;
+            case NOT  : text.append("not ").append(operands[0]); break;
+
+            case PHI :
+            {
+                text.append("phi(");
+                for (int i = 0; i < operands.length; i++)
+                {
+                    if (i > 0) text.append(", ");
+                    text.append(operands[i]);
+                }
+                text.append(")");
+                break;
+            }
+
+            case WRITE :
+            case WRITELN :
+            {
+                text.append(opcode.toString().toLowerCase());
+                for (int i = 0; i < operands.length; i++)
+                {
+                    text.append(i == 0 ? " " : " : ").append(operands[i]);
+                }
+                break;
+            }
+
+            case READ   : text.append("read");   break;
+            case READLN : text.append("readln"); break;
+            case EOF    : text.append("eof");    break;
+
+            case LINE : text.append("line ").append(lineNumber); break;
+
+            case ASSIGN_BOOLEAN :
+                text.append("assign boolean to ").append(node.text);
+                break;
+
+            default :
+            {
+                text.append(operands[0]).append(" ")
+                    .append(symbol(opcode)).append(" ")
+                    .append(operands[1]);
+            }
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * @param opcode a binary opcode.
+     * @return its operator symbol.
+     */
+    private static String symbol(Opcode opcode)
+    {
+        switch (opcode)
+        {
+            case ADD      : return "+";
+            case SUBTRACT : return "-";
+            case MULTIPLY : return "*";
+            case DIVIDE   : return "/";
+            case AND      : return "and";
+            case OR       : return "or";
+            case EQ       : return "=";
+            case NEQ      : return "<>";
+            case LT       : return "<";
+            case LEQ      : return "<=";
+            case GT       : return ">";
+            case GEQ      : return ">=";
+            default       : return opcode.toString();
+        }
+    }
+}
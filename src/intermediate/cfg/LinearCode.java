@@ -0,0 +1,241 @@
+/**
+ * Linear code class for a simple interpreter.
+ *
+ * A control-flow graph out of SSA form, lowered to an array of
+ * instructions over numbered registers. Each variable version,
+ * temporary, and number constant has its own register, and the
+ * constants are preloaded. The blocks are laid out in order, and
+ * each block ends with a jump, branch, back-edge, or halt unless
+ * it falls through to the next one. The fields of an instruction are:
+ *
+ *     COPY and unary     target, left
+ *     binary             target, left, right
+ *     WRITE, WRITELN     left = value register or -1, string = string value,
+ *                        target = field width or -1, right = decimal places
+ *     READ, EOF          target
+ *     READLN             none
+ *     ASSIGN_BOOLEAN     none, node = the variable
+ *     JUMP, BACK_EDGE    target = instruction index
+ *     BRANCH             left = condition, target = index if true,
+ *                        right = index if false
+ *     LINE               line
+ *
+ * Each instruction's line is its statement's line number, or -1 if
+ * it doesn't change the current line number.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package intermediate.cfg;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import intermediate.*;
+import intermediate.cfg.Instruction.Opcode;
+
+public class LinearCode
+{
+    public int size;            // number of instructions
+    public Opcode opcodes[];
+    public int targets[];
+    public int lefts[];
+    public int rights[];
+    public int lines[];
+    public Node nodes[];        // source nodes for errors and formats
+    public String strings[];    // WRITE and WRITELN string values
+    public double registers[];  // initial register values
+
+    private HashMap<Long, Integer> names;       // register by operand key
+    private HashMap<Double, Integer> constants; // register by constant value
+    private ArrayList<Double> initial;          // initial register values
+
+    /**
+     * Constructor. Lower a control-flow graph out of SSA form.
+     * @param cfg the control-flow graph.
+     */
+    LinearCode(ControlFlowGraph cfg)
+    {
+        int capacity = cfg.blocks.size();
+        for (BasicBlock block : cfg.blocks) capacity += block.instructions.size();
+
+        this.size      = 0;
+        this.opcodes   = new Opcode[capacity];
+        this.targets   = new int[capacity];
+        this.lefts     = new int[capacity];
+        this.rights    = new int[capacity];
+        this.lines     = new int[capacity];
+        this.nodes     = new Node[capacity];
+        this.strings   = new String[capacity];
+        this.names     = new HashMap<>();
+        this.constants = new HashMap<>();
+        this.initial   = new ArrayList<>();
+
+        HashMap<BasicBlock, Integer> starts = new HashMap<>();
+        ArrayList<Integer> fixups = new ArrayList<>();    // jump instructions
+        ArrayList<BasicBlock[]> fixupTargets = new ArrayList<>();
+
+        for (int b = 0; b < cfg.blocks.size(); b++)
+        {
+            BasicBlock block = cfg.blocks.get(b);
+            BasicBlock next = b + 1 < cfg.blocks.size() ? cfg.blocks.get(b + 1)
+                                                        : null;
+            starts.put(block, size);
+
+            for (Instruction instruction : block.instructions)
+            {
+                lower(instruction);
+            }
+
+            if (block.condition != null)
+            {
+                int pc = append(Opcode.BRANCH, -1);
+                lefts[pc] = register(block.condition);
+                fixups.add(pc);
+                fixupTargets.add(new BasicBlock[] { block.successors.get(0),
+                                                    block.successors.get(1) });
+            }
+            else if (block.successors.size() == 1)
+            {
+                BasicBlock successor = block.successors.get(0);
+
+                if (block.backEdge || (successor != next))
+                {
+                    int pc = append(block.backEdge ? Opcode.BACK_EDGE
+                                                   : Opcode.JUMP, -1);
+                    fixups.add(pc);
+                    fixupTargets.add(new BasicBlock[] { successor });
+                }
+            }
+            else append(Opcode.HALT, -1);
+        }
+
+        for (int i = 0; i < fixups.size(); i++)
+        {
+            int pc = fixups.get(i);
+            BasicBlock successors[] = fixupTargets.get(i);
+
+            targets[pc] = starts.get(successors[0]);
+            if (successors.length > 1) rights[pc] = starts.get(successors[1]);
+        }
+
+        registers = new double[initial.size()];
+        for (int i = 0; i < registers.length; i++) registers[i] = initial.get(i);
+
+        names = null;
+        constants = null;
+        initial = null;
+    }
+
+    /**
+     * Lower an instruction.
+     * @param instruction the instruction.
+     */
+    private void lower(Instruction instruction)
+    {
+        int pc = append(instruction.opcode, instruction.lineNumber);
+        nodes[pc] = instruction.node;
+        Operand operands[] = instruction.operands;
+
+        switch (instruction.opcode)
+        {
+            case WRITE :
+            case WRITELN :
+            {
+                lefts[pc]   = -1;
+                targets[pc] = -1;
+                rights[pc]  = 0;
+
+                if (operands.length > 0)
+                {
+                    if (operands[0].constant instanceof String)
+                    {
+                        strings[pc] = (String) operands[0].constant;
+                    }
+                    else lefts[pc] = register(operands[0]);
+                }
+                if (operands.length > 1)
+                {
+                    targets[pc] = (int) (double) (Double) operands[1].constant;
+                }
+                if (operands.length > 2)
+                {
+                    rights[pc] = (int) (double) (Double) operands[2].constant;
+                }
+                break;
+            }
+
+            case READ :
+            case EOF :
+                targets[pc] = register(instruction.target);
+                break;
+
+            case READLN :
+            case LINE :
+            case ASSIGN_BOOLEAN :
+                break;
+
+            default :
+            {
+                targets[pc] = register(instruction.target);
+                lefts[pc]   = register(operands[0]);
+                if (operands.length > 1) rights[pc] = register(operands[1]);
+            }
+        }
+    }
+
+    /**
+     * Append an instruction.
+     * @param opcode the opcode.
+     * @param line the line number, or -1.
+     * @return the instruction's index.
+     */
+    private int append(Opcode opcode, int line)
+    {
+        if (size == opcodes.length)
+        {
+            int capacity = 2*size + 1;
+            opcodes = Arrays.copyOf(opcodes, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+            lefts   = Arrays.copyOf(lefts,   capacity);
+            rights  = Arrays.copyOf(rights,  capacity);
+            lines   = Arrays.copyOf(lines,   capacity);
+            nodes   = Arrays.copyOf(nodes,   capacity);
+            strings = Arrays.copyOf(strings, capacity);
+        }
+
+        opcodes[size] = opcode;
+        lines[size]   = line;
+
+        return size++;
+    }
+
+    /**
+     * Get the register of an operand.
+     * @param operand the operand.
+     * @return the register number.
+     */
+    private int register(Operand operand)
+    {
+        if (operand.isConstant())
+        {
+            return constants.computeIfAbsent((Double) operand.constant,
+                                             value -> newRegister(value));
+        }
+        else return names.computeIfAbsent(operand.key(),
+                                          key -> newRegister(0.0));
+    }
+
+    /**
+     * Allocate a register.
+     * @param value its initial value.
+     * @return the register number.
+     */
+    private int newRegister(double value)
+    {
+        initial.add(value);
+        return initial.size() - 1;
+    }
+}
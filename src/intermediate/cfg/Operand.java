@@ -0,0 +1,125 @@
+/**
+ * Operand class for a simple interpreter.
+ *
+ * An operand of an instruction of the control-flow graph: a variable with
+ * its SSA version, a compiler temporary, or a number or string constant.
+ * A variable's version 0 is its initial value. Each use of a variable
+ * is a separate operand, so renaming can set its version in place.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package intermediate.cfg;
+
+import intermediate.*;
+
+public class Operand
+{
+    public SymtabEntry entry;  // variable, or null
+    public int version;        // SSA version of the variable
+    public int temporary;      // temporary number, or -1
+    public Object constant;    // Double or String constant, or null
+
+    private Operand()
+    {
+        this.entry     = null;
+        this.version   = 0;
+        this.temporary = -1;
+        this.constant  = null;
+    }
+
+    /**
+     * Create a variable operand.
+     * @param entry the variable's symbol table entry.
+     * @return the operand.
+     */
+    public static Operand variable(SymtabEntry entry)
+    {
+        Operand operand = new Operand();
+        operand.entry = entry;
+
+        return operand;
+    }
+
+    /**
+     * Create a temporary operand.
+     * @param number the temporary's number.
+     * @return the operand.
+     */
+    public static Operand temporary(int number)
+    {
+        Operand operand = new Operand();
+        operand.temporary = number;
+
+        return operand;
+    }
+
+    /**
+     * Create a constant operand.
+     * @param value the Double or String value.
+     * @return the operand.
+     */
+    public static Operand constant(Object value)
+    {
+        Operand operand = new Operand();
+        operand.constant = value;
+
+        return operand;
+    }
+
+    public boolean isVariable()  { return entry != null;    }
+    public boolean isTemporary() { return temporary >= 0;   }
+    public boolean isConstant()  { return constant != null; }
+
+    /**
+     * @return a new operand with the same name or value.
+     */
+    public Operand copy()
+    {
+        Operand operand = new Operand();
+        operand.entry     = entry;
+        operand.version   = version;
+        operand.temporary = temporary;
+        operand.constant  = constant;
+
+        return operand;
+    }
+
+    /**
+     * @param other another operand.
+     * @return true if both operands are the same variable version,
+     * the same temporary, or equal constants.
+     */
+    public boolean sameAs(Operand other)
+    {
+        if (isVariable())  return    (entry == other.entry)
+                                  && (version == other.version);
+        if (isTemporary()) return temporary == other.temporary;
+
+        return constant.equals(other.constant);
+    }
+
+    /**
+     * @return a key that identifies a variable version or a temporary.
+     */
+    public long key()
+    {
+        return isVariable() ? ((long) (entry.getId() + 1) << 32) | version
+                            : temporary;
+    }
+
+    @Override
+    public String toString()
+    {
+        if (isVariable())  return entry.getName() + "." + version;
+        if (isTemporary()) return "%t" + temporary;
+
+        if (constant instanceof String) return "'" + constant + "'";
+
+        double value = (Double) constant;
+        return value == Math.rint(value) && !Double.isInfinite(value)
+                    ? Long.toString((long) value)
+                    : Double.toString(value);
+    }
+}
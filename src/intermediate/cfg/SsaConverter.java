@@ -0,0 +1,348 @@
+/**
+ * SSA converter class for a simple interpreter.
+ *
+ * Converts a control-flow graph to static single assignment form, where
+ * each variable version has exactly one definition. PHI instructions are
+ * placed at the iterated dominance frontiers of the blocks that assign
+ * a variable, but only for a variable that's used in some block before
+ * it's assigned there. Then the definitions and uses are renamed by a
+ * walk of the dominator tree. Version 0 of a variable is its initial
+ * value. Temporaries never live across blocks, so they're already SSA.
+ *
+ * Converting out of SSA form splits the critical edges, and then replaces
+ * the PHI instructions of each block by copies at the end of its
+ * predecessors. The copies on an edge are a parallel assignment, so
+ * they're ordered, and a cycle is broken with a temporary.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package intermediate.cfg;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+import intermediate.*;
+import intermediate.cfg.Instruction.Opcode;
+
+class SsaConverter
+{
+    /**
+     * Convert a control-flow graph to SSA form.
+     * @param cfg the control-flow graph.
+     */
+    static void toSsa(ControlFlowGraph cfg)
+    {
+        Dominators.compute(cfg);
+        insertPhis(cfg);
+        rename(cfg);
+    }
+
+    /**
+     * Place the PHI instructions.
+     * @param cfg the control-flow graph.
+     */
+    private static void insertPhis(ControlFlowGraph cfg)
+    {
+        IdentityHashMap<SymtabEntry, ArrayList<BasicBlock>> defSites =
+                                                    new IdentityHashMap<>();
+        ArrayList<SymtabEntry> globals = new ArrayList<>();
+        IdentityHashMap<SymtabEntry, Boolean> isGlobal = new IdentityHashMap<>();
+
+        for (BasicBlock block : cfg.blocks)
+        {
+            IdentityHashMap<SymtabEntry, Boolean> assigned = new IdentityHashMap<>();
+
+            for (Instruction instruction : block.instructions)
+            {
+                for (Operand operand : instruction.operands)
+                {
+                    used(operand, assigned, globals, isGlobal);
+                }
+
+                Operand target = instruction.target;
+                if ((target != null) && target.isVariable())
+                {
+                    if (assigned.put(target.entry, true) == null)
+                    {
+                        defSites.computeIfAbsent(target.entry,
+                                                 e -> new ArrayList<>())
+                                .add(block);
+                    }
+                }
+            }
+
+            if (block.condition != null)
+            {
+                used(block.condition, assigned, globals, isGlobal);
+            }
+        }
+
+        for (SymtabEntry entry : globals)
+        {
+            ArrayList<BasicBlock> sites = defSites.get(entry);
+            if (sites == null) continue;
+
+            IdentityHashMap<BasicBlock, Boolean> hasPhi = new IdentityHashMap<>();
+            IdentityHashMap<BasicBlock, Boolean> queued = new IdentityHashMap<>();
+            ArrayDeque<BasicBlock> worklist = new ArrayDeque<>(sites);
+            for (BasicBlock site : sites) queued.put(site, true);
+
+            while (!worklist.isEmpty())
+            {
+                BasicBlock block = worklist.pop();
+
+                for (BasicBlock join : block.frontier)
+                {
+                    if (hasPhi.put(join, true) != null) continue;
+
+                    Operand operands[] = new Operand[join.predecessors.size()];
+                    for (int i = 0; i < operands.length; i++)
+                    {
+                        operands[i] = Operand.variable(entry);
+                    }
+
+                    join.instructions.add(0, new Instruction(Opcode.PHI,
+                                                Operand.variable(entry),
+                                                operands));
+
+                    if (queued.put(join, true) == null) worklist.push(join);
+                }
+            }
+        }
+    }
+
+    /**
+     * Record a used operand. A variable that's used before it's assigned
+     * in a block may need PHI instructions.
+     * @param operand the operand.
+     * @param assigned the variables assigned so far in the block.
+     * @param globals the variables that may need PHI instructions.
+     * @param isGlobal the same variables, for lookup.
+     */
+    private static void used(Operand operand,
+                             IdentityHashMap<SymtabEntry, Boolean> assigned,
+                             ArrayList<SymtabEntry> globals,
+                             IdentityHashMap<SymtabEntry, Boolean> isGlobal)
+    {
+        if (   operand.isVariable() && !assigned.containsKey(operand.entry)
+            && (isGlobal.put(operand.entry, true) == null))
+        {
+            globals.add(operand.entry);
+        }
+    }
+
+    /**
+     * Rename the variables by a walk of the dominator tree.
+     * @param cfg the control-flow graph.
+     */
+    private static void rename(ControlFlowGraph cfg)
+    {
+        IdentityHashMap<SymtabEntry, ArrayDeque<Integer>> stacks =
+                                                    new IdentityHashMap<>();
+        IdentityHashMap<SymtabEntry, Integer> counters = new IdentityHashMap<>();
+
+        // Each pending block, and after it's renamed, the variables
+        // whose versions it pushed.
+        ArrayList<BasicBlock> pending = new ArrayList<>();
+        ArrayList<ArrayList<SymtabEntry>> pushed = new ArrayList<>();
+        pending.add(cfg.entry);
+        pushed.add(null);
+
+        while (!pending.isEmpty())
+        {
+            int top = pending.size() - 1;
+            BasicBlock block = pending.get(top);
+
+            // Leaving a block: pop its versions.
+            if (pushed.get(top) != null)
+            {
+                for (SymtabEntry entry : pushed.get(top)) stacks.get(entry).pop();
+
+                pending.remove(top);
+                pushed.remove(top);
+                continue;
+            }
+
+            ArrayList<SymtabEntry> defined = new ArrayList<>();
+            pushed.set(top, defined);
+
+            for (Instruction instruction : block.instructions)
+            {
+                if (instruction.opcode != Opcode.PHI)
+                {
+                    for (Operand operand : instruction.operands)
+                    {
+                        if (operand.isVariable())
+                        {
+                            operand.version = current(stacks, operand.entry);
+                        }
+                    }
+                }
+
+                Operand target = instruction.target;
+                if ((target != null) && target.isVariable())
+                {
+                    int version = counters.merge(target.entry, 1, Integer::sum);
+                    target.version = version;
+
+                    stacks.computeIfAbsent(target.entry, e -> new ArrayDeque<>())
+                          .push(version);
+                    defined.add(target.entry);
+                }
+            }
+
+            if ((block.condition != null) && block.condition.isVariable())
+            {
+                block.condition.version = current(stacks, block.condition.entry);
+            }
+
+            // Fill in this block's operands of the successors' PHIs.
+            for (BasicBlock successor : block.successors)
+            {
+                int phiCount = successor.phiCount();
+
+                for (int j = 0; j < successor.predecessors.size(); j++)
+                {
+                    if (successor.predecessors.get(j) != block) continue;
+
+                    for (int i = 0; i < phiCount; i++)
+                    {
+                        Operand operand =
+                                successor.instructions.get(i).operands[j];
+                        operand.version = current(stacks, operand.entry);
+                    }
+                }
+            }
+
+            for (BasicBlock child : block.dominated)
+            {
+                pending.add(child);
+                pushed.add(null);
+            }
+        }
+    }
+
+    /**
+     * @param stacks the version stacks of the variables.
+     * @param entry a variable's symbol table entry.
+     * @return the variable's current version.
+     */
+    private static int current(IdentityHashMap<SymtabEntry, ArrayDeque<Integer>> stacks,
+                               SymtabEntry entry)
+    {
+        ArrayDeque<Integer> stack = stacks.get(entry);
+        return (stack == null) || stack.isEmpty() ? 0 : stack.peek();
+    }
+
+    /**
+     * Convert a control-flow graph out of SSA form.
+     * @param cfg the control-flow graph.
+     */
+    static void fromSsa(ControlFlowGraph cfg)
+    {
+        splitCriticalEdges(cfg);
+
+        for (BasicBlock block : new ArrayList<>(cfg.blocks))
+        {
+            int phiCount = block.phiCount();
+            if (phiCount == 0) continue;
+
+            for (int j = 0; j < block.predecessors.size(); j++)
+            {
+                ArrayList<Operand[]> moves = new ArrayList<>();
+                for (int i = 0; i < phiCount; i++)
+                {
+                    Instruction phi = block.instructions.get(i);
+                    moves.add(new Operand[] { phi.target, phi.operands[j] });
+                }
+
+                sequentialize(cfg, moves, block.predecessors.get(j));
+            }
+
+            block.instructions.subList(0, phiCount).clear();
+        }
+    }
+
+    /**
+     * Split each edge from a block with several successors to a block with
+     * several predecessors, so that the copies for the PHIs have a place.
+     * @param cfg the control-flow graph.
+     */
+    private static void splitCriticalEdges(ControlFlowGraph cfg)
+    {
+        for (BasicBlock block : new ArrayList<>(cfg.blocks))
+        {
+            if (block.successors.size() < 2) continue;
+
+            for (int k = 0; k < block.successors.size(); k++)
+            {
+                BasicBlock successor = block.successors.get(k);
+                if (successor.predecessors.size() < 2) continue;
+
+                BasicBlock middle = cfg.newBlock();
+                block.successors.set(k, middle);
+                middle.predecessors.add(block);
+                middle.successors.add(successor);
+                successor.predecessors.set(
+                        successor.predecessors.indexOf(block), middle);
+            }
+        }
+    }
+
+    /**
+     * Append the copies of a parallel assignment to a block.
+     * @param cfg the control-flow graph.
+     * @param moves the target and source of each copy.
+     * @param block the block.
+     */
+    private static void sequentialize(ControlFlowGraph cfg,
+                                      ArrayList<Operand[]> moves,
+                                      BasicBlock block)
+    {
+        moves.removeIf(move -> move[0].sameAs(move[1]));
+
+        while (!moves.isEmpty())
+        {
+            // Find a copy whose target isn't the source of another copy.
+            int ready = -1;
+            for (int i = 0; (i < moves.size()) && (ready < 0); i++)
+            {
+                ready = i;
+                for (int j = 0; j < moves.size(); j++)
+                {
+                    if ((j != i) && moves.get(j)[1].sameAs(moves.get(i)[0]))
+                    {
+                        ready = -1;
+                        break;
+                    }
+                }
+            }
+
+            if (ready >= 0)
+            {
+                Operand move[] = moves.remove(ready);
+                block.instructions.add(new Instruction(Opcode.COPY,
+                                                       move[0].copy(),
+                                                       move[1].copy()));
+            }
+
+            // All the copies are in cycles: save a target in a temporary.
+            else
+            {
+                Operand saved = moves.get(0)[0];
+                Operand temporary = cfg.newTemporary();
+                block.instructions.add(new Instruction(Opcode.COPY,
+                                                       temporary,
+                                                       saved.copy()));
+
+                for (Operand move[] : moves)
+                {
+                    if (move[1].sameAs(saved)) move[1] = temporary;
+                }
+            }
+        }
+    }
+}
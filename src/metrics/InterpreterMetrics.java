@@ -0,0 +1,113 @@
+/**
+ * Interpreter metrics class for a simple interpreter.
+ *
+ * An MBean with the totals of the program runs' statistics since it
+ * was registered, and the largest memory footprint of any run, to find
+ * the programs that hold the most memory. Runs can be recorded
+ * concurrently.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+public class InterpreterMetrics implements InterpreterMetricsMBean
+{
+    public static final String OBJECT_NAME = "simple:type=InterpreterMetrics";
+
+    private static volatile InterpreterMetrics instance = null;
+
+    private LongAdder runs               = new LongAdder();
+    private LongAdder scanTime           = new LongAdder();
+    private LongAdder parseTime          = new LongAdder();
+    private LongAdder nodeCount          = new LongAdder();
+    private LongAdder tokenCount         = new LongAdder();
+    private LongAdder symbolCount        = new LongAdder();
+    private LongAccumulator maxEstimatedBytes    =
+                                            new LongAccumulator(Math::max, 0);
+    private LongAccumulator maxOutputBufferBytes =
+                                            new LongAccumulator(Math::max, 0);
+    private LongAdder executionTime      = new LongAdder();
+    private LongAdder statementsExecuted = new LongAdder();
+    private LongAdder loopIterations     = new LongAdder();
+    private LongAdder outputBytes        = new LongAdder();
+    private LongAdder runtimeErrors      = new LongAdder();
+    private LongAdder memoryBudgetErrors = new LongAdder();
+
+    private InterpreterMetrics() {}
+
+    /**
+     * Register the MBean with the platform MBean server.
+     */
+    public static synchronized void register()
+    {
+        if (instance != null) return;
+
+        InterpreterMetrics metrics = new InterpreterMetrics();
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer()
+                    .registerMBean(metrics, new ObjectName(OBJECT_NAME));
+            instance = metrics;
+        }
+        catch (JMException ex)
+        {
+            System.out.println("*** ERROR: Failed to register " + OBJECT_NAME
+                               + ": " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Getter.
+     * @return true if the MBean is registered.
+     */
+    static boolean isRegistered() { return instance != null; }
+
+    /**
+     * Add a program run's statistics to the totals, if registered.
+     * @param run the program run.
+     */
+    static void record(ProgramRun run)
+    {
+        InterpreterMetrics metrics = instance;
+        if (metrics == null) return;
+
+        metrics.runs.increment();
+        metrics.scanTime.add(run.scanNanos);
+        metrics.parseTime.add(run.parseNanos);
+        metrics.nodeCount.add(run.nodeCount);
+        metrics.tokenCount.add(run.tokenCount);
+        metrics.symbolCount.add(run.symbolCount);
+        metrics.maxEstimatedBytes.accumulate(run.estimatedBytes);
+        metrics.maxOutputBufferBytes.accumulate(run.peakOutputBuffer);
+        metrics.executionTime.add(run.executionNanos);
+        metrics.statementsExecuted.add(run.statementsExecuted);
+        metrics.loopIterations.add(run.loopIterations);
+        metrics.outputBytes.add(run.outputBytes);
+        metrics.runtimeErrors.add(run.runtimeErrors);
+        metrics.memoryBudgetErrors.add(run.memoryBudgetErrors);
+    }
+
+    public long getRuns()               { return runs.sum();               }
+    public long getScanTimeNanos()      { return scanTime.sum();           }
+    public long getParseTimeNanos()     { return parseTime.sum();          }
+    public long getNodeCount()          { return nodeCount.sum();          }
+    public long getTokenCount()         { return tokenCount.sum();         }
+    public long getSymbolCount()        { return symbolCount.sum();        }
+    public long getMaxEstimatedBytes()  { return maxEstimatedBytes.get();  }
+    public long getMaxOutputBufferBytes() { return maxOutputBufferBytes.get(); }
+    public long getExecutionTimeNanos() { return executionTime.sum();      }
+    public long getStatementsExecuted() { return statementsExecuted.sum(); }
+    public long getLoopIterations()     { return loopIterations.sum();     }
+    public long getOutputBytes()        { return outputBytes.sum();        }
+    public long getRuntimeErrors()      { return runtimeErrors.sum();      }
+    public long getMemoryBudgetErrors() { return memoryBudgetErrors.sum(); }
+}
@@ -0,0 +1,26 @@
+/**
+ * Interpreter metrics MBean interface for a simple interpreter.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package metrics;
+
+public interface InterpreterMetricsMBean
+{
+    long getRuns();
+    long getScanTimeNanos();
+    long getParseTimeNanos();
+    long getNodeCount();
+    long getTokenCount();
+    long getSymbolCount();
+    long getMaxEstimatedBytes();
+    long getMaxOutputBufferBytes();
+    long getExecutionTimeNanos();
+    long getStatementsExecuted();
+    long getLoopIterations();
+    long getOutputBytes();
+    long getRuntimeErrors();
+    long getMemoryBudgetErrors();
+}
@@ -0,0 +1,123 @@
+/**
+ * Program run class for a simple interpreter.
+ *
+ * Collects the statistics of a program run, and at the end of the run
+ * commits them as a JFR event and adds them to the MBean's totals.
+ * Once metrics are enabled, a run is measured only if the event is
+ * enabled in a JFR recording or the MBean is registered, so the
+ * interpreter has nothing to count or time otherwise. Until then,
+ * not even the JFR classes are loaded, which matters for startup.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package metrics;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+public class ProgramRun
+{
+    public long scanNanos          = 0;
+    public long parseNanos         = 0;
+    public long nodeCount          = 0;
+    public long tokenCount         = 0;
+    public long symbolCount        = 0;
+    public long estimatedBytes     = 0;
+    public long peakOutputBuffer   = 0;
+    public long executionNanos     = 0;
+    public long statementsExecuted = 0;
+    public long loopIterations     = 0;
+    public long outputBytes        = 0;
+    public int runtimeErrors       = 0;
+    public int memoryBudgetErrors  = 0;
+
+    private static volatile boolean metricsEnabled = false;
+
+    private String operation;
+    private ProgramRunEvent event;
+
+    /**
+     * Enable metrics.
+     */
+    public static void enable() { metricsEnabled = true; }
+
+    /**
+     * Check whether to measure program runs.
+     * @return true if metrics are enabled and the JFR event is enabled
+     * or the MBean is registered.
+     */
+    public static boolean enabled()
+    {
+        return metricsEnabled
+               && (   InterpreterMetrics.isRegistered()
+                   || new ProgramRunEvent().isEnabled());
+    }
+
+    /**
+     * Constructor. The run starts now.
+     * @param operation the operation, -scan, -parse, or -execute.
+     */
+    public ProgramRun(String operation)
+    {
+        this.operation = operation;
+        this.event = new ProgramRunEvent();
+        event.begin();
+    }
+
+    /**
+     * End the run: commit the event and record the statistics.
+     */
+    public void finish()
+    {
+        event.end();
+
+        if (event.shouldCommit())
+        {
+            event.operation          = operation;
+            event.scanTime           = scanNanos;
+            event.parseTime          = parseNanos;
+            event.nodeCount          = nodeCount;
+            event.tokenCount         = tokenCount;
+            event.symbolCount        = symbolCount;
+            event.estimatedBytes     = estimatedBytes;
+            event.peakOutputBuffer   = peakOutputBuffer;
+            event.executionTime      = executionNanos;
+            event.statementsExecuted = statementsExecuted;
+            event.loopIterations     = loopIterations;
+            event.outputBytes        = outputBytes;
+            event.runtimeErrors      = runtimeErrors;
+            event.memoryBudgetErrors = memoryBudgetErrors;
+            event.commit();
+        }
+
+        InterpreterMetrics.record(this);
+    }
+
+    /**
+     * Wrap an output stream to count the run's output bytes.
+     * @param out the output stream.
+     * @return the counting stream.
+     */
+    public OutputStream countOutput(OutputStream out)
+    {
+        return new FilterOutputStream(out)
+        {
+            @Override
+            public void write(int b) throws IOException
+            {
+                out.write(b);
+                outputBytes++;
+            }
+
+            @Override
+            public void write(byte b[], int off, int len) throws IOException
+            {
+                out.write(b, off, len);
+                outputBytes += len;
+            }
+        };
+    }
+}
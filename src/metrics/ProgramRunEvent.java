@@ -0,0 +1,67 @@
+/**
+ * Program run event class for a simple interpreter.
+ *
+ * A JFR event for each program run, which spans the whole run so that
+ * it can be correlated with GC and CPU events in a recording.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+@Name("simple.ProgramRun")
+@Label("Program Run")
+@Category("Simple Interpreter")
+@Description("Scanning, parsing, and executing a source program")
+public class ProgramRunEvent extends jdk.jfr.Event
+{
+    @Label("Operation")
+    public String operation;
+
+    @Label("Scan Time") @Timespan(Timespan.NANOSECONDS)
+    public long scanTime;
+
+    @Label("Parse Time") @Timespan(Timespan.NANOSECONDS)
+    public long parseTime;
+
+    @Label("Node Count")
+    public long nodeCount;
+
+    @Label("Token Count")
+    public long tokenCount;
+
+    @Label("Symbol Count")
+    public long symbolCount;
+
+    @Label("Estimated Memory") @DataAmount
+    public long estimatedBytes;
+
+    @Label("Peak Output Buffer") @DataAmount
+    public long peakOutputBuffer;
+
+    @Label("Execution Time") @Timespan(Timespan.NANOSECONDS)
+    public long executionTime;
+
+    @Label("Statements Executed")
+    public long statementsExecuted;
+
+    @Label("Loop Iterations")
+    public long loopIterations;
+
+    @Label("Output Bytes") @DataAmount
+    public long outputBytes;
+
+    @Label("Runtime Errors")
+    public int runtimeErrors;
+
+    @Label("Memory Budget Errors")
+    public int memoryBudgetErrors;
+}
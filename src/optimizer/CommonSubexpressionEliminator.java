@@ -0,0 +1,560 @@
+/**
+ * Common subexpression eliminator class for a simple interpreter.
+ *
+ * Value numbering over each run of consecutive assignment statements
+ * in a compound statement. Two expression subtrees have the same value
+ * number if they have the same structure and their variables haven't
+ * been assigned in between, which is tracked by giving each variable
+ * a new version at each assignment. All expressions are pure, and only
+ * a READ or READLN statement can change the value of EOF, so a repeated
+ * expression can be computed once:
+ *
+ *     x := (a + b)*c;          $t1 := a + b;
+ *     y := a + b;        ==>   x := $t1*c;
+ *     z := (a + b)*c;          y := $t1;
+ *                              z := x
+ *
+ * An expression that is the whole right-hand side of an assignment is
+ * reused from the assigned variable while the variable keeps its value.
+ * Otherwise, it's computed into a new compiler temporary, named $tN so
+ * that it can't clash with a source name, just before the statement
+ * where it first occurs.
+ *
+ * Any other kind of statement ends a run. A WRITE or WRITELN statement
+ * doesn't assign, so it only splits the run for rewriting.
+ *
+ * The parser shares some nodes among several parents, so a subtree
+ * that changes is copied rather than modified.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import intermediate.*;
+import static intermediate.Node.NodeType.*;
+
+public class CommonSubexpressionEliminator
+{
+    private Symtab symtab;
+    private int tempCount;   // number of temporaries created
+    private int eliminated;  // number of expressions eliminated
+
+    // Versions of the variables, which change at each assignment.
+    private IdentityHashMap<SymtabEntry, Integer> versions;
+
+    // Value numbers of the expression structures of a run, and of the
+    // nodes of the current expression.
+    private HashMap<List<Object>, Integer> table;
+    private IdentityHashMap<Node, Integer> numbers;
+
+    /**
+     * A variable that holds the value of an expression.
+     */
+    private static class Holder
+    {
+        SymtabEntry entry;  // the variable
+        int version;        // its version when it was assigned the value
+
+        Holder(SymtabEntry entry, int version)
+        {
+            this.entry   = entry;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Constructor.
+     * @param symtab the symbol table in which to enter the temporaries.
+     */
+    public CommonSubexpressionEliminator(Symtab symtab)
+    {
+        this.symtab     = symtab;
+        this.tempCount  = 0;
+        this.eliminated = 0;
+    }
+
+    /**
+     * Getter.
+     * @return the number of expressions eliminated.
+     */
+    public int eliminated() { return eliminated; }
+
+    /**
+     * Optimize every compound statement of a parse tree.
+     * @param programNode the PROGRAM node of the parse tree.
+     */
+    public void optimize(Node programNode)
+    {
+        ArrayList<Node> stack = new ArrayList<>();
+        IdentityHashMap<Node, Boolean> visited = new IdentityHashMap<>();
+        stack.add(programNode);
+
+        while (!stack.isEmpty())
+        {
+            Node node = stack.remove(stack.size() - 1);
+            if (visited.put(node, true) != null) continue;
+
+            if (node.type == COMPOUND) optimizeCompound(node);
+
+            for (Node child : node.children)
+            {
+                if ((child != null) && isStatement(child)) stack.add(child);
+            }
+        }
+    }
+
+    /**
+     * Optimize the runs of assignments of a compound statement.
+     * @param compoundNode the COMPOUND node.
+     */
+    private void optimizeCompound(Node compoundNode)
+    {
+        ArrayList<Node> statements = compoundNode.children;
+        ArrayList<Node> optimized = new ArrayList<>(statements.size());
+        int start = 0;
+
+        while (start < statements.size())
+        {
+            int end = start;
+            while (   (end < statements.size())
+                   && isStraightLine(statements.get(end)))
+            {
+                end++;
+            }
+
+            if (end > start) optimizeRun(statements, start, end, optimized);
+            else             optimized.add(statements.get(end++));
+
+            start = end;
+        }
+
+        compoundNode.children = optimized;
+    }
+
+    /**
+     * Optimize a run of assignments and writes.
+     * @param statements the statements of the compound statement.
+     * @param start the index of the first statement of the run.
+     * @param end the index just past the last statement of the run.
+     * @param optimized the list to append the optimized statements to.
+     */
+    private void optimizeRun(ArrayList<Node> statements, int start, int end,
+                             ArrayList<Node> optimized)
+    {
+        table = new HashMap<>();
+
+        // First pass: Count the occurrences of each expression, but not
+        // of the parts of an expression that has occurred before.
+        HashMap<Integer, Integer> counts = new HashMap<>();
+        versions = new IdentityHashMap<>();
+
+        for (int i = start; i < end; i++)
+        {
+            Node statement = statements.get(i);
+            if (statement.type != ASSIGN) continue;
+
+            count(statement.children.get(1), counts);
+            assigned(statement.children.get(0).entry);
+        }
+
+        // Second pass: Replace each repeated expression by a variable
+        // that holds its value. The versions repeat the first pass,
+        // so the expressions get the same value numbers.
+        HashMap<Integer, Holder> available = new HashMap<>();
+        versions = new IdentityHashMap<>();
+
+        for (int i = start; i < end; i++)
+        {
+            Node statement = statements.get(i);
+            if (statement.type != ASSIGN)
+            {
+                optimized.add(statement);
+                continue;
+            }
+
+            Node lhs = statement.children.get(0);
+            Node rhs = statement.children.get(1);
+            numberAll(rhs);
+            Integer rhsNumber = numbers.get(rhs);
+
+            Node newRhs = rewrite(rhs, counts, available,
+                                  statement.lineNumber, optimized);
+            if (newRhs != rhs) statement.children.set(1, newRhs);
+            optimized.add(statement);
+
+            int version = assigned(lhs.entry);
+
+            // The assigned variable now holds the value of the expression.
+            if (   isOperator(rhs) && (counts.get(rhsNumber) > 1)
+                && !available.containsKey(rhsNumber))
+            {
+                available.put(rhsNumber, new Holder(lhs.entry, version));
+            }
+        }
+
+        table = null;
+        numbers = null;
+    }
+
+    /**
+     * Count the occurrences of an expression and its subexpressions.
+     * @param root the root of the expression.
+     * @param counts the counts by value number.
+     */
+    private void count(Node root, HashMap<Integer, Integer> counts)
+    {
+        numberAll(root);
+
+        ArrayList<Node> stack = new ArrayList<>();
+        stack.add(root);
+
+        while (!stack.isEmpty())
+        {
+            Node node = stack.remove(stack.size() - 1);
+            if (!isOperator(node)) continue;
+
+            Integer number = numbers.get(node);
+            Integer n = counts.get(number);
+
+            if (n != null) counts.put(number, n + 1);  // will be eliminated
+            else
+            {
+                counts.put(number, 1);
+                stack.addAll(node.children);
+            }
+        }
+    }
+
+    /**
+     * A partly rewritten operator node.
+     */
+    private static class Frame
+    {
+        Node node;    // the original node
+        Node copy;    // its copy if a child changed, else null
+        int next;     // index of the next child to rewrite
+
+        Frame(Node node) { this.node = node; }
+    }
+
+    /**
+     * Rewrite an expression, replacing each repeated subexpression by
+     * a variable that holds its value. The whole expression is left for
+     * the assigned variable to hold. The expression must be numbered.
+     * @param root the root of the expression.
+     * @param counts the occurrence counts by value number.
+     * @param available the variables that hold values by value number.
+     * @param lineNumber the line number of the statement.
+     * @param optimized the list to append new temporary assignments to.
+     * @return the rewritten expression, or the same node if unchanged.
+     */
+    private Node rewrite(Node root, HashMap<Integer, Integer> counts,
+                         HashMap<Integer, Holder> available,
+                         int lineNumber, ArrayList<Node> optimized)
+    {
+        if (!isOperator(root)) return root;
+
+        Node held = held(root, available);
+        if (held != null) return held;
+
+        ArrayList<Frame> stack = new ArrayList<>();
+        stack.add(new Frame(root));
+        Node result = root;
+
+        while (!stack.isEmpty())
+        {
+            Frame frame = stack.get(stack.size() - 1);
+
+            // Rewrite the next child.
+            if (frame.next < frame.node.children.size())
+            {
+                Node child = frame.node.children.get(frame.next++);
+
+                if (isOperator(child))
+                {
+                    held = held(child, available);
+                    if (held == null)
+                    {
+                        stack.add(new Frame(child));
+                        continue;
+                    }
+
+                    result = held;
+                }
+                else result = child;
+            }
+
+            // All the children are rewritten.
+            else
+            {
+                stack.remove(stack.size() - 1);
+                result = frame.copy != null ? frame.copy : frame.node;
+
+                // Compute a repeated expression into a temporary, unless
+                // it's the whole right-hand side.
+                Integer number = numbers.get(frame.node);
+                if ((counts.get(number) > 1) && !stack.isEmpty())
+                {
+                    SymtabEntry temp = symtab.enter("$t" + (++tempCount));
+
+                    Node assignNode = new Node(ASSIGN);
+                    assignNode.lineNumber = lineNumber;
+                    assignNode.adopt(variableNode(temp));
+                    assignNode.adopt(result);
+                    optimized.add(assignNode);
+
+                    available.put(number, new Holder(temp, version(temp)));
+                    result = variableNode(temp);
+                }
+
+                if (stack.isEmpty()) break;
+                frame = stack.get(stack.size() - 1);
+            }
+
+            // Replace the child in its parent.
+            int index = frame.next - 1;
+            if (result != frame.node.children.get(index))
+            {
+                if (frame.copy == null) frame.copy = copyNode(frame.node);
+                frame.copy.children.set(index, result);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Find a variable that still holds the value of an expression.
+     * @param node the root of the expression.
+     * @param available the variables that hold values by value number.
+     * @return a new node of the variable, or null if there's none.
+     */
+    private Node held(Node node, HashMap<Integer, Holder> available)
+    {
+        Holder holder = available.get(numbers.get(node));
+
+        if ((holder != null) && (version(holder.entry) == holder.version))
+        {
+            eliminated++;
+            return variableNode(holder.entry);
+        }
+        else return null;
+    }
+
+    /**
+     * Number an expression and its subexpressions. Two expressions get
+     * the same value number if they have the same structure and the same
+     * versions of their variables. The operands of a commutative
+     * operator are ordered.
+     * @param root the root of the expression.
+     */
+    private void numberAll(Node root)
+    {
+        numbers = new IdentityHashMap<>();
+
+        // Number the nodes in postorder.
+        ArrayList<Node> stack = new ArrayList<>();
+        stack.add(root);
+
+        while (!stack.isEmpty())
+        {
+            Node node = stack.get(stack.size() - 1);
+
+            if (numbers.containsKey(node))
+            {
+                stack.remove(stack.size() - 1);
+                continue;
+            }
+
+            boolean ready = true;
+            for (Node child : node.children)
+            {
+                if (!numbers.containsKey(child))
+                {
+                    stack.add(child);
+                    ready = false;
+                }
+            }
+
+            if (ready)
+            {
+                stack.remove(stack.size() - 1);
+                numbers.put(node, number(node));
+            }
+        }
+    }
+
+    /**
+     * Compute the value number of a node whose children are numbered.
+     * @param node the node.
+     * @return the value number.
+     */
+    private Integer number(Node node)
+    {
+        List<Object> key;
+
+        switch (node.type)
+        {
+            case VARIABLE :
+                key = Arrays.asList(VARIABLE, node.entry.getId(),
+                                    version(node.entry));
+                break;
+
+            case INTEGER_CONSTANT :
+            case REAL_CONSTANT :
+            case STRING_CONSTANT :
+                key = Arrays.asList(node.type, node.value);
+                break;
+
+            default :
+            {
+                Object parts[] = new Object[node.children.size() + 1];
+                parts[0] = node.type;
+                for (int i = 0; i < node.children.size(); i++)
+                {
+                    parts[i + 1] = numbers.get(node.children.get(i));
+                }
+
+                if (isCommutative(node) && (parts.length == 3)
+                        && ((Integer) parts[1] > (Integer) parts[2]))
+                {
+                    Object swap = parts[1];
+                    parts[1] = parts[2];
+                    parts[2] = swap;
+                }
+
+                key = Arrays.asList(parts);
+            }
+        }
+
+        Integer number = table.get(key);
+        if (number == null)
+        {
+            number = table.size();
+            table.put(key, number);
+        }
+
+        return number;
+    }
+
+    /**
+     * Record an assignment to a variable.
+     * @param entry the variable's symbol table entry.
+     * @return the variable's new version.
+     */
+    private int assigned(SymtabEntry entry)
+    {
+        int version = version(entry) + 1;
+        versions.put(entry, version);
+
+        return version;
+    }
+
+    /**
+     * @param entry a variable's symbol table entry.
+     * @return the variable's current version.
+     */
+    private int version(SymtabEntry entry)
+    {
+        Integer version = versions.get(entry);
+        return version != null ? version : 0;
+    }
+
+    /**
+     * @param node a statement node.
+     * @return true if the statement can't assign a variable other than
+     * by a single assignment, or transfer control.
+     */
+    private static boolean isStraightLine(Node node)
+    {
+        return    (node != null)
+               && (   (node.type == ASSIGN)
+                   || (node.type == WRITE) || (node.type == WRITELN));
+    }
+
+    /**
+     * @param node a node.
+     * @return true if the node is a statement.
+     */
+    private static boolean isStatement(Node node)
+    {
+        switch (node.type)
+        {
+            case COMPOUND : case ASSIGN : case LOOP :
+            case IF : case WRITE : case WRITELN :
+                return true;
+
+            default : return false;
+        }
+    }
+
+    /**
+     * @param node an expression node.
+     * @return true if it's an operator rather than a variable or constant.
+     */
+    private static boolean isOperator(Node node)
+    {
+        switch (node.type)
+        {
+            case VARIABLE : case INTEGER_CONSTANT :
+            case REAL_CONSTANT : case STRING_CONSTANT :
+                return false;
+
+            default : return true;
+        }
+    }
+
+    /**
+     * @param node an operator node.
+     * @return true if the operator is commutative.
+     */
+    private static boolean isCommutative(Node node)
+    {
+        switch (node.type)
+        {
+            case ADD : case MULTIPLY : case EQ : case NEQ : case AND : case OR :
+                return true;
+
+            default : return false;
+        }
+    }
+
+    /**
+     * Create a variable node.
+     * @param entry the variable's symbol table entry.
+     * @return the node.
+     */
+    private static Node variableNode(SymtabEntry entry)
+    {
+        Node node  = new Node(VARIABLE);
+        node.text  = entry.getName();
+        node.entry = entry;
+
+        return node;
+    }
+
+    /**
+     * Copy a node, sharing its children.
+     * @param node the node to copy.
+     * @return the copy.
+     */
+    private static Node copyNode(Node node)
+    {
+        Node copy = new Node(node.type);
+        copy.lineNumber = node.lineNumber;
+        copy.text       = node.text;
+        copy.entry      = node.entry;
+        copy.value      = node.value;
+        copy.children.addAll(node.children);
+
+        return copy;
+    }
+}
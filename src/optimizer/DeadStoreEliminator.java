@@ -0,0 +1,318 @@
+/**
+ * Dead store eliminator class for a simple interpreter.
+ *
+ * A backward liveness analysis over the statements of a parse tree,
+ * with the live variables kept as a bit set of their interned name IDs.
+ * A variable is live if its value may be read later by an expression,
+ * including a WRITE or WRITELN argument or a loop test. An assignment
+ * to a variable that isn't live is a dead store, and it's removed if
+ * evaluating its right-hand side can't fail. A removed assignment reads
+ * nothing, so the assignments that only fed it become dead in turn.
+ * A READ or READLN statement assigns its variables too, but it's never
+ * removed, since it consumes input.
+ *
+ * A loop's body is analyzed repeatedly until the variables live at its
+ * start stop changing, since they're live at the end of the body too.
+ * Only then are its dead stores removed.
+ *
+ * A variable that's no longer in the parse tree is removed from the
+ * symbol table, so it isn't saved in checkpoints. The table is then
+ * compacted, so that an execution frame only has slots for the
+ * remaining variables and not for every interned name ID up to the
+ * largest, which include the reserved words' IDs.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package optimizer;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+
+import intermediate.*;
+import static intermediate.Node.NodeType.*;
+
+public class DeadStoreEliminator
+{
+    private Symtab symtab;
+    private int eliminated;  // number of assignments removed
+
+    /**
+     * Constructor.
+     * @param symtab the symbol table of the variables.
+     */
+    public DeadStoreEliminator(Symtab symtab)
+    {
+        this.symtab     = symtab;
+        this.eliminated = 0;
+    }
+
+    /**
+     * Getter.
+     * @return the number of assignments removed.
+     */
+    public int eliminated() { return eliminated; }
+
+    /**
+     * Remove the dead stores of a parse tree, and then the variables
+     * that are no longer used.
+     * @param programNode the PROGRAM node of the parse tree.
+     */
+    public void optimize(Node programNode)
+    {
+        IdentityHashMap<SymtabEntry, Boolean> before = variables(programNode);
+
+        // Nothing is live at the end of the program.
+        sequence(programNode.children, 0, new BitSet(), null, true);
+
+        IdentityHashMap<SymtabEntry, Boolean> after = variables(programNode);
+        for (SymtabEntry entry : before.keySet())
+        {
+            if (!after.containsKey(entry)) symtab.remove(entry.getId());
+        }
+
+        symtab.compact();
+    }
+
+    /**
+     * Analyze a statement.
+     * @param node the statement node.
+     * @param live the variables live after the statement,
+     *             which is updated to the ones live before it.
+     * @param remove true to remove dead stores.
+     */
+    private void statement(Node node, BitSet live, boolean remove)
+    {
+        switch (node.type)
+        {
+            case COMPOUND :
+                sequence(node.children, 0, live, null, remove);
+                break;
+
+            case ASSIGN :
+            {
+                int id = node.children.get(0).entry.getId();
+                if (!isDead(node, live))
+                {
+                    live.clear(id);
+                    uses(node.children.get(1), live);
+                }
+                break;
+            }
+
+            case WRITE :
+            case WRITELN :
+                for (Node child : node.children) uses(child, live);
+                break;
+
+            case READ :
+            case READLN :
+                for (Node child : node.children) live.clear(child.entry.getId());
+                break;
+
+            case IF :
+            {
+                // Either branch may be taken, and a missing
+                // else branch falls through.
+                BitSet elseLive = (BitSet) live.clone();
+                if (node.children.size() > 1)
+                {
+                    sequence(node.children, 1, live, null, remove);
+                    if (node.children.size() > 2)
+                    {
+                        sequence(node.children, 2, elseLive, null, remove);
+                    }
+
+                    live.or(elseLive);
+                    uses(node.children.get(0), live);
+                }
+                break;
+            }
+
+            case LOOP :
+                loop(node, live, remove);
+                break;
+
+            default :
+                break;
+        }
+    }
+
+    /**
+     * Analyze a loop, whose body is its children. A TEST child exits the
+     * loop, and the end of the body goes back to its start.
+     * @param loopNode the LOOP node.
+     * @param live the variables live after the loop,
+     *             which is updated to the ones live before it.
+     * @param remove true to remove dead stores.
+     */
+    private void loop(Node loopNode, BitSet live, boolean remove)
+    {
+        BitSet exitLive = (BitSet) live.clone();
+        BitSet startLive = new BitSet();
+        BitSet previous;
+
+        do
+        {
+            previous = startLive;
+            startLive = (BitSet) previous.clone();
+            sequence(loopNode.children, 0, startLive, exitLive, false);
+        } while (!startLive.equals(previous));
+
+        if (remove)
+        {
+            startLive = (BitSet) previous.clone();
+            sequence(loopNode.children, 0, startLive, exitLive, true);
+        }
+
+        live.clear();
+        live.or(startLive);
+    }
+
+    /**
+     * Analyze a sequence of statements backward, and remove its dead stores.
+     * @param statements the statements.
+     * @param first the index of the first statement, which is the only
+     *              one if it's not the first child of its parent.
+     * @param live the variables live after the sequence,
+     *             which is updated to the ones live before it.
+     * @param exitLive the variables live after the enclosing loop if the
+     *                 sequence is a loop body, else null.
+     * @param remove true to remove dead stores.
+     */
+    private void sequence(ArrayList<Node> statements, int first, BitSet live,
+                          BitSet exitLive, boolean remove)
+    {
+        int last = first == 0 ? statements.size() - 1 : first;
+
+        for (int i = last; i >= first; i--)
+        {
+            Node node = statements.get(i);
+            if (node == null) continue;
+
+            if (node.type == TEST)
+            {
+                if (exitLive != null) live.or(exitLive);
+                uses(node.children.get(0), live);
+            }
+            else if (remove && isDead(node, live))
+            {
+                eliminated++;
+
+                // A branch of an IF statement keeps its place.
+                if (first == 0) statements.remove(i);
+                else            statements.set(i, new Node(COMPOUND));
+            }
+            else statement(node, live, remove);
+        }
+    }
+
+    /**
+     * @param node a statement node.
+     * @param live the variables live after the statement.
+     * @return true if the statement is an assignment to a variable
+     * that isn't live, and its right-hand side can't fail.
+     */
+    private static boolean isDead(Node node, BitSet live)
+    {
+        return    (node.type == ASSIGN)
+               && !live.get(node.children.get(0).entry.getId())
+               && isPure(node.children.get(1));
+    }
+
+    /**
+     * Add the variables read by an expression to the live variables.
+     * @param root the root of the expression.
+     * @param live the live variables.
+     */
+    private static void uses(Node root, BitSet live)
+    {
+        ArrayList<Node> stack = new ArrayList<>();
+        stack.add(root);
+
+        while (!stack.isEmpty())
+        {
+            Node node = stack.remove(stack.size() - 1);
+
+            if (node.type == VARIABLE) live.set(node.entry.getId());
+            else stack.addAll(node.children);
+        }
+    }
+
+    /**
+     * @param root the root of an expression.
+     * @return true if evaluating the expression can't fail. It must
+     * be arithmetic, and only divide by a nonzero constant.
+     */
+    private static boolean isPure(Node root)
+    {
+        ArrayList<Node> stack = new ArrayList<>();
+        stack.add(root);
+
+        while (!stack.isEmpty())
+        {
+            Node node = stack.remove(stack.size() - 1);
+
+            switch (node.type)
+            {
+                case VARIABLE :
+                case INTEGER_CONSTANT :
+                case REAL_CONSTANT :
+                    break;
+
+                case ADD :
+                case SUBTRACT :
+                case MULTIPLY :
+                case NEG :
+                    stack.addAll(node.children);
+                    break;
+
+                case DIVIDE :
+                {
+                    Node divisor = node.children.get(1);
+                    if (   (   (divisor.type != INTEGER_CONSTANT)
+                            && (divisor.type != REAL_CONSTANT))
+                        || (((Number) divisor.value).doubleValue() == 0.0))
+                    {
+                        return false;
+                    }
+
+                    stack.add(node.children.get(0));
+                    break;
+                }
+
+                default :
+                    return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Collect the variables of a parse tree.
+     * @param programNode the PROGRAM node of the parse tree.
+     * @return the variables' symbol table entries.
+     */
+    private static IdentityHashMap<SymtabEntry, Boolean> variables(Node programNode)
+    {
+        IdentityHashMap<SymtabEntry, Boolean> variables = new IdentityHashMap<>();
+        ArrayList<Node> stack = new ArrayList<>();
+        stack.add(programNode);
+
+        while (!stack.isEmpty())
+        {
+            Node node = stack.remove(stack.size() - 1);
+
+            if (node.entry != null) variables.put(node.entry, true);
+            for (Node child : node.children)
+            {
+                if (child != null) stack.add(child);
+            }
+        }
+
+        return variables;
+    }
+}
@@ -0,0 +1,292 @@
+/**
+ * Partial evaluator class for a simple interpreter.
+ *
+ * Whatever a program computes from its constants before it reads any
+ * input can be computed before it runs. The partial evaluator executes
+ * the top-level statements of the program one at a time with the Executor,
+ * capturing their output, until a statement reads input, fails, or exceeds
+ * a budget of loop iterations, time, or output. Such a statement is rolled
+ * back, and it and the statements after it are left to run normally. A runtime
+ * error is also left to happen at run time, where it's reported as usual.
+ *
+ * The captured output is charged to the program's memory budget, if it
+ * has one, and a statement whose output would exceed the budget is left
+ * to run normally too. The output that's kept stays charged, since the
+ * compiled program holds it.
+ *
+ * The program is replaced by a residual program: a WRITE of the captured
+ * output, assignments of the values that the remaining statements may
+ * read, and the remaining statements. The evaluation has its own frame
+ * of variable values, so the residual program runs from the usual initial
+ * state. If the whole program is evaluated, the residual program only
+ * writes its output.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package optimizer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import backend.*;
+import intermediate.*;
+import static intermediate.Node.NodeType.*;
+
+public class PartialEvaluator
+{
+    public static final long DEFAULT_ITERATIONS   = 1_000_000;
+    public static final long DEFAULT_TIMEOUT      = 1000;     // milliseconds
+    public static final long DEFAULT_OUTPUT_BYTES = 1 << 20;
+
+    private long maxIterations;   // loop iteration budget
+    private long timeoutMillis;   // time budget
+    private long maxOutputBytes;  // output budget
+    private int evaluated;        // number of statements evaluated
+    private long iterations;      // number of loop iterations executed
+    private boolean tiering;      // true to compile hot loops
+    private MemoryBudget budget;  // to charge the captured output, or null
+
+    /**
+     * Constructor.
+     * @param maxIterations the loop iteration budget.
+     * @param timeoutMillis the time budget in milliseconds.
+     * @param maxOutputBytes the output budget in bytes.
+     */
+    public PartialEvaluator(long maxIterations, long timeoutMillis,
+                            long maxOutputBytes)
+    {
+        this.maxIterations  = maxIterations;
+        this.timeoutMillis  = timeoutMillis;
+        this.maxOutputBytes = maxOutputBytes;
+        this.evaluated      = 0;
+        this.iterations     = 0;
+        this.tiering        = true;
+        this.budget         = null;
+    }
+
+    /**
+     * Setter.
+     * @param tiering true to compile hot loops while evaluating,
+     * false to only interpret.
+     */
+    public void setTiering(boolean tiering) { this.tiering = tiering; }
+
+    /**
+     * Setter.
+     * @param budget the program's memory budget to charge the captured
+     * output to, or null.
+     */
+    public void setMemoryBudget(MemoryBudget budget) { this.budget = budget; }
+
+    /**
+     * Getter.
+     * @return the number of top-level statements evaluated.
+     */
+    public int evaluated() { return evaluated; }
+
+    /**
+     * Getter.
+     * @return the number of loop iterations of the evaluated statements.
+     */
+    public long iterations() { return iterations; }
+
+    /**
+     * Evaluate a prefix of a program, and replace the program
+     * by its residual program.
+     * @param programNode the PROGRAM node of the parse tree.
+     */
+    public void evaluate(Node programNode)
+    {
+        Node compoundNode = programNode.children.isEmpty()
+                                ? null : programNode.children.get(0);
+        if ((compoundNode == null) || (compoundNode.type != COMPOUND)) return;
+
+        ArrayList<Node> statements = compoundNode.children;
+        ArrayList<SymtabEntry> entries = variables(statements);
+        double saved[] = new double[entries.size()];
+
+        ByteArrayOutputStream bytes = budget != null ? budget.newBuffer()
+                                                     : new ByteArrayOutputStream();
+        PrintStream out = new PrintStream(bytes, false);
+        ExecutionLimits limits = new ExecutionLimits(maxIterations,
+                                                     timeoutMillis);
+        Frame frame = new Frame();
+        Executor executor = new Executor(limits, out, InputReader.empty(),
+                                         frame);
+        executor.setTiering(tiering);
+        long iterationsBefore = 0;
+
+        for (Node statement : statements)
+        {
+            if (statement == null)
+            {
+                evaluated++;
+                continue;
+            }
+
+            // The input is only available at run time.
+            if (readsInput(statement)) break;
+
+            for (int i = 0; i < saved.length; i++)
+            {
+                saved[i] = frame.get(entries.get(i));
+            }
+            int mark = bytes.size();
+
+            boolean done;
+            try
+            {
+                executor.visit(statement);
+                out.flush();
+                done = bytes.size() <= maxOutputBytes;
+            }
+            catch (RuntimeException | StackOverflowError ex)
+            {
+                out.flush();
+                done = false;
+            }
+
+            // Roll back a failed statement.
+            if (!done)
+            {
+                for (int i = 0; i < saved.length; i++)
+                {
+                    frame.set(entries.get(i), saved[i]);
+                }
+
+                byte output[] = bytes.toByteArray();
+                if (budget != null) budget.release(output.length);
+                bytes.reset();
+                bytes.write(output, 0, mark);  // charged again
+                break;
+            }
+
+            evaluated++;
+            iterationsBefore = limits.iterations();
+        }
+
+        // The residual program replaces the statements, so stop any
+        // compilation of their loops first.
+        executor.stopCompiling();
+
+        iterations = iterationsBefore;
+        if (evaluated == 0) return;
+
+        List<Node> remaining = statements.subList(evaluated, statements.size());
+        int lineNumber = statements.get(0) != null ? statements.get(0).lineNumber
+                                                   : compoundNode.lineNumber;
+        ArrayList<Node> residual = new ArrayList<>();
+
+        if (bytes.size() > 0)
+        {
+            Node writeNode = new Node(WRITE);
+            writeNode.lineNumber = lineNumber;
+            writeNode.adopt(constantNode(STRING_CONSTANT, bytes.toString()));
+            residual.add(writeNode);
+        }
+
+        // Assign the values that the remaining statements may read.
+        IdentityHashMap<SymtabEntry, Boolean> read = new IdentityHashMap<>();
+        for (SymtabEntry entry : variables(remaining)) read.put(entry, true);
+
+        for (SymtabEntry entry : entries)
+        {
+            if (read.containsKey(entry) && (frame.get(entry) != 0.0))
+            {
+                Node variableNode = new Node(VARIABLE);
+                variableNode.text  = entry.getName();
+                variableNode.entry = entry;
+
+                Node assignNode = new Node(ASSIGN);
+                assignNode.lineNumber = lineNumber;
+                assignNode.adopt(variableNode);
+                assignNode.adopt(constantNode(REAL_CONSTANT, frame.get(entry)));
+                residual.add(assignNode);
+            }
+        }
+
+        residual.addAll(remaining);
+        compoundNode.children = residual;
+    }
+
+    /**
+     * Create a constant node.
+     * @param type REAL_CONSTANT or STRING_CONSTANT.
+     * @param value the Double or String value.
+     * @return the node.
+     */
+    private static Node constantNode(Node.NodeType type, Object value)
+    {
+        Node node  = new Node(type);
+        node.text  = value.toString();
+        node.value = value;
+
+        return node;
+    }
+
+    /**
+     * @param statement a statement node.
+     * @return true if the statement may read input or test for its end.
+     */
+    private static boolean readsInput(Node statement)
+    {
+        ArrayList<Node> stack = new ArrayList<>();
+        stack.add(statement);
+
+        while (!stack.isEmpty())
+        {
+            Node node = stack.remove(stack.size() - 1);
+
+            if ((node.type == READ) || (node.type == READLN) || (node.type == EOF))
+            {
+                return true;
+            }
+
+            for (Node child : node.children)
+            {
+                if (child != null) stack.add(child);
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Collect the variables of statements.
+     * @param statements the statement nodes.
+     * @return the variables' symbol table entries.
+     */
+    private static ArrayList<SymtabEntry> variables(List<Node> statements)
+    {
+        ArrayList<SymtabEntry> variables = new ArrayList<>();
+        IdentityHashMap<SymtabEntry, Boolean> seen = new IdentityHashMap<>();
+        ArrayList<Node> stack = new ArrayList<>();
+
+        for (Node statement : statements)
+        {
+            if (statement != null) stack.add(statement);
+        }
+
+        while (!stack.isEmpty())
+        {
+            Node node = stack.remove(stack.size() - 1);
+
+            if ((node.entry != null) && (seen.put(node.entry, true) == null))
+            {
+                variables.add(node.entry);
+            }
+
+            for (Node child : node.children)
+            {
+                if (child != null) stack.add(child);
+            }
+        }
+
+        return variables;
+    }
+}
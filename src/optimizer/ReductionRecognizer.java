@@ -0,0 +1,218 @@
+/**
+ * Reduction recognizer class for a simple interpreter.
+ *
+ * Finds the counted FOR loops of a parse tree whose bodies only
+ * accumulate into a scalar, so that the executor can compute their
+ * terms in parallel. The parser desugars a FOR loop into
+ *
+ *     COMPOUND
+ *         ASSIGN i := init
+ *         LOOP
+ *             TEST i > limit     (i < limit for DOWNTO)
+ *             body
+ *             ASSIGN i := i + 1  (i - 1 for DOWNTO)
+ *
+ * and the body must be a single assignment s := s + term, s := term + s,
+ * s := s - term, s := s*term, or s := term*s, possibly in a compound
+ * statement by itself. The term and the limit can't read the accumulator,
+ * the limit can't read the control variable, and no expression can test
+ * for the end of input. So each iteration's term depends only on its value
+ * of the control variable, and there's no other dependence between the
+ * iterations.
+ *
+ * (c) 2020 by Ronald Mak
+ * Department of Computer Science
+ * San Jose State University
+ */
+package optimizer;
+
+import java.util.IdentityHashMap;
+
+import backend.*;
+import intermediate.*;
+import static intermediate.Node.NodeType.*;
+
+public class ReductionRecognizer
+{
+    private IdentityHashMap<Node, Reduction> reductions;
+
+    /**
+     * Constructor.
+     */
+    public ReductionRecognizer()
+    {
+        this.reductions = new IdentityHashMap<>();
+    }
+
+    /**
+     * Find the reduction loops of a parse tree.
+     * @param programNode the PROGRAM node of the parse tree.
+     * @return the reductions, keyed by their FOR loops' COMPOUND nodes.
+     */
+    public IdentityHashMap<Node, Reduction> recognize(Node programNode)
+    {
+        find(programNode);
+        return reductions;
+    }
+
+    /**
+     * Find the reduction loops of a subtree.
+     * @param node the root of the subtree.
+     */
+    private void find(Node node)
+    {
+        if (node == null) return;
+
+        if (node.type == COMPOUND)
+        {
+            Reduction reduction = reduction(node);
+            if (reduction != null)
+            {
+                reductions.put(node, reduction);
+                return;
+            }
+        }
+
+        for (Node child : node.children) find(child);
+    }
+
+    /**
+     * Recognize a reduction loop.
+     * @param forNode a COMPOUND node.
+     * @return the reduction, or null if it isn't a reduction loop.
+     */
+    private static Reduction reduction(Node forNode)
+    {
+        if (forNode.children.size() != 2) return null;
+
+        // i := init
+        Node initAssign = forNode.children.get(0);
+        Node loopNode   = forNode.children.get(1);
+        if (   (initAssign == null) || (initAssign.type != ASSIGN)
+            || (loopNode == null)   || (loopNode.type != LOOP)
+            || (loopNode.children.size() != 3))
+        {
+            return null;
+        }
+
+        SymtabEntry variable = initAssign.children.get(0).entry;
+        Node initNode = initAssign.children.get(1);
+
+        // TEST i > limit or TEST i < limit
+        Node testNode = loopNode.children.get(0);
+        if ((testNode == null) || (testNode.type != TEST)) return null;
+
+        Node compareNode = testNode.children.get(0);
+        if (   ((compareNode.type != GT) && (compareNode.type != LT))
+            || !isVariable(compareNode.children.get(0), variable))
+        {
+            return null;
+        }
+
+        boolean up = compareNode.type == GT;
+        Node limitNode = compareNode.children.get(1);
+
+        // i := i + 1 or i := i - 1
+        Node stepAssign = loopNode.children.get(2);
+        if (   (stepAssign == null) || (stepAssign.type != ASSIGN)
+            || (stepAssign.children.get(0).entry != variable))
+        {
+            return null;
+        }
+
+        Node stepNode = stepAssign.children.get(1);
+        if (   (stepNode.type != (up ? ADD : SUBTRACT))
+            || !isVariable(stepNode.children.get(0), variable)
+            || (stepNode.children.get(1).type != INTEGER_CONSTANT)
+            || ((Long) stepNode.children.get(1).value != 1))
+        {
+            return null;
+        }
+
+        // s := s op term, alone or in a compound statement.
+        Node bodyNode = loopNode.children.get(1);
+        int bodyStatements = 1;
+        if (   (bodyNode != null) && (bodyNode.type == COMPOUND)
+            && (bodyNode.children.size() == 1))
+        {
+            bodyNode = bodyNode.children.get(0);
+            bodyStatements = 2;
+        }
+        if ((bodyNode == null) || (bodyNode.type != ASSIGN)) return null;
+
+        SymtabEntry accumulator = bodyNode.children.get(0).entry;
+        if (accumulator == variable) return null;
+
+        Node opNode = bodyNode.children.get(1);
+        Node termNode;
+        if (   (opNode.type != ADD) && (opNode.type != SUBTRACT)
+            && (opNode.type != MULTIPLY))
+        {
+            return null;
+        }
+        else if (isVariable(opNode.children.get(0), accumulator))
+        {
+            termNode = opNode.children.get(1);
+        }
+        else if (   (opNode.type != SUBTRACT)
+                 && isVariable(opNode.children.get(1), accumulator))
+        {
+            termNode = opNode.children.get(0);
+        }
+        else return null;
+
+        if (   reads(termNode, accumulator) || readsInput(termNode)
+            || reads(limitNode, accumulator) || reads(limitNode, variable)
+            || readsInput(limitNode) || readsInput(initNode))
+        {
+            return null;
+        }
+
+        return new Reduction(forNode, variable, accumulator, opNode.type,
+                             initNode, limitNode, termNode, up,
+                             bodyStatements);
+    }
+
+    /**
+     * @param node a node.
+     * @param entry a variable's symbol table entry.
+     * @return true if the node is that variable.
+     */
+    private static boolean isVariable(Node node, SymtabEntry entry)
+    {
+        return (node.type == VARIABLE) && (node.entry == entry);
+    }
+
+    /**
+     * @param node an expression node.
+     * @param entry a variable's symbol table entry.
+     * @return true if the expression reads the variable.
+     */
+    private static boolean reads(Node node, SymtabEntry entry)
+    {
+        if (isVariable(node, entry)) return true;
+
+        for (Node child : node.children)
+        {
+            if (reads(child, entry)) return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * @param node an expression node.
+     * @return true if the expression tests for the end of input.
+     */
+    private static boolean readsInput(Node node)
+    {
+        if (node.type == EOF) return true;
+
+        for (Node child : node.children)
+        {
+            if (readsInput(child)) return true;
+        }
+
+        return false;
+    }
+}